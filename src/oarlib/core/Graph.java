@@ -26,6 +26,7 @@ package oarlib.core;
 import gnu.trove.TIntObjectHashMap;
 import oarlib.exceptions.InvalidEndpointsException;
 import oarlib.graph.util.CommonAlgorithms;
+import oarlib.graph.util.DistanceMatrixCache;
 import oarlib.graph.util.Pair;
 
 import java.util.Collection;
@@ -131,20 +132,8 @@ public abstract class Graph<V extends Vertex, E extends Link<V>> {
      * @return
      */
     public int[][] getAllPairsDistMatrix() {
-        if (!distGenerated) {
-            //generate it
-            int n = getVertices().size();
-            int[][] dist = new int[n + 1][n + 1];
-            int[][] path = new int[n + 1][n + 1];
-            int[][] edgePath = new int[n + 1][n + 1];
-            CommonAlgorithms.fwLeastCostPaths(this, dist, path, edgePath);
-
-            mDist = dist;
-            mPath = path;
-            mEdgePath = edgePath;
-
-            distGenerated = true;
-        }
+        if (!distGenerated)
+            generateAllPairsMatrices();
 
         return mDist;
     }
@@ -155,19 +144,8 @@ public abstract class Graph<V extends Vertex, E extends Link<V>> {
      * @return
      */
     public int[][] getAllPairsPathMatrix() {
-        if (!distGenerated) {
-            int n = getVertices().size();
-            int[][] dist = new int[n + 1][n + 1];
-            int[][] path = new int[n + 1][n + 1];
-            int[][] edgePath = new int[n + 1][n + 1];
-            CommonAlgorithms.fwLeastCostPaths(this, dist, path, edgePath);
-
-            mDist = dist;
-            mPath = path;
-            mEdgePath = edgePath;
-
-            distGenerated = true;
-        }
+        if (!distGenerated)
+            generateAllPairsMatrices();
 
         return mPath;
     }
@@ -178,7 +156,23 @@ public abstract class Graph<V extends Vertex, E extends Link<V>> {
      * @return
      */
     public int[][] getAllPairsEdgePathMatrix() {
-        if (!distGenerated) {
+        if (!distGenerated)
+            generateAllPairsMatrices();
+
+        return mEdgePath;
+    }
+
+    /**
+     * Fills in the shortest path matrices, from the {@link DistanceMatrixCache} if it's enabled and has them, or with
+     * Floyd-Warshall oth.
+     */
+    private void generateAllPairsMatrices() {
+        int[][][] cached = DistanceMatrixCache.load(this);
+        if (cached != null) {
+            mDist = cached[0];
+            mPath = cached[1];
+            mEdgePath = cached[2];
+        } else {
             int n = getVertices().size();
             int[][] dist = new int[n + 1][n + 1];
             int[][] path = new int[n + 1][n + 1];
@@ -189,10 +183,26 @@ public abstract class Graph<V extends Vertex, E extends Link<V>> {
             mPath = path;
             mEdgePath = edgePath;
 
-            distGenerated = true;
+            DistanceMatrixCache.store(this, dist, path, edgePath);
         }
 
-        return mEdgePath;
+        distGenerated = true;
+    }
+
+    /**
+     * Seeds the lazily generated shortest path matrices, (e.g. with the matrices already computed for an identical
+     * copy of this graph), so that they don't have to be recomputed.  It is up to the caller to make sure that the
+     * matrices actually correspond to this graph; they are cleared as usual by {@link #onStateChange()}.
+     *
+     * @param dist     - the dist matrix, as would be returned by getAllPairsDistMatrix
+     * @param path     - the path matrix, as would be returned by getAllPairsPathMatrix
+     * @param edgePath - the edge path matrix, as would be returned by getAllPairsEdgePathMatrix
+     */
+    public void setAllPairsMatrices(int[][] dist, int[][] path, int[][] edgePath) {
+        mDist = dist;
+        mPath = path;
+        mEdgePath = edgePath;
+        distGenerated = true;
     }
 
     //endregion
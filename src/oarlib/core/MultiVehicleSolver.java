@@ -23,9 +23,12 @@
  */
 package oarlib.core;
 
+import oarlib.graph.transform.partition.GraphPartitioner;
+import oarlib.graph.transform.partition.impl.MetisPartitioner;
 import org.apache.log4j.Logger;
 
 import java.util.Collection;
+import java.util.HashMap;
 
 /**
  * Solver abstraction.  Most general contract that Multivehicle solvers must fulfill.
@@ -35,6 +38,8 @@ public abstract class MultiVehicleSolver<V extends Vertex, E extends Link<V>, G
 
     private static final Logger LOGGER = Logger.getLogger(MultiVehicleSolver.class);
 
+    private GraphPartitioner mPartitioner;
+
     /**
      * Default constructor; must set problem instance.
      *
@@ -42,29 +47,55 @@ public abstract class MultiVehicleSolver<V extends Vertex, E extends Link<V>, G
      */
     protected MultiVehicleSolver(Problem<V, E, G> instance) throws IllegalArgumentException {
         super(instance);
+        mPartitioner = new MetisPartitioner();
+    }
+
+    /**
+     * @return - the partitioner used to split the vertex-weighted graphs produced by this solver.
+     */
+    public GraphPartitioner getPartitioner() {
+        return mPartitioner;
+    }
+
+    /**
+     * Sets the partitioner used to split the vertex-weighted graphs produced by this solver.  By default, this is a
+     * {@link MetisPartitioner}, which runs gpmetis in a private temporary directory on each call.
+     *
+     * @param newPartitioner - the partitioner to use.
+     */
+    public void setPartitioner(GraphPartitioner newPartitioner) {
+        if (newPartitioner == null) {
+            LOGGER.warn("Invalid argument.  partitioner may not be null.");
+            return;
+        }
+        mPartitioner = newPartitioner;
+    }
+
+    /**
+     * Partitions the vertex-weighted graph provided using this solver's partitioner.
+     *
+     * @param g        - the graph to partition; vertex costs are used as the vertex weights.
+     * @param numParts - the number of parts to partition the graph into, (e.g. 4 means the vertices will be partitioned
+     *                 4 parts.
+     * @return - a map from vertex id to the part it was assigned to, or null if partitioning failed.
+     */
+    protected HashMap<Integer, Integer> runPartitioner(Graph<?, ?> g, int numParts) {
+        return mPartitioner.partition(g, numParts);
     }
 
     /**
      * Runs the vertex-weighted partitioning code from the METIS library, (the gpmetis program) on the graph file provided.
+     * Kept for subclasses that write their own graph files; new code should use {@link #runPartitioner(Graph, int)}.
      *
      * @param numParts - the number of parts to partition the graph into, (e.g. 4 means the vertices will be partitioned
      *                 4 parts.
      * @param filename - the file path to the location of the graph file.  In order to work properly, this file must be in the
      *                 format expected by the METIS library; see the manual for details.
      */
+    @Deprecated
     protected void runMetis(int numParts, String filename) {
-        try {
-            //run gpmetis
-            String[] args1 = {"/usr/local/bin/gpmetis", filename, "" + numParts, "-contig", "-minconn", "-niter=1000", "-ncuts=1000", "-ufactor=1"};
-            Runtime r = Runtime.getRuntime();
-            LOGGER.debug("Start");
-            Process p = r.exec(args1);
-            p.waitFor();
-            int exitVal = p.exitValue();
-            LOGGER.debug("Stop " + exitVal);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        MetisPartitioner metis = mPartitioner instanceof MetisPartitioner ? (MetisPartitioner) mPartitioner : new MetisPartitioner();
+        metis.partitionFile(filename, numParts);
     }
 
     /**
@@ -94,13 +125,14 @@ public abstract class MultiVehicleSolver<V extends Vertex, E extends Link<V>, G
             addedCost -= l.getCost();
 
 
-        String ans = "=======================================================";
-        ans += "\n";
-        ans += "\n";
-        ans += this.getSolverName() + ": Printing current solution...";
-        ans += "\n";
-        ans += "\n";
-        ans += "=======================================================";
+        StringBuilder ans = new StringBuilder();
+        ans.append("=======================================================");
+        ans.append("\n");
+        ans.append("\n");
+        ans.append(this.getSolverName()).append(": Printing current solution...");
+        ans.append("\n");
+        ans.append("\n");
+        ans.append("=======================================================");
         for (Route<V, E> r : currSol) {
             //gather metrics
             tempCost = r.getCost();
@@ -116,10 +148,12 @@ public abstract class MultiVehicleSolver<V extends Vertex, E extends Link<V>, G
 
             totalCost += tempCost;
 
-            ans += "\n";
-            ans += "Route: " + r.toString() + "\n";
-            ans += "Route Cost: " + tempCost + "\n";
-            ans += "\n";
+            ans.append("\n");
+            ans.append("Route: ");
+            r.appendTo(ans);
+            ans.append("\n");
+            ans.append("Route Cost: ").append(tempCost).append("\n");
+            ans.append("\n");
         }
 
         percentVariance = ((double) maxLength - minLength) / maxLength;
@@ -130,23 +164,23 @@ public abstract class MultiVehicleSolver<V extends Vertex, E extends Link<V>, G
         addedCost += totalCost;
 
 
-        ans += "=======================================================";
-        ans += "\n";
-        ans += "\n";
-        ans += "Vertices: " + mInstance.getGraph().getVertices().size() + "\n";
-        ans += "Edges: " + mInstance.getGraph().getEdges().size() + "\n";
-        ans += "Max Route Length: " + maxLength + "\n";
-        ans += "Min Route Length: " + minLength + "\n";
-        ans += "Average Route Length: " + averageCost + "\n";
-        ans += "Average RouteLength (excluding empty): " + averageCostNoEmpty + "\n";
-        ans += "% variance: " + 100.0 * percentVariance + "\n";
-        ans += "% deviation from average length: " + 100.0 * deviationFromAverage + "\n";
-        ans += "% deviation from average length (excluding empty): " + 100.0 * deviationFromAverageNoEmpty + "\n";
-        ans += "Added cost: " + addedCost + "\n";
-        ans += "\n";
-        ans += "\n";
-        ans += "=======================================================";
-
-        return ans;
+        ans.append("=======================================================");
+        ans.append("\n");
+        ans.append("\n");
+        ans.append("Vertices: ").append(mInstance.getGraph().getVertices().size()).append("\n");
+        ans.append("Edges: ").append(mInstance.getGraph().getEdges().size()).append("\n");
+        ans.append("Max Route Length: ").append(maxLength).append("\n");
+        ans.append("Min Route Length: ").append(minLength).append("\n");
+        ans.append("Average Route Length: ").append(averageCost).append("\n");
+        ans.append("Average RouteLength (excluding empty): ").append(averageCostNoEmpty).append("\n");
+        ans.append("% variance: ").append(100.0 * percentVariance).append("\n");
+        ans.append("% deviation from average length: ").append(100.0 * deviationFromAverage).append("\n");
+        ans.append("% deviation from average length (excluding empty): ").append(100.0 * deviationFromAverageNoEmpty).append("\n");
+        ans.append("Added cost: ").append(addedCost).append("\n");
+        ans.append("\n");
+        ans.append("\n");
+        ans.append("=======================================================");
+
+        return ans.toString();
     }
 }
@@ -123,6 +123,8 @@ public abstract class MutableGraph<V extends Vertex, E extends Link<V>> extends
     public void clearEdges() {
         mEdges = new HashSet<E>();
         mInternalEdgeMap = new TIntObjectHashMap<E>();
+        for (int vid : incidenceMap.keys())
+            incidenceMap.get(vid).clear();
         super.resetEdgeCounter();
     }
 
@@ -187,6 +189,10 @@ public abstract class MutableGraph<V extends Vertex, E extends Link<V>> extends
         mInternalEdgeMap.remove(oldId);
         temp.setId(newId);
         mInternalEdgeMap.put(newId, temp);
+        incidenceMap.get(temp.getFirstEndpointId()).remove(oldId);
+        incidenceMap.get(temp.getSecondEndpointId()).remove(oldId);
+        incidenceMap.get(temp.getFirstEndpointId()).add(newId);
+        incidenceMap.get(temp.getSecondEndpointId()).add(newId);
 
     }
 
@@ -0,0 +1,887 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2015 Oliver Lum
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package oarlib.core;
+
+import gnu.trove.TIntHashSet;
+import gnu.trove.TIntObjectHashMap;
+import oarlib.exceptions.InvalidEndpointsException;
+import oarlib.exceptions.NoDemandSetException;
+import oarlib.graph.util.Pair;
+import oarlib.link.impl.AsymmetricLink;
+import oarlib.vertex.impl.DirectedVertex;
+import oarlib.vertex.impl.MixedVertex;
+import oarlib.vertex.impl.UndirectedVertex;
+import oarlib.vertex.impl.WindyVertex;
+import oarlib.vertex.impl.ZigZagVertex;
+import org.apache.log4j.Logger;
+
+import java.util.*;
+
+/**
+ * A copy-on-write view of another graph.  The overlay shares the vertices and links of the base graph, and only
+ * records the links that were added to it, the base links that were removed from it, and private copies of the base
+ * links that were edited through {@link #getEditableEdge(int)}.  None of these changes are visible in the base graph,
+ * and creating an overlay is O(1), so it's a much cheaper alternative to {@link Graph#getDeepCopy()} when a solver
+ * only needs a perturbed version of a graph, (e.g. with links added, removed or re-costed), for shortest paths, Euler
+ * tours and the like.
+ * <p/>
+ * A few things to be aware of:
+ * <p/>
+ * -Links keep their base ids and match ids, (unlike in a deep copy, which compacts the ids and stores the old ones as
+ * match ids), and added links get ids starting from the base graph's edge id counter.
+ * <p/>
+ * -Vertices own their adjacency, (neighbors, degrees), in this library, so they can't be shared once the links differ.
+ * The first time a vertex is asked for, (through {@link #getVertex(int)}, {@link #getInternalVertexMap()} or
+ * iterating over {@link #getVertices()}), the overlay makes its own copy of it, and builds the copy's neighbors and
+ * degrees from the links of the overlay.  From then on, the copy is kept up to date as links are added, removed or
+ * edited.  This costs O(degree) per vertex asked for; the rest of the graph is not copied.
+ * <p/>
+ * -The endpoints of the links, (and so the keys of the neighbor maps), are the base graph's vertices, whose own
+ * neighbors are the base graph's.  Go by ids.  Either the base graph's vertices or the overlay's copies may be passed
+ * in to the overlay.
+ * <p/>
+ * -Adding, removing or renumbering vertices is the exception.  The first time one of them is called, the overlay gets
+ * its own copy of the whole graph, with the same vertex and link ids, and forwards everything to it from then on.  Link
+ * and vertex objects obtained before the switch are not the overlay's afterwards, (though ids still work).
+ * <p/>
+ * -The base graph must not be modified while the overlay is in use.
+ * <p/>
+ * {@link #getDeepCopy()} flattens the overlay into a stand-alone graph of the same type as the base graph.
+ *
+ * @author oliverlum
+ */
+public class OverlayGraph<V extends Vertex, E extends Link<V>> extends Graph<V, E> {
+
+    private static final Logger LOGGER = Logger.getLogger(OverlayGraph.class);
+
+    private Graph<V, E> mBase;
+    private TIntHashSet mRemoved; //ids of the base links that have been removed from the overlay
+    private TIntObjectHashMap<E> mEdited; //private copies of base links, keyed by id
+    private LinkedHashMap<Integer, E> mAdded; //links that only exist in the overlay, keyed by id, in the order they were added
+    private TIntObjectHashMap<ArrayList<E>> mAddedIncidence; //added links, keyed by the ids of their endpoints
+    private TIntObjectHashMap<V> mVertexCopies; //the overlay's copies of the vertices asked for so far, keyed by id
+    private int mNextEdgeId;
+    private TIntObjectHashMap<E> mEdgeMap; //lazily built; null if out of date
+    private EdgeView mEdges;
+    private VertexView mVertices;
+    private Graph<V, E> mOwn; //the overlay's own copy of the graph, once its vertices have been changed; null until then
+
+    /**
+     * @param base - the graph to overlay; it must not be modified while the overlay is in use
+     */
+    public OverlayGraph(Graph<V, E> base) {
+        super();
+        mBase = base;
+        mRemoved = new TIntHashSet();
+        mEdited = new TIntObjectHashMap<E>();
+        mAdded = new LinkedHashMap<Integer, E>();
+        mAddedIncidence = new TIntObjectHashMap<ArrayList<E>>();
+        mVertexCopies = new TIntObjectHashMap<V>();
+        mNextEdgeId = base.getEidCounter();
+        mEdges = new EdgeView();
+        mVertices = new VertexView();
+        setDepotId(base.getDepotId());
+    }
+
+    /**
+     * @return - the graph this overlays
+     */
+    public Graph<V, E> getBase() {
+        return mBase;
+    }
+
+    /**
+     * Gets a link of this overlay that may be modified freely, (e.g. re-costed, or made non-required), without affecting
+     * the base graph.  The first time a base link is asked for, it is copied, and the copy replaces it in the overlay;
+     * links added to the overlay are returned as is.
+     *
+     * @param i - the id of the link
+     * @return - the overlay's own copy of the link
+     * @throws IllegalArgumentException - if the link isn't in the overlay
+     */
+    public E getEditableEdge(int i) throws IllegalArgumentException {
+        if (mOwn != null)
+            return mOwn.getEdge(i);
+        E e = lookup(i);
+        if (e == null)
+            throw new IllegalArgumentException("The link with this id does not appear to exist in this graph.");
+        if (mAdded.containsKey(i) || mEdited.containsKey(i))
+            return e;
+
+        E copy = copyLink(e);
+        copy.setId(i);
+        copy.setGraphId(getGraphId());
+        mEdited.put(i, copy);
+        refreshVertices(copy);
+        onStateChange();
+        return copy;
+    }
+
+    /**
+     * @param i - the id of the link
+     * @return - the link with id i in the overlay, or null if there isn't one
+     */
+    private E lookup(int i) {
+        if (mOwn != null)
+            return mOwn.getInternalEdgeMap().get(i);
+        if (mAdded.containsKey(i))
+            return mAdded.get(i);
+        if (mRemoved.contains(i))
+            return null;
+        if (mEdited.containsKey(i))
+            return mEdited.get(i);
+        return mBase.getInternalEdgeMap().get(i);
+    }
+
+    /**
+     * @return - a copy of e, (with the same endpoints), that carries over all the properties of e except for its ids.
+     */
+    @SuppressWarnings("unchecked")
+    private static <V extends Vertex, E extends Link<V>> E copyLink(E e) {
+        E copy = (E) e.getCopy();
+        copy.setLabel(e.getLabel());
+        copy.setMatchId(e.getMatchId());
+        copy.setRequired(e.isRequired());
+        copy.setServiceCost(e.getServiceCost());
+        copy.setMaxSpeed(e.getMaxSpeed());
+        copy.setZone(e.getZone());
+        copy.setType(e.getType());
+        if (e.hasTimeWindow())
+            copy.setTimeWindow(e.getTimeWindow());
+        if (e.isCapacitySet()) {
+            try {
+                copy.setCapacity(e.getCapacity());
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        }
+        if (e instanceof AsymmetricLink)
+            ((AsymmetricLink) copy).setReverseRequired(((AsymmetricLink) e).isReverseRequired());
+        return copy;
+    }
+
+    /**
+     * @param i - the id of the vertex
+     * @return - the overlay's copy of the vertex with id i, (made the first time it's asked for), or null if there's no
+     * such vertex
+     */
+    private V vertexCopy(int i) {
+        V ans = mVertexCopies.get(i);
+        if (ans != null)
+            return ans;
+        V v = mBase.getInternalVertexMap().get(i);
+        if (v == null)
+            return null;
+
+        ans = mBase.constructVertex(v.getLabel());
+        copyVertexProperties(v, ans);
+        ans.setId(i);
+        ans.setMatchId(v.getMatchId());
+        ans.setGuid(v.getGuid());
+        ans.setGraphId(getGraphId());
+        ans.setFinalized(v.isFinalized());
+        mVertexCopies.put(i, ans);
+        buildAdjacency(ans);
+        return ans;
+    }
+
+    /**
+     * Copies over the properties of a vertex that aren't tied to a graph, (label, coordinates, demand, cost and size).
+     */
+    private static void copyVertexProperties(Vertex from, Vertex to) {
+        to.setLabel(from.getLabel());
+        to.setCost(from.getCost());
+        to.setSize(from.getSize());
+        if (from.hasCoordinates())
+            to.setCoordinates(from.getX(), from.getY());
+        if (from.isDemandSet()) {
+            try {
+                to.setDemand(from.getDemand());
+            } catch (NoDemandSetException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the neighbors and degrees of the overlay's copy of a vertex from the links of the overlay, the same way
+     * the graphs themselves count them, (e.g. a loop counts twice towards the degree).
+     *
+     * @param copy - the overlay's copy of the vertex
+     */
+    @SuppressWarnings("unchecked")
+    private void buildAdjacency(V copy) {
+        int i = copy.getId();
+        int[] ids = toSortedArray(getIncidentLinks(i));
+
+        copy.clearNeighbors();
+        Map<Vertex, List<E>> neighbors = (Map<Vertex, List<E>>) copy.getNeighbors();
+        int in = 0;
+        int out = 0;
+        int undirected = 0;
+        E e;
+        for (int id : ids) {
+            e = lookup(id);
+            if (e.isDirected()) {
+                if (e.getFirstEndpointId() == i) {
+                    addNeighbor(neighbors, e.getEndpoints().getSecond(), e);
+                    out++;
+                }
+                if (e.getSecondEndpointId() == i)
+                    in++;
+            } else {
+                if (e.getFirstEndpointId() == i) {
+                    addNeighbor(neighbors, e.getEndpoints().getSecond(), e);
+                    undirected++;
+                }
+                if (e.getSecondEndpointId() == i) {
+                    addNeighbor(neighbors, e.getEndpoints().getFirst(), e);
+                    undirected++;
+                }
+            }
+        }
+
+        if (copy instanceof DirectedVertex) {
+            ((DirectedVertex) copy).setInDegree(in);
+            ((DirectedVertex) copy).setOutDegree(out);
+        } else if (copy instanceof MixedVertex) {
+            ((MixedVertex) copy).setInDegree(in);
+            ((MixedVertex) copy).setOutDegree(out);
+            ((MixedVertex) copy).setDegree(in + out + undirected);
+        } else if (copy instanceof UndirectedVertex) {
+            ((UndirectedVertex) copy).setDegree(in + out + undirected);
+        } else if (copy instanceof WindyVertex) {
+            ((WindyVertex) copy).setDegree(in + out + undirected);
+        } else if (copy instanceof ZigZagVertex) {
+            ((ZigZagVertex) copy).setDegree(in + out + undirected);
+        } else {
+            LOGGER.warn("Unrecognized vertex type; the degree of vertex " + i + " in the overlay is not set.");
+        }
+    }
+
+    private static <E> void addNeighbor(Map<Vertex, List<E>> neighbors, Vertex v, E e) {
+        List<E> links = neighbors.get(v);
+        if (links == null) {
+            links = new ArrayList<E>();
+            neighbors.put(v, links);
+        }
+        links.add(e);
+    }
+
+    private static int[] toSortedArray(Collection<Integer> ids) {
+        int[] ans = new int[ids.size()];
+        int k = 0;
+        for (Integer id : ids)
+            ans[k++] = id;
+        Arrays.sort(ans);
+        return ans;
+    }
+
+    /**
+     * Brings the overlay's copies of the endpoints of e, (if it has made them), up to date with its links.
+     */
+    private void refreshVertices(E e) {
+        V copy = mVertexCopies.get(e.getFirstEndpointId());
+        if (copy != null)
+            buildAdjacency(copy);
+        if (e.getSecondEndpointId() != e.getFirstEndpointId()) {
+            copy = mVertexCopies.get(e.getSecondEndpointId());
+            if (copy != null)
+                buildAdjacency(copy);
+        }
+    }
+
+    /**
+     * @param v - a vertex
+     * @return - the base graph's vertex with the id of v, if v is either that vertex or the overlay's copy of it; null
+     * oth.
+     */
+    private V toBase(V v) {
+        V base = mBase.getInternalVertexMap().get(v.getId());
+        if (base != null && (v == base || mVertexCopies.get(v.getId()) == v))
+            return base;
+        return null;
+    }
+
+    /**
+     * Flattens the overlay into a stand-alone graph of the same type as the base graph.  The vertices keep their ids,
+     * (and pick up any changes made to the overlay's copies of them).
+     *
+     * @param keepIds - if true, the links keep their ids and match ids; oth. the link ids are compacted, (in the order
+     *                of their ids here), and the match id of each link is its id in the overlay.
+     * @return - the flattened graph
+     */
+    private Graph<V, E> flatten(boolean keepIds) throws InvalidEndpointsException {
+        Graph<V, E> ans = mBase.getDeepCopy();
+
+        //the deep copy stores the ids of the base links as match ids
+        TIntObjectHashMap<E> copiesOfBase = new TIntObjectHashMap<E>();
+        for (E e : ans.getEdges())
+            copiesOfBase.put(e.getMatchId(), e);
+
+        ans.clearEdges();
+
+        TIntObjectHashMap<V> ansVertices = ans.getInternalVertexMap();
+        for (int vid : mVertexCopies.keys())
+            copyVertexProperties(mVertexCopies.get(vid), ansVertices.get(vid));
+
+        int[] ids = getInternalEdgeMap().keys();
+        Arrays.sort(ids);
+        E e, copy;
+        for (int id : ids) {
+            e = lookup(id);
+            if (mAdded.containsKey(id) || mEdited.containsKey(id)) {
+                copy = copyLink(e);
+                copy.setEndpoints(new Pair<V>(ansVertices.get(e.getFirstEndpointId()), ansVertices.get(e.getSecondEndpointId())));
+            } else {
+                copy = copiesOfBase.get(id);
+            }
+            copy.setMatchId(keepIds ? e.getMatchId() : id);
+
+            //skip over the ids that aren't in use, so that the link gets the id it has here
+            if (keepIds)
+                while (ans.getEidCounter() < id)
+                    ans.assignEdgeId();
+            ans.addEdge(copy);
+        }
+        if (keepIds)
+            while (ans.getEidCounter() < mNextEdgeId)
+                ans.assignEdgeId();
+        ans.setDepotId(getDepotId());
+        return ans;
+    }
+
+    /**
+     * Gives the overlay its own copy of the graph, with the same vertex and link ids, so that it can change its
+     * vertices.  The copies of the unedited base links made by the deep copy are reused.
+     */
+    private void materialize() {
+        if (mOwn != null)
+            return;
+        try {
+            mOwn = flatten(true);
+            mRemoved.clear();
+            mEdited.clear();
+            mAdded.clear();
+            mAddedIncidence.clear();
+            mVertexCopies.clear();
+            onStateChange();
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            throw new IllegalStateException("The overlay could not be copied.", ex);
+        }
+    }
+
+    /**
+     * @return - true if the overlay has its own copy of the graph, (i.e. vertices have been added, removed or renumbered)
+     */
+    public boolean isMaterialized() {
+        return mOwn != null;
+    }
+
+    @Override
+    public void onStateChange() {
+        super.onStateChange();
+        mEdgeMap = null;
+    }
+
+    @Override
+    public int getEidCounter() {
+        if (mOwn != null)
+            return mOwn.getEidCounter();
+        return mNextEdgeId;
+    }
+
+    @Override
+    public int getVidCounter() {
+        if (mOwn != null)
+            return mOwn.getVidCounter();
+        return mBase.getVidCounter();
+    }
+
+    //region Graph Overrides
+
+    @Override
+    public boolean isWindy() {
+        return mBase.isWindy();
+    }
+
+    /**
+     * @return - the overlay's copies of the vertices; asking for its size is free, and iterating over it copies the
+     * vertices as it goes.
+     */
+    @Override
+    public Collection<V> getVertices() {
+        return mVertices;
+    }
+
+    @Override
+    public void addVertex(V v) {
+        materialize();
+        mOwn.addVertex(v);
+        onStateChange();
+    }
+
+    @Override
+    public void addVertex() {
+        materialize();
+        mOwn.addVertex();
+        onStateChange();
+    }
+
+    @Override
+    public boolean removeVertex(int i) {
+        materialize();
+        boolean ans = mOwn.removeVertex(i);
+        onStateChange();
+        return ans;
+    }
+
+    /**
+     * @param v - the vertex to remove; it is looked up by id, so the base graph's vertex may be passed in too
+     */
+    @Override
+    public boolean removeVertex(V v) {
+        return removeVertex(v.getId());
+    }
+
+    @Override
+    public V getVertex(int i) throws IllegalArgumentException {
+        if (mOwn != null)
+            return mOwn.getVertex(i);
+        V ans = vertexCopy(i);
+        if (ans == null)
+            throw new IllegalArgumentException("No vertex with the specified id exists in this graph.");
+        return ans;
+    }
+
+    @Override
+    public void changeVertexId(int oldId, int newId) throws IllegalArgumentException {
+        materialize();
+        mOwn.changeVertexId(oldId, newId);
+        onStateChange();
+    }
+
+    /**
+     * @return - a map from ids to the overlay's copies of the vertices, (all of which get made).  It should be treated as
+     * read-only.
+     */
+    @Override
+    public TIntObjectHashMap<V> getInternalVertexMap() {
+        if (mOwn != null)
+            return mOwn.getInternalVertexMap();
+        for (V v : mBase.getVertices())
+            vertexCopy(v.getId());
+        return mVertexCopies;
+    }
+
+    @Override
+    public V constructVertex(String desc) {
+        if (mOwn != null)
+            return mOwn.constructVertex(desc);
+        return mBase.constructVertex(desc);
+    }
+
+    @Override
+    public Collection<E> getEdges() {
+        if (mOwn != null)
+            return mOwn.getEdges();
+        return mEdges;
+    }
+
+    @Override
+    public void clearEdges() {
+        if (mOwn != null) {
+            mOwn.clearEdges();
+            onStateChange();
+            return;
+        }
+        mRemoved.addAll(mBase.getInternalEdgeMap().keys());
+        mEdited.clear();
+        mAdded.clear();
+        mAddedIncidence.clear();
+        for (int vid : mVertexCopies.keys())
+            buildAdjacency(mVertexCopies.get(vid));
+        onStateChange();
+    }
+
+    @Override
+    public void addEdge(E e) throws InvalidEndpointsException {
+        if (mOwn != null) {
+            mOwn.addEdge(e);
+            onStateChange();
+            return;
+        }
+        V first = toBase(e.getEndpoints().getFirst());
+        V second = toBase(e.getEndpoints().getSecond());
+        if (first == null || second == null) {
+            LOGGER.error("The specified endpoints do not appear to exist in this graph.");
+            throw new InvalidEndpointsException();
+        }
+        if (first != e.getEndpoints().getFirst() || second != e.getEndpoints().getSecond())
+            e.setEndpoints(new Pair<V>(first, second));
+        e.setId(mNextEdgeId++);
+        e.setGraphId(getGraphId());
+        mAdded.put(e.getId(), e);
+        addIncidence(e.getFirstEndpointId(), e);
+        if (e.getSecondEndpointId() != e.getFirstEndpointId())
+            addIncidence(e.getSecondEndpointId(), e);
+        refreshVertices(e);
+        onStateChange();
+    }
+
+    /**
+     * Adds a link to the overlay, and sets its match id.
+     *
+     * @param e       - the link to add; its endpoints must be vertices of the base graph, or the overlay's copies of them
+     * @param matchId - the match id to give the link
+     * @throws InvalidEndpointsException - if the endpoints aren't vertices of the overlay
+     */
+    public void addEdge(E e, int matchId) throws InvalidEndpointsException {
+        this.addEdge(e);
+        e.setMatchId(matchId);
+    }
+
+    private void addIncidence(int vertexId, E e) {
+        if (!mAddedIncidence.containsKey(vertexId))
+            mAddedIncidence.put(vertexId, new ArrayList<E>());
+        mAddedIncidence.get(vertexId).add(e);
+    }
+
+    @Override
+    public void addEdge(int i, int j, int cost) throws InvalidEndpointsException {
+        this.addEdge(this.constructEdge(i, j, "", cost));
+    }
+
+    @Override
+    public void addEdge(int i, int j, int cost, boolean isRequired) throws InvalidEndpointsException {
+        this.addEdge(i, j, "", cost, isRequired);
+    }
+
+    @Override
+    public void addEdge(int i, int j, String desc, int cost) throws InvalidEndpointsException {
+        this.addEdge(this.constructEdge(i, j, desc, cost));
+    }
+
+    @Override
+    public void addEdge(int i, int j, String desc, int cost, boolean isRequired) throws InvalidEndpointsException {
+        E temp = this.constructEdge(i, j, desc, cost);
+        temp.setRequired(isRequired);
+        this.addEdge(temp);
+    }
+
+    /**
+     * @param e - the link to remove; once the overlay has its own copy of the graph, it is looked up by id
+     */
+    @Override
+    public void removeEdge(E e) throws IllegalArgumentException {
+        if (mOwn != null) {
+            mOwn.removeEdge(e.getId());
+            onStateChange();
+            return;
+        }
+        if (lookup(e.getId()) != e)
+            throw new IllegalArgumentException("Could not remove edge because it wasn't detected as existing in the first place!");
+        if (mAdded.containsKey(e.getId())) {
+            mAdded.remove(e.getId());
+            mAddedIncidence.get(e.getFirstEndpointId()).remove(e);
+            if (e.getSecondEndpointId() != e.getFirstEndpointId())
+                mAddedIncidence.get(e.getSecondEndpointId()).remove(e);
+        } else {
+            mEdited.remove(e.getId());
+            mRemoved.add(e.getId());
+        }
+        refreshVertices(e);
+        onStateChange();
+    }
+
+    @Override
+    public void removeEdge(int i) throws IllegalArgumentException {
+        E temp = lookup(i);
+        if (temp == null)
+            throw new IllegalArgumentException("Could not remove edge because it wasn't detected as existing in the first place!");
+        this.removeEdge(temp);
+    }
+
+    @Override
+    public E getEdge(int i) throws IllegalArgumentException {
+        E temp = lookup(i);
+        if (temp == null)
+            throw new IllegalArgumentException("The link with this id does not appear to exist in this graph.");
+        return temp;
+    }
+
+    /**
+     * Renumbers a link of the overlay.  A base link is replaced by an editable copy with the new id, (so the base
+     * graph keeps its ids).
+     *
+     * @param oldId - the current id of the link
+     * @param newId - the id to give it
+     * @throws IllegalArgumentException - if there's no link with oldId, or there already is one with newId
+     */
+    @Override
+    public void changeLinkId(int oldId, int newId) throws IllegalArgumentException {
+        if (mOwn != null) {
+            mOwn.changeLinkId(oldId, newId);
+            onStateChange();
+            return;
+        }
+        if (lookup(oldId) == null)
+            throw new IllegalArgumentException("No link with the oldId specified exists in this graph.");
+        if (lookup(newId) != null)
+            throw new IllegalArgumentException("A link with newId already exists in this graph.");
+
+        E e;
+        if (mAdded.containsKey(oldId)) {
+            e = mAdded.remove(oldId);
+        } else {
+            e = getEditableEdge(oldId);
+            mEdited.remove(oldId);
+            mRemoved.add(oldId);
+            addIncidence(e.getFirstEndpointId(), e);
+            if (e.getSecondEndpointId() != e.getFirstEndpointId())
+                addIncidence(e.getSecondEndpointId(), e);
+        }
+        e.setId(newId);
+        mAdded.put(newId, e);
+        if (newId >= mNextEdgeId)
+            mNextEdgeId = newId + 1;
+        refreshVertices(e);
+        onStateChange();
+    }
+
+    /**
+     * @param endpoints - the endpoints; they are looked up by id, so either the base graph's vertices or the overlay's
+     *                  copies may be passed in
+     */
+    @Override
+    public List<E> findEdges(Pair<V> endpoints) {
+        return findEdges(endpoints.getFirst().getId(), endpoints.getSecond().getId());
+    }
+
+    @Override
+    public List<E> findEdges(int v1, int v2) {
+        if (mOwn != null)
+            return mOwn.findEdges(v1, v2);
+        List<E> ret = new ArrayList<E>();
+        E e;
+        for (E baseLink : mBase.findEdges(new Pair<V>(mBase.getVertex(v1), mBase.getVertex(v2)))) {
+            e = lookup(baseLink.getId());
+            if (e != null)
+                ret.add(e);
+        }
+        ArrayList<E> added = mAddedIncidence.get(v1);
+        if (added != null) {
+            for (E a : added) {
+                if (a.getFirstEndpointId() == v1 && a.getSecondEndpointId() == v2)
+                    ret.add(a);
+                else if (!a.isDirected() && a.getFirstEndpointId() == v2 && a.getSecondEndpointId() == v1)
+                    ret.add(a);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return - a map from ids to the links of the overlay.  It's built on demand, and should be treated as read-only.
+     */
+    @Override
+    public TIntObjectHashMap<E> getInternalEdgeMap() {
+        if (mOwn != null)
+            return mOwn.getInternalEdgeMap();
+        if (mEdgeMap == null) {
+            TIntObjectHashMap<E> ans = new TIntObjectHashMap<E>();
+            for (E e : mEdges)
+                ans.put(e.getId(), e);
+            mEdgeMap = ans;
+        }
+        return mEdgeMap;
+    }
+
+    @Override
+    public TIntObjectHashMap<HashSet<Integer>> getIncidenceMap() {
+        if (mOwn != null)
+            return mOwn.getIncidenceMap();
+        TIntObjectHashMap<HashSet<Integer>> ans = new TIntObjectHashMap<HashSet<Integer>>();
+        for (V v : mBase.getVertices())
+            ans.put(v.getId(), getIncidentLinks(v.getId()));
+        return ans;
+    }
+
+    @Override
+    public HashSet<Integer> getIncidentLinks(int vertexId) {
+        if (mOwn != null)
+            return mOwn.getIncidentLinks(vertexId);
+        HashSet<Integer> ans = new HashSet<Integer>();
+        HashSet<Integer> baseLinks = mBase.getIncidentLinks(vertexId);
+        if (baseLinks != null) {
+            for (Integer id : baseLinks)
+                if (!mRemoved.contains(id))
+                    ans.add(id);
+        }
+        ArrayList<E> added = mAddedIncidence.get(vertexId);
+        if (added != null) {
+            for (E a : added)
+                ans.add(a.getId());
+        }
+        return ans;
+    }
+
+    @Override
+    public E constructEdge(int i, int j, String desc, int cost) throws InvalidEndpointsException {
+        if (mOwn != null)
+            return mOwn.constructEdge(i, j, desc, cost);
+        return mBase.constructEdge(i, j, desc, cost);
+    }
+
+    /**
+     * Flattens the overlay into a stand-alone graph of the same type as the base graph.  As with the other graphs,
+     * the vertices keep their ids, the link ids are compacted, (1..m, in the order of their ids in the overlay), and
+     * the match id of each link in the copy is the id of the link in the overlay that it came from.
+     *
+     * @return - a deep copy of the graph this overlay represents
+     */
+    @Override
+    public Graph<V, E> getDeepCopy() {
+        if (mOwn != null)
+            return mOwn.getDeepCopy();
+        try {
+            return flatten(false);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public Graph.Type getType() {
+        return mBase.getType();
+    }
+    //endregion
+
+    /**
+     * The vertices of the overlay.  The size is known without the vertices themselves, and the overlay's copies of the
+     * vertices are made as they're handed out.
+     */
+    private class VertexView extends AbstractCollection<V> {
+
+        @Override
+        public Iterator<V> iterator() {
+            if (mOwn != null)
+                return mOwn.getVertices().iterator();
+            return new Iterator<V>() {
+                private Iterator<V> mBaseIter = mBase.getVertices().iterator();
+
+                @Override
+                public boolean hasNext() {
+                    return mBaseIter.hasNext();
+                }
+
+                @Override
+                public V next() {
+                    return vertexCopy(mBaseIter.next().getId());
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            if (mOwn != null)
+                return mOwn.getVertices().size();
+            return mBase.getVertices().size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (mOwn != null)
+                return mOwn.getVertices().contains(o);
+            return (o instanceof Vertex) && mVertexCopies.get(((Vertex) o).getId()) == o;
+        }
+    }
+
+    /**
+     * The links of the overlay: the base links that haven't been removed, (or their edited copies), followed by the
+     * added links, in the order they were added.
+     */
+    private class EdgeView extends AbstractCollection<E> {
+
+        @Override
+        public Iterator<E> iterator() {
+            return new Iterator<E>() {
+                private Iterator<E> mBaseIter = mBase.getEdges().iterator();
+                private Iterator<E> mAddedIter = mAdded.values().iterator();
+                private E mNext = advance();
+
+                private E advance() {
+                    E e;
+                    while (mBaseIter.hasNext()) {
+                        e = mBaseIter.next();
+                        if (mRemoved.contains(e.getId()))
+                            continue;
+                        if (mEdited.containsKey(e.getId()))
+                            return mEdited.get(e.getId());
+                        return e;
+                    }
+                    if (mAddedIter.hasNext())
+                        return mAddedIter.next();
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return mNext != null;
+                }
+
+                @Override
+                public E next() {
+                    if (mNext == null)
+                        throw new NoSuchElementException();
+                    E ret = mNext;
+                    mNext = advance();
+                    return ret;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return mBase.getEdges().size() - mRemoved.size() + mAdded.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return (o instanceof Link) && lookup(((Link) o).getId()) == o;
+        }
+    }
+}
@@ -31,9 +31,11 @@ import oarlib.link.impl.AsymmetricLink;
 import oarlib.vertex.impl.UndirectedVertex;
 import org.apache.log4j.Logger;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
@@ -44,6 +46,7 @@ import java.util.Set;
 public abstract class Route<V extends Vertex, E extends Link<V>> {
 
     private static final Logger LOGGER = Logger.getLogger(Route.class);
+    private static final String INCONSISTENT_ROUTE_MESSAGE = "Adjacent links in this route didn't share a common vertex.  Please try running checkRoutes to verify the integrity of the route.";
     private static int routeIDCounter = 1;
 
     protected int mCost; // cost of the route
@@ -423,146 +426,184 @@ public abstract class Route<V extends Vertex, E extends Link<V>> {
      * Outputs a string representation of the route.
      */
     public String toString() {
-        String ans = "";
-        List<E> list = this.getPath();
-        int n = list.size();
-        E tempL, tempL2;
-        int prevId1, prevId2, prevAltId1, prevAltId2, prevIdReal, beginningCycleLength;
-        Vertex tempV1, tempV2, tempV12, tempV22;
-        boolean firstToSecond = false;
-        boolean useCustomMapping = true;
-
-        if (mCustomIDMap.isEmpty())
-            useCustomMapping = false;
-
-        //edge case
-        if (n == 0)
-            return ans;
-
-        if (n == 1) {
-            tempL = list.get(0);
-            if (useCustomMapping) {
-                ans += mCustomIDMap.get(tempL.getEndpoints().getFirst().getId()) + "-";
-                ans += mCustomIDMap.get(tempL.getEndpoints().getSecond().getId());
-            } else {
-                ans += tempL.getEndpoints().getFirst().getId() + "-";
-                ans += tempL.getEndpoints().getSecond().getId();
-            }
+        return appendTo(new StringBuilder(4 * (mRoute.size() + 1))).toString();
+    }
 
-            return ans;
+    /**
+     * Appends the same representation as toString() to sb, (the visited vertex ids, separated by dashes, using the
+     * custom id map if one is set), without building an intermediate String.
+     *
+     * @param sb - the destination
+     * @return - sb, for chaining
+     */
+    public StringBuilder appendTo(StringBuilder sb) {
+        try {
+            appendVertices(sb);
+        } catch (IOException e) {
+            //StringBuilders don't throw
+            e.printStackTrace();
         }
+        return sb;
+    }
 
+    /**
+     * Writes the same representation as toString() to out, without building an intermediate String.
+     *
+     * @param out - the destination, (e.g. a Writer)
+     * @return - out, for chaining
+     * @throws IOException - if out throws one
+     */
+    public <A extends Appendable> A appendTo(A out) throws IOException {
+        appendVertices(out);
+        return out;
+    }
 
-        tempL = list.get(0);
-        tempV1 = tempL.getEndpoints().getFirst();
-        tempV2 = tempL.getEndpoints().getSecond();
-        prevId1 = tempV1.getId();
-        prevId2 = tempV2.getId();
-        if (useCustomMapping) {
-            prevAltId1 = mCustomIDMap.get(tempV1.getId());
-            prevAltId2 = mCustomIDMap.get(tempV2.getId());
-        } else {
-            prevAltId1 = tempV1.getId();
-            prevAltId2 = tempV2.getId();
+    private void appendVertices(Appendable out) throws IOException {
+        VertexIdIterator iter = vertexIdIterator(!mCustomIDMap.isEmpty());
+        if (!iter.isConsistent()) {
+            out.append(INCONSISTENT_ROUTE_MESSAGE);
+            return;
         }
+        if (iter.hasNext())
+            appendInt(out, iter.next());
+        while (iter.hasNext()) {
+            out.append('-');
+            appendInt(out, iter.next());
+        }
+    }
 
-        //first vertex
-        tempL = list.get(1);
-        tempV1 = tempL.getEndpoints().getFirst();
-        tempV2 = tempL.getEndpoints().getSecond();
-
-        //special case where the first n edges form consecutive 2-cycles and everybody is undirected, we have to look forward to decide how to orient
-        if (tempV1.getId() == prevId1 && tempV2.getId() == prevId2 || tempV1.getId() == prevId2 && tempV2.getId() == prevId1) {
-            beginningCycleLength = 2;
-            for (int i = 2; i < n; i++) {
-                tempL2 = list.get(i);
-                tempV12 = tempL2.getEndpoints().getFirst();
-                tempV22 = tempL2.getEndpoints().getSecond();
-                if (tempV12.getId() == prevId1 && tempV22.getId() == prevId2 || tempV12.getId() == prevId2 && tempV22.getId() == prevId1)
-                    beginningCycleLength++;
-                else {
-                    //figure out the launch point; was it prevId1, or prevId2
-                    if (tempV12.getId() == prevId1 || tempV22.getId() == prevId1) {
-                        //we need to start at prevId1 - prevId2 - prevId1 - ...
-                        firstToSecond = beginningCycleLength % 2 == 0;
-                    } else if (tempV12.getId() == prevId2 || tempV22.getId() == prevId2) {
-                        firstToSecond = beginningCycleLength % 2 != 0;
-                    } else {
-                        ans = "Adjacent links in this route didn't share a common vertex.  Please try running checkRoutes to verify the integrity of the route.";
-                        return ans;
-                    }
-                    break;
-                }
+    /**
+     * @return - an iterator over the ids of the vertices visited by this route, in order, (a route with m links
+     * visits m+1 vertices).  These are the ids of the links' endpoints; the custom id map is not applied.
+     */
+    public VertexIdIterator vertexIdIterator() {
+        return new VertexIdIterator(false);
+    }
+
+    /**
+     * @param useCustomMapping - if true, the ids are passed through the custom id map before being returned
+     * @return - an iterator over the ids of the vertices visited by this route, in order.
+     */
+    public VertexIdIterator vertexIdIterator(boolean useCustomMapping) {
+        return new VertexIdIterator(useCustomMapping);
+    }
+
+    private static void appendInt(Appendable out, int val) throws IOException {
+        if (out instanceof StringBuilder) {
+            ((StringBuilder) out).append(val);
+            return;
+        }
+        if (val < 0) {
+            if (val == Integer.MIN_VALUE) {
+                out.append(Integer.toString(val));
+                return;
             }
+            out.append('-');
+            val = -val;
         }
+        int div = 1;
+        while (div <= val / 10)
+            div *= 10;
+        for (; div > 0; div /= 10)
+            out.append((char) ('0' + (val / div) % 10));
+    }
 
-        if (tempV1.getId() == prevId1) {
-            if (tempV2.getId() == prevId2) {
-                if (firstToSecond) {
-                    ans += prevAltId1 + "-" + prevAltId2 + "-";
-                    prevIdReal = prevId1;
-                } else {
-                    ans += prevAltId2 + "-" + prevAltId1 + "-";
-                    prevIdReal = prevId2;
-                }
-            } else {
-                ans += prevAltId2 + "-" + prevAltId1 + "-";
-                prevIdReal = tempV2.getId();
-            }
-        } else if (tempV2.getId() == prevId1) {
-            if (tempV1.getId() == prevId2) {
-                if (firstToSecond) {
-                    ans += prevAltId1 + "-" + prevAltId2 + "-";
-                    prevIdReal = prevId1;
-                } else {
-                    ans += prevAltId2 + "-" + prevAltId1 + "-";
-                    prevIdReal = prevId2;
-                }
-            } else {
-                ans += prevAltId2 + "-" + prevAltId1 + "-";
-                prevIdReal = tempV1.getId();
+    /**
+     * Walks the vertex sequence of the route lazily, straight from its links.  The only ambiguity is which end of
+     * the first link the route starts from; this is settled on construction by looking ahead past any leading run
+     * of parallel links, (e.g. a route that starts by going back and forth over the same edge).  The whole route is
+     * also checked on construction, so that iteration never fails part way through.
+     */
+    public class VertexIdIterator {
+
+        private boolean mUseCustomMapping;
+        private boolean mConsistent;
+        private int mCurr; //the vertex we're at
+        private int mNextLink; //the link we'll leave mCurr by; mRoute.size() once we're at the last vertex
+
+        private VertexIdIterator(boolean useCustomMapping) {
+            mUseCustomMapping = useCustomMapping;
+            mNextLink = 0;
+            mCurr = startVertex();
+            mConsistent = mCurr != -1 || mRoute.isEmpty();
+            for (int i = 0, curr = mCurr; mConsistent && i < mRoute.size(); i++) {
+                curr = otherEnd(mRoute.get(i), curr);
+                mConsistent = curr != -1;
             }
-        } else if (tempV1.getId() == prevId2) {
-            ans += prevAltId1 + "-" + prevAltId2 + "-";
-            prevIdReal = tempV2.getId();
-        } else if (tempV2.getId() == prevId2) {
-            ans += prevAltId1 + "-" + prevAltId2 + "-";
-            prevIdReal = tempV1.getId();
-        } else {
-            ans = "Adjacent links in this route didn't share a common vertex.  Please try running checkRoutes to verify the integrity of the route.";
-            return ans;
         }
 
-        for (int i = 2; i < n; i++) {
-            tempL = list.get(i);
-            tempV1 = tempL.getEndpoints().getFirst();
-            tempV2 = tempL.getEndpoints().getSecond();
-
-            if (tempV1.getId() == prevIdReal) {
-                if (useCustomMapping)
-                    ans += mCustomIDMap.get(tempV1.getId()) + "-";
-                else
-                    ans += tempV1.getId() + "-";
-                prevIdReal = tempV2.getId();
-            } else if (tempV2.getId() == prevIdReal) {
-                if (useCustomMapping)
-                    ans += mCustomIDMap.get(tempV2.getId()) + "-";
-                else
-                    ans += tempV2.getId() + "-";
-                prevIdReal = tempV1.getId();
-            } else {
-                ans = "Adjacent links in this route didn't share a common vertex.  Please try running checkRoutes to verify the integrity of the route.";
-                return ans;
+        /**
+         * @return - false if two adjacent links in the route don't share a common vertex, in which case there is
+         * nothing to iterate over.
+         */
+        public boolean isConsistent() {
+            return mConsistent;
+        }
+
+        public boolean hasNext() {
+            return mConsistent && !mRoute.isEmpty() && mNextLink <= mRoute.size();
+        }
+
+        public int next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            int ans = mCurr;
+            if (mNextLink < mRoute.size())
+                mCurr = otherEnd(mRoute.get(mNextLink), mCurr);
+            mNextLink++;
+            return mUseCustomMapping ? mCustomIDMap.get(ans) : ans;
+        }
+
+        /**
+         * @return - the id of the endpoint of the first link that the route starts from, or -1 if the route is
+         * empty or the beginning of it is inconsistent.
+         */
+        private int startVertex() {
+            int n = mRoute.size();
+            if (n == 0)
+                return -1;
+
+            E l = mRoute.get(0);
+            int first = l.getFirstEndpointId();
+            int second = l.getSecondEndpointId();
+            if (n == 1)
+                return first;
+
+            l = mRoute.get(1);
+            if (isParallel(l, first, second)) {
+                //orient the run of parallel links by whichever endpoint it leaves from
+                int runLength = 2;
+                while (runLength < n && isParallel(mRoute.get(runLength), first, second))
+                    runLength++;
+                if (runLength == n)
+                    return second;
+                l = mRoute.get(runLength);
+                if (l.getFirstEndpointId() == first || l.getSecondEndpointId() == first)
+                    return runLength % 2 == 0 ? first : second;
+                if (l.getFirstEndpointId() == second || l.getSecondEndpointId() == second)
+                    return runLength % 2 != 0 ? first : second;
+                return -1;
             }
+            if (l.getFirstEndpointId() == first || l.getSecondEndpointId() == first)
+                return second;
+            if (l.getFirstEndpointId() == second || l.getSecondEndpointId() == second)
+                return first;
+            return -1;
         }
 
-        if (n >= 2) {
-            if (useCustomMapping)
-                ans += mCustomIDMap.get(prevIdReal);
-            else
-                ans += prevIdReal;
+        private boolean isParallel(E l, int first, int second) {
+            int i = l.getFirstEndpointId();
+            int j = l.getSecondEndpointId();
+            return (i == first && j == second) || (i == second && j == first);
+        }
+
+        private int otherEnd(E l, int from) {
+            if (l.getFirstEndpointId() == from)
+                return l.getSecondEndpointId();
+            if (l.getSecondEndpointId() == from)
+                return l.getFirstEndpointId();
+            return -1;
         }
-        return ans;
     }
 
     /**
@@ -623,13 +664,42 @@ public abstract class Route<V extends Vertex, E extends Link<V>> {
      */
     public long getHash() {
 
-        long hash = 5381;
-        String mString = toString();
-        for (int i = 0; i < mString.length(); i++) {
-            hash = hash * 33 + mString.charAt(i);
+        HashingAppendable hasher = new HashingAppendable();
+        try {
+            appendVertices(hasher);
+        } catch (IOException e) {
+            //neither does the hasher
+            e.printStackTrace();
         }
 
-        return hash;
+        return hasher.mHash;
+    }
+
+    /**
+     * Computes the hash of the characters appended to it, (the same hash getHash() has always computed over
+     * toString()), so that the string doesn't have to be built.
+     */
+    private static class HashingAppendable implements Appendable {
+
+        private long mHash = 5381;
+
+        @Override
+        public Appendable append(CharSequence csq) {
+            return append(csq, 0, csq.length());
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) {
+            for (int i = start; i < end; i++)
+                mHash = mHash * 33 + csq.charAt(i);
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) {
+            mHash = mHash * 33 + c;
+            return this;
+        }
     }
 
 
@@ -60,25 +60,26 @@ public abstract class SingleVehicleSolver<V extends Vertex, E extends Link<V>, G
         if (currSol == null)
             LOGGER.error("It does not appear as though this solver has been run yet!", new IllegalStateException());
 
-        String ans = "=======================================================\n";
+        StringBuilder ans = new StringBuilder();
+        ans.append("=======================================================\n");
         for (Route<V, E> r : currSol) {
-            ans += this.getSolverName() + ": Printing current solution...";
-            ans += "\n";
-            ans += "=======================================================";
-            ans += "\n";
-            ans += "Vertices: " + mInstance.getGraph().getVertices().size() + "\n";
-            ans += "Edges: " + mInstance.getGraph().getEdges().size() + "\n";
-            ans += "Route Cost: " + r.getCost() + "\n";
-            ans += "\n";
-            ans += "=======================================================";
-            ans += "\n";
-            ans += "\n";
-            ans += currSol.toString();
-            ans += "\n";
-            ans += "\n";
-            ans += "=======================================================";
+            ans.append(this.getSolverName()).append(": Printing current solution...");
+            ans.append("\n");
+            ans.append("=======================================================");
+            ans.append("\n");
+            ans.append("Vertices: ").append(mInstance.getGraph().getVertices().size()).append("\n");
+            ans.append("Edges: ").append(mInstance.getGraph().getEdges().size()).append("\n");
+            ans.append("Route Cost: ").append(r.getCost()).append("\n");
+            ans.append("\n");
+            ans.append("=======================================================");
+            ans.append("\n");
+            ans.append("\n");
+            ans.append(currSol.toString());
+            ans.append("\n");
+            ans.append("\n");
+            ans.append("=======================================================");
 
-            return ans;
+            return ans.toString();
         }
         return null;
     }
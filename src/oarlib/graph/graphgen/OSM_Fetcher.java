@@ -23,46 +23,105 @@
  */
 package oarlib.graph.graphgen;
 
+import gnu.trove.TIntArrayList;
 import gnu.trove.TIntObjectHashMap;
+import gnu.trove.TLongArrayList;
 import oarlib.core.Link;
+import oarlib.exceptions.InvalidEndpointsException;
 import oarlib.graph.graphgen.Util.BoundingBox;
 import oarlib.graph.impl.WindyGraph;
 import oarlib.graph.util.CommonAlgorithms;
 import oarlib.graph.util.Pair;
 import oarlib.link.impl.WindyEdge;
 import oarlib.vertex.impl.WindyVertex;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import org.apache.log4j.Logger;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Locale;
 import java.util.Random;
 
 
 /**
  * Class for querying the osm database to create a real street network based on a specified geographical bounding box.
  * <p/>
+ * The street network may come from one of three places:
+ * - a local .osm extract, (see the two-argument constructor); only the nodes inside the bounding box are kept, so
+ * graphs for many bounding boxes may be built from one extract without any network access.
+ * - the on-disk tile cache, if one has been set and it already holds the response for this bounding box.
+ * - the overpass servers, in which case the response is saved to the tile cache, (if one has been set).
+ * In every case the XML is read with a streaming (StAX) parser; only the node coordinates and the node lists of the
+ * highways are held in memory while the graph is built.
+ * <p/>
+ * The tile cache may be set in code with setTileCache(), or for a whole process by setting the system property
+ * oarlib.osmCache.dir.
  * <p/>
  * Created by oliverlum on 10/5/14.
  */
 public class OSM_Fetcher {
 
+    private static final Logger LOGGER = Logger.getLogger(OSM_Fetcher.class);
+
     private static final String[] baseURLS = new String[]{"http://overpass.osm.rambler.ru/cgi/xapi_meta?way", "http://www.overpass-api.de/api/xapi_meta?way", "http://api.openstreetmap.fr/xapi?way"};
     private BoundingBox mBox;
     private boolean needToGen;
     private WindyGraph mGraph;
+    private File mExtract;
+    private File mTileCache;
+    private long[] mWayIds;
 
     public OSM_Fetcher(BoundingBox box) {
         mBox = box;
         mGraph = null;
         needToGen = true;
+        mExtract = null;
+
+        String dir = System.getProperty("oarlib.osmCache.dir");
+        if (dir != null)
+            setTileCache(dir);
+    }
+
+    /**
+     * Builds the street network from a local OSM extract instead of querying the overpass servers.
+     *
+     * @param box         - the bounding box of the street network; nodes of the extract outside of it are ignored
+     * @param extractFile - path to an .osm (XML) file covering the bounding box
+     */
+    public OSM_Fetcher(BoundingBox box, String extractFile) {
+        this(box);
+        mExtract = new File(extractFile);
+    }
+
+    /**
+     * @param directory - the directory in which to keep the server responses, (one file per bounding box); it is
+     *                  created if it doesn't exist.  Pass null to turn the tile cache off.
+     */
+    public void setTileCache(String directory) {
+        if (directory == null) {
+            mTileCache = null;
+            return;
+        }
+        File dir = new File(directory);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            LOGGER.error("Could not create the OSM tile cache directory " + directory + ".");
+            return;
+        }
+        mTileCache = dir;
     }
 
     public WindyGraph queryForGraph() {
@@ -74,381 +133,708 @@ public class OSM_Fetcher {
         if (!needToGen)
             return mGraph;
 
-        WindyGraph ans = new WindyGraph();
+        WindyGraph ans = null;
+        Random rng = new Random(seed);
+        TLongArrayList wayIds = new TLongArrayList();
 
-        for (String base : baseURLS) {
-            String requestStr = base;
-            requestStr += "[bbox=" + mBox.getMinLon() + "," + mBox.getMinLat() + "," + mBox.getMaxLon() + "," + mBox.getMaxLat() + "][highway=*]";
-            URL request;
+        if (mExtract != null) {
             try {
-                request = new URL(requestStr);
-                HttpURLConnection conn = (HttpURLConnection) request.openConnection();
-
-                //parse the DOM
-                DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-                DocumentBuilder builder = factory.newDocumentBuilder();
-
-                Document doc = builder.parse(conn.getInputStream());
-
-                NodeList nodeList = doc.getDocumentElement().getChildNodes();
-
-                int counter = 1;
-                HashMap<String, Integer> refIds = new HashMap<String, Integer>(); //key = nodeId, value = internalId
-                TIntObjectHashMap<WindyVertex> ansVertices = ans.getInternalVertexMap();
-                NodeList subNodeList;
-                Node curr, prev;
-                int to, from, cost, reverseCost;
-                double perturb;
-                Random rng = new Random(seed);
-                HashMap<String, Link.Zone> zoneRecords = new HashMap<String, Link.Zone>();
-                HashMap<String, HashSet<WindyEdge>> zoneStreets = new HashMap<String, HashSet<WindyEdge>>();
-                String streetName, typeString, zoneString;
-                String[] speedSplit;
-                Link.HighwayType type;
-                Link.Zone zone;
-                boolean isAHighway, required;
-                int maxSpeed;
-
-                for (int i = 0; i < nodeList.getLength(); i++) {
-                    Node node = nodeList.item(i);
-                    if (node instanceof Element) {
-
-                        //if it's a node, add a vertex with matchId = refId
-                        if (((Element) node).getTagName() == "node") {
-                            WindyVertex toAdd = new WindyVertex("from OSM");
-                            toAdd.setCoordinates(Double.parseDouble(((Element) node).getAttribute("lon")), Double.parseDouble(((Element) node).getAttribute("lat")));
-                            ans.addVertex(toAdd);
-                            refIds.put(((Element) node).getAttribute("id"), counter);
-                            counter++;
-                        }
-
-                        //if it's a way, then add the appropriate connections
-                        else if (((Element) node).getTagName() == "way") {
-
-                            isAHighway = false;
-                            type = Link.HighwayType.NOT_SET;
-                            zone = Link.Zone.NOT_SET;
-                            streetName = "(No street name provided)";
-                            maxSpeed = 0;
-
-                            //first, gather metadata
-                            subNodeList = ((Element) node).getElementsByTagName("tag");
-                            for(int j = 0; j < subNodeList.getLength(); j++) {
-
-                                curr = subNodeList.item(j);
-                                //if it's actually a street, figure out the name and type
-                                if( ((Element)curr).getAttribute("k").equals("highway")) {
-                                    isAHighway = true; //only want to add / look for more metadata if the way is a highway
-                                    typeString = ((Element)curr).getAttribute("v");
-                                    if(typeString.equalsIgnoreCase("motorway") || typeString.equalsIgnoreCase("trunk")) {
-                                        type = Link.HighwayType.TRUNK;
-                                    }
-                                    else if(typeString.equalsIgnoreCase("primary")) {
-                                        type = Link.HighwayType.PRIMARY;
-                                    }
-                                    else if(typeString.equalsIgnoreCase("secondary")) {
-                                        type = Link.HighwayType.SECONDARY;
-                                    }
-                                    else if(typeString.equalsIgnoreCase("tertiary")) {
-                                        type = Link.HighwayType.TERTIARY;
-                                    }
-                                    else if(typeString.equalsIgnoreCase("residential")) {
-                                        type = Link.HighwayType.RESIDENTIAL_ACCESS;
-                                    }
-                                    else {
-                                        type = Link.HighwayType.OTHER;
-                                    }
-                                }
-                                else if( ((Element)curr).getAttribute("k").equals("name") || ((Element)curr).getAttribute("k").equals("addr:street"))
-                                    streetName = ((Element)curr).getAttribute("v");
-                                else if( ((Element)curr).getAttribute("k").equals("maxspeed")) {
-                                    speedSplit = ((Element) curr).getAttribute("v").split("\\s+");
-                                    maxSpeed = Integer.parseInt(speedSplit[0]);
-                                }
-                                else if( ((Element)curr).getAttribute("k").equals("building")) {
-                                    zoneString = ((Element)curr).getAttribute("v");
-                                    if(zoneString.equalsIgnoreCase("apartments") || zoneString.equalsIgnoreCase("farm") ||
-                                            zoneString.equalsIgnoreCase("hotel") || zoneString.equalsIgnoreCase("house") ||
-                                            zoneString.equalsIgnoreCase("detached") || zoneString.equalsIgnoreCase("residential") ||
-                                            zoneString.equalsIgnoreCase("dormitory") || zoneString.equalsIgnoreCase("terrace") ||
-                                            zoneString.equalsIgnoreCase("houseboat") || zoneString.equalsIgnoreCase("bungalow") ||
-                                            zoneString.equalsIgnoreCase("static_caravan")) {
-                                        zone = Link.Zone.RESIDENTIAL;
-                                    }
-                                    else if(zoneString.equalsIgnoreCase("commercial") || zoneString.equalsIgnoreCase("office") ||
-                                            zoneString.equalsIgnoreCase("industrial") || zoneString.equalsIgnoreCase("retail") ||
-                                            zoneString.equalsIgnoreCase("warehouse")) {
-                                        zone = Link.Zone.COMMERCIAL;
-                                    }
-                                    else if(zoneString.equalsIgnoreCase("bakehouse") || zoneString.equalsIgnoreCase("cathedral") ||
-                                            zoneString.equalsIgnoreCase("chapel") || zoneString.equalsIgnoreCase("church") ||
-                                            zoneString.equalsIgnoreCase("mosque") || zoneString.equalsIgnoreCase("temple") ||
-                                            zoneString.equalsIgnoreCase("synagogue") || zoneString.equalsIgnoreCase("shrine") ||
-                                            zoneString.equalsIgnoreCase("civic") || zoneString.equalsIgnoreCase("hospital") ||
-                                            zoneString.equalsIgnoreCase("school") || zoneString.equalsIgnoreCase("stadium") ||
-                                            zoneString.equalsIgnoreCase("train_station") || zoneString.equalsIgnoreCase("transportation") ||
-                                            zoneString.equalsIgnoreCase("university") || zoneString.equalsIgnoreCase("public")) {
-                                        zone = Link.Zone.CIVIC;
-                                    }
-                                    else {
-                                        zone = Link.Zone.OTHER;
-                                    }
-                                }
-                            }
-
-                            if(!isAHighway) { //log some info, then continue; it's not a street
-
-                                if(!(zone == Link.Zone.NOT_SET)) {
-                                    if(zoneRecords.containsKey(streetName) && zoneRecords.get(streetName) != zone)
-                                        zoneRecords.put(streetName, Link.Zone.MIXED);
-                                    else
-                                        zoneRecords.put(streetName, zone);
-                                }
-                                continue;
-                            }
-
-                            //then, add 'em
-                            subNodeList = ((Element) node).getElementsByTagName("nd");
-                            for (int j = 1; j < subNodeList.getLength(); j++) {
-                                curr = subNodeList.item(j);
-                                prev = subNodeList.item(j - 1);
-
-                                if (curr instanceof Element && prev instanceof Element) {
-                                    from = refIds.get(((Element) prev).getAttribute("ref"));
-                                    to = refIds.get(((Element) curr).getAttribute("ref"));
-                                    cost = latLonToMeters(ansVertices.get(from).getY(), ansVertices.get(from).getX(), ansVertices.get(to).getY(), ansVertices.get(to).getX()) + 1; //don't want 0 cost edges
-
-                                    perturb = (rng.nextInt(30) - 15) / 100.0;
-                                    reverseCost = (int) (cost * (1 + perturb));
-                                    required = (rng.nextInt(30) < 15);
-
-                                    WindyEdge toAdd = new WindyEdge(streetName, new Pair<WindyVertex>(ans.getVertex(from), ans.getVertex(to)), cost, reverseCost);
-                                    toAdd.setRequired(required);
-                                    toAdd.setMaxSpeed(maxSpeed);
-                                    toAdd.setType(type);
-
-                                    if(!zoneStreets.containsKey(streetName))
-                                        zoneStreets.put(streetName, new HashSet<WindyEdge>());
-
-                                    zoneStreets.get(streetName).add(toAdd);
-
-                                    ans.addEdge(toAdd);
-                                }
-                            }
-                        }
+                ans = readGraph(new FileInputStream(mExtract), true, rng, wayIds);
+            } catch (Exception e) {
+                LOGGER.error("Could not read the OSM extract " + mExtract.getPath() + ".");
+                e.printStackTrace();
+            }
+        } else {
+            File tile = null;
+            if (mTileCache != null) {
+                tile = new File(mTileCache, getTileName());
+                if (tile.exists()) {
+                    try {
+                        ans = readGraph(new FileInputStream(tile), false, rng, wayIds);
+                    } catch (Exception e) {
+                        LOGGER.warn("Discarding unreadable OSM tile " + tile.getPath() + ".");
+                        if (!tile.delete())
+                            LOGGER.warn("Could not delete " + tile.getPath() + ".");
+                        rng = new Random(seed);
                     }
                 }
+            }
 
-                /*
-                 * now assign zones
-                 */
-                for(String street : zoneRecords.keySet()) {
-                    if(zoneStreets.containsKey(street)) {
-                        Link.Zone z = zoneRecords.get(street);
-                        for(WindyEdge we : zoneStreets.get(street)) {
-                            we.setZone(z);
-                        }
-                    }
+            for (int i = 0; ans == null && i < baseURLS.length; i++) {
+                String requestStr = baseURLS[i];
+                requestStr += "[bbox=" + mBox.getMinLon() + "," + mBox.getMinLat() + "," + mBox.getMaxLon() + "," + mBox.getMaxLat() + "][highway=*]";
+                try {
+                    HttpURLConnection conn = (HttpURLConnection) new URL(requestStr).openConnection();
+                    if (tile != null)
+                        ans = readGraph(new FileInputStream(download(conn.getInputStream(), tile)), false, rng, wayIds);
+                    else
+                        ans = readGraph(conn.getInputStream(), false, rng, wayIds);
+                } catch (Exception e) {
+                    System.out.println("Error querying the URL.  If there is another stable server, we shall attempt to query it.");
+                    e.printStackTrace();
+                    rng = new Random(seed);
                 }
+            }
 
+            if (ans == null)
+                System.out.println("All URLs could not be queried.");
+        }
 
-                /*
-                 * repair the graph in the following way:
-                 * if it's not connected, calculate the connected components, and then just take the largest one.
-                 */
-                int n = ans.getVertices().size();
-                int m = ans.getEdges().size();
-                int[] nodei = new int[m + 1];
-                int[] nodej = new int[m + 1];
-                int[] component = new int[n + 1];
-
-                //set up the graph
-                int i = 1;
-                for (WindyEdge we : ans.getEdges()) {
-                    nodei[i] = we.getEndpoints().getFirst().getId();
-                    nodej[i] = we.getEndpoints().getSecond().getId();
-                    i++;
-                }
-
+        try {
+            if (ans != null)
+                ans = keepLargestComponent(ans, rng, wayIds);
+        } catch (InvalidEndpointsException e) {
+            e.printStackTrace();
+            ans = null;
+        }
 
-                CommonAlgorithms.connectedComponents(n, m, nodei, nodej, component);
+        if (ans == null) {
+            ans = new WindyGraph();
+            wayIds.clear();
+        }
 
-                ArrayList<HashSet<Integer>> orgComponents = new ArrayList<HashSet<Integer>>();
-                for (int j = 0; j <= component[0]; j++) {
-                    orgComponents.add(new HashSet<Integer>());
-                }
-                for (int j = 1; j < component.length; j++) {
-                    orgComponents.get(component[j]).add(j);
-                }
+        mWayIds = new long[wayIds.size() + 1];
+        for (int i = 0; i < wayIds.size(); i++)
+            mWayIds[i + 1] = wayIds.get(i);
 
-                int maxPartitionSize = 0;
-                int maxPartition = 0;
-                for (int j = 1; j < orgComponents.size(); j++) {
-                    if (orgComponents.get(j).size() > maxPartitionSize) {
-                        maxPartitionSize = orgComponents.get(j).size();
-                        maxPartition = j;
-                    }
-                }
+        needToGen = false;
+        mGraph = ans;
+        return ans;
+    }
 
-                HashSet<Integer> maxPart = orgComponents.get(maxPartition);
-                if (component[0] > 1) {
+    /**
+     * @return - the id of the OSM way that each edge of the graph was built from, indexed by edge id, (so entry 0 is
+     * unused), or null if queryForGraph hasn't been called yet.
+     */
+    public long[] getWayIds() {
+        return mWayIds;
+    }
 
-                    //new, reduced ans graph
-                    WindyGraph trueAns = new WindyGraph();
+    /**
+     * @return - the name of this bounding box's file in the tile cache
+     */
+    private String getTileName() {
+        return String.format(Locale.US, "%.7f_%.7f_%.7f_%.7f.osm", mBox.getMinLon(), mBox.getMinLat(), mBox.getMaxLon(), mBox.getMaxLat());
+    }
 
-                    i = 1;
-                    WindyVertex tempVertex, toAdd;
-                    TIntObjectHashMap<WindyEdge> ansEdges = ans.getInternalEdgeMap();
-                    for (int j = 1; j <= n; j++) {
-                        if (maxPart.contains(j)) {
-                            ansVertices.get(j).setMatchId(i++);
+    /**
+     * Copies a server response into the tile cache.  The response is written under a temporary name and then renamed
+     * into place, so an interrupted download never leaves a truncated tile behind.
+     *
+     * @param in   - the server response
+     * @param tile - the tile to create
+     * @return - the tile
+     */
+    private static File download(InputStream in, File tile) throws IOException {
+        File tmp = File.createTempFile("osm", ".tmp", tile.getParentFile());
+        try {
+            Files.copy(in, tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            in.close();
+            Files.move(tmp.toPath(), tile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            if (tmp.exists() && !tmp.delete())
+                LOGGER.warn("Could not delete " + tmp.getPath() + ".");
+        }
+        return tile;
+    }
 
-                            //set x and y
-                            tempVertex = ansVertices.get(j);
-                            toAdd = new WindyVertex("from OSM");
-                            toAdd.setCoordinates(tempVertex.getX(), tempVertex.getY());
-                            trueAns.addVertex(toAdd);
+    /**
+     * Streams through OSM XML and builds the street network it describes.  Vertices are only created for nodes that
+     * lie on a highway, (in document order), and edges are created way by way, one per consecutive pair of nodes.
+     *
+     * @param input  - the OSM XML; it is closed before returning
+     * @param clip   - if true, nodes outside of the bounding box are dropped, along with any segments touching them
+     * @param rng    - used to perturb reverse costs and choose required edges
+     * @param wayIds - cleared, and then filled with the id of the OSM way of each edge, (in edge id order)
+     * @return - the (possibly disconnected) street network
+     */
+    private WindyGraph readGraph(InputStream input, boolean clip, Random rng, TLongArrayList wayIds) throws XMLStreamException, IOException, InvalidEndpointsException {
+
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        HashMap<Long, Integer> nodeIndices = new HashMap<Long, Integer>(); //key = nodeId, value = index into lon / lat
+        double[] lon = new double[1024];
+        double[] lat = new double[1024];
+        int numNodes = 0;
+
+        ArrayList<OSM_Way> ways = new ArrayList<OSM_Way>();
+        HashMap<String, Link.Zone> zoneRecords = new HashMap<String, Link.Zone>();
+
+        OSM_Way way = null;
+        TLongArrayList refs = new TLongArrayList();
+        boolean isAHighway = false;
+        Link.Zone zone = Link.Zone.NOT_SET;
+        String tagName, k, v;
+        double x, y;
+
+        XMLStreamReader reader = factory.createXMLStreamReader(new BufferedInputStream(input, 1 << 16));
+        try {
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    tagName = reader.getLocalName();
+
+                    //if it's a node, remember where it is
+                    if (tagName.equals("node")) {
+                        x = Double.parseDouble(reader.getAttributeValue(null, "lon"));
+                        y = Double.parseDouble(reader.getAttributeValue(null, "lat"));
+                        if (clip && (x < mBox.getMinLon() || x > mBox.getMaxLon() || y < mBox.getMinLat() || y > mBox.getMaxLat()))
+                            continue;
+                        if (numNodes == lon.length) {
+                            lon = Arrays.copyOf(lon, 2 * numNodes);
+                            lat = Arrays.copyOf(lat, 2 * numNodes);
                         }
+                        lon[numNodes] = x;
+                        lat[numNodes] = y;
+                        nodeIndices.put(Long.parseLong(reader.getAttributeValue(null, "id")), numNodes++);
+                    } else if (tagName.equals("way")) {
+                        way = new OSM_Way();
+                        way.id = Long.parseLong(reader.getAttributeValue(null, "id"));
+                        refs.clear();
+                        isAHighway = false;
+                        zone = Link.Zone.NOT_SET;
+                    } else if (way != null && tagName.equals("nd")) {
+                        refs.add(Long.parseLong(reader.getAttributeValue(null, "ref")));
+                    } else if (way != null && tagName.equals("tag")) {
+                        k = reader.getAttributeValue(null, "k");
+                        v = reader.getAttributeValue(null, "v");
+
+                        //if it's actually a street, figure out the name and type
+                        if (k.equals("highway")) {
+                            isAHighway = true; //only want to add / look for more metadata if the way is a highway
+                            way.type = toHighwayType(v);
+                        } else if (k.equals("name") || k.equals("addr:street"))
+                            way.streetName = v;
+                        else if (k.equals("maxspeed"))
+                            way.maxSpeed = toMaxSpeed(v);
+                        else if (k.equals("building"))
+                            zone = toZone(v);
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && way != null && reader.getLocalName().equals("way")) {
+
+                    if (isAHighway) {
+                        way.refs = refs.toNativeArray();
+                        ways.add(way);
+                    } else if (zone != Link.Zone.NOT_SET) { //log some info; it's not a street
+                        if (zoneRecords.containsKey(way.streetName) && zoneRecords.get(way.streetName) != zone)
+                            zoneRecords.put(way.streetName, Link.Zone.MIXED);
+                        else
+                            zoneRecords.put(way.streetName, zone);
                     }
+                    way = null;
+                }
+            }
+        } finally {
+            reader.close();
+            input.close();
+        }
 
-                    WindyEdge temp, edgeToAdd;
-                    WindyVertex tempFirst, tempSecond;
-                    boolean isReq;
-                    for (int j = 1; j <= m; j++) {
-                        temp = ansEdges.get(j);
-                        isReq = rng.nextDouble() > .5;
-                        if (maxPart.contains(temp.getEndpoints().getFirst().getId()) && maxPart.contains(temp.getEndpoints().getSecond().getId())) {
-                            tempFirst = trueAns.getVertex(temp.getEndpoints().getFirst().getMatchId());
-                            tempSecond = trueAns.getVertex(temp.getEndpoints().getSecond().getMatchId());
-                            if (tempFirst.getNeighbors().containsKey(tempSecond))//don't create a multigraph
-                                continue;
-                            edgeToAdd = new WindyEdge(temp.getLabel(),new Pair<WindyVertex>(trueAns.getVertex(temp.getEndpoints().getFirst().getMatchId()), trueAns.getVertex(temp.getEndpoints().getSecond().getMatchId())), temp.getCost(), temp.getReverseCost());
-                            edgeToAdd.setRequired(isReq);
-                            edgeToAdd.setMaxSpeed(temp.getMaxSpeed());
-                            edgeToAdd.setType(temp.getType());
-                            edgeToAdd.setZone(temp.getZone());
-                            trueAns.addEdge(edgeToAdd);
-                        }
+        /*
+         * now that all the node references can be resolved, add the vertices on highways, and then the highways
+         */
+        int[] vertexIds = new int[numNodes];
+        for (OSM_Way w : ways) {
+            w.indices = new int[w.refs.length];
+            for (int j = 0; j < w.refs.length; j++) {
+                Integer index = nodeIndices.get(w.refs[j]);
+                w.indices[j] = (index == null) ? -1 : index;
+                if (index != null)
+                    vertexIds[index] = -1;
+            }
+            w.refs = null;
+        }
+        nodeIndices = null;
 
-                    }
+        WindyGraph ans = new WindyGraph();
+        int counter = 1;
+        for (int j = 0; j < numNodes; j++) {
+            if (vertexIds[j] == 0)
+                continue;
+            WindyVertex toAdd = new WindyVertex("from OSM");
+            toAdd.setCoordinates(lon[j], lat[j]);
+            ans.addVertex(toAdd);
+            vertexIds[j] = counter++;
+        }
 
-                    if (!CommonAlgorithms.isConnected(trueAns))
-                        System.out.println("Something's broken.");
+        HashMap<String, HashSet<WindyEdge>> zoneStreets = new HashMap<String, HashSet<WindyEdge>>();
+        wayIds.clear();
+        int from, to, cost, reverseCost;
+        double perturb;
+        boolean required;
+        for (OSM_Way w : ways) {
+            for (int j = 1; j < w.indices.length; j++) {
+                from = w.indices[j - 1];
+                to = w.indices[j];
+                if (from < 0 || to < 0)
+                    continue;
 
-                    needToGen = false;
-                    mGraph = trueAns;
-                    return trueAns;
-                }
+                cost = latLonToMeters(lat[from], lon[from], lat[to], lon[to]) + 1; //don't want 0 cost edges
 
-                break;
+                perturb = (rng.nextInt(30) - 15) / 100.0;
+                reverseCost = (int) (cost * (1 + perturb));
+                required = (rng.nextInt(30) < 15);
 
+                WindyEdge toAdd = new WindyEdge(w.streetName, new Pair<WindyVertex>(ans.getVertex(vertexIds[from]), ans.getVertex(vertexIds[to])), cost, reverseCost);
+                toAdd.setRequired(required);
+                toAdd.setMaxSpeed(w.maxSpeed);
+                toAdd.setType(w.type);
 
-            } catch (Exception e) {
-                System.out.println("Error querying the URL.  If there is another stable server, we shall attempt to query it.");
-                e.printStackTrace();
+                if (!zoneStreets.containsKey(w.streetName))
+                    zoneStreets.put(w.streetName, new HashSet<WindyEdge>());
+
+                zoneStreets.get(w.streetName).add(toAdd);
+
+                ans.addEdge(toAdd);
+                wayIds.add(w.id);
             }
         }
 
-        System.out.println("All URLs could not be queried.");
+        /*
+         * now assign zones
+         */
+        for (String street : zoneRecords.keySet()) {
+            if (zoneStreets.containsKey(street)) {
+                Link.Zone z = zoneRecords.get(street);
+                for (WindyEdge we : zoneStreets.get(street)) {
+                    we.setZone(z);
+                }
+            }
+        }
 
-        needToGen = false;
-        mGraph = ans;
         return ans;
     }
 
-    public static WindyGraph removeDegreeOneNodes(WindyGraph input) {
-
-        ArrayList<WindyEdge> edgesToRemove = new ArrayList<WindyEdge>();
-        ArrayList<WindyVertex> verticesToRemove = new ArrayList<WindyVertex>();
-        boolean removedVertex = true;
+    /**
+     * Repairs the graph in the following way: if it's not connected, calculate the connected components, and then
+     * just take the largest one.
+     *
+     * @param ans    - the street network
+     * @param rng    - used to choose required edges if the graph has to be rebuilt
+     * @param wayIds - the OSM way of each edge of ans, (in edge id order); updated to match the graph returned
+     * @return - ans if it is connected, otherwise a new graph holding its largest connected component
+     */
+    private WindyGraph keepLargestComponent(WindyGraph ans, Random rng, TLongArrayList wayIds) throws InvalidEndpointsException {
+
+        TIntObjectHashMap<WindyVertex> ansVertices = ans.getInternalVertexMap();
+        int n = ans.getVertices().size();
+        int m = ans.getEdges().size();
+        int[] nodei = new int[m + 1];
+        int[] nodej = new int[m + 1];
+        int[] component = new int[n + 1];
+
+        //set up the graph
+        int i = 1;
+        for (WindyEdge we : ans.getEdges()) {
+            nodei[i] = we.getEndpoints().getFirst().getId();
+            nodej[i] = we.getEndpoints().getSecond().getId();
+            i++;
+        }
 
-        while(removedVertex) {
-            //now remove vertices of degree 1
-            for (WindyVertex wv : input.getVertices()) {
-                if (wv.getDegree() == 1 && wv.getNeighbors().keySet().size() == 1) {
-                    for (WindyVertex neighbor : wv.getNeighbors().keySet()) {
 
-                        WindyEdge connector = wv.getNeighbors().get(neighbor).get(0);
-                        edgesToRemove.add(connector);
+        CommonAlgorithms.connectedComponents(n, m, nodei, nodej, component);
 
-                    }
+        ArrayList<HashSet<Integer>> orgComponents = new ArrayList<HashSet<Integer>>();
+        for (int j = 0; j <= component[0]; j++) {
+            orgComponents.add(new HashSet<Integer>());
+        }
+        for (int j = 1; j < component.length; j++) {
+            orgComponents.get(component[j]).add(j);
+        }
 
-                    verticesToRemove.add(wv);
-                }
-                for (WindyEdge we : edgesToRemove) {
-                    input.removeEdge(we);
-                }
-                edgesToRemove.clear();
+        int maxPartitionSize = 0;
+        int maxPartition = 0;
+        for (int j = 1; j < orgComponents.size(); j++) {
+            if (orgComponents.get(j).size() > maxPartitionSize) {
+                maxPartitionSize = orgComponents.get(j).size();
+                maxPartition = j;
+            }
+        }
 
+        HashSet<Integer> maxPart = orgComponents.get(maxPartition);
+        if (component[0] <= 1)
+            return ans;
+
+        //new, reduced ans graph
+        WindyGraph trueAns = new WindyGraph();
+
+        i = 1;
+        WindyVertex tempVertex, toAdd;
+        TIntObjectHashMap<WindyEdge> ansEdges = ans.getInternalEdgeMap();
+        for (int j = 1; j <= n; j++) {
+            if (maxPart.contains(j)) {
+                ansVertices.get(j).setMatchId(i++);
+
+                //set x and y
+                tempVertex = ansVertices.get(j);
+                toAdd = new WindyVertex("from OSM");
+                toAdd.setCoordinates(tempVertex.getX(), tempVertex.getY());
+                trueAns.addVertex(toAdd);
             }
+        }
 
-            for (WindyVertex wv : verticesToRemove) {
-                input.removeVertex(wv);
+        WindyEdge temp, edgeToAdd;
+        WindyVertex tempFirst, tempSecond;
+        boolean isReq;
+        TLongArrayList trueWayIds = new TLongArrayList();
+        for (int j = 1; j <= m; j++) {
+            temp = ansEdges.get(j);
+            isReq = rng.nextDouble() > .5;
+            if (maxPart.contains(temp.getEndpoints().getFirst().getId()) && maxPart.contains(temp.getEndpoints().getSecond().getId())) {
+                tempFirst = trueAns.getVertex(temp.getEndpoints().getFirst().getMatchId());
+                tempSecond = trueAns.getVertex(temp.getEndpoints().getSecond().getMatchId());
+                if (tempFirst.getNeighbors().containsKey(tempSecond))//don't create a multigraph
+                    continue;
+                edgeToAdd = new WindyEdge(temp.getLabel(), new Pair<WindyVertex>(trueAns.getVertex(temp.getEndpoints().getFirst().getMatchId()), trueAns.getVertex(temp.getEndpoints().getSecond().getMatchId())), temp.getCost(), temp.getReverseCost());
+                edgeToAdd.setRequired(isReq);
+                edgeToAdd.setMaxSpeed(temp.getMaxSpeed());
+                edgeToAdd.setType(temp.getType());
+                edgeToAdd.setZone(temp.getZone());
+                trueAns.addEdge(edgeToAdd);
+                trueWayIds.add(wayIds.get(j - 1));
             }
 
-            //go until we don't have anymore
-            if(verticesToRemove.size() == 0)
-                removedVertex = false;
+        }
+
+        wayIds.clear();
+        for (int j = 0; j < trueWayIds.size(); j++)
+            wayIds.add(trueWayIds.get(j));
+
+        if (!CommonAlgorithms.isConnected(trueAns))
+            System.out.println("Something's broken.");
+
+        return trueAns;
+    }
+
+    private static Link.HighwayType toHighwayType(String typeString) {
+        if (typeString.equalsIgnoreCase("motorway") || typeString.equalsIgnoreCase("trunk"))
+            return Link.HighwayType.TRUNK;
+        else if (typeString.equalsIgnoreCase("primary"))
+            return Link.HighwayType.PRIMARY;
+        else if (typeString.equalsIgnoreCase("secondary"))
+            return Link.HighwayType.SECONDARY;
+        else if (typeString.equalsIgnoreCase("tertiary"))
+            return Link.HighwayType.TERTIARY;
+        else if (typeString.equalsIgnoreCase("residential"))
+            return Link.HighwayType.RESIDENTIAL_ACCESS;
+        return Link.HighwayType.OTHER;
+    }
 
-            verticesToRemove.clear();
+    private static int toMaxSpeed(String speedString) {
+        try {
+            return Integer.parseInt(speedString.split("\\s+")[0]);
+        } catch (NumberFormatException e) {
+            //e.g. maxspeed=walk; treat it as though it weren't set
+            return 0;
         }
+    }
 
-        //perhaps now re-index
-        return CommonAlgorithms.collapseIndices(input);
+    private static Link.Zone toZone(String zoneString) {
+        if (zoneString.equalsIgnoreCase("apartments") || zoneString.equalsIgnoreCase("farm") ||
+                zoneString.equalsIgnoreCase("hotel") || zoneString.equalsIgnoreCase("house") ||
+                zoneString.equalsIgnoreCase("detached") || zoneString.equalsIgnoreCase("residential") ||
+                zoneString.equalsIgnoreCase("dormitory") || zoneString.equalsIgnoreCase("terrace") ||
+                zoneString.equalsIgnoreCase("houseboat") || zoneString.equalsIgnoreCase("bungalow") ||
+                zoneString.equalsIgnoreCase("static_caravan")) {
+            return Link.Zone.RESIDENTIAL;
+        } else if (zoneString.equalsIgnoreCase("commercial") || zoneString.equalsIgnoreCase("office") ||
+                zoneString.equalsIgnoreCase("industrial") || zoneString.equalsIgnoreCase("retail") ||
+                zoneString.equalsIgnoreCase("warehouse")) {
+            return Link.Zone.COMMERCIAL;
+        } else if (zoneString.equalsIgnoreCase("bakehouse") || zoneString.equalsIgnoreCase("cathedral") ||
+                zoneString.equalsIgnoreCase("chapel") || zoneString.equalsIgnoreCase("church") ||
+                zoneString.equalsIgnoreCase("mosque") || zoneString.equalsIgnoreCase("temple") ||
+                zoneString.equalsIgnoreCase("synagogue") || zoneString.equalsIgnoreCase("shrine") ||
+                zoneString.equalsIgnoreCase("civic") || zoneString.equalsIgnoreCase("hospital") ||
+                zoneString.equalsIgnoreCase("school") || zoneString.equalsIgnoreCase("stadium") ||
+                zoneString.equalsIgnoreCase("train_station") || zoneString.equalsIgnoreCase("transportation") ||
+                zoneString.equalsIgnoreCase("university") || zoneString.equalsIgnoreCase("public")) {
+            return Link.Zone.CIVIC;
+        }
+        return Link.Zone.OTHER;
+    }
+
+    /**
+     * A highway, as read from the XML; refs holds the OSM ids of its nodes until they're resolved into indices.
+     */
+    private static class OSM_Way {
+        long id;
+        String streetName = "(No street name provided)";
+        Link.HighwayType type = Link.HighwayType.NOT_SET;
+        int maxSpeed = 0;
+        long[] refs;
+        int[] indices;
+    }
 
+    /**
+     * Removes vertices of degree 1, (repeatedly, so that whole dangling trees are removed), and re-indexes the graph.
+     * Runs in O(V + E).
+     *
+     * @param input - the street network; it isn't modified
+     * @return - the reduced graph; each vertex's and edge's matchId is its id in input
+     */
+    public static WindyGraph removeDegreeOneNodes(WindyGraph input) {
+        return simplify(input, true, false, null);
     }
 
+    /**
+     * Contracts every chain of degree 2 vertices into a single edge, and re-indexes the graph.  Runs in O(V + E).
+     *
+     * @param input - the street network; it isn't modified
+     * @return - the reduced graph; see simplify(WindyGraph, ArrayList) for the details
+     */
     public static WindyGraph removeDegreeTwoNodes(WindyGraph input) {
+        return simplify(input, false, true, null);
+    }
 
-        int neighbor1To2 = 0;
-        int neighbor2To1 = 0;
-        ArrayList<Integer> neighborIds = new ArrayList<Integer>();
-        ArrayList<WindyEdge> edgesToRemove = new ArrayList<WindyEdge>();
-        ArrayList<WindyVertex> verticesToRemove = new ArrayList<WindyVertex>();
-
-        //now remove vertices of degree 2, and destroy the two links to create just 1
-        for(WindyVertex wv : input.getVertices()) {
-            if(wv.getDegree() == 2 && wv.getNeighbors().keySet().size() == 2) {
-                for(WindyVertex neighbor: wv.getNeighbors().keySet()) {
-                    WindyEdge connector = wv.getNeighbors().get(neighbor).get(0);
-
-                    //grab costs for new edge
-                    if(connector.getEndpoints().getFirst().getId() == wv.getId()) {
-                        neighbor1To2 += connector.getReverseCost();
-                        neighbor2To1 += connector.getCost();
-                        neighborIds.add(connector.getEndpoints().getSecond().getId());
-                    }
-                    else {
-                        neighbor1To2 += connector.getCost();
-                        neighbor2To1 += connector.getReverseCost();
-                        neighborIds.add(connector.getEndpoints().getFirst().getId());
-                    }
-                    edgesToRemove.add(connector);
+    /**
+     * Simplifies the street network in a single pass over array adjacency lists, (so in O(V + E)): first the
+     * vertices of degree 1 are removed, repeatedly, and then every chain of degree 2 vertices is replaced by a single
+     * edge.
+     * <p/>
+     * A vertex is contracted only if it has exactly two incident edges, leading to two different neighbors, and both
+     * are required or both aren't; so every edge of the simplified graph stands for a run of edges with the same
+     * required flag.  Its cost (and reverse cost) is the sum of their costs in its direction, (and the opposite
+     * direction); its label, type, zone and max speed are those of the first edge of the run.  Chains that would
+     * close up on themselves keep their last interior vertex, so that no self-loops are created.
+     *
+     * @param input  - the street network; it isn't modified
+     * @param chains - if not null, it is cleared and then filled so that chains.get(i - 1) holds the ids, (in input),
+     *               of the edges replaced by edge i of the simplified graph, in order from its first endpoint to its
+     *               second.  Together with getWayIds(), this maps the simplified graph back to the OSM ways.
+     * @return - the simplified graph; each vertex's matchId is its id in input, and each edge's matchId is the id of
+     * the first edge it replaced
+     */
+    public static WindyGraph simplify(WindyGraph input, ArrayList<int[]> chains) {
+        return simplify(input, true, true, chains);
+    }
+
+    private static WindyGraph simplify(WindyGraph input, boolean pruneLeaves, boolean contractChains, ArrayList<int[]> chains) {
+
+        TIntObjectHashMap<WindyVertex> indexedVertices = input.getInternalVertexMap();
+        TIntObjectHashMap<WindyEdge> indexedEdges = input.getInternalEdgeMap();
+        int[] vertexIds = indexedVertices.keys();
+        int[] edgeIds = indexedEdges.keys();
+        Arrays.sort(vertexIds);
+        Arrays.sort(edgeIds);
+        int maxV = vertexIds.length == 0 ? 0 : vertexIds[vertexIds.length - 1];
+        int maxE = edgeIds.length == 0 ? 0 : edgeIds[edgeIds.length - 1];
+
+        //the edges, as arrays
+        int[] first = new int[maxE + 1];
+        int[] second = new int[maxE + 1];
+        boolean[] alive = new boolean[maxE + 1];
+        int[] degree = new int[maxV + 2];
+        for (int e : edgeIds) {
+            WindyEdge we = indexedEdges.get(e);
+            first[e] = we.getFirstEndpointId();
+            second[e] = we.getSecondEndpointId();
+            alive[e] = true;
+            degree[first[e]]++;
+            degree[second[e]]++;
+        }
 
+        //and the adjacency lists, (the incident edges of v are adj[start[v]] ... adj[start[v + 1] - 1])
+        int[] start = new int[maxV + 2];
+        for (int v = 1; v <= maxV + 1; v++)
+            start[v] = start[v - 1] + degree[v - 1];
+        int[] fill = Arrays.copyOf(start, maxV + 1);
+        int[] adj = new int[2 * edgeIds.length];
+        for (int e : edgeIds) {
+            adj[fill[first[e]]++] = e;
+            adj[fill[second[e]]++] = e;
+        }
+
+        boolean[] removed = new boolean[maxV + 1];
+
+        /*
+         * remove the vertices of degree 1; removing one may leave its neighbor with degree 1, so we keep a queue
+         */
+        if (pruneLeaves) {
+            int[] queue = new int[maxV + 1];
+            int head = 0, tail = 0;
+            for (int v : vertexIds)
+                if (degree[v] == 1)
+                    queue[tail++] = v;
+
+            while (head < tail) {
+                int v = queue[head++];
+                if (degree[v] != 1) //its neighbor was removed first, so just leave it
+                    continue;
+                for (int k = start[v]; k < start[v + 1]; k++) {
+                    int e = adj[k];
+                    if (!alive[e])
+                        continue;
+                    alive[e] = false;
+                    int u = (first[e] == v) ? second[e] : first[e];
+                    degree[v]--;
+                    degree[u]--;
+                    if (degree[u] == 1)
+                        queue[tail++] = u;
                 }
-                try {
-                    input.addEdge(neighborIds.get(0), neighborIds.get(1), neighbor1To2, neighbor2To1);
-                } catch (Exception e) {
-                    e.printStackTrace();
+                removed[v] = true;
+            }
+        }
+
+        /*
+         * find the contractible vertices, and their two incident edges
+         */
+        boolean[] contractible = new boolean[maxV + 1];
+        int[] inc1 = new int[maxV + 1];
+        int[] inc2 = new int[maxV + 1];
+        if (contractChains) {
+            for (int v : vertexIds) {
+                if (removed[v] || degree[v] != 2)
+                    continue;
+                int found = 0;
+                for (int k = start[v]; k < start[v + 1]; k++) {
+                    if (!alive[adj[k]])
+                        continue;
+                    if (found++ == 0)
+                        inc1[v] = adj[k];
+                    else
+                        inc2[v] = adj[k];
                 }
+                int e1 = inc1[v];
+                int e2 = inc2[v];
+                if (e1 == e2 || first[e1] == second[e1]) //a self-loop
+                    continue;
+                int u1 = (first[e1] == v) ? second[e1] : first[e1];
+                int u2 = (first[e2] == v) ? second[e2] : first[e2];
+                if (u1 != u2 && indexedEdges.get(e1).isRequired() == indexedEdges.get(e2).isRequired())
+                    contractible[v] = true;
+            }
+        }
 
-                verticesToRemove.add(wv);
-                neighbor1To2 = 0;
-                neighbor2To1 = 0;
-                neighborIds.clear();
+        /*
+         * walk the chains; each edge is visited once
+         */
+        boolean[] kept = new boolean[maxV + 1];
+        for (int v : vertexIds)
+            kept[v] = !removed[v] && !contractible[v];
+
+        boolean[] consumed = new boolean[maxE + 1];
+        ArrayList<int[]> runs = new ArrayList<int[]>();
+        TIntArrayList runStarts = new TIntArrayList();
+        TIntArrayList back = new TIntArrayList();
+        TIntArrayList run = new TIntArrayList();
+        for (int e : edgeIds) {
+            if (!alive[e] || consumed[e])
+                continue;
+
+            //walk backwards from the first endpoint, and then forwards from the second
+            back.clear();
+            boolean isCycle = false;
+            int s = first[e];
+            int prev = e;
+            while (contractible[s]) {
+                int next = (inc1[s] == prev) ? inc2[s] : inc1[s];
+                if (next == e) {
+                    isCycle = true;
+                    break;
+                }
+                back.add(next);
+                s = (first[next] == s) ? second[next] : first[next];
+                prev = next;
             }
-            for(WindyEdge we : edgesToRemove) {
-                input.removeEdge(we);
+
+            run.clear();
+            for (int k = back.size() - 1; k >= 0; k--)
+                run.add(back.get(k));
+            run.add(e);
+
+            int t = second[e];
+            prev = e;
+            while (!isCycle && contractible[t]) {
+                int next = (inc1[t] == prev) ? inc2[t] : inc1[t];
+                run.add(next);
+                t = (first[next] == t) ? second[next] : first[next];
+                prev = next;
             }
-            edgesToRemove.clear();
 
+            for (int k = 0; k < run.size(); k++)
+                consumed[run.get(k)] = true;
+
+            //if the run closes up on itself, keep its last interior vertex, (and its start, if it's a cycle)
+            if ((isCycle || s == t) && run.size() > 1) {
+                kept[s] = true;
+                int last = run.get(run.size() - 1);
+                int w = (first[last] == s) ? second[last] : first[last];
+                kept[w] = true;
+                runs.add(run.toNativeArray(0, run.size() - 1));
+                runStarts.add(s);
+                runs.add(new int[]{last});
+                runStarts.add(w);
+            } else {
+                runs.add(run.toNativeArray());
+                runStarts.add(s);
+            }
         }
 
-        for(WindyVertex wv : verticesToRemove)
-                input.removeVertex(wv);
+        /*
+         * now build the simplified graph
+         */
+        try {
+            WindyGraph ans = new WindyGraph();
+            int[] newIds = new int[maxV + 1];
+            int counter = 1;
+            WindyVertex temp, temp2;
+            for (int v : vertexIds) {
+                if (!kept[v])
+                    continue;
+                temp2 = indexedVertices.get(v);
+                temp = new WindyVertex(temp2.getLabel());
+                temp.setCoordinates(temp2.getX(), temp2.getY());
+                if (temp2.isDemandSet())
+                    temp.setDemand(temp2.getDemand());
+                ans.addVertex(temp, v);
+                newIds[v] = counter++;
+            }
+
+            if (chains != null)
+                chains.clear();
+
+            WindyEdge e, e2;
+            for (int i = 0; i < runs.size(); i++) {
+                int[] edges = runs.get(i);
+                int s = runStarts.get(i);
+                int x = s;
+                int cost = 0;
+                int reverseCost = 0;
+                for (int f : edges) {
+                    e = indexedEdges.get(f);
+                    if (first[f] == x) {
+                        cost += e.getCost();
+                        reverseCost += e.getReverseCost();
+                        x = second[f];
+                    } else {
+                        cost += e.getReverseCost();
+                        reverseCost += e.getCost();
+                        x = first[f];
+                    }
+                }
+
+                e = indexedEdges.get(edges[0]);
+                e2 = new WindyEdge(e.getLabel(), new Pair<WindyVertex>(ans.getVertex(newIds[s]), ans.getVertex(newIds[x])), cost, reverseCost);
+                e2.setRequired(e.isRequired());
+                e2.setZone(e.getZone());
+                e2.setType(e.getType());
+                e2.setMaxSpeed(e.getMaxSpeed());
+                ans.addEdge(e2, edges[0]);
 
-        //perhaps now re-index
-        return CommonAlgorithms.collapseIndices(input);
+                if (chains != null)
+                    chains.add(edges);
+            }
+
+            int depot = input.getDepotId();
+            if (depot <= maxV && kept[depot])
+                ans.setDepotId(newIds[depot]);
+            return ans;
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            return null;
+        }
     }
 
     private int latLonToMeters(double y1, double x1, double y2, double x2) {
@@ -86,14 +86,15 @@ public class DirectedGraph extends MutableGraph<DirectedVertex, Arc> {
     public void addEdge(Arc e) throws InvalidEndpointsException {
         e.getTail().addToNeighbors(e.getHead(), e);
 
-        incidenceMap.get(e.getFirstEndpointId()).add(e.getId());
-        incidenceMap.get(e.getSecondEndpointId()).add(e.getId());
-
         DirectedVertex toUpdate = e.getTail();
         toUpdate.setOutDegree(toUpdate.getOutDegree() + 1);
         toUpdate = e.getHead();
         toUpdate.setInDegree(toUpdate.getInDegree() + 1);
         super.addEdge(e);
+
+        //the link only gets its id once it has been added
+        incidenceMap.get(e.getFirstEndpointId()).add(e.getId());
+        incidenceMap.get(e.getSecondEndpointId()).add(e.getId());
     }
 
     @Override
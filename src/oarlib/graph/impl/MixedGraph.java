@@ -125,9 +125,6 @@ public class MixedGraph extends MutableGraph<MixedVertex, MixedEdge> {
         if (e.isDirected()) {
             e.getEndpoints().getFirst().addToNeighbors(e.getEndpoints().getSecond(), e);
 
-            incidenceMap.get(e.getFirstEndpointId()).add(e.getId());
-            incidenceMap.get(e.getSecondEndpointId()).add(e.getId());
-
             MixedVertex toUpdate = e.getEndpoints().getFirst();
             toUpdate.setOutDegree(toUpdate.getOutDegree() + 1);
             toUpdate.setDegree(toUpdate.getDegree() + 1);
@@ -135,11 +132,12 @@ public class MixedGraph extends MutableGraph<MixedVertex, MixedEdge> {
             toUpdate.setInDegree(toUpdate.getInDegree() + 1);
             toUpdate.setDegree(toUpdate.getDegree() + 1);
             super.addEdge(e);
-        } else {
-            Pair<MixedVertex> endpoints = e.getEndpoints();
 
+            //the link only gets its id once it has been added
             incidenceMap.get(e.getFirstEndpointId()).add(e.getId());
             incidenceMap.get(e.getSecondEndpointId()).add(e.getId());
+        } else {
+            Pair<MixedVertex> endpoints = e.getEndpoints();
 
             endpoints.getFirst().addToNeighbors(endpoints.getSecond(), e);
             endpoints.getSecond().addToNeighbors(endpoints.getFirst(), e);
@@ -148,6 +146,10 @@ public class MixedGraph extends MutableGraph<MixedVertex, MixedEdge> {
             toUpdate = e.getEndpoints().getSecond();
             toUpdate.setDegree(toUpdate.getDegree() + 1);
             super.addEdge(e);
+
+            //the link only gets its id once it has been added
+            incidenceMap.get(e.getFirstEndpointId()).add(e.getId());
+            incidenceMap.get(e.getSecondEndpointId()).add(e.getId());
         }
     }
 
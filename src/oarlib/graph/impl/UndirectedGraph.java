@@ -75,14 +75,15 @@ public class UndirectedGraph extends MutableGraph<UndirectedVertex, Edge> {
         endpoints.getFirst().addToNeighbors(endpoints.getSecond(), e);
         endpoints.getSecond().addToNeighbors(endpoints.getFirst(), e);
 
-        incidenceMap.get(e.getFirstEndpointId()).add(e.getId());
-        incidenceMap.get(e.getSecondEndpointId()).add(e.getId());
-
         UndirectedVertex toUpdate = endpoints.getFirst();
         toUpdate.setDegree(toUpdate.getDegree() + 1);
         toUpdate = e.getEndpoints().getSecond();
         toUpdate.setDegree(toUpdate.getDegree() + 1);
         super.addEdge(e);
+
+        //the link only gets its id once it has been added
+        incidenceMap.get(e.getFirstEndpointId()).add(e.getId());
+        incidenceMap.get(e.getSecondEndpointId()).add(e.getId());
     }
 
     @Override
@@ -104,14 +104,15 @@ public class ZigZagGraph extends MutableGraph<ZigZagVertex, ZigZagLink> {
         endpoints.getFirst().addToNeighbors(endpoints.getSecond(), e);
         endpoints.getSecond().addToNeighbors(endpoints.getFirst(), e);
 
-        incidenceMap.get(e.getFirstEndpointId()).add(e.getId());
-        incidenceMap.get(e.getSecondEndpointId()).add(e.getId());
-
         ZigZagVertex toUpdate = endpoints.getFirst();
         toUpdate.setDegree(toUpdate.getDegree() + 1);
         toUpdate = e.getEndpoints().getSecond();
         toUpdate.setDegree(toUpdate.getDegree() + 1);
         super.addEdge(e);
+
+        //the link only gets its id once it has been added
+        incidenceMap.get(e.getFirstEndpointId()).add(e.getId());
+        incidenceMap.get(e.getSecondEndpointId()).add(e.getId());
     }
 
     @Override
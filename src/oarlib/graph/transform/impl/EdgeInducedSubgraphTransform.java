@@ -493,7 +493,7 @@ public class EdgeInducedSubgraphTransform<S extends Graph<?, ?>> implements Grap
             }
 
             //solve the min cost flow
-            int[] flowanswer = CommonAlgorithms.shortestSuccessivePathsMinCostNetworkFlow(completeSccGraph);
+            int[] flowanswer = CommonAlgorithms.networkSimplexMinCostNetworkFlow(completeSccGraph);
             TIntObjectHashMap<Arc> completeArcs = completeSccGraph.getInternalEdgeMap();
             int numEdges = completeSccGraph.getEdges().size();
 
@@ -0,0 +1,44 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2015 Oliver Lum
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package oarlib.graph.transform.partition;
+
+import oarlib.core.Graph;
+
+import java.util.HashMap;
+
+/**
+ * Contract for vertex-weighted graph partitioners.  Implementations must be safe to invoke from several solvers
+ * at once; in particular, any intermediate files must be private to a single call.
+ */
+public interface GraphPartitioner {
+
+    /**
+     * Partitions the vertices of the provided (vertex-weighted) graph.
+     *
+     * @param g        - the graph to partition; vertex costs are used as the vertex weights.
+     * @param numParts - the number of parts to partition the graph into.
+     * @return - a map from vertex id to the (0-indexed) part it was assigned to, or null if partitioning failed.
+     */
+    HashMap<Integer, Integer> partition(Graph<?, ?> g, int numParts);
+}
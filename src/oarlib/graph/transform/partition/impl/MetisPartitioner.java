@@ -0,0 +1,189 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2015 Oliver Lum
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package oarlib.graph.transform.partition.impl;
+
+import oarlib.core.Graph;
+import oarlib.graph.transform.partition.GraphPartitioner;
+import oarlib.problem.impl.auxiliary.PartitioningProblem;
+import oarlib.problem.impl.io.PartitionFormat;
+import oarlib.problem.impl.io.PartitionReader;
+import oarlib.problem.impl.io.ProblemFormat;
+import oarlib.problem.impl.io.ProblemWriter;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+
+/**
+ * Partitions a vertex-weighted graph using the gpmetis program from the METIS library.  Each call writes the graph
+ * into its own freshly created temporary directory, runs gpmetis there, reads back the partition and deletes the
+ * directory, so any number of solvers may share one instance (or use separate ones) concurrently.
+ */
+public class MetisPartitioner implements GraphPartitioner {
+
+    private static final Logger LOGGER = Logger.getLogger(MetisPartitioner.class);
+
+    /**
+     * System property that may be used to override the location of the gpmetis executable.
+     */
+    public static final String GPMETIS_PROPERTY = "oarlib.gpmetis";
+    private static final String DEFAULT_GPMETIS = "/usr/local/bin/gpmetis";
+    private static final String GRAPH_FILE = "partition.graph";
+
+    private String mExecutable;
+    private String[] mOptions;
+
+    public MetisPartitioner() {
+        this(System.getProperty(GPMETIS_PROPERTY, DEFAULT_GPMETIS));
+    }
+
+    /**
+     * @param executable - path to the gpmetis executable.
+     */
+    public MetisPartitioner(String executable) {
+        mExecutable = executable;
+        mOptions = new String[]{"-contig", "-minconn", "-niter=1000", "-ncuts=1000", "-ufactor=1"};
+    }
+
+    public String getExecutable() {
+        return mExecutable;
+    }
+
+    public void setExecutable(String newExecutable) {
+        if (newExecutable == null) {
+            LOGGER.warn("Invalid argument.  executable may not be null.");
+            return;
+        }
+        mExecutable = newExecutable;
+    }
+
+    public String[] getOptions() {
+        return mOptions.clone();
+    }
+
+    /**
+     * @param newOptions - the command line options passed to gpmetis after the graph file and number of parts.
+     */
+    public void setOptions(String... newOptions) {
+        if (newOptions == null) {
+            LOGGER.warn("Invalid argument.  options may not be null.");
+            return;
+        }
+        mOptions = newOptions.clone();
+    }
+
+    @Override
+    public HashMap<Integer, Integer> partition(Graph<?, ?> g, int numParts) {
+        if (numParts < 1) {
+            LOGGER.warn("Invalid argument.  numParts must be >= 1.");
+            return null;
+        }
+
+        File dir = null;
+        try {
+            dir = Files.createTempDirectory("oarlib-metis").toFile();
+            File graphFile = new File(dir, GRAPH_FILE);
+
+            //write it to a file
+            ProblemWriter gw = new ProblemWriter(ProblemFormat.Name.METIS);
+            if (!gw.writeInstance(new PartitioningProblem(g, null, null), graphFile.getPath()))
+                return null;
+
+            //partition the graph
+            if (!runMetis(dir, graphFile, new File(dir, "gpmetis.log"), numParts))
+                return null;
+
+            //now read the partition
+            PartitionReader pr = new PartitionReader(PartitionFormat.Name.METIS);
+            return pr.readPartition(graphFile.getPath() + ".part." + numParts);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            if (dir != null)
+                delete(dir);
+        }
+    }
+
+    /**
+     * Runs gpmetis on a graph file that has already been written in the METIS format.  Unlike
+     * {@link #partition(Graph, int)}, nothing is cleaned up: gpmetis writes its partition to filename.part.numParts,
+     * next to the graph file, and its output goes to filename.log.
+     *
+     * @param filename - the file path to the location of the graph file.
+     * @param numParts - the number of parts to partition the graph into.
+     * @return - true if gpmetis ran successfully, false otherwise.
+     */
+    public boolean partitionFile(String filename, int numParts) {
+        if (filename == null || numParts < 1) {
+            LOGGER.warn("Invalid argument.  filename may not be null, and numParts must be >= 1.");
+            return false;
+        }
+
+        try {
+            File graphFile = new File(filename).getAbsoluteFile();
+            return runMetis(graphFile.getParentFile(), graphFile, new File(graphFile.getPath() + ".log"), numParts);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private boolean runMetis(File dir, File graphFile, File log, int numParts) throws IOException, InterruptedException {
+        String[] args = new String[mOptions.length + 3];
+        args[0] = mExecutable;
+        args[1] = graphFile.getPath();
+        args[2] = "" + numParts;
+        System.arraycopy(mOptions, 0, args, 3, mOptions.length);
+
+        //send gpmetis' chatter to a log in the scratch directory so that it can never block on a full pipe
+        ProcessBuilder pb = new ProcessBuilder(args);
+        pb.directory(dir);
+        pb.redirectErrorStream(true);
+        pb.redirectOutput(log);
+
+        LOGGER.debug("Start");
+        Process p = pb.start();
+        int exitVal = p.waitFor();
+        LOGGER.debug("Stop " + exitVal);
+
+        if (exitVal != 0) {
+            LOGGER.error("gpmetis exited with status " + exitVal + ".");
+            return false;
+        }
+        return true;
+    }
+
+    private static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null)
+            for (File child : children)
+                delete(child);
+        if (!f.delete())
+            LOGGER.warn("Could not delete temporary file " + f.getPath());
+    }
+}
@@ -0,0 +1,490 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2015 Oliver Lum
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package oarlib.graph.transform.partition.impl;
+
+import oarlib.core.Graph;
+import oarlib.core.Link;
+import oarlib.graph.transform.partition.PartitionRefiner;
+import oarlib.link.impl.AsymmetricLink;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Boundary refinement for link partitions under the min-max objective, in the spirit of Fiduccia-Mattheyses.
+ * <p/>
+ * Each part is assigned an estimated route cost equal to the service cost of its links plus a fixed overhead
+ * (the difference between the route cost estimate provided by the caller and the service cost of the part when
+ * the refiner was invoked, or 0 if no estimates were provided).  In each pass, we repeatedly take the part with the
+ * largest estimate, and move one of its boundary links (a link sharing an endpoint with a link in another part) to
+ * an adjacent part, provided that this doesn't make the receiving part at least as heavy as the donor was.  If the
+ * heaviest part has no such move, we try the next heaviest, and so on.
+ * Among the admissible moves, we pick the one that most reduces the number of adjacent link pairs that are split
+ * across parts; the candidates for each part are kept in gain buckets with a pointer to the highest non-empty one,
+ * (kept up to date on every insertion and removal), so that the best move is found in constant time (modulo
+ * skipping inadmissible ones).  The parts are kept in order of their estimates, which only has to be patched up for
+ * the two parts involved in a move.  Moved links are locked for the rest of the pass, and at the end of the pass we
+ * roll back to the best prefix of moves seen.
+ * <p/>
+ * Only the links appearing as keys in the partition map take part in the refinement; adjacency is computed with
+ * respect to those links only.
+ *
+ * @author oliverlum
+ */
+public class MinMaxBoundaryRefiner<S extends Graph<?, ?>> extends PartitionRefiner {
+
+    private static final Logger LOGGER = Logger.getLogger(MinMaxBoundaryRefiner.class);
+
+    private S mGraph;
+    private HashMap<Integer, Integer> mRouteCostEstimates;
+    private int mMaxPasses;
+
+    //link data, indexed by link id
+    private int[] mWeight;
+    private int[] mPart;
+    private int[] mNbrStart;
+    private int[] mNbrs;
+
+    //part data, indexed by internal part index
+    private int[] mPartIds;
+    private long[] mEstimate;
+    private int[] mOrder; //the parts, heaviest first, (ties broken by index)
+    private int[] mRank; //position of each part in mOrder
+
+    //gain buckets; the bucket of gain g for part p is mHead[p][g + mMaxDeg], and mMaxGainIndex[p] is the index of the
+    //highest non-empty one, (-1 if they're all empty)
+    private int mMaxDeg;
+    private int[][] mHead;
+    private int[] mMaxGainIndex;
+    private int[] mNext;
+    private int[] mPrev;
+    private int[] mGainIndex;
+    private int[] mTarget;
+    private boolean[] mLocked;
+
+    //scratch
+    private int[] mCount;
+
+    private int mNumMoves;
+
+    /**
+     * Constructs a refiner that balances the service cost of the parts.
+     *
+     * @param graph - the graph whose links are partitioned
+     */
+    public MinMaxBoundaryRefiner(S graph) {
+        this(graph, null);
+    }
+
+    /**
+     * @param graph              - the graph whose links are partitioned
+     * @param routeCostEstimates - key = part, value = estimated cost of the route servicing that part (e.g. from
+     *                           routing the partition that is about to be refined).  May be null.
+     */
+    public MinMaxBoundaryRefiner(S graph, HashMap<Integer, Integer> routeCostEstimates) {
+        mGraph = graph;
+        mRouteCostEstimates = routeCostEstimates;
+        mMaxPasses = 10;
+    }
+
+    public void setMaxPasses(int newMaxPasses) {
+        if (newMaxPasses < 1) {
+            LOGGER.warn("Invalid argument.  maxPasses must be >= 1.");
+            return;
+        }
+        mMaxPasses = newMaxPasses;
+    }
+
+    public void setRouteCostEstimates(HashMap<Integer, Integer> newEstimates) {
+        mRouteCostEstimates = newEstimates;
+    }
+
+    /**
+     * @return - the number of moves kept, (over all passes), by the last call to refinePartition
+     */
+    public int getNumMoves() {
+        return mNumMoves;
+    }
+
+    @Override
+    public HashMap<Integer, Integer> refinePartition(HashMap<Integer, Integer> currMap) {
+
+        HashMap<Integer, Integer> ans = new HashMap<Integer, Integer>(currMap);
+        mNumMoves = 0;
+        if (!setup(currMap))
+            return ans;
+
+        long[] best = new long[2];
+        for (int pass = 0; pass < mMaxPasses; pass++) {
+            if (!runPass(best))
+                break;
+        }
+
+        for (Integer key : currMap.keySet()) {
+            if (key > 0 && key < mPart.length && mPart[key] >= 0)
+                ans.put(key, mPartIds[mPart[key]]);
+        }
+        return ans;
+    }
+
+    /**
+     * Fills the link and part arrays from the partition map.
+     *
+     * @return - false if there is nothing to refine
+     */
+    private boolean setup(HashMap<Integer, Integer> currMap) {
+
+        int m = mGraph.getEidCounter();
+        int n = mGraph.getVidCounter();
+
+        //number the parts consecutively
+        HashMap<Integer, Integer> partIndex = new HashMap<Integer, Integer>();
+        ArrayList<Integer> partIds = new ArrayList<Integer>();
+        mWeight = new int[m];
+        mPart = new int[m];
+        Arrays.fill(mPart, -1);
+
+        int[] vertexDeg = new int[n + 1];
+        Link<?> l;
+        for (Integer key : currMap.keySet()) {
+            if (key <= 0 || key >= m || !mGraph.getInternalEdgeMap().containsKey(key))
+                continue;
+            Integer part = currMap.get(key);
+            if (!partIndex.containsKey(part)) {
+                partIndex.put(part, partIds.size());
+                partIds.add(part);
+            }
+            l = mGraph.getEdge(key);
+            mPart[key] = partIndex.get(part);
+            if (l instanceof AsymmetricLink)
+                mWeight[key] = (l.getCost() + ((AsymmetricLink) l).getReverseCost()) / 2;
+            else
+                mWeight[key] = l.getCost();
+            vertexDeg[l.getFirstEndpointId()]++;
+            vertexDeg[l.getSecondEndpointId()]++;
+        }
+
+        int k = partIds.size();
+        if (k < 2)
+            return false;
+
+        //vertex -> incident partitioned links
+        int[] vStart = new int[n + 2];
+        for (int i = 1; i <= n; i++)
+            vStart[i + 1] = vStart[i] + vertexDeg[i];
+        int[] vLinks = new int[vStart[n + 1]];
+        int[] fill = Arrays.copyOf(vStart, n + 2);
+        for (int i = 1; i < m; i++) {
+            if (mPart[i] < 0)
+                continue;
+            l = mGraph.getEdge(i);
+            vLinks[fill[l.getFirstEndpointId()]++] = i;
+            if (l.getSecondEndpointId() != l.getFirstEndpointId())
+                vLinks[fill[l.getSecondEndpointId()]++] = i;
+        }
+
+        //link -> adjacent partitioned links
+        mNbrStart = new int[m + 1];
+        int v1, v2;
+        for (int i = 1; i < m; i++) {
+            mNbrStart[i + 1] = mNbrStart[i];
+            if (mPart[i] < 0)
+                continue;
+            l = mGraph.getEdge(i);
+            v1 = l.getFirstEndpointId();
+            v2 = l.getSecondEndpointId();
+            mNbrStart[i + 1] += (fill[v1] - vStart[v1] - 1);
+            if (v2 != v1)
+                mNbrStart[i + 1] += (fill[v2] - vStart[v2] - 1);
+        }
+        mNbrs = new int[mNbrStart[m]];
+        mMaxDeg = 0;
+        int index;
+        for (int i = 1; i < m; i++) {
+            if (mPart[i] < 0)
+                continue;
+            l = mGraph.getEdge(i);
+            v1 = l.getFirstEndpointId();
+            v2 = l.getSecondEndpointId();
+            index = mNbrStart[i];
+            for (int j = vStart[v1]; j < fill[v1]; j++)
+                if (vLinks[j] != i)
+                    mNbrs[index++] = vLinks[j];
+            if (v2 != v1)
+                for (int j = vStart[v2]; j < fill[v2]; j++)
+                    if (vLinks[j] != i)
+                        mNbrs[index++] = vLinks[j];
+            mMaxDeg = Math.max(mMaxDeg, index - mNbrStart[i]);
+        }
+
+        //part estimates
+        mPartIds = new int[k];
+        mEstimate = new long[k];
+        for (int i = 0; i < k; i++)
+            mPartIds[i] = partIds.get(i);
+        for (int i = 1; i < m; i++)
+            if (mPart[i] >= 0)
+                mEstimate[mPart[i]] += mWeight[i];
+        if (mRouteCostEstimates != null) {
+            for (int i = 0; i < k; i++) {
+                if (mRouteCostEstimates.containsKey(mPartIds[i]))
+                    mEstimate[i] = Math.max(mEstimate[i], mRouteCostEstimates.get(mPartIds[i]));
+            }
+        }
+
+        //insertion sort the parts by estimate
+        mOrder = new int[k];
+        mRank = new int[k];
+        int r;
+        for (int i = 0; i < k; i++) {
+            for (r = i; r > 0 && heavier(i, mOrder[r - 1]); r--)
+                mOrder[r] = mOrder[r - 1];
+            mOrder[r] = i;
+        }
+        for (int i = 0; i < k; i++)
+            mRank[mOrder[i]] = i;
+
+        mHead = new int[k][2 * mMaxDeg + 1];
+        mMaxGainIndex = new int[k];
+        mNext = new int[m];
+        mPrev = new int[m];
+        mGainIndex = new int[m];
+        mTarget = new int[m];
+        mLocked = new boolean[m];
+        mCount = new int[k];
+
+        return true;
+    }
+
+    /**
+     * Runs a single FM pass, rolling back to the best prefix of moves.
+     *
+     * @param best - scratch for the (max estimate, cut) of the best state seen
+     * @return - true if the pass improved the partition
+     */
+    private boolean runPass(long[] best) {
+
+        int m = mPart.length;
+        int k = mEstimate.length;
+
+        //initialize the buckets
+        for (int p = 0; p < k; p++) {
+            Arrays.fill(mHead[p], 0);
+            mMaxGainIndex[p] = -1;
+        }
+        Arrays.fill(mLocked, false);
+        for (int i = 1; i < m; i++) {
+            if (mPart[i] >= 0)
+                insert(i);
+        }
+
+        long startMax = maxEstimate();
+        long currCut = 0;
+        best[0] = startMax;
+        best[1] = 0;
+        int bestPrefix = 0;
+
+        ArrayList<int[]> moves = new ArrayList<int[]>();
+        int e, q, from, gain;
+        while (true) {
+            e = selectMove();
+            if (e < 0)
+                break;
+
+            q = mTarget[e];
+            gain = mGainIndex[e] - mMaxDeg;
+            remove(e);
+            mLocked[e] = true;
+            from = mPart[e];
+            mPart[e] = q;
+            mEstimate[from] -= mWeight[e];
+            mEstimate[q] += mWeight[e];
+            reorder(from);
+            reorder(q);
+            currCut -= gain;
+            moves.add(new int[]{e, from, q});
+
+            //update the neighbors' gains
+            for (int j = mNbrStart[e]; j < mNbrStart[e + 1]; j++) {
+                if (mLocked[mNbrs[j]])
+                    continue;
+                remove(mNbrs[j]);
+                insert(mNbrs[j]);
+            }
+
+            long currMax = maxEstimate();
+            if (currMax < best[0] || (currMax == best[0] && currCut < best[1])) {
+                best[0] = currMax;
+                best[1] = currCut;
+                bestPrefix = moves.size();
+            }
+        }
+
+        //roll back
+        int[] move;
+        for (int i = moves.size() - 1; i >= bestPrefix; i--) {
+            move = moves.get(i);
+            mPart[move[0]] = move[1];
+            mEstimate[move[2]] -= mWeight[move[0]];
+            mEstimate[move[1]] += mWeight[move[0]];
+            reorder(move[2]);
+            reorder(move[1]);
+        }
+        mNumMoves += bestPrefix;
+
+        LOGGER.debug("Refinement pass made " + bestPrefix + " moves; max estimate went from " + startMax + " to " + best[0] + ".");
+        return bestPrefix > 0;
+    }
+
+    private long maxEstimate() {
+        return mEstimate[mOrder[0]];
+    }
+
+    /**
+     * @return - true if part p belongs before part q in mOrder
+     */
+    private boolean heavier(int p, int q) {
+        return mEstimate[p] > mEstimate[q] || (mEstimate[p] == mEstimate[q] && p < q);
+    }
+
+    /**
+     * Moves part p to its place in mOrder after its estimate changed; the rest of the order is still sorted, so this
+     * is a single insertion sort step in one direction or the other.
+     */
+    private void reorder(int p) {
+        int r = mRank[p];
+        while (r > 0 && heavier(p, mOrder[r - 1])) {
+            mOrder[r] = mOrder[r - 1];
+            mRank[mOrder[r]] = r;
+            r--;
+        }
+        while (r < mOrder.length - 1 && heavier(mOrder[r + 1], p)) {
+            mOrder[r] = mOrder[r + 1];
+            mRank[mOrder[r]] = r;
+            r++;
+        }
+        mOrder[r] = p;
+        mRank[p] = r;
+    }
+
+    /**
+     * Looks for an admissible move out of the heaviest part, and if there is none, out of the next heaviest, and so
+     * on.  Moves out of lighter parts don't reduce the max right away, but they make room in the neighbors of the
+     * heaviest part, which is what lets weight flow from it to parts it isn't adjacent to.
+     *
+     * @return - the link id of the move, or -1 if there are no admissible moves left
+     */
+    private int selectMove() {
+        int ans;
+        for (int p : mOrder) {
+            ans = selectMove(p);
+            if (ans >= 0)
+                return ans;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the highest gain boundary link in part p whose move doesn't make its target at least as heavy as p.
+     *
+     * @return - the link id, or -1 if there is no admissible move
+     */
+    private int selectMove(int p) {
+        int[] head = mHead[p];
+        for (int g = mMaxGainIndex[p]; g >= 0; g--) {
+            for (int e = head[g]; e != 0; e = mNext[e]) {
+                if (mEstimate[mTarget[e]] + mWeight[e] < mEstimate[p])
+                    return e;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Computes the best target and gain of link e, and puts it in the appropriate bucket if it's a boundary link.
+     */
+    private void insert(int e) {
+
+        int p = mPart[e];
+        for (int j = mNbrStart[e]; j < mNbrStart[e + 1]; j++)
+            mCount[mPart[mNbrs[j]]]++;
+
+        //the adjacent part with the most neighbors, (the lowest index among ties)
+        int target = -1;
+        int q;
+        for (int j = mNbrStart[e]; j < mNbrStart[e + 1]; j++) {
+            q = mPart[mNbrs[j]];
+            if (q == p)
+                continue;
+            if (target == -1 || mCount[q] > mCount[target] || (mCount[q] == mCount[target] && q < target))
+                target = q;
+        }
+        int gain = target == -1 ? 0 : mCount[target] - mCount[p];
+
+        //reset the scratch counts
+        for (int j = mNbrStart[e]; j < mNbrStart[e + 1]; j++)
+            mCount[mPart[mNbrs[j]]] = 0;
+        mCount[p] = 0;
+
+        mTarget[e] = target;
+        if (target == -1) {
+            //interior link
+            mGainIndex[e] = -1;
+            return;
+        }
+
+        int g = gain + mMaxDeg;
+        mGainIndex[e] = g;
+        mPrev[e] = 0;
+        mNext[e] = mHead[p][g];
+        if (mHead[p][g] != 0)
+            mPrev[mHead[p][g]] = e;
+        mHead[p][g] = e;
+        if (g > mMaxGainIndex[p])
+            mMaxGainIndex[p] = g;
+    }
+
+    private void remove(int e) {
+        int g = mGainIndex[e];
+        if (g < 0)
+            return;
+        int p = mPart[e];
+        if (mPrev[e] != 0)
+            mNext[mPrev[e]] = mNext[e];
+        else
+            mHead[p][g] = mNext[e];
+        if (mNext[e] != 0)
+            mPrev[mNext[e]] = mPrev[e];
+        mGainIndex[e] = -1;
+
+        //lower the pointer past any buckets this emptied
+        if (g == mMaxGainIndex[p]) {
+            int[] head = mHead[p];
+            while (mMaxGainIndex[p] >= 0 && head[mMaxGainIndex[p]] == 0)
+                mMaxGainIndex[p]--;
+        }
+    }
+}
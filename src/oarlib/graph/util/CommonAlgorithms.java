@@ -26,8 +26,10 @@ package oarlib.graph.util;
 import gnu.trove.TIntArrayList;
 import gnu.trove.TIntIntHashMap;
 import gnu.trove.TIntObjectHashMap;
+import gnu.trove.TLongArrayList;
 import oarlib.core.Graph;
 import oarlib.core.Link;
+import oarlib.core.OverlayGraph;
 import oarlib.core.Vertex;
 import oarlib.exceptions.InvalidEndpointsException;
 import oarlib.exceptions.NegativeCycleException;
@@ -51,6 +53,12 @@ public class CommonAlgorithms {
 
     private static final Logger LOGGER = Logger.getLogger(CommonAlgorithms.class);
 
+    /**
+     * The spanning tree builders of the graphs passed to minCostSpanningTree, (keyed by identity; the graphs aren't
+     * kept alive by the cache).
+     */
+    private static final WeakHashMap<UndirectedGraph, SpanningTreeBuilder> spanningTreeBuilders = new WeakHashMap<UndirectedGraph, SpanningTreeBuilder>();
+
     /**
      * Hierholzer's algorithm for determining an Euler tour through an directed Eulerian graph.
      *
@@ -115,90 +123,130 @@ public class CommonAlgorithms {
     }
 
     /**
-     * business logic for Hierholzer's algorithm
+     * Hierholzer's algorithm for determining an Euler tour through an overlay of a directed or undirected graph.  The
+     * degrees are counted from the links of the overlay, (not from its vertices), so the overlay doesn't need its own
+     * copy of the graph.
      *
-     * @return the Eulerian cycle
+     * @param eulerianGraph - an eulerian overlay on which to construct the tour; its links must be all directed or all
+     *                      undirected
+     * @return a ArrayList object containing the tour (values are link ids).
+     * @throws IllegalArgumentException if the overlay passed in is not Eulerian, or has both directed and undirected links.
      */
-    private static ArrayList<Integer> hierholzer(Graph<? extends Vertex, ? extends Link<? extends Vertex>> orig, boolean useMatchIds) {
-
-        Graph<? extends Vertex, ? extends Link<? extends Vertex>> graph = orig.getDeepCopy();
-        ArrayList<Integer> edgeTrail = new ArrayList<Integer>();
-        ArrayList<Integer> edgeCycle = new ArrayList<Integer>();
-        ArrayList<Vertex> visitedVertices = new ArrayList<Vertex>();
-        ArrayList<Vertex> simpleCycle = new ArrayList<Vertex>();
-
-        //pick an arbitrary start vertex
-        Iterator<? extends Vertex> iter = graph.getVertices().iterator();
-        Vertex start = graph.getInternalVertexMap().get(graph.getDepotId());
-        visitedVertices.add(start);
-        simpleCycle.add(start);
-        //initialize current position variables
-        Map<? extends Vertex, ? extends List<? extends Link<? extends Vertex>>> currNeighbors = start.getNeighbors();
-        Vertex currVertex = start;
-        Vertex prevVertex;
-        Link<? extends Vertex> currEdge;
-        Iterator<Vertex> vertexIter;
-        boolean nextStart = true;
-
-        TIntObjectHashMap<? extends Link<? extends Vertex>> indexedOrigEdges = orig.getInternalEdgeMap();
-
-        while (nextStart) {
-            //greedily go until we've come back to start
-            do {
-                currEdge = currNeighbors.values().iterator().next().get(0); //grab anybody
-                if (useMatchIds)
-                    edgeCycle.add(indexedOrigEdges.get(currEdge.getMatchId()).getMatchId());
-                else
-                    edgeCycle.add(currEdge.getMatchId()); //add it to the trail
-                //update the currVertex
-                prevVertex = currVertex;
-                currVertex = (currEdge.getEndpoints().getFirst().getId() == currVertex.getId()) ? currEdge.getEndpoints().getSecond() : currEdge.getEndpoints().getFirst();
-                simpleCycle.add(currVertex);
-
-                //update the neighbors
-                currNeighbors.get(currVertex).remove(currEdge);
-                if (currNeighbors.get(currVertex).size() == 0)
-                    currNeighbors.remove(currVertex);
-
-                currNeighbors = currVertex.getNeighbors();
-                if (!currEdge.isDirected()) {
-                    currNeighbors.get(prevVertex).remove(currEdge);
-                    if (currNeighbors.get(prevVertex).size() == 0)
-                        currNeighbors.remove(prevVertex);
-                }
-
-            } while (currVertex.getId() != start.getId());
+    public static ArrayList<Integer> tryHierholzer(OverlayGraph<? extends Vertex, ? extends Link<? extends Vertex>> eulerianGraph) throws IllegalArgumentException {
+        if (eulerianGraph.getEdges().size() == 0) {
+            LOGGER.debug("Running hierholzer's algorithm on an empty graph.");
+            return new ArrayList<Integer>();
+        }
 
-            //join the trails
-            int n = visitedVertices.size();
-            for (int j = 0; j < n; j++) {
-                //insert here
-                if (visitedVertices.get(j) == start) {
-                    visitedVertices.remove(j);
-                    visitedVertices.addAll(j, simpleCycle);
-                    edgeTrail.addAll(j, edgeCycle);
-                    break;
-                }
+        int n = eulerianGraph.getVidCounter();
+        int[] balance = new int[n + 1];
+        int directed = 0;
+        for (Link<? extends Vertex> l : eulerianGraph.getEdges()) {
+            if (l.isDirected()) {
+                directed++;
+                balance[l.getFirstEndpointId()]++;
+                balance[l.getSecondEndpointId()]--;
+            } else {
+                balance[l.getFirstEndpointId()]++;
+                balance[l.getSecondEndpointId()]++;
             }
+        }
+        if (directed != 0 && directed != eulerianGraph.getEdges().size()) {
+            LOGGER.error("Hierholzer's algorithm can only be run on an overlay whose links are all directed or all undirected.");
+            throw new IllegalArgumentException();
+        }
+        for (int i = 1; i <= n; i++) {
+            if ((directed == 0 && balance[i] % 2 != 0) || (directed != 0 && balance[i] != 0)) {
+                LOGGER.error("You are attempting to run hierholzer's algorithm on a non eulerian graph.");
+                throw new IllegalArgumentException();
+            }
+        }
+        return hierholzer(eulerianGraph, false);
+    }
 
-            //reinitialize the simple cycle trackers for the next go
-            simpleCycle = new ArrayList<Vertex>();
-            edgeCycle = new ArrayList<Integer>();
-
-            //look for a new start point
-            nextStart = false;
-            vertexIter = visitedVertices.iterator();
-            while (vertexIter.hasNext()) {
-                start = vertexIter.next();
-                if (start.getNeighbors().size() != 0) {
-                    simpleCycle.add(start);
-                    currVertex = start;
-                    currNeighbors = currVertex.getNeighbors();
-                    nextStart = true;
-                    break;
-                }
+    /**
+     * business logic for Hierholzer's algorithm.  We build a CSR adjacency over the links of orig, (out-arcs for
+     * directed links, both endpoints for undirected ones), and walk it with an explicit stack and a cursor per vertex,
+     * so every link is looked at a constant number of times, and the graph is never copied or modified.
+     *
+     * @param orig        - the (eulerian) graph to route
+     * @param useMatchIds - if true, the tour reports the match ids of the links rather than their ids
+     * @return the Eulerian cycle
+     */
+    private static ArrayList<Integer> hierholzer(Graph<? extends Vertex, ? extends Link<? extends Vertex>> orig, boolean useMatchIds) {
+
+        TIntObjectHashMap<? extends Link<? extends Vertex>> indexedEdges = orig.getInternalEdgeMap();
+        int[] edgeIds = indexedEdges.keys();
+        int m = edgeIds.length;
+        int n = orig.getVidCounter();
+
+        //compact link data
+        int[] first = new int[m];
+        int[] second = new int[m];
+        int[] label = new int[m];
+        boolean[] undirected = new boolean[m];
+        int[] start = new int[n + 1];
+        Link<? extends Vertex> l;
+        for (int i = 0; i < m; i++) {
+            l = indexedEdges.get(edgeIds[i]);
+            first[i] = l.getFirstEndpointId();
+            second[i] = l.getSecondEndpointId();
+            label[i] = useMatchIds ? l.getMatchId() : l.getId();
+            undirected[i] = !l.isDirected();
+            start[first[i] + 1]++;
+            if (undirected[i])
+                start[second[i] + 1]++;
+        }
+
+        //CSR adjacency; cursor[v] is the next unexamined slot of v
+        for (int v = 0; v < n; v++)
+            start[v + 1] += start[v];
+        int[] adj = new int[start[n]];
+        int[] cursor = new int[n];
+        System.arraycopy(start, 0, cursor, 0, n);
+        for (int i = 0; i < m; i++) {
+            adj[cursor[first[i]]++] = i;
+            if (undirected[i])
+                adj[cursor[second[i]]++] = i;
+        }
+        System.arraycopy(start, 0, cursor, 0, n);
+
+        //start at the depot, if it has any links
+        int startVertex = orig.getDepotId();
+        if (startVertex < 1 || startVertex >= n || start[startVertex] == start[startVertex + 1])
+            startVertex = first[0];
+
+        //the stack holds the current trail; vertices are popped (and their entering links recorded) once they are exhausted
+        boolean[] used = new boolean[m];
+        int[] vertexStack = new int[m + 1];
+        int[] edgeStack = new int[m + 1];
+        int top = 0;
+        vertexStack[0] = startVertex;
+        edgeStack[0] = -1;
+        int[] tour = new int[m];
+        int tourSize = 0;
+        int v, e;
+        while (top >= 0) {
+            v = vertexStack[top];
+            while (cursor[v] < start[v + 1] && used[adj[cursor[v]]])
+                cursor[v]++;
+            if (cursor[v] < start[v + 1]) {
+                e = adj[cursor[v]++];
+                used[e] = true;
+                top++;
+                vertexStack[top] = (first[e] == v) ? second[e] : first[e];
+                edgeStack[top] = e;
+            } else {
+                if (edgeStack[top] != -1)
+                    tour[tourSize++] = edgeStack[top];
+                top--;
             }
         }
+
+        //the links come off the stack in reverse order
+        ArrayList<Integer> edgeTrail = new ArrayList<Integer>(tourSize);
+        for (int i = tourSize - 1; i >= 0; i--)
+            edgeTrail.add(label[tour[i]]);
         return edgeTrail;
     }
 
@@ -609,6 +657,43 @@ public class CommonAlgorithms {
         }
     }
 
+    /**
+     * Checks to see if the graph is (weakly) connected, i.e. connected when the direction of its links is ignored.  This
+     * only looks at the links of the graph, (with a union-find over the vertex ids), so it also works on an
+     * {@link OverlayGraph}, whose vertices don't reflect its links.
+     *
+     * @param graph - the graph to check; its vertex ids are assumed to be 1 ... getVidCounter() - 1
+     * @return true if the graph is connected (or empty), false oth.
+     */
+    public static boolean isConnected(Graph<? extends Vertex, ? extends Link<? extends Vertex>> graph) {
+        int n = graph.getVertices().size();
+        if (n <= 1)
+            return true; //trivially connected
+
+        int[] parent = new int[graph.getVidCounter() + 1];
+        for (int i = 0; i < parent.length; i++)
+            parent[i] = i;
+        int components = n;
+        int a, b;
+        for (Link<? extends Vertex> l : graph.getEdges()) {
+            a = l.getFirstEndpointId();
+            while (parent[a] != a) {
+                parent[a] = parent[parent[a]];
+                a = parent[a];
+            }
+            b = l.getSecondEndpointId();
+            while (parent[b] != b) {
+                parent[b] = parent[parent[b]];
+                b = parent[b];
+            }
+            if (a != b) {
+                parent[a] = b;
+                components--;
+            }
+        }
+        return components == 1;
+    }
+
     /**
      * Checks to see if the undirected graph is connected
      *
@@ -1993,59 +2078,19 @@ public class CommonAlgorithms {
     }
 
     /**
-     * Solves the min-cost spanning tree problem using Prim's algorithm
+     * Solves the min-cost spanning tree problem using Kruskal's algorithm, (see {@link SpanningTreeBuilder}).  The
+     * builder for g is kept, so that later calls on the same (unchanged) graph skip the sort.
      *
      * @param g - the undirected graph on which to solve the MST problem.
      * @return - an 0-1 array where the ith entry is 1 if the ith edge is included in the tree.
      */
     public static int[] minCostSpanningTree(UndirectedGraph g) {
-        int m = g.getEdges().size();
-        int[] ans = new int[m + 1];
-        TIntObjectHashMap<Edge> indexedEdges = g.getInternalEdgeMap();
-        Edge temp;
-        ArrayList<Pair<Integer>> pq = new ArrayList<Pair<Integer>>();
-        for (int i = 1; i <= m; i++) {
-            temp = indexedEdges.get(i);
-            pq.add(new Pair<Integer>(i, temp.getCost()));
-        }
-        Collections.sort(pq, new DijkstrasComparator()); //a sorted list of our edges
-        Collections.reverse(pq);
-
-        //now pick a start vertex, and start expanding
-        int start = pq.size() - 1;
-        HashSet<Integer> visitedVertices = new HashSet<Integer>();
-        temp = indexedEdges.get(pq.get(start).getFirst()); //might as well start with the cheapest guy
-        ans[temp.getId()] = 1;
-        visitedVertices.add(temp.getEndpoints().getFirst().getId());
-        visitedVertices.add(temp.getEndpoints().getSecond().getId());
-        pq.remove(start);
-
-        //now grow this guy organically
-        Pair<UndirectedVertex> tempEndpoints;
-        int currTreeSize = 1;
-        int mstSize = g.getVertices().size() - 1;
-        while (currTreeSize < mstSize) {
-            start = pq.size() - 1;
-            temp = indexedEdges.get(pq.get(start).getFirst());
-            tempEndpoints = temp.getEndpoints();
-            while (visitedVertices.contains(tempEndpoints.getFirst().getId()) == visitedVertices.contains(tempEndpoints.getSecond().getId())) {
-                start--;
-                temp = indexedEdges.get(pq.get(start).getFirst());
-                tempEndpoints = temp.getEndpoints();
-            }
-            ans[temp.getId()] = 1;
-            visitedVertices.add(temp.getEndpoints().getFirst().getId());
-            visitedVertices.add(temp.getEndpoints().getSecond().getId());
-            pq.remove(start);
-            currTreeSize++;
-        }
-
-        return ans;
+        return getSpanningTreeBuilder(g).minCostSpanningTree();
     }
 
 
     /**
-     * Solves the min-cost spanning tree problem using Prim's algorithm
+     * Builds a randomized low cost spanning tree, (see {@link SpanningTreeBuilder}).
      *
      * @param g       - the undirected graph on which to solve the MST problem.
      * @param setSize - the size of the set from which an edge is greedily selected.  setSize = 1 reduces to a
@@ -2053,57 +2098,24 @@ public class CommonAlgorithms {
      * @return - an 0-1 array where the ith entry is 1 if the ith edge is included in the tree.
      */
     public static int[] randomizedLowCostSpanningTree(UndirectedGraph g, int setSize) {
-        int m = g.getEdges().size();
-        int[] ans = new int[m + 1];
-        TIntObjectHashMap<Edge> indexedEdges = g.getInternalEdgeMap();
-        Edge temp;
-        ArrayList<Pair<Integer>> pq = new ArrayList<Pair<Integer>>();
-        for (int i = 1; i <= m; i++) {
-            temp = indexedEdges.get(i);
-            pq.add(new Pair<Integer>(i, temp.getCost()));
-        }
-        Collections.sort(pq, new DijkstrasComparator()); //a sorted list of our edges
-        Collections.reverse(pq);
-
-        //now pick a start vertex, and start expanding
-        int start = pq.size() - 1;
-        HashSet<Integer> visitedVertices = new HashSet<Integer>();
-        temp = indexedEdges.get(pq.get(start).getFirst()); //might as well start with the cheapest guy
-        ans[temp.getId()] = 1;
-        visitedVertices.add(temp.getEndpoints().getFirst().getId());
-        visitedVertices.add(temp.getEndpoints().getSecond().getId());
-        pq.remove(start);
-
-        //now grow this guy organically
-        Pair<UndirectedVertex> tempEndpoints;
-        int currTreeSize = 1;
-        int mstSize = g.getVertices().size() - 1;
-        Random rng = new Random(1000);
-        int offset, counter;
-
-        while (currTreeSize < mstSize) {
-            start = pq.size() - 1;
-            temp = indexedEdges.get(pq.get(start).getFirst());
-            tempEndpoints = temp.getEndpoints();
-            offset = rng.nextInt(setSize);
-            counter = 0;
-            while (counter <= offset) {
-                while (visitedVertices.contains(tempEndpoints.getFirst().getId()) == visitedVertices.contains(tempEndpoints.getSecond().getId())) {
-                    if (start == 0)
-                        break;
-                    start--;
-                    temp = indexedEdges.get(pq.get(start).getFirst());
-                    tempEndpoints = temp.getEndpoints();
-                }
-                counter++;
-            }
-            ans[temp.getId()] = 1;
-            visitedVertices.add(temp.getEndpoints().getFirst().getId());
-            visitedVertices.add(temp.getEndpoints().getSecond().getId());
-            pq.remove(start);
-            currTreeSize++;
-        }
+        return getSpanningTreeBuilder(g).randomizedLowCostSpanningTree(setSize, new Random(1000));
+    }
 
+    /**
+     * @param g - the undirected graph whose spanning trees we want
+     * @return - the cached builder for g, or a new one if there isn't one, or g has changed since it was built
+     */
+    public static SpanningTreeBuilder getSpanningTreeBuilder(UndirectedGraph g) {
+        SpanningTreeBuilder ans;
+        synchronized (spanningTreeBuilders) {
+            ans = spanningTreeBuilders.get(g);
+        }
+        if (ans != null && ans.isSnapshotOf(g))
+            return ans;
+        ans = new SpanningTreeBuilder(g);
+        synchronized (spanningTreeBuilders) {
+            spanningTreeBuilders.put(g, ans);
+        }
         return ans;
     }
 
@@ -2204,7 +2216,6 @@ public class CommonAlgorithms {
     public static void fwLeastCostPaths(Graph<? extends Vertex, ? extends Link<? extends Vertex>> g, int[][] dist, int[][] path, int[][] edgePath) throws IllegalArgumentException {
         //initialize dist and path
         int n = g.getVertices().size();
-        int m = g.getEdges().size();
 
         boolean recordEdgePath = (edgePath != null);
 
@@ -2228,10 +2239,11 @@ public class CommonAlgorithms {
 
             TIntObjectHashMap<? extends Link<? extends Vertex>> indexedWindyEdges = g.getInternalEdgeMap();
             Link<? extends Vertex> temp;
-            for (int i = 1; i <= m; i++) {
+            //go by the ids actually in use, so that graphs with gaps in their ids, (e.g. overlays), are handled too
+            int[] linkIds = indexedWindyEdges.keys();
+            Arrays.sort(linkIds);
+            for (int i : linkIds) {
                 temp = indexedWindyEdges.get(i);
-                if(temp == null)
-                    continue;
                 if (temp.isDirected())
                     g2.addEdge(temp.getEndpoints().getFirst().getId(), temp.getEndpoints().getSecond().getId(), "forward", temp.getCost(), i);
                 else if (temp instanceof AsymmetricLink) {
@@ -2697,6 +2709,74 @@ public class CommonAlgorithms {
         return retArray;
     }
 
+    /**
+     * Solves the same min cost flow problem as shortestSuccessivePathsMinCostNetworkFlow, (supplies and demands given
+     * by the vertex demands, capacities by the arc capacities, if set), but with the primitive array network simplex
+     * implementation in {@link MinCostFlow}, without copying the graph.
+     *
+     * @param g - the graph over which the flow is to be computed
+     * @return - an array that contains flow values.  That is, entry i has value j if edge i  has j units of flow pushed across it
+     * in the min cost solution.
+     * @throws IllegalArgumentException - if the problem is determined to be infeasible.
+     */
+    public static int[] networkSimplexMinCostNetworkFlow(DirectedGraph g) throws IllegalArgumentException {
+        return minCostNetworkFlow(g, MinCostFlow.Algorithm.NETWORK_SIMPLEX);
+    }
+
+    /**
+     * Solves the same min cost flow problem as networkSimplexMinCostNetworkFlow, with the algorithm of our choosing from
+     * {@link MinCostFlow}.  Successive shortest paths tends to win on the small balancing problems of the mixed and
+     * windy heuristics; the network simplex on larger ones.
+     *
+     * @param g         - the graph over which the flow is to be computed
+     * @param algorithm - the min cost flow algorithm to use
+     * @return - an array that contains flow values.  That is, entry i has value j if edge i  has j units of flow pushed across it
+     * in the min cost solution.
+     * @throws IllegalArgumentException - if the problem is determined to be infeasible.
+     */
+    public static int[] minCostNetworkFlow(DirectedGraph g, MinCostFlow.Algorithm algorithm) throws IllegalArgumentException {
+
+        int[] ans = new int[g.getEidCounter()];
+        int n = g.getVidCounter() - 1;
+
+        MinCostFlow mcf = new MinCostFlow(n);
+        mcf.setAlgorithm(algorithm);
+        TIntObjectHashMap<Arc> indexedArcs = g.getInternalEdgeMap();
+        int[] arcIds = indexedArcs.keys();
+        try {
+            boolean hasDemand = false;
+            for (DirectedVertex v : g.getVertices()) {
+                if (v.isDemandSet() && v.getDemand() != 0) {
+                    mcf.setSupply(v.getId(), v.getDemand());
+                    hasDemand = true;
+                }
+            }
+            if (!hasDemand)
+                return ans;
+
+            Arc temp;
+            for (int id : arcIds) {
+                temp = indexedArcs.get(id);
+                mcf.addArc(temp.getTail().getId(), temp.getHead().getId(), temp.isCapacitySet() ? temp.getCapacity() : MinCostFlow.INFINITE_CAPACITY, temp.getCost());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        try {
+            mcf.solve();
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Your graph is not connected, or this is not a valid flow problem");
+            throw e;
+        }
+
+        for (int i = 0; i < arcIds.length; i++)
+            ans[arcIds[i]] = mcf.getFlow(i);
+
+        return ans;
+    }
+
     /**
      * Implements the cycle cancelling algorithm to calculate a min cost flow through the graph g with distance matrix given by dist.
      * NOTE: Currently does not support capacities; for that, use shortestSuccessivePaths.
@@ -2887,15 +2967,32 @@ public class CommonAlgorithms {
     }
 
     /**
-     * Finds the minimum cost spanning arborescence if one exists.
-     * NOTE: Be careful about scale; this will only work with graphs
-     * of vertex set size 255 or less I think.  Consider writing my own MSA.
+     * Finds the minimum cost spanning arborescence if one exists, using the sparse pure Java implementation in
+     * {@link MinSpanningArborescence}.
      *
-     * @param g - the graph on which to compute the arborescence
+     * @param g    - the graph on which to compute the arborescence
+     * @param root - the id of the root vertex
      * @return - A set of integers, corresponding to the ids of the arcs
      * in the MSA.
      */
     public static HashSet<Integer> minSpanningArborescence(DirectedGraph g, int root) throws IllegalArgumentException {
+        return minSpanningArborescence(g, root, false);
+    }
+
+    /**
+     * Finds the minimum cost spanning arborescence if one exists.
+     *
+     * @param g         - the graph on which to compute the arborescence
+     * @param root      - the id of the root vertex
+     * @param useNative - if true, we call the MSArbor C++ code through JNI.  NOTE: Be careful about scale; this builds a
+     *                  dense n*(n-1) weight array, and will only work with graphs of vertex set size 255 or less I think.
+     *                  Otherwise, we use {@link MinSpanningArborescence}, which runs in O(m log n) on the arcs as given.
+     * @return - A set of integers, corresponding to the ids of the arcs
+     * in the MSA.
+     */
+    public static HashSet<Integer> minSpanningArborescence(DirectedGraph g, int root, boolean useNative) throws IllegalArgumentException {
+        if (!useNative)
+            return sparseMinSpanningArborescence(g, root);
         try {
             int n = g.getVertices().size();
             int m = g.getEdges().size();
@@ -2906,7 +3003,7 @@ public class CommonAlgorithms {
                 return new HashSet<Integer>();
 
             //error checking
-            if (!g.getInternalEdgeMap().containsKey(root)) {
+            if (!g.getInternalVertexMap().containsKey(root)) {
                 LOGGER.error("You had specified a root that is not in the graph.");
                 throw new IllegalArgumentException();
             }
@@ -3002,8 +3099,49 @@ public class CommonAlgorithms {
         }
     }
 
+    private static HashSet<Integer> sparseMinSpanningArborescence(DirectedGraph g, int root) throws IllegalArgumentException {
+        HashSet<Integer> ans = new HashSet<Integer>();
+        TIntObjectHashMap<DirectedVertex> gVertices = g.getInternalVertexMap();
+        if (!gVertices.containsKey(root)) {
+            LOGGER.error("You had specified a root that is not in the graph.");
+            throw new IllegalArgumentException();
+        }
+
+        //compact the vertex ids
+        int[] vertexIds = gVertices.keys();
+        int n = vertexIds.length;
+        int[] index = new int[g.getVidCounter() + 1];
+        for (int i = 0; i < n; i++)
+            index[vertexIds[i]] = i;
+
+        TIntObjectHashMap<Arc> indexedArcs = g.getInternalEdgeMap();
+        int[] arcIds = indexedArcs.keys();
+        int m = arcIds.length;
+        int[] tails = new int[m];
+        int[] heads = new int[m];
+        long[] costs = new long[m];
+        Arc a;
+        for (int k = 0; k < m; k++) {
+            a = indexedArcs.get(arcIds[k]);
+            tails[k] = index[a.getTail().getId()];
+            heads[k] = index[a.getHead().getId()];
+            costs[k] = a.getCost();
+        }
+
+        int[] in = new MinSpanningArborescence(n, tails, heads, costs).solve(index[root]);
+        if (in == null) {
+            LOGGER.error("There is no spanning arborescence rooted at " + root + "; not every vertex is reachable from it.");
+            return null;
+        }
+        for (int v = 0; v < n; v++)
+            if (in[v] != -1)
+                ans.add(arcIds[in[v]]);
+        return ans;
+    }
+
     /**
-     * Performs  min-cost perfect matching using Kolmogorov's publicly available Blossom V C code.
+     * Performs  min-cost perfect matching using Kolmogorov's publicly available Blossom V C code.  If the native
+     * library cannot be loaded, we fall back to the pure Java implementation in {@link WeightedMatching}.
      *
      * @param graph
      * @return
@@ -3026,23 +3164,185 @@ public class CommonAlgorithms {
             weights[e.getId() - 1] = e.getCost();
         }
 
-
-        int[] ans = BlossomV.blossomV(n, m, edges, weights);
+        int[] ans;
+        try {
+            ans = BlossomV.blossomV(n, m, edges, weights);
+        } catch (LinkageError e) {
+            LOGGER.debug("Blossom V is unavailable; using the pure Java matching instead.");
+            ans = perfectMatching(n, edges, weights);
+            if (ans == null) {
+                LOGGER.error("The matching graph does not admit a perfect matching.");
+                throw new IllegalArgumentException();
+            }
+        }
 
         //to make sure we only report unique pairs, (and not, say 0-1 and 1-0).
-        ArrayList<Integer> matched = new ArrayList<Integer>();
+        boolean[] matched = new boolean[ans.length];
 
         //now reinterpret the results
         for (int i = 0; i < ans.length; i++) {
-            if (matched.contains(i))
+            if (matched[i])
                 continue;
             matching.add(new Pair<UndirectedVertex>(indexedVertices.get(ans[i] + 1), indexedVertices.get(i + 1)));
-            matched.add(ans[i]);
+            matched[ans[i]] = true;
 
         }
         return matching;
     }
 
+    /**
+     * Solves a min-cost perfect matching with {@link WeightedMatching}, by maximizing offset - cost, where the offset
+     * is large enough that every perfect matching outweighs every matching with fewer edges.
+     *
+     * @param n       - the number of vertices, (indexed from zero)
+     * @param edges   - edge k connects edges[2k] and edges[2k+1]
+     * @param weights - edge k has cost weights[k]
+     * @return - the mate array, or null if no perfect matching exists.
+     */
+    private static int[] perfectMatching(int n, int[] edges, int[] weights) {
+        long maxCost = 0;
+        for (int w : weights)
+            maxCost = Math.max(maxCost, w);
+        long offset = maxCost * (n / 2) + 1;
+        long[] transformed = new long[weights.length];
+        for (int k = 0; k < weights.length; k++)
+            transformed[k] = offset - weights[k];
+
+        int[] mate = new WeightedMatching(n, edges, transformed).solve();
+        for (int v = 0; v < n; v++)
+            if (mate[v] == -1)
+                return null;
+        return mate;
+    }
+
+    /**
+     * Performs a min-cost perfect matching on the complete graph over the given vertices, (where the cost of pairing i
+     * and j is dist[i][j]), without ever building that complete graph.  We start from a sparse candidate graph that
+     * connects each vertex to its k closest partners, solve it with {@link WeightedMatching}, and then price every
+     * pair that was left out against the resulting dual solution.  Pairs with negative reduced cost are added to the
+     * candidate graph and we solve again, so the answer is optimal for the complete graph, not just the sparse one.
+     *
+     * @param vertexIds - the ids of the vertices to be matched, (e.g. the odd degree vertices of a graph); there must be
+     *                  an even number of them
+     * @param dist      - the shortest path distance matrix, indexed by vertex id
+     * @param k         - the number of nearest neighbors each vertex is initially connected to
+     * @return - the matched pairs; entries 2i and 2i+1 hold the ids of the vertices in the ith pair.
+     * @throws IllegalArgumentException - if there is an odd number of vertices, or no perfect matching exists.
+     */
+    public static int[] sparseMinCostMatching(int[] vertexIds, int[][] dist, int k) throws IllegalArgumentException {
+        int n = vertexIds.length;
+        if (n % 2 == 1) {
+            LOGGER.error("A perfect matching requires an even number of vertices.");
+            throw new IllegalArgumentException();
+        }
+        int[] ans = new int[n];
+        if (n == 0)
+            return ans;
+        k = Math.max(1, Math.min(k, n - 1));
+
+        //the transformed weight of a pair is offset - cost, so that a max weight matching is a min-cost perfect one
+        long maxCost = 0;
+        int d;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                d = dist[vertexIds[i]][vertexIds[j]];
+                if (d != Integer.MAX_VALUE && d > maxCost)
+                    maxCost = d;
+            }
+        }
+        long offset = maxCost * (n / 2) + 1;
+
+        //candidate pairs are encoded as i * n + j, with i < j
+        long[] candidates = new long[n * k];
+        int numCandidates = 0;
+        int[] nearest = new int[k];
+        int[] nearestDist = new int[k];
+        int found, pos;
+        for (int i = 0; i < n; i++) {
+            found = 0;
+            for (int j = 0; j < n; j++) {
+                if (i == j || (d = dist[vertexIds[i]][vertexIds[j]]) == Integer.MAX_VALUE)
+                    continue;
+                if (found == k && d >= nearestDist[k - 1])
+                    continue;
+                //insertion into the sorted list of the k closest
+                pos = (found < k) ? found++ : k - 1;
+                while (pos > 0 && nearestDist[pos - 1] > d) {
+                    nearest[pos] = nearest[pos - 1];
+                    nearestDist[pos] = nearestDist[pos - 1];
+                    pos--;
+                }
+                nearest[pos] = j;
+                nearestDist[pos] = d;
+            }
+            for (int l = 0; l < found; l++)
+                candidates[numCandidates++] = (i < nearest[l]) ? (long) i * n + nearest[l] : (long) nearest[l] * n + i;
+        }
+
+        int[] mate;
+        while (true) {
+            //dedupe the candidates, and solve the sparse problem
+            Arrays.sort(candidates, 0, numCandidates);
+            int m = 0;
+            for (int l = 0; l < numCandidates; l++)
+                if (m == 0 || candidates[l] != candidates[m - 1])
+                    candidates[m++] = candidates[l];
+            numCandidates = m;
+
+            int[] edges = new int[2 * m];
+            long[] weights = new long[m];
+            for (int l = 0; l < m; l++) {
+                edges[2 * l] = (int) (candidates[l] / n);
+                edges[2 * l + 1] = (int) (candidates[l] % n);
+                weights[l] = offset - dist[vertexIds[edges[2 * l]]][vertexIds[edges[2 * l + 1]]];
+            }
+            WeightedMatching matching = new WeightedMatching(n, edges, weights);
+            mate = matching.solve();
+
+            //price out the pairs that were left out
+            TLongArrayList violated = new TLongArrayList();
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    d = dist[vertexIds[i]][vertexIds[j]];
+                    if (d != Integer.MAX_VALUE && matching.getReducedCost(i, j, offset - d) < 0)
+                        violated.add((long) i * n + j);
+                }
+            }
+            if (violated.size() == 0)
+                break;
+
+            if (numCandidates + violated.size() > candidates.length)
+                candidates = Arrays.copyOf(candidates, Math.max(2 * candidates.length, numCandidates + violated.size()));
+            for (int l = 0; l < violated.size(); l++)
+                candidates[numCandidates++] = violated.get(l);
+        }
+
+        int index = 0;
+        for (int i = 0; i < n; i++) {
+            if (mate[i] == -1) {
+                LOGGER.error("No perfect matching exists; the graph may not be connected.");
+                throw new IllegalArgumentException();
+            }
+            if (mate[i] > i) {
+                ans[index++] = vertexIds[i];
+                ans[index++] = vertexIds[mate[i]];
+            }
+        }
+        return ans;
+    }
+
+    /**
+     * Performs a min-cost perfect matching over the given vertices, with an initial candidate graph of the 10 nearest
+     * neighbors of each vertex.
+     *
+     * @param vertexIds - the ids of the vertices to be matched
+     * @param dist      - the shortest path distance matrix, indexed by vertex id
+     * @return - the matched pairs; entries 2i and 2i+1 hold the ids of the vertices in the ith pair.
+     */
+    public static int[] sparseMinCostMatching(int[] vertexIds, int[][] dist) throws IllegalArgumentException {
+        return sparseMinCostMatching(vertexIds, dist, 10);
+    }
+
     public static WindyGraph collapseIndices(WindyGraph input) {
         try {
             WindyGraph ans = new WindyGraph();
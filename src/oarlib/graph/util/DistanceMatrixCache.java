@@ -0,0 +1,346 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2015 Oliver Lum
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package oarlib.graph.util;
+
+import gnu.trove.TIntObjectHashMap;
+import oarlib.core.Graph;
+import oarlib.core.Link;
+import oarlib.link.impl.AsymmetricLink;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.CRC32;
+
+/**
+ * An optional on-disk cache of the all pairs shortest path matrices of graphs, so that processes which keep
+ * solving the same (large) networks don't have to rerun Floyd-Warshall every time.  When it's enabled,
+ * {@link Graph#getAllPairsDistMatrix()} and friends look here before computing the matrices, and store them here
+ * after computing them.
+ * <p/>
+ * Entries are keyed by a SHA-256 hash of everything that the shortest paths depend on: the number of vertices, and
+ * the id, endpoints, direction and cost(s) of every link.  Each entry is a single file holding the dist, path and edge
+ * path matrices, followed by a CRC32 of them; it is memory-mapped when read, and discarded if the header doesn't
+ * match the graph, or the checksum doesn't match the data.  Files are written under a temporary name and then
+ * renamed into place, so several processes may share a cache directory.  Once the cache grows past its size cap, the
+ * least recently used entries are deleted.
+ * <p/>
+ * The cache may be enabled in code with enable(), or for a whole process by setting the system property
+ * oarlib.distanceCache.dir, (and optionally oarlib.distanceCache.maxMB).
+ *
+ * @author oliverlum
+ */
+public class DistanceMatrixCache {
+
+    private static final Logger LOGGER = Logger.getLogger(DistanceMatrixCache.class);
+
+    private static final int MAGIC = 0x4F415244; //"OARD"
+    private static final int VERSION = 1;
+    private static final int HASH_BYTES = 32;
+    private static final int HEADER_BYTES = 12 + HASH_BYTES; //magic, version, n, hash
+    private static final String SUFFIX = ".apsp";
+
+    private static File mDirectory;
+    private static long mMaxBytes;
+    private static int mMinVertices = 100;
+
+    static {
+        String dir = System.getProperty("oarlib.distanceCache.dir");
+        if (dir != null) {
+            long maxMB = Long.getLong("oarlib.distanceCache.maxMB", 1024L);
+            enable(dir, maxMB << 20);
+        }
+    }
+
+    private DistanceMatrixCache() {
+    }
+
+    /**
+     * Turns the cache on.
+     *
+     * @param directory - the directory to keep the matrices in; it is created if it doesn't exist
+     * @param maxBytes  - the size cap on the cache; least recently used entries are evicted to stay under it
+     */
+    public static synchronized void enable(String directory, long maxBytes) {
+        if (maxBytes <= 0) {
+            LOGGER.warn("Invalid argument.  maxBytes must be > 0.");
+            return;
+        }
+        File dir = new File(directory);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            LOGGER.error("Could not create the distance matrix cache directory " + directory + ".");
+            return;
+        }
+        mDirectory = dir;
+        mMaxBytes = maxBytes;
+    }
+
+    public static synchronized void disable() {
+        mDirectory = null;
+    }
+
+    public static synchronized boolean isEnabled() {
+        return mDirectory != null;
+    }
+
+    /**
+     * @param newMinVertices - graphs with fewer vertices than this aren't worth caching; their matrices are cheaper
+     *                       to compute than to hash, read and verify
+     */
+    public static synchronized void setMinVertices(int newMinVertices) {
+        if (newMinVertices < 0) {
+            LOGGER.warn("Invalid argument.  minVertices must be >= 0.");
+            return;
+        }
+        mMinVertices = newMinVertices;
+    }
+
+    /**
+     * Looks for the shortest path matrices of g in the cache.
+     *
+     * @param g - the graph
+     * @return - {dist, path, edgePath}, as filled by CommonAlgorithms.fwLeastCostPaths, or null if the cache is
+     * disabled, or doesn't have (a valid copy of) them.
+     */
+    public static int[][][] load(Graph<?, ?> g) {
+        File dir;
+        synchronized (DistanceMatrixCache.class) {
+            dir = mDirectory;
+            if (dir == null || g.getVertices().size() < mMinVertices)
+                return null;
+        }
+
+        int n = g.getVertices().size();
+        byte[] hash = contentHash(g);
+        File f = new File(dir, toHex(hash) + SUFFIX);
+        if (!f.exists())
+            return null;
+
+        try {
+            FileChannel fc = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+            long size = fc.size();
+            long matrixBytes = 4L * (n + 1) * (n + 1);
+            if (size != HEADER_BYTES + 3 * matrixBytes + 8) {
+                fc.close();
+                return discard(f, "it is the wrong size");
+            }
+            ByteBuffer buf = fc.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            fc.close();
+
+            byte[] storedHash = new byte[HASH_BYTES];
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION || buf.getInt() != n)
+                return discard(f, "its header doesn't match");
+            buf.get(storedHash);
+            if (!Arrays.equals(hash, storedHash))
+                return discard(f, "it belongs to a different graph");
+
+            //integrity check
+            ByteBuffer payload = buf.duplicate();
+            payload.position(HEADER_BYTES);
+            payload.limit((int) (HEADER_BYTES + 3 * matrixBytes));
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if (buf.getLong((int) (HEADER_BYTES + 3 * matrixBytes)) != crc.getValue())
+                return discard(f, "its checksum doesn't match");
+
+            buf.position(HEADER_BYTES);
+            IntBuffer ints = buf.asIntBuffer();
+            int[][][] ans = new int[3][n + 1][n + 1];
+            for (int[][] matrix : ans)
+                for (int[] row : matrix)
+                    ints.get(row);
+
+            //so the size cap evicts the least recently used entries
+            f.setLastModified(System.currentTimeMillis());
+            return ans;
+        } catch (IOException e) {
+            LOGGER.warn("Could not read " + f.getPath() + " from the distance matrix cache.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the shortest path matrices of g in the cache, if it's enabled.
+     *
+     * @param g        - the graph
+     * @param dist     - the dist matrix
+     * @param path     - the path matrix
+     * @param edgePath - the edge path matrix
+     */
+    public static void store(Graph<?, ?> g, int[][] dist, int[][] path, int[][] edgePath) {
+        File dir;
+        long maxBytes;
+        synchronized (DistanceMatrixCache.class) {
+            dir = mDirectory;
+            maxBytes = mMaxBytes;
+            if (dir == null || g.getVertices().size() < mMinVertices)
+                return;
+        }
+
+        int n = g.getVertices().size();
+        long matrixBytes = 4L * (n + 1) * (n + 1);
+        long size = HEADER_BYTES + 3 * matrixBytes + 8;
+        if (size > maxBytes || 3 * matrixBytes > Integer.MAX_VALUE) {
+            LOGGER.debug("The shortest path matrices are too large to cache.");
+            return;
+        }
+
+        byte[] hash = contentHash(g);
+        File f = new File(dir, toHex(hash) + SUFFIX);
+        File tmp = null;
+        try {
+            ByteBuffer buf = ByteBuffer.allocateDirect((int) size);
+            buf.putInt(MAGIC);
+            buf.putInt(VERSION);
+            buf.putInt(n);
+            buf.put(hash);
+            IntBuffer ints = buf.asIntBuffer();
+            for (int[][] matrix : new int[][][]{dist, path, edgePath})
+                for (int[] row : matrix)
+                    ints.put(row);
+
+            ByteBuffer payload = buf.duplicate();
+            payload.position(HEADER_BYTES);
+            payload.limit((int) (HEADER_BYTES + 3 * matrixBytes));
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            buf.putLong((int) (HEADER_BYTES + 3 * matrixBytes), crc.getValue());
+            buf.position(0);
+
+            //write it under a unique name, and move it into place, so readers never see a partial file
+            tmp = File.createTempFile(toHex(hash), ".tmp", dir);
+            FileChannel fc = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE);
+            while (buf.hasRemaining())
+                fc.write(buf);
+            fc.close();
+            Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tmp = null;
+
+            evict(dir, maxBytes);
+        } catch (IOException e) {
+            LOGGER.warn("Could not write " + f.getPath() + " to the distance matrix cache.", e);
+        } finally {
+            if (tmp != null)
+                tmp.delete();
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache is under its size cap.
+     */
+    private static void evict(File dir, long maxBytes) {
+        File[] entries = dir.listFiles();
+        if (entries == null)
+            return;
+        long total = 0;
+        for (File f : entries)
+            if (f.getName().endsWith(SUFFIX))
+                total += f.length();
+        if (total <= maxBytes)
+            return;
+
+        Arrays.sort(entries, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return Long.compare(o1.lastModified(), o2.lastModified());
+            }
+        });
+        for (File f : entries) {
+            if (total <= maxBytes)
+                break;
+            if (!f.getName().endsWith(SUFFIX))
+                continue;
+            long len = f.length();
+            if (f.delete())
+                total -= len;
+        }
+    }
+
+    private static int[][][] discard(File f, String reason) {
+        LOGGER.warn("Discarding " + f.getPath() + " from the distance matrix cache because " + reason + ".");
+        f.delete();
+        return null;
+    }
+
+    /**
+     * @return - a SHA-256 hash of everything the shortest path matrices of g depend on.
+     */
+    static byte[] contentHash(Graph<?, ?> g) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            TIntObjectHashMap<? extends Link<?>> links = g.getInternalEdgeMap();
+            int[] linkIds = links.keys();
+            Arrays.sort(linkIds);
+
+            ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+            buf.putInt(g.getVertices().size());
+            buf.putInt(linkIds.length);
+            Link<?> l;
+            for (int id : linkIds) {
+                if (buf.remaining() < 21) {
+                    buf.flip();
+                    md.update(buf);
+                    buf.clear();
+                }
+                l = links.get(id);
+                buf.putInt(id);
+                buf.putInt(l.getFirstEndpointId());
+                buf.putInt(l.getSecondEndpointId());
+                buf.putInt(l.getCost());
+                if (l.isDirected()) {
+                    buf.put((byte) 1);
+                    buf.putInt(0);
+                } else {
+                    buf.put((byte) 0);
+                    buf.putInt(l instanceof AsymmetricLink ? ((AsymmetricLink) l).getReverseCost() : l.getCost());
+                }
+            }
+            buf.flip();
+            md.update(buf);
+            return md.digest();
+        } catch (Exception e) {
+            //SHA-256 is always available
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2015 Oliver Lum
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package oarlib.graph.util;
+
+import gnu.trove.TIntArrayList;
+import oarlib.core.Vertex;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Static 2-d tree over a set of planar points, each tagged with an integer id.  Intended for the geometric
+ * partitioners and aesthetic solvers, where we repeatedly have to find the closest of a set of centers to a
+ * customer coordinate, and for meter modelling, where we need everything within read range of a street.
+ * Construction is O(n log^2 n); nearest neighbor queries are O(log n) on average, k nearest neighbor queries
+ * O(k log n), and radius queries O(sqrt(n) + the number of points found).
+ * <p/>
+ * Trees may be built over vertices, (see fromVertices), or over customer coordinates, such as the required link
+ * midpoints given by Utils.assignCustomersToCoordinates, (see the map constructor).
+ * <p/>
+ * The tree is stored implicitly: the points are permuted so that the median of each range is the splitting
+ * node for that range, alternating between the x and y axis with depth.
+ * <p/>
+ * Queries answer exactly as a linear scan over the points, (in the order they were given), would: ties in distance
+ * go to the point that came first, and radius queries return the points in the order they were given.
+ *
+ * @author oliverlum
+ */
+public class KDTree {
+
+    private double[] mX;
+    private double[] mY;
+    private int[] mIds;
+    private int[] mOrder; //the position of each node's point in the arrays the tree was built from
+    private int[] mIdsInOrder;
+    private int mSize;
+
+    /**
+     * @param x   - the x coordinates of the points
+     * @param y   - the y coordinates of the points
+     * @param ids - the ids of the points; nearest neighbor queries return these ids
+     * @throws IllegalArgumentException - if the arrays are not of the same length
+     */
+    public KDTree(double[] x, double[] y, int[] ids) throws IllegalArgumentException {
+        if (x.length != y.length || x.length != ids.length)
+            throw new IllegalArgumentException("The coordinate and id arrays must be of the same length.");
+
+        mSize = x.length;
+        mX = new double[mSize];
+        mY = new double[mSize];
+        mIds = new int[mSize];
+        mOrder = new int[mSize];
+        mIdsInOrder = Arrays.copyOf(ids, mSize);
+
+        Integer[] order = new Integer[mSize];
+        for (int i = 0; i < mSize; i++)
+            order[i] = i;
+
+        build(order, x, y, ids, 0, mSize, 0);
+    }
+
+    /**
+     * Convenience constructor for points stored as pairs; the id of each point is its index in the list.
+     *
+     * @param points - the points to index
+     */
+    public KDTree(List<Pair<Double>> points) {
+        this(xCoords(points), yCoords(points), indices(points.size()));
+    }
+
+    /**
+     * Convenience constructor for points keyed by id, (e.g. the output of Utils.assignCustomersToCoordinates, where
+     * the ids are link ids).
+     *
+     * @param points - the points to index; key = id, value = coordinates
+     */
+    public KDTree(Map<Integer, Pair<Double>> points) {
+        this(xCoords(points.values()), yCoords(points.values()), keys(points));
+    }
+
+    /**
+     * Indexes the coordinates of the vertices provided.
+     *
+     * @param vertices - the vertices to index
+     * @return - a tree whose queries return vertex ids
+     */
+    public static KDTree fromVertices(Collection<? extends Vertex> vertices) {
+        double[] x = new double[vertices.size()];
+        double[] y = new double[vertices.size()];
+        int[] ids = new int[vertices.size()];
+        int i = 0;
+        for (Vertex v : vertices) {
+            x[i] = v.getX();
+            y[i] = v.getY();
+            ids[i] = v.getId();
+            i++;
+        }
+        return new KDTree(x, y, ids);
+    }
+
+    private static double[] xCoords(Collection<Pair<Double>> points) {
+        double[] ans = new double[points.size()];
+        int i = 0;
+        for (Pair<Double> p : points)
+            ans[i++] = p.getFirst();
+        return ans;
+    }
+
+    private static double[] yCoords(Collection<Pair<Double>> points) {
+        double[] ans = new double[points.size()];
+        int i = 0;
+        for (Pair<Double> p : points)
+            ans[i++] = p.getSecond();
+        return ans;
+    }
+
+    private static int[] keys(Map<Integer, Pair<Double>> points) {
+        int[] ans = new int[points.size()];
+        int i = 0;
+        for (Integer id : points.keySet())
+            ans[i++] = id;
+        return ans;
+    }
+
+    private static int[] indices(int n) {
+        int[] ans = new int[n];
+        for (int i = 0; i < n; i++)
+            ans[i] = i;
+        return ans;
+    }
+
+    private void build(Integer[] order, final double[] x, final double[] y, int[] ids, int lo, int hi, int depth) {
+
+        if (lo >= hi)
+            return;
+
+        final boolean splitOnX = (depth % 2 == 0);
+        Arrays.sort(order, lo, hi, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return splitOnX ? Double.compare(x[o1], x[o2]) : Double.compare(y[o1], y[o2]);
+            }
+        });
+
+        //the median is the node for this range
+        int mid = (lo + hi) >>> 1;
+        mX[mid] = x[order[mid]];
+        mY[mid] = y[order[mid]];
+        mIds[mid] = ids[order[mid]];
+        mOrder[mid] = order[mid];
+
+        build(order, x, y, ids, lo, mid, depth + 1);
+        build(order, x, y, ids, mid + 1, hi, depth + 1);
+    }
+
+    /**
+     * @return - the number of points stored in the tree
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Finds the point in the tree that is closest (in Euclidean distance) to the query point.
+     *
+     * @param x - the x coordinate of the query point
+     * @param y - the y coordinate of the query point
+     * @return - the id of the closest point, (the first one given, if there's a tie), or -1 if the tree is empty
+     */
+    public int nearest(double x, double y) {
+        //best[0] = index of the best point so far, best[1] = its squared distance
+        double[] best = new double[]{-1, Double.MAX_VALUE};
+        nearest(x, y, 0, mSize, 0, best);
+        return best[0] == -1 ? -1 : mIds[(int) best[0]];
+    }
+
+    private void nearest(double x, double y, int lo, int hi, int depth, double[] best) {
+
+        if (lo >= hi)
+            return;
+
+        int mid = (lo + hi) >>> 1;
+        double dx = mX[mid] - x;
+        double dy = mY[mid] - y;
+        double d = dx * dx + dy * dy;
+        if (d < best[1] || (d == best[1] && mOrder[mid] < mOrder[(int) best[0]])) {
+            best[0] = mid;
+            best[1] = d;
+        }
+
+        double diff = (depth % 2 == 0) ? x - mX[mid] : y - mY[mid];
+
+        //search the near side first, and only cross the splitting line if we have to, (or if a tie may lie across it)
+        if (diff < 0) {
+            nearest(x, y, lo, mid, depth + 1, best);
+            if (diff * diff <= best[1])
+                nearest(x, y, mid + 1, hi, depth + 1, best);
+        } else {
+            nearest(x, y, mid + 1, hi, depth + 1, best);
+            if (diff * diff <= best[1])
+                nearest(x, y, lo, mid, depth + 1, best);
+        }
+    }
+
+    /**
+     * Finds the k points in the tree that are closest (in Euclidean distance) to the query point.
+     *
+     * @param x - the x coordinate of the query point
+     * @param y - the y coordinate of the query point
+     * @param k - the number of points to find
+     * @return - the ids of the min(k, size()) closest points, closest first, (and ties in the order the points were
+     * given)
+     */
+    public int[] nearest(double x, double y, int k) {
+        if (k < 0)
+            throw new IllegalArgumentException("k must be >= 0.");
+
+        //a max-heap on distance of the best k so far, so that the worst of them is always at the root
+        int cap = Math.min(k, mSize);
+        int[] heapIndex = new int[cap];
+        double[] heapDist = new double[cap];
+        int heapSize = nearest(x, y, 0, mSize, 0, heapIndex, heapDist, 0);
+
+        //pop them off, worst first
+        int[] ans = new int[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            ans[i] = mIds[heapIndex[0]];
+            heapIndex[0] = heapIndex[i];
+            heapDist[0] = heapDist[i];
+            siftDown(heapIndex, heapDist, i);
+        }
+        return ans;
+    }
+
+    private int nearest(double x, double y, int lo, int hi, int depth, int[] heapIndex, double[] heapDist, int heapSize) {
+
+        if (lo >= hi || heapIndex.length == 0)
+            return heapSize;
+
+        int mid = (lo + hi) >>> 1;
+        double dx = mX[mid] - x;
+        double dy = mY[mid] - y;
+        double d = dx * dx + dy * dy;
+        if (heapSize < heapIndex.length) {
+            //sift up
+            int i = heapSize++;
+            while (i > 0 && worse(d, mOrder[mid], heapDist[(i - 1) / 2], mOrder[heapIndex[(i - 1) / 2]])) {
+                heapIndex[i] = heapIndex[(i - 1) / 2];
+                heapDist[i] = heapDist[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            heapIndex[i] = mid;
+            heapDist[i] = d;
+        } else if (worse(heapDist[0], mOrder[heapIndex[0]], d, mOrder[mid])) {
+            heapIndex[0] = mid;
+            heapDist[0] = d;
+            siftDown(heapIndex, heapDist, heapSize);
+        }
+
+        double diff = (depth % 2 == 0) ? x - mX[mid] : y - mY[mid];
+
+        //search the near side first, and only cross the splitting line if we have to
+        if (diff < 0) {
+            heapSize = nearest(x, y, lo, mid, depth + 1, heapIndex, heapDist, heapSize);
+            if (heapSize < heapIndex.length || diff * diff <= heapDist[0])
+                heapSize = nearest(x, y, mid + 1, hi, depth + 1, heapIndex, heapDist, heapSize);
+        } else {
+            heapSize = nearest(x, y, mid + 1, hi, depth + 1, heapIndex, heapDist, heapSize);
+            if (heapSize < heapIndex.length || diff * diff <= heapDist[0])
+                heapSize = nearest(x, y, lo, mid, depth + 1, heapIndex, heapDist, heapSize);
+        }
+        return heapSize;
+    }
+
+    /**
+     * @return - true if the point at squared distance d1, given at position order1, should come after the one at d2,
+     * given at position order2
+     */
+    private static boolean worse(double d1, int order1, double d2, int order2) {
+        return d1 > d2 || (d1 == d2 && order1 > order2);
+    }
+
+    private void siftDown(int[] heapIndex, double[] heapDist, int heapSize) {
+        int i = 0;
+        int index = heapIndex[0];
+        double d = heapDist[0];
+        while (2 * i + 1 < heapSize) {
+            int child = 2 * i + 1;
+            if (child + 1 < heapSize && worse(heapDist[child + 1], mOrder[heapIndex[child + 1]], heapDist[child], mOrder[heapIndex[child]]))
+                child++;
+            if (!worse(heapDist[child], mOrder[heapIndex[child]], d, mOrder[index]))
+                break;
+            heapIndex[i] = heapIndex[child];
+            heapDist[i] = heapDist[child];
+            i = child;
+        }
+        heapIndex[i] = index;
+        heapDist[i] = d;
+    }
+
+    /**
+     * Finds all of the points in the tree within the given (Euclidean) distance of the query point.
+     *
+     * @param x      - the x coordinate of the query point
+     * @param y      - the y coordinate of the query point
+     * @param radius - the search radius; points at exactly this distance are included
+     * @return - the ids of the points found, in the order the points were given
+     */
+    public int[] withinRadius(double x, double y, double radius) {
+        TIntArrayList found = new TIntArrayList();
+        if (radius >= 0)
+            withinRadius(x, y, radius * radius, 0, mSize, 0, found);
+        found.sort();
+        int[] ans = new int[found.size()];
+        for (int i = 0; i < ans.length; i++)
+            ans[i] = mIdsInOrder[found.get(i)];
+        return ans;
+    }
+
+    private void withinRadius(double x, double y, double r2, int lo, int hi, int depth, TIntArrayList ans) {
+
+        if (lo >= hi)
+            return;
+
+        int mid = (lo + hi) >>> 1;
+        double dx = mX[mid] - x;
+        double dy = mY[mid] - y;
+        if (dx * dx + dy * dy <= r2)
+            ans.add(mOrder[mid]);
+
+        double diff = (depth % 2 == 0) ? x - mX[mid] : y - mY[mid];
+        if (diff < 0 || diff * diff <= r2)
+            withinRadius(x, y, r2, lo, mid, depth + 1, ans);
+        if (diff >= 0 || diff * diff <= r2)
+            withinRadius(x, y, r2, mid + 1, hi, depth + 1, ans);
+    }
+}
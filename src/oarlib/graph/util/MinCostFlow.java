@@ -0,0 +1,793 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2015 Oliver Lum
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package oarlib.graph.util;
+
+import gnu.trove.TIntArrayList;
+
+import java.util.Arrays;
+
+/**
+ * Primitive array min cost flow solver.  By default, it implements the primal network simplex method with a block
+ * search pivot rule.  The spanning tree is stored with parent / thread / subtree size arrays, so that a pivot only
+ * touches the nodes on the cycle and in the subtree that gets moved, (this follows the implementation in the LEMON library).
+ * <p/>
+ * Alternatively, successive shortest paths may be selected with setAlgorithm.  Node potentials are kept in a primitive
+ * array, Dijkstra runs on reduced costs over a CSR residual network and stops as soon as it settles a deficit node, and
+ * each augmentation pushes the bottleneck amount.  For the small balancing problems solved repeatedly inside the mixed
+ * and windy heuristics, (few units of supply and short paths), this is usually faster than building the simplex tree.
+ * <p/>
+ * Nodes are numbered 1 through n to match vertex ids.  Arcs are numbered 0, 1, 2, ... in the order they are added.
+ * Supplies are positive, demands are negative, and they must sum to zero.  Arcs may be left uncapacitated.
+ *
+ * @author oliverlum
+ */
+public class MinCostFlow {
+
+    public enum Algorithm {
+        NETWORK_SIMPLEX,
+        SUCCESSIVE_SHORTEST_PATHS
+    }
+
+    public static final int INFINITE_CAPACITY = -1;
+
+    private static final int STATE_UPPER = -1;
+    private static final int STATE_TREE = 0;
+    private static final int STATE_LOWER = 1;
+    private static final int DIR_UP = 1;
+    private static final int DIR_DOWN = -1;
+    private static final long INF = Long.MAX_VALUE / 4;
+
+    private int mNodeNum;
+    private int mArcNum;
+    private long[] mSupply;
+
+    //arc data; grows as arcs are added, and gets artificial arcs appended in solve
+    private int[] mSource;
+    private int[] mTarget;
+    private long[] mCap;
+    private long[] mCost;
+    private long[] mFlow;
+    private int[] mState;
+
+    //spanning tree data
+    private int mRoot;
+    private long[] mPi;
+    private int[] mParent;
+    private int[] mPred;
+    private int[] mThread;
+    private int[] mRevThread;
+    private int[] mSuccNum;
+    private int[] mLastSucc;
+    private int[] mPredDir;
+    private TIntArrayList mDirtyRevs;
+
+    //pivot data
+    private int mInArc, mJoin, mUIn, mVIn, mUOut, mVOut;
+    private long mDelta;
+    private int mBlockSize;
+    private int mNextArc;
+
+    private Algorithm mAlgorithm;
+    private boolean mSolved;
+    private long mTotalCost;
+
+    /**
+     * @param n - the number of nodes; nodes are numbered 1 through n
+     */
+    public MinCostFlow(int n) {
+        mNodeNum = n;
+        mSupply = new long[n];
+        mArcNum = 0;
+        int initialCap = Math.max(16, 4 * n);
+        mSource = new int[initialCap];
+        mTarget = new int[initialCap];
+        mCap = new long[initialCap];
+        mCost = new long[initialCap];
+        mAlgorithm = Algorithm.NETWORK_SIMPLEX;
+        mSolved = false;
+    }
+
+    /**
+     * Adds an arc from tail to head.
+     *
+     * @param tail     - the tail node, (1 through n)
+     * @param head     - the head node, (1 through n)
+     * @param capacity - the capacity of the arc, or INFINITE_CAPACITY
+     * @param cost     - the cost of pushing a unit of flow across the arc
+     * @return - the index of the arc, (for retrieving its flow later)
+     * @throws IllegalArgumentException - if the endpoints are out of range, or the capacity is negative
+     */
+    public int addArc(int tail, int head, int capacity, int cost) throws IllegalArgumentException {
+        if (tail < 1 || tail > mNodeNum || head < 1 || head > mNodeNum)
+            throw new IllegalArgumentException("The endpoints of the arc do not fall within the valid range.");
+        if (capacity < 0 && capacity != INFINITE_CAPACITY)
+            throw new IllegalArgumentException("Capacities must be non-negative.");
+
+        if (mArcNum == mSource.length) {
+            int newLength = 2 * mSource.length;
+            mSource = Arrays.copyOf(mSource, newLength);
+            mTarget = Arrays.copyOf(mTarget, newLength);
+            mCap = Arrays.copyOf(mCap, newLength);
+            mCost = Arrays.copyOf(mCost, newLength);
+        }
+        mSource[mArcNum] = tail - 1;
+        mTarget[mArcNum] = head - 1;
+        mCap[mArcNum] = capacity == INFINITE_CAPACITY ? INF : capacity;
+        mCost[mArcNum] = cost;
+        mSolved = false;
+        return mArcNum++;
+    }
+
+    /**
+     * @param node   - the node, (1 through n)
+     * @param supply - the supply at the node; negative values indicate demand
+     */
+    public void setSupply(int node, int supply) {
+        mSupply[node - 1] = supply;
+        mSolved = false;
+    }
+
+    public int getNumArcs() {
+        return mArcNum;
+    }
+
+    /**
+     * @param algorithm - the algorithm that solve will use
+     */
+    public void setAlgorithm(Algorithm algorithm) {
+        mAlgorithm = algorithm;
+        mSolved = false;
+    }
+
+    /**
+     * Solves the min cost flow problem.
+     *
+     * @return - the cost of the min cost flow
+     * @throws IllegalArgumentException - if the supplies don't sum to zero, there is no feasible flow, or the problem
+     *                                  is unbounded (a negative cost cycle of infinite capacity).
+     */
+    public long solve() throws IllegalArgumentException {
+
+        long sum = 0;
+        for (long s : mSupply)
+            sum += s;
+        if (sum != 0)
+            throw new IllegalArgumentException("The supplies and demands do not sum to zero.");
+
+        if (mAlgorithm == Algorithm.SUCCESSIVE_SHORTEST_PATHS)
+            solveSuccessiveShortestPaths();
+        else
+            solveNetworkSimplex();
+
+        mTotalCost = 0;
+        for (int e = 0; e < mArcNum; e++)
+            mTotalCost += mFlow[e] * mCost[e];
+        mSolved = true;
+        return mTotalCost;
+    }
+
+    private void solveNetworkSimplex() {
+
+        init();
+
+        while (findEnteringArc()) {
+            findJoinNode();
+            boolean change = findLeavingArc();
+            if (mDelta >= INF)
+                throw new IllegalArgumentException("The flow problem is unbounded.");
+            changeFlow(change);
+            if (change) {
+                updateTreeStructure();
+                updatePotential();
+            }
+        }
+
+        //feasibility: no flow may remain on the artificial arcs
+        for (int e = mArcNum; e < mArcNum + mNodeNum; e++) {
+            if (mFlow[e] != 0)
+                throw new IllegalArgumentException("There is no feasible flow for this problem.");
+        }
+    }
+
+    /**
+     * @param arc - the index of the arc, as returned by addArc
+     * @return - the amount of flow on the arc in the min cost solution
+     */
+    public int getFlow(int arc) {
+        if (!mSolved)
+            throw new IllegalStateException("The flow problem has not been solved yet.");
+        return (int) mFlow[arc];
+    }
+
+    public long getTotalCost() {
+        if (!mSolved)
+            throw new IllegalStateException("The flow problem has not been solved yet.");
+        return mTotalCost;
+    }
+
+    /**
+     * @param node - the node, (1 through n)
+     * @return - the dual value (potential) of the node in the optimal solution
+     */
+    public long getPotential(int node) {
+        if (!mSolved)
+            throw new IllegalStateException("The flow problem has not been solved yet.");
+        return mPi[node - 1];
+    }
+
+    /**
+     * Sets up the initial feasible tree, which consists of artificial arcs between each node and the root.
+     */
+    private void init() {
+
+        int n = mNodeNum;
+        int all = mArcNum + n;
+        mSource = Arrays.copyOf(mSource, all);
+        mTarget = Arrays.copyOf(mTarget, all);
+        mCap = Arrays.copyOf(mCap, all);
+        mCost = Arrays.copyOf(mCost, all);
+        mFlow = new long[all];
+        mState = new int[all];
+
+        mRoot = n;
+        mPi = new long[n + 1];
+        mParent = new int[n + 1];
+        mPred = new int[n + 1];
+        mThread = new int[n + 1];
+        mRevThread = new int[n + 1];
+        mSuccNum = new int[n + 1];
+        mLastSucc = new int[n + 1];
+        mPredDir = new int[n + 1];
+        mDirtyRevs = new TIntArrayList();
+
+        //an artificial cost large enough that no optimal solution uses the artificial arcs
+        long artCost = 0;
+        for (int e = 0; e < mArcNum; e++)
+            artCost = Math.max(artCost, Math.abs(mCost[e]));
+        artCost = (artCost + 1) * (n + 1);
+
+        for (int e = 0; e < mArcNum; e++)
+            mState[e] = STATE_LOWER;
+
+        mParent[mRoot] = -1;
+        mPred[mRoot] = -1;
+        mThread[mRoot] = 0;
+        mRevThread[0] = mRoot;
+        mSuccNum[mRoot] = n + 1;
+        mLastSucc[mRoot] = mRoot - 1;
+        mPi[mRoot] = 0;
+
+        for (int u = 0, e = mArcNum; u < n; u++, e++) {
+            mParent[u] = mRoot;
+            mPred[u] = e;
+            mThread[u] = u + 1;
+            mRevThread[u + 1] = u;
+            mSuccNum[u] = 1;
+            mLastSucc[u] = u;
+            mCap[e] = INF;
+            mState[e] = STATE_TREE;
+            if (mSupply[u] >= 0) {
+                mPredDir[u] = DIR_UP;
+                mPi[u] = 0;
+                mSource[e] = u;
+                mTarget[e] = mRoot;
+                mFlow[e] = mSupply[u];
+                mCost[e] = 0;
+            } else {
+                mPredDir[u] = DIR_DOWN;
+                mPi[u] = artCost;
+                mSource[e] = mRoot;
+                mTarget[e] = u;
+                mFlow[e] = -mSupply[u];
+                mCost[e] = artCost;
+            }
+        }
+
+        mBlockSize = Math.max((int) Math.sqrt(mArcNum + n), 10);
+        mNextArc = 0;
+    }
+
+    /**
+     * Block search pivot rule: scan the arcs in blocks, and take the most violating arc of the first block that
+     * contains a violating arc.
+     *
+     * @return - false if no arc violates the optimality conditions
+     */
+    private boolean findEnteringArc() {
+        int all = mArcNum + mNodeNum;
+        long c, min = 0;
+        int cnt = mBlockSize;
+        int e;
+        for (e = mNextArc; e < all; e++) {
+            c = mState[e] * (mCost[e] + mPi[mSource[e]] - mPi[mTarget[e]]);
+            if (c < min) {
+                min = c;
+                mInArc = e;
+            }
+            if (--cnt == 0) {
+                if (min < 0)
+                    break;
+                cnt = mBlockSize;
+            }
+        }
+        if (min >= 0) {
+            for (e = 0; e < mNextArc; e++) {
+                c = mState[e] * (mCost[e] + mPi[mSource[e]] - mPi[mTarget[e]]);
+                if (c < min) {
+                    min = c;
+                    mInArc = e;
+                }
+                if (--cnt == 0) {
+                    if (min < 0)
+                        break;
+                    cnt = mBlockSize;
+                }
+            }
+        }
+        if (min >= 0)
+            return false;
+        mNextArc = e;
+        return true;
+    }
+
+    private void findJoinNode() {
+        int u = mSource[mInArc];
+        int v = mTarget[mInArc];
+        while (u != v) {
+            if (mSuccNum[u] < mSuccNum[v])
+                u = mParent[u];
+            else
+                v = mParent[v];
+        }
+        mJoin = u;
+    }
+
+    /**
+     * Finds the arc that leaves the tree, (the first blocking arc on the cycle).
+     *
+     * @return - true if the leaving arc is a tree arc, false if it is the entering arc itself
+     */
+    private boolean findLeavingArc() {
+        int first, second;
+        if (mState[mInArc] == STATE_LOWER) {
+            first = mSource[mInArc];
+            second = mTarget[mInArc];
+        } else {
+            first = mTarget[mInArc];
+            second = mSource[mInArc];
+        }
+        mDelta = mCap[mInArc];
+        int result = 0;
+        long d;
+        int e;
+
+        for (int u = first; u != mJoin; u = mParent[u]) {
+            e = mPred[u];
+            d = mFlow[e];
+            if (mPredDir[u] == DIR_DOWN)
+                d = mCap[e] >= INF ? INF : mCap[e] - d;
+            if (d < mDelta) {
+                mDelta = d;
+                mUOut = u;
+                result = 1;
+            }
+        }
+
+        for (int u = second; u != mJoin; u = mParent[u]) {
+            e = mPred[u];
+            d = mFlow[e];
+            if (mPredDir[u] == DIR_UP)
+                d = mCap[e] >= INF ? INF : mCap[e] - d;
+            if (d <= mDelta) {
+                mDelta = d;
+                mUOut = u;
+                result = 2;
+            }
+        }
+
+        if (result == 1) {
+            mUIn = first;
+            mVIn = second;
+        } else {
+            mUIn = second;
+            mVIn = first;
+        }
+        return result != 0;
+    }
+
+    private void changeFlow(boolean change) {
+        if (mDelta > 0) {
+            long val = mState[mInArc] * mDelta;
+            mFlow[mInArc] += val;
+            for (int u = mSource[mInArc]; u != mJoin; u = mParent[u])
+                mFlow[mPred[u]] -= mPredDir[u] * val;
+            for (int u = mTarget[mInArc]; u != mJoin; u = mParent[u])
+                mFlow[mPred[u]] += mPredDir[u] * val;
+        }
+        if (change) {
+            mState[mInArc] = STATE_TREE;
+            mState[mPred[mUOut]] = (mFlow[mPred[mUOut]] == 0) ? STATE_LOWER : STATE_UPPER;
+        } else {
+            mState[mInArc] = -mState[mInArc];
+        }
+    }
+
+    /**
+     * Re-hangs the subtree below the leaving arc from the entering arc, updating the thread, parent, predecessor and
+     * subtree data.
+     */
+    private void updateTreeStructure() {
+        int oldRevThread = mRevThread[mUOut];
+        int oldSuccNum = mSuccNum[mUOut];
+        int oldLastSucc = mLastSucc[mUOut];
+        mVOut = mParent[mUOut];
+
+        if (mUIn == mUOut) {
+            mParent[mUIn] = mVIn;
+            mPred[mUIn] = mInArc;
+            mPredDir[mUIn] = mUIn == mSource[mInArc] ? DIR_UP : DIR_DOWN;
+
+            if (mThread[mVIn] != mUOut) {
+                int after = mThread[oldLastSucc];
+                mThread[oldRevThread] = after;
+                mRevThread[after] = oldRevThread;
+                after = mThread[mVIn];
+                mThread[mVIn] = mUOut;
+                mRevThread[mUOut] = mVIn;
+                mThread[oldLastSucc] = after;
+                mRevThread[after] = oldLastSucc;
+            }
+        } else {
+            int threadContinue = oldRevThread == mVIn ? mThread[oldLastSucc] : mThread[mVIn];
+
+            //update thread and parent along the stem nodes
+            int stem = mUIn;
+            int parStem = mVIn;
+            int nextStem;
+            int last = mLastSucc[mUIn];
+            int before, after = mThread[last];
+            mThread[mVIn] = mUIn;
+            mDirtyRevs.clear();
+            mDirtyRevs.add(mVIn);
+            while (stem != mUOut) {
+                nextStem = mParent[stem];
+                mThread[last] = nextStem;
+                mDirtyRevs.add(last);
+
+                before = mRevThread[stem];
+                mThread[before] = after;
+                mRevThread[after] = before;
+
+                mParent[stem] = parStem;
+                parStem = stem;
+                stem = nextStem;
+
+                last = mLastSucc[stem] == mLastSucc[parStem] ? mRevThread[parStem] : mLastSucc[stem];
+                after = mThread[last];
+            }
+            mParent[mUOut] = parStem;
+            mThread[last] = threadContinue;
+            mRevThread[threadContinue] = last;
+            mLastSucc[mUOut] = last;
+
+            if (oldRevThread != mVIn) {
+                mThread[oldRevThread] = after;
+                mRevThread[after] = oldRevThread;
+            }
+
+            for (int i = 0; i < mDirtyRevs.size(); i++) {
+                int u = mDirtyRevs.get(i);
+                mRevThread[mThread[u]] = u;
+            }
+
+            //update pred, pred dir, last succ and succ num along the stem
+            int tmpSc = 0, tmpLs = mLastSucc[mUOut];
+            for (int u = mUOut, p = mParent[u]; u != mUIn; u = p, p = mParent[u]) {
+                mPred[u] = mPred[p];
+                mPredDir[u] = -mPredDir[p];
+                tmpSc += mSuccNum[u] - mSuccNum[p];
+                mSuccNum[u] = tmpSc;
+                mLastSucc[p] = tmpLs;
+            }
+            mPred[mUIn] = mInArc;
+            mPredDir[mUIn] = mUIn == mSource[mInArc] ? DIR_UP : DIR_DOWN;
+            mSuccNum[mUIn] = oldSuccNum;
+        }
+
+        //update last succ from v_in towards the root
+        int upLimitOut = mLastSucc[mJoin] == mVIn ? mJoin : -1;
+        int lastSuccOut = mLastSucc[mUOut];
+        for (int u = mVIn; u != -1 && mLastSucc[u] == mVIn; u = mParent[u])
+            mLastSucc[u] = lastSuccOut;
+
+        //update last succ from v_out towards the root
+        if (mJoin != oldRevThread && mVIn != oldRevThread) {
+            for (int u = mVOut; u != upLimitOut && mLastSucc[u] == oldLastSucc; u = mParent[u])
+                mLastSucc[u] = oldRevThread;
+        } else if (lastSuccOut != oldLastSucc) {
+            for (int u = mVOut; u != upLimitOut && mLastSucc[u] == oldLastSucc; u = mParent[u])
+                mLastSucc[u] = lastSuccOut;
+        }
+
+        //update succ num from v_in and v_out to the join
+        for (int u = mVIn; u != mJoin; u = mParent[u])
+            mSuccNum[u] += oldSuccNum;
+        for (int u = mVOut; u != mJoin; u = mParent[u])
+            mSuccNum[u] -= oldSuccNum;
+    }
+
+    /**
+     * Shifts the potentials of the moved subtree so that the entering arc has zero reduced cost.
+     */
+    private void updatePotential() {
+        long sigma = mPi[mVIn] - mPi[mUIn] - mPredDir[mUIn] * mCost[mInArc];
+        int end = mThread[mLastSucc[mUIn]];
+        for (int u = mUIn; u != end; u = mThread[u])
+            mPi[u] += sigma;
+    }
+
+    /**
+     * Successive shortest paths on the residual network.  Residual arc 2e is the forward copy of arc e, and 2e+1 is its
+     * reverse.  Reduced costs c(u,v) + pi[u] - pi[v] are kept non-negative, so each augmenting path can be found with
+     * Dijkstra.
+     */
+    private void solveSuccessiveShortestPaths() {
+        int n = mNodeNum;
+        int m = mArcNum;
+        mFlow = new long[m];
+        mPi = new long[n];
+        long[] excess = Arrays.copyOf(mSupply, n);
+
+        //residual adjacency in CSR form
+        int[] firstOut = new int[n + 1];
+        for (int e = 0; e < m; e++) {
+            firstOut[mSource[e] + 1]++;
+            firstOut[mTarget[e] + 1]++;
+        }
+        for (int u = 0; u < n; u++)
+            firstOut[u + 1] += firstOut[u];
+        int[] resArcs = new int[2 * m];
+        int[] fill = Arrays.copyOf(firstOut, n);
+        for (int e = 0; e < m; e++) {
+            resArcs[fill[mSource[e]]++] = 2 * e;
+            resArcs[fill[mTarget[e]]++] = 2 * e + 1;
+        }
+
+        //saturate negative cost arcs so that the initial reduced costs are non-negative
+        boolean needsBellmanFord = false;
+        for (int e = 0; e < m; e++) {
+            if (mCost[e] >= 0)
+                continue;
+            if (mCap[e] >= INF) {
+                needsBellmanFord = true;
+                continue;
+            }
+            mFlow[e] = mCap[e];
+            excess[mSource[e]] -= mCap[e];
+            excess[mTarget[e]] += mCap[e];
+        }
+        if (needsBellmanFord)
+            initPotentials(firstOut, resArcs);
+
+        //dijkstra data; stamps spare us from resetting the arrays every iteration
+        long[] dist = new long[n];
+        int[] predArc = new int[n];
+        int[] reached = new int[n];
+        int[] settled = new int[n];
+        int[] settledList = new int[n];
+        int[] heap = new int[n];
+        int[] heapPos = new int[n];
+        int stamp = 0;
+
+        int nextSource = 0;
+        while (true) {
+            while (nextSource < n && excess[nextSource] <= 0)
+                nextSource++;
+            if (nextSource == n)
+                break;
+            int s = nextSource;
+
+            stamp++;
+            int heapSize = 0;
+            int numSettled = 0;
+            int t = -1;
+            dist[s] = 0;
+            predArc[s] = -1;
+            reached[s] = stamp;
+            heap[heapSize] = s;
+            heapPos[s] = heapSize++;
+            while (heapSize > 0) {
+                int u = heap[0];
+                heapSize = heapPop(heap, heapPos, heapSize, dist);
+                settled[u] = stamp;
+                settledList[numSettled++] = u;
+                if (excess[u] < 0) {
+                    t = u;
+                    break;
+                }
+                for (int i = firstOut[u]; i < firstOut[u + 1]; i++) {
+                    int a = resArcs[i];
+                    int e = a >> 1;
+                    int v;
+                    long rc;
+                    if ((a & 1) == 0) {
+                        if (mFlow[e] >= mCap[e])
+                            continue;
+                        v = mTarget[e];
+                        rc = mCost[e] + mPi[u] - mPi[v];
+                    } else {
+                        if (mFlow[e] <= 0)
+                            continue;
+                        v = mSource[e];
+                        rc = -mCost[e] + mPi[u] - mPi[v];
+                    }
+                    if (settled[v] == stamp)
+                        continue;
+                    long d = dist[u] + rc;
+                    if (reached[v] != stamp) {
+                        reached[v] = stamp;
+                        dist[v] = d;
+                        predArc[v] = a;
+                        heap[heapSize] = v;
+                        heapPos[v] = heapSize;
+                        heapSize++;
+                        heapUp(heap, heapPos, heapPos[v], dist);
+                    } else if (d < dist[v]) {
+                        dist[v] = d;
+                        predArc[v] = a;
+                        heapUp(heap, heapPos, heapPos[v], dist);
+                    }
+                }
+            }
+            if (t == -1)
+                throw new IllegalArgumentException("There is no feasible flow for this problem.");
+
+            //early termination: only the settled nodes get new potentials, (shifted by dist[t], which is harmless)
+            long dt = dist[t];
+            for (int i = 0; i < numSettled; i++) {
+                int u = settledList[i];
+                mPi[u] += dist[u] - dt;
+            }
+
+            //push the bottleneck amount along the path
+            long delta = Math.min(excess[s], -excess[t]);
+            for (int v = t; v != s; ) {
+                int a = predArc[v];
+                int e = a >> 1;
+                if ((a & 1) == 0) {
+                    delta = Math.min(delta, mCap[e] - mFlow[e]);
+                    v = mSource[e];
+                } else {
+                    delta = Math.min(delta, mFlow[e]);
+                    v = mTarget[e];
+                }
+            }
+            for (int v = t; v != s; ) {
+                int a = predArc[v];
+                int e = a >> 1;
+                if ((a & 1) == 0) {
+                    mFlow[e] += delta;
+                    v = mSource[e];
+                } else {
+                    mFlow[e] -= delta;
+                    v = mTarget[e];
+                }
+            }
+            excess[s] -= delta;
+            excess[t] += delta;
+        }
+
+        for (int u = 0; u < n; u++) {
+            if (excess[u] != 0)
+                throw new IllegalArgumentException("There is no feasible flow for this problem.");
+        }
+    }
+
+    /**
+     * Bellman-Ford (queue based) over the residual network, to get potentials under which all residual arcs have
+     * non-negative reduced cost.
+     */
+    private void initPotentials(int[] firstOut, int[] resArcs) {
+        int n = mNodeNum;
+        int[] queue = new int[n];
+        boolean[] inQueue = new boolean[n];
+        int[] relaxCount = new int[n];
+        int head = 0, size = n;
+        for (int u = 0; u < n; u++) {
+            queue[u] = u;
+            inQueue[u] = true;
+        }
+        while (size > 0) {
+            int u = queue[head];
+            head = (head + 1) % n;
+            size--;
+            inQueue[u] = false;
+            for (int i = firstOut[u]; i < firstOut[u + 1]; i++) {
+                int a = resArcs[i];
+                int e = a >> 1;
+                int v;
+                long c;
+                if ((a & 1) == 0) {
+                    if (mFlow[e] >= mCap[e])
+                        continue;
+                    v = mTarget[e];
+                    c = mCost[e];
+                } else {
+                    if (mFlow[e] <= 0)
+                        continue;
+                    v = mSource[e];
+                    c = -mCost[e];
+                }
+                if (mPi[u] + c < mPi[v]) {
+                    mPi[v] = mPi[u] + c;
+                    if (++relaxCount[v] > n)
+                        throw new IllegalArgumentException("The residual network has a negative cycle; use the network simplex instead.");
+                    if (!inQueue[v]) {
+                        queue[(head + size) % n] = v;
+                        size++;
+                        inQueue[v] = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private static int heapPop(int[] heap, int[] heapPos, int heapSize, long[] key) {
+        heapSize--;
+        if (heapSize > 0) {
+            heap[0] = heap[heapSize];
+            heapPos[heap[0]] = 0;
+            int i = 0;
+            while (true) {
+                int l = 2 * i + 1;
+                if (l >= heapSize)
+                    break;
+                int c = (l + 1 < heapSize && key[heap[l + 1]] < key[heap[l]]) ? l + 1 : l;
+                if (key[heap[c]] >= key[heap[i]])
+                    break;
+                int temp = heap[i];
+                heap[i] = heap[c];
+                heap[c] = temp;
+                heapPos[heap[i]] = i;
+                heapPos[heap[c]] = c;
+                i = c;
+            }
+        }
+        return heapSize;
+    }
+
+    private static void heapUp(int[] heap, int[] heapPos, int i, long[] key) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (key[heap[parent]] <= key[heap[i]])
+                break;
+            int temp = heap[i];
+            heap[i] = heap[parent];
+            heap[parent] = temp;
+            heapPos[heap[i]] = i;
+            heapPos[heap[parent]] = parent;
+            i = parent;
+        }
+    }
+}
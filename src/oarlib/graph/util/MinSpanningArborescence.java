@@ -0,0 +1,258 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2015 Oliver Lum
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package oarlib.graph.util;
+
+import java.util.Arrays;
+
+/**
+ * Pure Java minimum spanning arborescence, (Edmonds' algorithm in the O(m log n) form of Tarjan, as corrected by
+ * Camerini et al. and Gabow et al.).  The incoming arcs of each (super)node are kept in a leftist heap with lazy cost
+ * offsets, and cycles are contracted with a union-find that supports rollback, so the arcs of the arborescence can be
+ * recovered by undoing the contractions in reverse order.  Unlike the MSArbor JNI call, the input is a sparse arc
+ * list, so memory is linear in the size of the graph.
+ * <p/>
+ * Vertices are numbered 0 through n-1.  Arc k goes from tails[k] to heads[k] with cost costs[k].
+ *
+ * @author oliverlum
+ */
+public class MinSpanningArborescence {
+
+    private int mNumVertices;
+    private int mNumArcs;
+    private int[] mTails;
+    private int[] mHeads;
+    private long[] mCosts;
+    private long mCost;
+
+    //leftist heap over arcs; node k is arc k
+    private long[] mKey;
+    private long[] mLazy;
+    private int[] mLeft;
+    private int[] mRight;
+    private int[] mRank;
+
+    //union find with rollback
+    private int[] mUf;
+    private int[] mHistory;
+    private int mHistorySize;
+
+    /**
+     * @param n     - the number of vertices; they are numbered 0 through n-1
+     * @param tails - arc k leaves tails[k]
+     * @param heads - arc k enters heads[k]
+     * @param costs - arc k costs costs[k]
+     * @throws IllegalArgumentException - if the arrays are of inconsistent lengths, or an endpoint is out of range
+     */
+    public MinSpanningArborescence(int n, int[] tails, int[] heads, long[] costs) throws IllegalArgumentException {
+        if (tails.length != heads.length || tails.length != costs.length)
+            throw new IllegalArgumentException("The arc arrays are of inconsistent lengths.");
+        for (int k = 0; k < tails.length; k++)
+            if (tails[k] < 0 || tails[k] >= n || heads[k] < 0 || heads[k] >= n)
+                throw new IllegalArgumentException("The endpoints of arc " + k + " do not fall within the valid range.");
+        mNumVertices = n;
+        mNumArcs = tails.length;
+        mTails = tails;
+        mHeads = heads;
+        mCosts = costs;
+    }
+
+    /**
+     * Computes a minimum spanning arborescence rooted at root.
+     *
+     * @param root - the root vertex
+     * @return - entry v holds the index of the arc entering v in the arborescence, (-1 for the root), or null if some
+     * vertex cannot be reached from the root.
+     */
+    public int[] solve(int root) {
+        int n = mNumVertices;
+        int m = mNumArcs;
+        mKey = Arrays.copyOf(mCosts, m);
+        mLazy = new long[m];
+        mLeft = new int[m];
+        mRight = new int[m];
+        mRank = new int[m];
+        Arrays.fill(mLeft, -1);
+        Arrays.fill(mRight, -1);
+        mUf = new int[n];
+        Arrays.fill(mUf, -1);
+        mHistory = new int[4 * n];
+        mHistorySize = 0;
+        mCost = 0;
+
+        int[] heap = new int[n];
+        Arrays.fill(heap, -1);
+        for (int k = 0; k < m; k++) {
+            mRank[k] = 1;
+            heap[mHeads[k]] = merge(heap[mHeads[k]], k);
+        }
+
+        int[] seen = new int[n];
+        Arrays.fill(seen, -1);
+        seen[root] = root;
+        int[] path = new int[n];
+        int[] queue = new int[n];
+        int[] in = new int[n];
+        Arrays.fill(in, -1);
+
+        //contracted cycles, most recent first when we unwind: (supernode, history time, arcs of the cycle)
+        int[] cycleNode = new int[n];
+        int[] cycleTime = new int[n];
+        int[][] cycleArcs = new int[n][];
+        int numCycles = 0;
+
+        for (int s = 0; s < n; s++) {
+            int u = s;
+            int qi = 0;
+            while (seen[u] < 0) {
+                //discard arcs that start inside u, (self loops, or arcs internal to a contracted cycle)
+                while (heap[u] != -1 && find(mTails[heap[u]]) == u)
+                    heap[u] = pop(heap[u]);
+
+                //take the cheapest arc into u, and make the rest relative to it
+                if (heap[u] == -1)
+                    return null;
+                int k = heap[u];
+                push(k);
+                long w = mKey[k];
+                mLazy[k] -= w;
+                heap[u] = pop(k);
+                queue[qi] = k;
+                path[qi++] = u;
+                seen[u] = s;
+                mCost += w;
+                u = find(mTails[k]);
+                if (seen[u] == s) {
+                    //we closed a cycle; contract it into a single node
+                    int cyc = -1;
+                    int end = qi;
+                    int time = mHistorySize;
+                    int v;
+                    do {
+                        v = path[--qi];
+                        cyc = merge(cyc, heap[v]);
+                    } while (join(u, v));
+                    u = find(u);
+                    heap[u] = cyc;
+                    seen[u] = -1;
+                    cycleNode[numCycles] = u;
+                    cycleTime[numCycles] = time;
+                    cycleArcs[numCycles++] = Arrays.copyOfRange(queue, qi, end);
+                }
+            }
+            for (int i = 0; i < qi; i++)
+                in[find(mHeads[queue[i]])] = queue[i];
+        }
+
+        //expand the cycles in reverse order of contraction
+        for (int c = numCycles - 1; c >= 0; c--) {
+            int u = cycleNode[c];
+            rollback(cycleTime[c]);
+            int inArc = in[u];
+            for (int k : cycleArcs[c])
+                in[find(mHeads[k])] = k;
+            in[find(mHeads[inArc])] = inArc;
+        }
+        in[root] = -1;
+        return in;
+    }
+
+    /**
+     * @return - the cost of the arborescence found by the last call to solve
+     */
+    public long getCost() {
+        return mCost;
+    }
+
+    private void push(int a) {
+        if (mLazy[a] != 0) {
+            mKey[a] += mLazy[a];
+            if (mLeft[a] != -1)
+                mLazy[mLeft[a]] += mLazy[a];
+            if (mRight[a] != -1)
+                mLazy[mRight[a]] += mLazy[a];
+            mLazy[a] = 0;
+        }
+    }
+
+    private int merge(int a, int b) {
+        if (a == -1)
+            return b;
+        if (b == -1)
+            return a;
+        push(a);
+        push(b);
+        if (mKey[a] > mKey[b]) {
+            int temp = a;
+            a = b;
+            b = temp;
+        }
+        mRight[a] = merge(mRight[a], b);
+        int leftRank = (mLeft[a] == -1) ? 0 : mRank[mLeft[a]];
+        int rightRank = mRank[mRight[a]];
+        if (leftRank < rightRank) {
+            int temp = mLeft[a];
+            mLeft[a] = mRight[a];
+            mRight[a] = temp;
+        }
+        mRank[a] = ((mRight[a] == -1) ? 0 : mRank[mRight[a]]) + 1;
+        return a;
+    }
+
+    private int pop(int a) {
+        push(a);
+        return merge(mLeft[a], mRight[a]);
+    }
+
+    private int find(int x) {
+        while (mUf[x] >= 0)
+            x = mUf[x];
+        return x;
+    }
+
+    private boolean join(int a, int b) {
+        a = find(a);
+        b = find(b);
+        if (a == b)
+            return false;
+        if (mUf[a] > mUf[b]) {
+            int temp = a;
+            a = b;
+            b = temp;
+        }
+        mHistory[mHistorySize++] = a;
+        mHistory[mHistorySize++] = mUf[a];
+        mHistory[mHistorySize++] = b;
+        mHistory[mHistorySize++] = mUf[b];
+        mUf[a] += mUf[b];
+        mUf[b] = a;
+        return true;
+    }
+
+    private void rollback(int time) {
+        while (mHistorySize > time) {
+            mHistorySize -= 2;
+            mUf[mHistory[mHistorySize]] = mHistory[mHistorySize + 1];
+        }
+    }
+}
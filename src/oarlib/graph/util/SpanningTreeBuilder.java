@@ -0,0 +1,240 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2015 Oliver Lum
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package oarlib.graph.util;
+
+import gnu.trove.TIntObjectHashMap;
+import oarlib.graph.impl.UndirectedGraph;
+import oarlib.link.impl.Edge;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Array based spanning tree construction for an undirected graph.  The edge endpoints and the cost-sorted edge order
+ * are extracted once, at construction, so each subsequent tree is just a pass over the cached order: a Kruskal pass
+ * with a path-compressed union-find, (O(m alpha(n))), for the exact tree, and a Prim style growth, (which walks the
+ * order once per tree edge), for the randomized ones.  This makes it cheap to generate many diverse
+ * low cost trees from the same graph, (e.g. to connect required components differently across restarts).
+ * <p/>
+ * The builder takes a snapshot of the graph; if the graph changes, a new builder should be constructed.  The static
+ * wrappers in {@link CommonAlgorithms} keep one builder per graph, and check it against the graph, (in O(m), without
+ * re-sorting), before reusing it.
+ *
+ * @author oliverlum
+ */
+public class SpanningTreeBuilder {
+
+    private int mNumVertices;
+    private int mNumEdges;
+    private int mAnsLength;
+    private int mVidCounter;
+    private int[] mIndex;
+    private int[] mCosts;
+    private int[] mEdgeIds;
+    private int[] mFirst;
+    private int[] mSecond;
+    private int[] mSorted;
+    private int[] mParent;
+    private int[] mRank;
+
+    /**
+     * @param g - the graph whose spanning trees we want
+     */
+    public SpanningTreeBuilder(UndirectedGraph g) {
+        TIntObjectHashMap<Edge> indexedEdges = g.getInternalEdgeMap();
+        mEdgeIds = indexedEdges.keys();
+        mNumEdges = mEdgeIds.length;
+        mNumVertices = g.getVertices().size();
+        mAnsLength = g.getEidCounter();
+        mVidCounter = g.getVidCounter();
+
+        //compact the vertex ids
+        int[] vertexIds = g.getInternalVertexMap().keys();
+        int[] index = new int[mVidCounter + 1];
+        for (int i = 0; i < vertexIds.length; i++)
+            index[vertexIds[i]] = i;
+        mIndex = index;
+
+        //sort the edges by cost; the low bits hold the index, so ties are broken consistently
+        mFirst = new int[mNumEdges];
+        mSecond = new int[mNumEdges];
+        mCosts = new int[mNumEdges];
+        long[] keys = new long[mNumEdges];
+        Edge e;
+        for (int k = 0; k < mNumEdges; k++) {
+            e = indexedEdges.get(mEdgeIds[k]);
+            mFirst[k] = index[e.getFirstEndpointId()];
+            mSecond[k] = index[e.getSecondEndpointId()];
+            mCosts[k] = e.getCost();
+            keys[k] = ((long) e.getCost() << 32) + k;
+        }
+        Arrays.sort(keys);
+        mSorted = new int[mNumEdges];
+        for (int k = 0; k < mNumEdges; k++)
+            mSorted[k] = (int) (keys[k] & 0xFFFFFFFFL);
+
+        mParent = new int[mNumVertices];
+        mRank = new int[mNumVertices];
+    }
+
+    /**
+     * Checks whether the graph still looks the way it did when this builder was constructed, (same vertices, and the
+     * same edges with the same endpoints and costs).
+     *
+     * @param g - the graph to check
+     * @return - true if the trees built by this builder are still trees of g
+     */
+    boolean isSnapshotOf(UndirectedGraph g) {
+        if (g.getVidCounter() != mVidCounter || g.getEidCounter() != mAnsLength || g.getVertices().size() != mNumVertices)
+            return false;
+        TIntObjectHashMap<Edge> indexedEdges = g.getInternalEdgeMap();
+        if (indexedEdges.size() != mNumEdges)
+            return false;
+        Edge e;
+        for (int k = 0; k < mNumEdges; k++) {
+            e = indexedEdges.get(mEdgeIds[k]);
+            if (e == null || e.getCost() != mCosts[k] || mIndex[e.getFirstEndpointId()] != mFirst[k] || mIndex[e.getSecondEndpointId()] != mSecond[k])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Solves the min-cost spanning tree problem using Kruskal's algorithm.
+     *
+     * @return - an 0-1 array where the ith entry is 1 if the edge with id i is included in the tree.  If the graph is not
+     * connected, this is a min-cost spanning forest.
+     */
+    public synchronized int[] minCostSpanningTree() {
+        int[] ans = new int[mAnsLength];
+        for (int v = 0; v < mNumVertices; v++) {
+            mParent[v] = v;
+            mRank[v] = 0;
+        }
+
+        int treeSize = 0;
+        int k, r1, r2;
+        for (int next = 0; next < mNumEdges && treeSize < mNumVertices - 1; next++) {
+            k = mSorted[next];
+            r1 = find(mFirst[k]);
+            r2 = find(mSecond[k]);
+            if (r1 == r2)
+                continue;
+            if (mRank[r1] < mRank[r2]) {
+                mParent[r1] = r2;
+            } else {
+                mParent[r2] = r1;
+                if (mRank[r1] == mRank[r2])
+                    mRank[r1]++;
+            }
+            ans[mEdgeIds[k]] = 1;
+            treeSize++;
+        }
+        return ans;
+    }
+
+    /**
+     * Builds a randomized low cost spanning tree, Prim style: the tree is grown from the cheapest edge, and at each
+     * stage, one of the setSize cheapest edges that leave the tree is added, (chosen with rng.nextInt(setSize); if
+     * fewer edges leave the tree, the most expensive of them is taken).  The cut edges are found by walking the cached
+     * sorted order, from which the edges inside the tree are dropped as we go.
+     *
+     * @param setSize - the size of the set from which an edge is selected.  setSize = 1 reduces to a
+     *                normal MST algorithm.  setSize = 2 chooses from the cheapest 2 edges at each stage.
+     * @param rng     - the source of randomness; may be null if setSize = 1
+     * @return - an 0-1 array where the ith entry is 1 if the edge with id i is included in the tree.  If the graph is not
+     * connected, a new tree is started from the cheapest edge untouched so far, so this is a spanning forest.
+     */
+    public synchronized int[] randomizedLowCostSpanningTree(int setSize, Random rng) {
+        if (setSize < 1) {
+            setSize = 1;
+        }
+        int[] ans = new int[mAnsLength];
+        boolean[] inTree = new boolean[mNumVertices];
+
+        /*
+         * A linked list over the positions of the sorted order, so that edges inside the tree are only walked past
+         * once.  Position mNumEdges is both the head, (nextLive[mNumEdges] is the first live position), and the end.
+         */
+        int[] nextLive = new int[mNumEdges + 1];
+        for (int i = 0; i < mNumEdges; i++)
+            nextLive[i] = i + 1;
+        nextLive[mNumEdges] = 0;
+
+        int treeSize = 0;
+        int offset, counter, prev, curr, pick, pickPrev, k;
+        while (treeSize < mNumVertices - 1) {
+            offset = (setSize == 1 || rng == null) ? 0 : rng.nextInt(setSize);
+            counter = 0;
+            pick = -1;
+            pickPrev = -1;
+            prev = mNumEdges;
+            for (curr = nextLive[mNumEdges]; curr < mNumEdges; curr = nextLive[curr]) {
+                k = mSorted[curr];
+                if (inTree[mFirst[k]] == inTree[mSecond[k]]) {
+                    //drop it if it's inside the tree for good, (or a self loop, which never makes it in)
+                    if (inTree[mFirst[k]] || mFirst[k] == mSecond[k])
+                        nextLive[prev] = nextLive[curr];
+                    else
+                        prev = curr;
+                    continue;
+                }
+                pick = curr;
+                pickPrev = prev;
+                if (counter++ == offset)
+                    break;
+                prev = curr;
+            }
+
+            if (pick == -1) {
+                //nothing leaves the tree, (or there is no tree yet); start one from the cheapest edge that's left
+                pick = nextLive[mNumEdges];
+                pickPrev = mNumEdges;
+                if (pick == mNumEdges)
+                    break;
+            }
+
+            k = mSorted[pick];
+            nextLive[pickPrev] = nextLive[pick];
+            inTree[mFirst[k]] = true;
+            inTree[mSecond[k]] = true;
+            ans[mEdgeIds[k]] = 1;
+            treeSize++;
+        }
+        return ans;
+    }
+
+    private int find(int v) {
+        int root = v;
+        while (mParent[root] != root)
+            root = mParent[root];
+        int temp;
+        while (mParent[v] != root) {
+            temp = mParent[v];
+            mParent[v] = root;
+            v = temp;
+        }
+        return root;
+    }
+}
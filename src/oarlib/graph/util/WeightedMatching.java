@@ -0,0 +1,660 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2015 Oliver Lum
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package oarlib.graph.util;
+
+import gnu.trove.TIntArrayList;
+
+import java.util.Arrays;
+
+/**
+ * Pure Java maximum weight matching on a general (sparse) graph, using Edmonds' blossom algorithm with the
+ * primal-dual updates described in Galil, "Efficient Algorithms for Finding Maximum Matching in Graphs" (1986).
+ * It runs in O(n^3) time, (independent of the edge density), and needs no native code.
+ * <p/>
+ * Vertices are numbered 0 through n-1, (to match the input convention of the Blossom V wrapper).  Edge k connects
+ * vertices edges[2k] and edges[2k+1], and has weight weights[k].  Internally, endpoint 2k of edge k is edges[2k]
+ * and endpoint 2k+1 is edges[2k+1], so p ^ 1 is the opposite endpoint of p.
+ * <p/>
+ * Dual variables are kept at twice their LP value, so that they stay integral for integral weights.  After solve,
+ * getReducedCost can be used to price pairs of vertices that were not in the input graph; if none of them has a
+ * negative reduced cost, the matching is also a maximum weight matching of the complete graph.
+ *
+ * @author oliverlum
+ */
+public class WeightedMatching {
+
+    private int mNumVertices;
+    private int mNumEdges;
+    private int[] mEndpoint;
+    private long[] mWeight;
+    private int[][] mNeighbEnd;
+
+    private int[] mMate;
+    private int[] mLabel;
+    private int[] mLabelEnd;
+    private int[] mInBlossom;
+    private int[] mBlossomParent;
+    private int[][] mBlossomChilds;
+    private int[] mBlossomBase;
+    private int[][] mBlossomEndps;
+    private int[] mBestEdge;
+    private int[][] mBlossomBestEdges;
+    private int[] mUnusedBlossoms;
+    private int mNumUnused;
+    private long[] mDualVar;
+    private boolean[] mAllowEdge;
+    private TIntArrayList mQueue;
+
+    private boolean mSolved;
+
+    /**
+     * @param n       - the number of vertices; they are numbered 0 through n-1
+     * @param edges   - edge k connects vertices edges[2k] and edges[2k+1]
+     * @param weights - edge k has weight weights[k]
+     * @throws IllegalArgumentException - if the arrays are of inconsistent lengths, or an endpoint is out of range
+     */
+    public WeightedMatching(int n, int[] edges, long[] weights) throws IllegalArgumentException {
+        if (edges.length != 2 * weights.length)
+            throw new IllegalArgumentException("The edge and weight arrays are of inconsistent lengths.");
+
+        mNumVertices = n;
+        mNumEdges = weights.length;
+        mEndpoint = edges.clone();
+        mWeight = weights.clone();
+
+        //neighbend[v] holds the remote endpoints of the edges incident on v
+        int[] deg = new int[n];
+        for (int p = 0; p < 2 * mNumEdges; p++) {
+            if (mEndpoint[p] < 0 || mEndpoint[p] >= n)
+                throw new IllegalArgumentException("The endpoints of edge " + (p / 2) + " do not fall within the valid range.");
+            deg[mEndpoint[p]]++;
+        }
+        mNeighbEnd = new int[n][];
+        for (int v = 0; v < n; v++)
+            mNeighbEnd[v] = new int[deg[v]];
+        Arrays.fill(deg, 0);
+        for (int k = 0; k < mNumEdges; k++) {
+            int i = mEndpoint[2 * k];
+            int j = mEndpoint[2 * k + 1];
+            mNeighbEnd[i][deg[i]++] = 2 * k + 1;
+            mNeighbEnd[j][deg[j]++] = 2 * k;
+        }
+        mSolved = false;
+    }
+
+    /**
+     * Computes a maximum weight matching.
+     *
+     * @return - the mate array; entry v holds the vertex matched to v, or -1 if v is unmatched.
+     */
+    public int[] solve() {
+        if (mSolved)
+            return getMates();
+
+        int n = mNumVertices;
+        long maxWeight = 0;
+        for (int k = 0; k < mNumEdges; k++)
+            maxWeight = Math.max(maxWeight, mWeight[k]);
+
+        mMate = new int[n];
+        Arrays.fill(mMate, -1);
+        mLabel = new int[2 * n];
+        mLabelEnd = new int[2 * n];
+        Arrays.fill(mLabelEnd, -1);
+        mInBlossom = new int[n];
+        for (int v = 0; v < n; v++)
+            mInBlossom[v] = v;
+        mBlossomParent = new int[2 * n];
+        Arrays.fill(mBlossomParent, -1);
+        mBlossomChilds = new int[2 * n][];
+        mBlossomBase = new int[2 * n];
+        for (int v = 0; v < n; v++)
+            mBlossomBase[v] = v;
+        Arrays.fill(mBlossomBase, n, 2 * n, -1);
+        mBlossomEndps = new int[2 * n][];
+        mBestEdge = new int[2 * n];
+        Arrays.fill(mBestEdge, -1);
+        mBlossomBestEdges = new int[2 * n][];
+        mUnusedBlossoms = new int[n];
+        mNumUnused = n;
+        for (int i = 0; i < n; i++)
+            mUnusedBlossoms[i] = 2 * n - 1 - i;
+        mDualVar = new long[2 * n];
+        Arrays.fill(mDualVar, 0, n, maxWeight);
+        mAllowEdge = new boolean[mNumEdges];
+        mQueue = new TIntArrayList();
+
+        //each stage either augments the matching, or proves that it is optimal
+        for (int t = 0; t < n; t++) {
+            Arrays.fill(mLabel, 0);
+            Arrays.fill(mBestEdge, -1);
+            Arrays.fill(mBlossomBestEdges, n, 2 * n, null);
+            Arrays.fill(mAllowEdge, false);
+            mQueue.clear();
+
+            //label the roots of the alternating forest
+            for (int v = 0; v < n; v++)
+                if (mMate[v] == -1 && mLabel[mInBlossom[v]] == 0)
+                    assignLabel(v, 1, -1);
+
+            boolean augmented = false;
+            while (true) {
+                //grow the forest along tight edges
+                while (mQueue.size() > 0 && !augmented) {
+                    int v = mQueue.remove(mQueue.size() - 1);
+                    for (int p : mNeighbEnd[v]) {
+                        int k = p / 2;
+                        int w = mEndpoint[p];
+                        if (mInBlossom[v] == mInBlossom[w])
+                            continue;
+                        long kSlack = 0;
+                        if (!mAllowEdge[k]) {
+                            kSlack = slack(k);
+                            if (kSlack <= 0)
+                                mAllowEdge[k] = true;
+                        }
+                        if (mAllowEdge[k]) {
+                            if (mLabel[mInBlossom[w]] == 0) {
+                                //w is free; label it T and its mate S
+                                assignLabel(w, 2, p ^ 1);
+                            } else if (mLabel[mInBlossom[w]] == 1) {
+                                //either a new blossom, or an augmenting path
+                                int base = scanBlossom(v, w);
+                                if (base >= 0) {
+                                    addBlossom(base, k);
+                                } else {
+                                    augmentMatching(k);
+                                    augmented = true;
+                                    break;
+                                }
+                            } else if (mLabel[w] == 0) {
+                                //w is inside a T-blossom, but has not been reached from outside yet
+                                mLabel[w] = 2;
+                                mLabelEnd[w] = p ^ 1;
+                            }
+                        } else if (mLabel[mInBlossom[w]] == 1) {
+                            int b = mInBlossom[v];
+                            if (mBestEdge[b] == -1 || kSlack < slack(mBestEdge[b]))
+                                mBestEdge[b] = k;
+                        } else if (mLabel[w] == 0) {
+                            if (mBestEdge[w] == -1 || kSlack < slack(mBestEdge[w]))
+                                mBestEdge[w] = k;
+                        }
+                    }
+                }
+                if (augmented)
+                    break;
+
+                //no tight edge is left to explore, so we update the duals
+                int deltaType = 1;
+                long delta = Long.MAX_VALUE;
+                int deltaEdge = -1;
+                int deltaBlossom = -1;
+                for (int v = 0; v < n; v++)
+                    delta = Math.min(delta, mDualVar[v]);
+                for (int v = 0; v < n; v++) {
+                    if (mLabel[mInBlossom[v]] == 0 && mBestEdge[v] != -1) {
+                        long d = slack(mBestEdge[v]);
+                        if (d < delta) {
+                            delta = d;
+                            deltaType = 2;
+                            deltaEdge = mBestEdge[v];
+                        }
+                    }
+                }
+                for (int b = 0; b < 2 * n; b++) {
+                    if (mBlossomParent[b] == -1 && mLabel[b] == 1 && mBestEdge[b] != -1) {
+                        long d = slack(mBestEdge[b]) / 2;
+                        if (d < delta) {
+                            delta = d;
+                            deltaType = 3;
+                            deltaEdge = mBestEdge[b];
+                        }
+                    }
+                }
+                for (int b = n; b < 2 * n; b++) {
+                    if (mBlossomBase[b] >= 0 && mBlossomParent[b] == -1 && mLabel[b] == 2 && mDualVar[b] < delta) {
+                        delta = mDualVar[b];
+                        deltaType = 4;
+                        deltaBlossom = b;
+                    }
+                }
+
+                for (int v = 0; v < n; v++) {
+                    if (mLabel[mInBlossom[v]] == 1)
+                        mDualVar[v] -= delta;
+                    else if (mLabel[mInBlossom[v]] == 2)
+                        mDualVar[v] += delta;
+                }
+                for (int b = n; b < 2 * n; b++) {
+                    if (mBlossomBase[b] >= 0 && mBlossomParent[b] == -1) {
+                        if (mLabel[b] == 1)
+                            mDualVar[b] += delta;
+                        else if (mLabel[b] == 2)
+                            mDualVar[b] -= delta;
+                    }
+                }
+
+                if (deltaType == 1) {
+                    //no further improvement is possible
+                    break;
+                } else if (deltaType == 2) {
+                    mAllowEdge[deltaEdge] = true;
+                    int i = mEndpoint[2 * deltaEdge];
+                    if (mLabel[mInBlossom[i]] == 0)
+                        i = mEndpoint[2 * deltaEdge + 1];
+                    mQueue.add(i);
+                } else if (deltaType == 3) {
+                    mAllowEdge[deltaEdge] = true;
+                    mQueue.add(mEndpoint[2 * deltaEdge]);
+                } else {
+                    expandBlossom(deltaBlossom, false);
+                }
+            }
+
+            if (!augmented)
+                break;
+
+            //expand the S-blossoms whose duals have dropped to zero
+            for (int b = n; b < 2 * n; b++)
+                if (mBlossomParent[b] == -1 && mBlossomBase[b] >= 0 && mLabel[b] == 1 && mDualVar[b] == 0)
+                    expandBlossom(b, true);
+        }
+
+        mSolved = true;
+        return getMates();
+    }
+
+    /**
+     * Returns twice the reduced cost of a (possibly absent) edge between vertices i and j of the given weight, under the
+     * final dual solution.  A negative value means that adding the edge could increase the weight of the matching.
+     *
+     * @param i      - the first endpoint
+     * @param j      - the second endpoint
+     * @param weight - the weight of the edge
+     * @return - twice the reduced cost of the edge
+     */
+    public long getReducedCost(int i, int j, long weight) {
+        if (!mSolved)
+            solve();
+        long s = mDualVar[i] + mDualVar[j] - 2 * weight;
+        if (s >= 0 || mBlossomParent[i] == -1 || mBlossomParent[j] == -1)
+            return s;
+
+        //add the duals of the blossoms that contain both endpoints
+        TIntArrayList iBlossoms = new TIntArrayList();
+        TIntArrayList jBlossoms = new TIntArrayList();
+        for (int b = mBlossomParent[i]; b != -1; b = mBlossomParent[b])
+            iBlossoms.add(b);
+        for (int b = mBlossomParent[j]; b != -1; b = mBlossomParent[b])
+            jBlossoms.add(b);
+        int bi = iBlossoms.size() - 1;
+        int bj = jBlossoms.size() - 1;
+        while (bi >= 0 && bj >= 0 && iBlossoms.get(bi) == jBlossoms.get(bj)) {
+            s += 2 * mDualVar[iBlossoms.get(bi)];
+            bi--;
+            bj--;
+        }
+        return s;
+    }
+
+    private int[] getMates() {
+        int[] ans = new int[mNumVertices];
+        for (int v = 0; v < mNumVertices; v++)
+            ans[v] = (mMate[v] >= 0) ? mEndpoint[mMate[v]] : -1;
+        return ans;
+    }
+
+    private long slack(int k) {
+        return mDualVar[mEndpoint[2 * k]] + mDualVar[mEndpoint[2 * k + 1]] - 2 * mWeight[k];
+    }
+
+    /**
+     * @return - the vertices contained in (possibly nested) blossom b
+     */
+    private int[] blossomLeaves(int b) {
+        if (b < mNumVertices)
+            return new int[]{b};
+        TIntArrayList leaves = new TIntArrayList();
+        TIntArrayList stack = new TIntArrayList();
+        stack.add(b);
+        while (stack.size() > 0) {
+            int t = stack.remove(stack.size() - 1);
+            if (t < mNumVertices)
+                leaves.add(t);
+            else
+                for (int child : mBlossomChilds[t])
+                    stack.add(child);
+        }
+        return leaves.toNativeArray();
+    }
+
+    /**
+     * Labels vertex w (and its top level blossom) with t, having been reached through endpoint p.  A T-blossom
+     * passes an S label on to its mate.
+     */
+    private void assignLabel(int w, int t, int p) {
+        int b = mInBlossom[w];
+        mLabel[w] = mLabel[b] = t;
+        mLabelEnd[w] = mLabelEnd[b] = p;
+        mBestEdge[w] = mBestEdge[b] = -1;
+        if (t == 1) {
+            mQueue.add(blossomLeaves(b));
+        } else if (t == 2) {
+            int base = mBlossomBase[b];
+            assignLabel(mEndpoint[mMate[base]], 1, mMate[base] ^ 1);
+        }
+    }
+
+    /**
+     * Traces back from v and w to find either a common base, (a new blossom), or two distinct roots, (an augmenting path).
+     *
+     * @return - the base of the new blossom, or -1 if an augmenting path was found
+     */
+    private int scanBlossom(int v, int w) {
+        TIntArrayList path = new TIntArrayList();
+        int base = -1;
+        while (v != -1 || w != -1) {
+            int b = mInBlossom[v];
+            if ((mLabel[b] & 4) != 0) {
+                base = mBlossomBase[b];
+                break;
+            }
+            path.add(b);
+            mLabel[b] = 5;
+            if (mLabelEnd[b] == -1) {
+                v = -1;
+            } else {
+                v = mEndpoint[mLabelEnd[b]];
+                b = mInBlossom[v];
+                v = mEndpoint[mLabelEnd[b]];
+            }
+            if (w != -1) {
+                int temp = v;
+                v = w;
+                w = temp;
+            }
+        }
+        for (int i = 0; i < path.size(); i++)
+            mLabel[path.get(i)] = 1;
+        return base;
+    }
+
+    /**
+     * Builds a new S-blossom with the given base, closed by edge k.
+     */
+    private void addBlossom(int base, int k) {
+        int v = mEndpoint[2 * k];
+        int w = mEndpoint[2 * k + 1];
+        int bb = mInBlossom[base];
+        int bv = mInBlossom[v];
+        int bw = mInBlossom[w];
+        int b = mUnusedBlossoms[--mNumUnused];
+        mBlossomBase[b] = base;
+        mBlossomParent[b] = -1;
+        mBlossomParent[bb] = b;
+
+        //trace the two halves of the odd cycle back to the base
+        TIntArrayList path = new TIntArrayList();
+        TIntArrayList endps = new TIntArrayList();
+        while (bv != bb) {
+            mBlossomParent[bv] = b;
+            path.add(bv);
+            endps.add(mLabelEnd[bv]);
+            v = mEndpoint[mLabelEnd[bv]];
+            bv = mInBlossom[v];
+        }
+        path.add(bb);
+        path.reverse();
+        endps.reverse();
+        endps.add(2 * k);
+        while (bw != bb) {
+            mBlossomParent[bw] = b;
+            path.add(bw);
+            endps.add(mLabelEnd[bw] ^ 1);
+            w = mEndpoint[mLabelEnd[bw]];
+            bw = mInBlossom[w];
+        }
+        int[] childs = path.toNativeArray();
+        mBlossomChilds[b] = childs;
+        mBlossomEndps[b] = endps.toNativeArray();
+
+        mLabel[b] = 1;
+        mLabelEnd[b] = mLabelEnd[bb];
+        mDualVar[b] = 0;
+        for (int leaf : blossomLeaves(b)) {
+            //former T-vertices become S-vertices, and need to be scanned
+            if (mLabel[mInBlossom[leaf]] == 2)
+                mQueue.add(leaf);
+            mInBlossom[leaf] = b;
+        }
+
+        //compute the least-slack edges to neighbouring S-blossoms
+        int[] bestEdgeTo = new int[2 * mNumVertices];
+        Arrays.fill(bestEdgeTo, -1);
+        for (int child : childs) {
+            if (mBlossomBestEdges[child] == null) {
+                for (int leaf : blossomLeaves(child))
+                    for (int p : mNeighbEnd[leaf])
+                        considerBestEdge(b, p / 2, bestEdgeTo);
+            } else {
+                for (int kk : mBlossomBestEdges[child])
+                    considerBestEdge(b, kk, bestEdgeTo);
+            }
+            mBlossomBestEdges[child] = null;
+            mBestEdge[child] = -1;
+        }
+        TIntArrayList bestEdges = new TIntArrayList();
+        mBestEdge[b] = -1;
+        for (int kk : bestEdgeTo) {
+            if (kk == -1)
+                continue;
+            bestEdges.add(kk);
+            if (mBestEdge[b] == -1 || slack(kk) < slack(mBestEdge[b]))
+                mBestEdge[b] = kk;
+        }
+        mBlossomBestEdges[b] = bestEdges.toNativeArray();
+    }
+
+    private void considerBestEdge(int b, int k, int[] bestEdgeTo) {
+        int j = mEndpoint[2 * k + 1];
+        if (mInBlossom[j] == b)
+            j = mEndpoint[2 * k];
+        int bj = mInBlossom[j];
+        if (bj != b && mLabel[bj] == 1 && (bestEdgeTo[bj] == -1 || slack(k) < slack(bestEdgeTo[bj])))
+            bestEdgeTo[bj] = k;
+    }
+
+    /**
+     * Expands blossom b into its sub-blossoms.  If this happens mid-stage to a T-blossom, the labels along the even
+     * side of the cycle are restored so that the alternating forest stays consistent.
+     */
+    private void expandBlossom(int b, boolean endStage) {
+        int n = mNumVertices;
+        int[] childs = mBlossomChilds[b];
+        int[] endps = mBlossomEndps[b];
+        int len = childs.length;
+
+        for (int s : childs) {
+            mBlossomParent[s] = -1;
+            if (s < n)
+                mInBlossom[s] = s;
+            else if (endStage && mDualVar[s] == 0)
+                expandBlossom(s, endStage);
+            else
+                for (int leaf : blossomLeaves(s))
+                    mInBlossom[leaf] = s;
+        }
+
+        if (!endStage && mLabel[b] == 2) {
+            int entryChild = mInBlossom[mEndpoint[mLabelEnd[b] ^ 1]];
+            int j = indexOf(childs, entryChild);
+            int jStep, endpTrick;
+            if ((j & 1) != 0) {
+                j -= len;
+                jStep = 1;
+                endpTrick = 0;
+            } else {
+                jStep = -1;
+                endpTrick = 1;
+            }
+
+            //relabel the path from the entry child to the base
+            int p = mLabelEnd[b];
+            while (j != 0) {
+                mLabel[mEndpoint[p ^ 1]] = 0;
+                mLabel[mEndpoint[endps[wrap(j - endpTrick, len)] ^ endpTrick ^ 1]] = 0;
+                assignLabel(mEndpoint[p ^ 1], 2, p);
+                mAllowEdge[endps[wrap(j - endpTrick, len)] / 2] = true;
+                j += jStep;
+                p = endps[wrap(j - endpTrick, len)] ^ endpTrick;
+                mAllowEdge[p / 2] = true;
+                j += jStep;
+            }
+            int bv = childs[wrap(j, len)];
+            mLabel[mEndpoint[p ^ 1]] = mLabel[bv] = 2;
+            mLabelEnd[mEndpoint[p ^ 1]] = mLabelEnd[bv] = p;
+            mBestEdge[bv] = -1;
+
+            //the remaining sub-blossoms may still be reachable from outside
+            j += jStep;
+            while (childs[wrap(j, len)] != entryChild) {
+                bv = childs[wrap(j, len)];
+                if (mLabel[bv] == 1) {
+                    j += jStep;
+                    continue;
+                }
+                int reached = -1;
+                for (int leaf : blossomLeaves(bv)) {
+                    if (mLabel[leaf] != 0) {
+                        reached = leaf;
+                        break;
+                    }
+                }
+                if (reached != -1) {
+                    mLabel[reached] = 0;
+                    mLabel[mEndpoint[mMate[mBlossomBase[bv]]]] = 0;
+                    assignLabel(reached, 2, mLabelEnd[reached]);
+                }
+                j += jStep;
+            }
+        }
+
+        mLabel[b] = mLabelEnd[b] = -1;
+        mBlossomChilds[b] = mBlossomEndps[b] = null;
+        mBlossomBase[b] = -1;
+        mBlossomBestEdges[b] = null;
+        mBestEdge[b] = -1;
+        mUnusedBlossoms[mNumUnused++] = b;
+    }
+
+    /**
+     * Swaps matched and unmatched edges along the even path from vertex v to the base of blossom b, and makes v the
+     * new base.
+     */
+    private void augmentBlossom(int b, int v) {
+        int n = mNumVertices;
+        int t = v;
+        while (mBlossomParent[t] != b)
+            t = mBlossomParent[t];
+        if (t >= n)
+            augmentBlossom(t, v);
+
+        int[] childs = mBlossomChilds[b];
+        int[] endps = mBlossomEndps[b];
+        int len = childs.length;
+        int i = indexOf(childs, t);
+        int j = i;
+        int jStep, endpTrick;
+        if ((i & 1) != 0) {
+            j -= len;
+            jStep = 1;
+            endpTrick = 0;
+        } else {
+            jStep = -1;
+            endpTrick = 1;
+        }
+        while (j != 0) {
+            j += jStep;
+            t = childs[wrap(j, len)];
+            int p = endps[wrap(j - endpTrick, len)] ^ endpTrick;
+            if (t >= n)
+                augmentBlossom(t, mEndpoint[p]);
+            j += jStep;
+            t = childs[wrap(j, len)];
+            if (t >= n)
+                augmentBlossom(t, mEndpoint[p ^ 1]);
+            mMate[mEndpoint[p]] = p ^ 1;
+            mMate[mEndpoint[p ^ 1]] = p;
+        }
+
+        //rotate so that the sub-blossom containing v comes first
+        int[] newChilds = new int[len];
+        int[] newEndps = new int[len];
+        for (int k = 0; k < len; k++) {
+            newChilds[k] = childs[(i + k) % len];
+            newEndps[k] = endps[(i + k) % len];
+        }
+        mBlossomChilds[b] = newChilds;
+        mBlossomEndps[b] = newEndps;
+        mBlossomBase[b] = mBlossomBase[newChilds[0]];
+    }
+
+    /**
+     * Augments the matching along the path through edge k, between the roots of the two trees it connects.
+     */
+    private void augmentMatching(int k) {
+        for (int side = 0; side < 2; side++) {
+            int s = mEndpoint[2 * k + side];
+            int p = 2 * k + 1 - side;
+            while (true) {
+                int bs = mInBlossom[s];
+                if (bs >= mNumVertices)
+                    augmentBlossom(bs, s);
+                mMate[s] = p;
+                if (mLabelEnd[bs] == -1)
+                    break;
+                int t = mEndpoint[mLabelEnd[bs]];
+                int bt = mInBlossom[t];
+                s = mEndpoint[mLabelEnd[bt]];
+                int j = mEndpoint[mLabelEnd[bt] ^ 1];
+                if (bt >= mNumVertices)
+                    augmentBlossom(bt, j);
+                mMate[j] = mLabelEnd[bt];
+                p = mLabelEnd[bt] ^ 1;
+            }
+        }
+    }
+
+    private static int indexOf(int[] arr, int val) {
+        for (int i = 0; i < arr.length; i++)
+            if (arr[i] == val)
+                return i;
+        return -1;
+    }
+
+    private static int wrap(int j, int len) {
+        return (j < 0) ? j + len : j;
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2015 Oliver Lum
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package oarlib.graph.util;
+
+import gnu.trove.TIntObjectHashMap;
+import oarlib.graph.impl.WindyGraph;
+import oarlib.link.impl.WindyEdge;
+
+import java.util.Arrays;
+
+/**
+ * Single source shortest paths in a windy graph, computed on demand and cached by source.  The graph is flattened
+ * into CSR arrays once, at construction, (each edge contributing an arc in each direction), and each query runs
+ * Dijkstra's algorithm over those arrays with a primitive heap, so a solver that needs shortest paths in several of its
+ * phases can share a single oracle instead of rebuilding graphs and path arrays in each one.
+ * <p/>
+ * Along with the distance, path, and edge path arrays, (with the same meaning as those filled by
+ * {@link CommonAlgorithms#dijkstrasAlgorithm(oarlib.core.Graph, int, int[], int[], int[])}), each source also records
+ * the average cost, (i.e. (cost + reverse cost) / 2 summed over the edges), of each of its shortest paths.
+ * <p/>
+ * The oracle takes a snapshot of the graph; if the graph changes, a new one should be constructed.  Vertex ids are
+ * assumed to be 1 through n, and costs to be non-negative.
+ *
+ * @author oliverlum
+ */
+public class WindyDistanceOracle {
+
+    private int mNumVertices;
+    private int[] mStart; //CSR offsets, indexed by vertex id
+    private int[] mHead;
+    private int[] mCost;
+    private int[] mRoundTripCost; //cost + reverse cost of the underlying edge
+    private int[] mLinkId;
+
+    //rows, indexed by source id; null until they're asked for
+    private int[][] mDist;
+    private int[][] mPath;
+    private int[][] mEdgePath;
+    private long[][] mRoundTripDist;
+
+    //scratch space for Dijkstra
+    private long[] mHeap;
+    private boolean[] mSettled;
+
+    private long mComputeTime;
+
+    /**
+     * @param g - the graph whose shortest paths we want
+     */
+    public WindyDistanceOracle(WindyGraph g) {
+        mNumVertices = g.getVertices().size();
+        TIntObjectHashMap<WindyEdge> indexedEdges = g.getInternalEdgeMap();
+        int[] edgeIds = indexedEdges.keys();
+        Arrays.sort(edgeIds);
+
+        int n = mNumVertices;
+        mStart = new int[n + 2];
+        WindyEdge e;
+        for (int id : edgeIds) {
+            e = indexedEdges.get(id);
+            mStart[e.getFirstEndpointId() + 1]++;
+            mStart[e.getSecondEndpointId() + 1]++;
+        }
+        for (int v = 1; v <= n + 1; v++)
+            mStart[v] += mStart[v - 1];
+
+        int numArcs = mStart[n + 1];
+        mHead = new int[numArcs];
+        mCost = new int[numArcs];
+        mRoundTripCost = new int[numArcs];
+        mLinkId = new int[numArcs];
+        int[] fill = Arrays.copyOf(mStart, n + 1);
+        int pos, i, j;
+        for (int id : edgeIds) {
+            e = indexedEdges.get(id);
+            i = e.getFirstEndpointId();
+            j = e.getSecondEndpointId();
+
+            pos = fill[i]++;
+            mHead[pos] = j;
+            mCost[pos] = e.getCost();
+            mRoundTripCost[pos] = e.getCost() + e.getReverseCost();
+            mLinkId[pos] = id;
+
+            pos = fill[j]++;
+            mHead[pos] = i;
+            mCost[pos] = e.getReverseCost();
+            mRoundTripCost[pos] = e.getCost() + e.getReverseCost();
+            mLinkId[pos] = id;
+        }
+
+        mDist = new int[n + 1][];
+        mPath = new int[n + 1][];
+        mEdgePath = new int[n + 1][];
+        mRoundTripDist = new long[n + 1][];
+        mHeap = new long[Math.max(1, numArcs + 1)];
+        mSettled = new boolean[n + 1];
+        mComputeTime = 0;
+    }
+
+    /**
+     * @param source - the id of the source
+     * @return - the ith entry is the cost of the shortest path from source to i, (Integer.MAX_VALUE if there is none).
+     * The array is shared, and must not be modified.
+     */
+    public int[] getDist(int source) {
+        ensureComputed(source);
+        return mDist[source];
+    }
+
+    /**
+     * @param source - the id of the source
+     * @return - the ith entry is the vertex before i on the shortest path from source to i, (-1 for the source, or if
+     * there is no path).  The array is shared, and must not be modified.
+     */
+    public int[] getPath(int source) {
+        ensureComputed(source);
+        return mPath[source];
+    }
+
+    /**
+     * @param source - the id of the source
+     * @return - the ith entry is the id of the last edge on the shortest path from source to i, (-1 for the source, or if
+     * there is no path).  The array is shared, and must not be modified.
+     */
+    public int[] getEdgePath(int source) {
+        ensureComputed(source);
+        return mEdgePath[source];
+    }
+
+    /**
+     * @param i - the id of the start of the path
+     * @param j - the id of the end of the path
+     * @return - the cost of the shortest path from i to j
+     */
+    public int getDist(int i, int j) {
+        return getDist(i)[j];
+    }
+
+    /**
+     * @param i - the id of the start of the path
+     * @param j - the id of the end of the path
+     * @return - the average of the forward and reverse costs of the edges on the shortest path from i to j.
+     */
+    public double getAveragePathCost(int i, int j) {
+        ensureComputed(i);
+        return mRoundTripDist[i][j] / 2.0;
+    }
+
+    /**
+     * @return - the total time, (in ms), spent computing shortest paths so far
+     */
+    public double getComputeTime() {
+        return mComputeTime / 1e6;
+    }
+
+    private void ensureComputed(int source) {
+        if (mDist[source] != null)
+            return;
+
+        long start = System.nanoTime();
+        int n = mNumVertices;
+        int[] dist = new int[n + 1];
+        int[] path = new int[n + 1];
+        int[] edgePath = new int[n + 1];
+        long[] roundTrip = new long[n + 1];
+        Arrays.fill(dist, Integer.MAX_VALUE);
+        Arrays.fill(path, -1);
+        Arrays.fill(edgePath, -1);
+        Arrays.fill(mSettled, false);
+
+        //lazy deletion heap of (dist << 32 | vertex)
+        int heapSize = 0;
+        dist[source] = 0;
+        heapSize = push(heapSize, source, 0);
+        long top;
+        int u, v, alt;
+        while (heapSize > 0) {
+            top = mHeap[0];
+            heapSize = pop(heapSize);
+            u = (int) (top & 0xFFFFFFFFL);
+            if (mSettled[u])
+                continue;
+            mSettled[u] = true;
+            for (int a = mStart[u]; a < mStart[u + 1]; a++) {
+                v = mHead[a];
+                if (mSettled[v])
+                    continue;
+                alt = dist[u] + mCost[a];
+                if (alt < dist[v]) {
+                    dist[v] = alt;
+                    path[v] = u;
+                    edgePath[v] = mLinkId[a];
+                    roundTrip[v] = roundTrip[u] + mRoundTripCost[a];
+                    heapSize = push(heapSize, v, alt);
+                }
+            }
+        }
+
+        mDist[source] = dist;
+        mPath[source] = path;
+        mEdgePath[source] = edgePath;
+        mRoundTripDist[source] = roundTrip;
+        mComputeTime += System.nanoTime() - start;
+    }
+
+    private int push(int heapSize, int vertex, int dist) {
+        if (heapSize == mHeap.length)
+            mHeap = Arrays.copyOf(mHeap, 2 * mHeap.length);
+        long key = ((long) dist << 32) | vertex;
+        int i = heapSize;
+        int parent;
+        while (i > 0) {
+            parent = (i - 1) >> 1;
+            if (mHeap[parent] <= key)
+                break;
+            mHeap[i] = mHeap[parent];
+            i = parent;
+        }
+        mHeap[i] = key;
+        return heapSize + 1;
+    }
+
+    private int pop(int heapSize) {
+        heapSize--;
+        long last = mHeap[heapSize];
+        int i = 0;
+        int child;
+        while ((child = 2 * i + 1) < heapSize) {
+            if (child + 1 < heapSize && mHeap[child + 1] < mHeap[child])
+                child++;
+            if (last <= mHeap[child])
+                break;
+            mHeap[i] = mHeap[child];
+            i = child;
+        }
+        mHeap[i] = last;
+        return heapSize;
+    }
+}
@@ -0,0 +1,458 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2015 Oliver Lum
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package oarlib.graph.util;
+
+import gnu.trove.TIntObjectHashMap;
+import oarlib.core.Graph;
+import oarlib.core.Link;
+import oarlib.core.Vertex;
+import oarlib.link.impl.AsymmetricLink;
+import org.apache.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Combinatorial lower bounds for windy (and, as special cases, undirected, directed and mixed) postman problems.
+ * A link is considered required if it's required in either direction, and a feasible solution must then service it
+ * once, in either direction.
+ * <p/>
+ * The main bound is the linear relaxation of the windy postman formulation of Win, (and Benavent et al.), without the
+ * odd cut constraints: minimize the total traversal cost subject to flow conservation at each vertex, and each required
+ * link being serviced once.  Writing the service of edge (i,j) as 1 unit from i to j, plus up to 2 units "switched"
+ * back from j to i at half the difference in cost, turns this into a single min cost flow problem with integral data,
+ * (after doubling the costs), so it's solved exactly by network simplex in a fraction of a second on graphs with tens
+ * of thousands of links.  It dominates the sum of the required costs, and ignores the connectivity of the required
+ * links, so it's a bound for both the CPP and the RPP.
+ * <p/>
+ * The relaxation ignores parity, so the optimal flow duals are then used to price a second, parity based bound (see
+ * {@link #getParityBound()}), and the best of the two is reported.
+ * <p/>
+ * For the min-max k vehicle versions, the bound is the larger of the single vehicle bound divided by k, and the cost
+ * of the cheapest round trip from the depot that services the farthest required link.
+ * <p/>
+ * The bound takes a snapshot of the graph; if the graph changes, a new one should be constructed.
+ *
+ * @author oliverlum
+ */
+public class WindyLowerBound {
+
+    private static final Logger LOGGER = Logger.getLogger(WindyLowerBound.class);
+
+    private int mNumVertices;
+    private int mNumLinks;
+    private int[] mIndex; //vertex id -> compact index
+    private int[] mTail;
+    private int[] mHead;
+    private int[] mForwardCost;
+    private int[] mReverseCost;
+    private int[] mForwardServiceCost;
+    private int[] mReverseServiceCost;
+    private boolean[] mDirected;
+    private boolean[] mRequired;
+    private boolean mIncludeServiceCosts;
+    private long mFlowBound;
+    private long mParityBound;
+    private long[] mPotential; //optimal duals of the flow relaxation, (in doubled units); null if it was infeasible
+
+    /**
+     * @param g - the graph whose postman problem we want to bound
+     */
+    public WindyLowerBound(Graph<? extends Vertex, ? extends Link<? extends Vertex>> g) {
+        TIntObjectHashMap<? extends Link<? extends Vertex>> indexedLinks = g.getInternalEdgeMap();
+        int[] linkIds = indexedLinks.keys();
+        Arrays.sort(linkIds);
+        mNumLinks = linkIds.length;
+        mNumVertices = g.getVertices().size();
+
+        //compact the vertex ids
+        int[] vertexIds = g.getInternalVertexMap().keys();
+        mIndex = new int[g.getVidCounter() + 1];
+        for (int i = 0; i < vertexIds.length; i++)
+            mIndex[vertexIds[i]] = i;
+
+        mTail = new int[mNumLinks];
+        mHead = new int[mNumLinks];
+        mForwardCost = new int[mNumLinks];
+        mReverseCost = new int[mNumLinks];
+        mForwardServiceCost = new int[mNumLinks];
+        mReverseServiceCost = new int[mNumLinks];
+        mDirected = new boolean[mNumLinks];
+        mRequired = new boolean[mNumLinks];
+
+        Link<? extends Vertex> l;
+        for (int k = 0; k < mNumLinks; k++) {
+            l = indexedLinks.get(linkIds[k]);
+            mTail[k] = mIndex[l.getFirstEndpointId()];
+            mHead[k] = mIndex[l.getSecondEndpointId()];
+            mForwardCost[k] = l.getCost();
+            mForwardServiceCost[k] = l.getServiceCost();
+            mDirected[k] = l.isDirected();
+            mRequired[k] = l.isRequired();
+            if (l instanceof AsymmetricLink) {
+                AsymmetricLink al = (AsymmetricLink) l;
+                mReverseCost[k] = al.getReverseCost();
+                mReverseServiceCost[k] = al.getReverseServiceCost();
+                mRequired[k] = mRequired[k] || al.isReverseRequired();
+            } else {
+                mReverseCost[k] = l.getCost();
+                mReverseServiceCost[k] = l.getServiceCost();
+            }
+        }
+
+        mIncludeServiceCosts = false;
+        mFlowBound = -1;
+        mParityBound = -1;
+    }
+
+    /**
+     * @param includeServiceCosts - whether the service costs of the required links count towards the objective, (in
+     *                            addition to their traversal costs).  Leave this off for problems where links may be
+     *                            serviced in other ways, (e.g. by zigzagging).  Default is false.
+     */
+    public void setIncludeServiceCosts(boolean includeServiceCosts) {
+        if (includeServiceCosts != mIncludeServiceCosts) {
+            mFlowBound = -1;
+            mParityBound = -1;
+        }
+        mIncludeServiceCosts = includeServiceCosts;
+    }
+
+    /**
+     * @return - the cost of servicing each required link once, in its cheaper direction, and nothing else.
+     */
+    public long getRequiredCostBound() {
+        long ans = 0;
+        for (int k = 0; k < mNumLinks; k++)
+            if (mRequired[k])
+                ans += cheapestService(k);
+        return ans;
+    }
+
+    /**
+     * Solves the linear relaxation of the windy postman problem, (without odd cut constraints), as a min cost flow.
+     * The result is cached, so subsequent calls are free.
+     *
+     * @return - a lower bound on the cost of a single closed walk that services every required link
+     */
+    public long getFlowBound() {
+        if (mFlowBound >= 0)
+            return mFlowBound;
+
+        //all costs are doubled, so that the switching arcs have integral cost
+        MinCostFlow flow = new MinCostFlow(mNumVertices);
+        int[] supply = new int[mNumVertices];
+        long fixedCost = 0;
+        int from, to, serviceCost, switchCost;
+        for (int k = 0; k < mNumLinks; k++) {
+            //deadheading
+            flow.addArc(mTail[k] + 1, mHead[k] + 1, MinCostFlow.INFINITE_CAPACITY, 2 * mForwardCost[k]);
+            if (!mDirected[k])
+                flow.addArc(mHead[k] + 1, mTail[k] + 1, MinCostFlow.INFINITE_CAPACITY, 2 * mReverseCost[k]);
+
+            if (!mRequired[k])
+                continue;
+
+            //service in the cheaper direction, and allow it to be switched to the other one
+            if (mDirected[k] || forwardService(k) <= reverseService(k)) {
+                from = mTail[k];
+                to = mHead[k];
+                serviceCost = forwardService(k);
+                switchCost = mDirected[k] ? -1 : reverseService(k) - serviceCost;
+            } else {
+                from = mHead[k];
+                to = mTail[k];
+                serviceCost = reverseService(k);
+                switchCost = forwardService(k) - serviceCost;
+            }
+            fixedCost += 2L * serviceCost;
+            supply[to]++;
+            supply[from]--;
+            if (switchCost >= 0)
+                flow.addArc(to + 1, from + 1, 2, switchCost);
+        }
+        for (int v = 0; v < mNumVertices; v++)
+            flow.setSupply(v + 1, supply[v]);
+
+        try {
+            long total = fixedCost + flow.solve();
+            mFlowBound = (total + 1) / 2;
+            mPotential = new long[mNumVertices];
+            for (int v = 0; v < mNumVertices; v++)
+                mPotential[v] = flow.getPotential(v + 1);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("The flow relaxation is infeasible, (the graph is not suitably connected).  Falling back on the required cost bound.");
+            mFlowBound = getRequiredCostBound();
+            mPotential = null;
+        }
+        return mFlowBound;
+    }
+
+    /**
+     * Recovers the parity information that the flow relaxation throws away, (e.g. a required dead end has to be
+     * traversed twice, not half-serviced in each direction).  With the potentials p from the flow relaxation, the cost
+     * of any closed walk equals its cost under the reduced costs c(i,j) + p(i) - p(j), and each traversal of a link costs
+     * at least the smaller of its two reduced costs, w.  These are non-negative at the optimum, so the walk costs at
+     * least the w-cost of the required links plus a min w-cost T-join on the vertices of odd required degree.  The
+     * T-join is in turn bounded below by half the sum, over those vertices, of the distance to the closest other one,
+     * which is found with a single multi-source Dijkstra.
+     *
+     * @return - a lower bound on the cost of a single closed walk that services every required link
+     */
+    public long getParityBound() {
+        if (mParityBound >= 0)
+            return mParityBound;
+        getFlowBound();
+        if (mPotential == null) {
+            mParityBound = getRequiredCostBound();
+            return mParityBound;
+        }
+
+        //reduced costs, in doubled units
+        long[] w = new long[mNumLinks];
+        long reverse;
+        for (int k = 0; k < mNumLinks; k++) {
+            w[k] = 2L * mForwardCost[k] + mPotential[mTail[k]] - mPotential[mHead[k]];
+            if (!mDirected[k]) {
+                reverse = 2L * mReverseCost[k] + mPotential[mHead[k]] - mPotential[mTail[k]];
+                w[k] = Math.min(w[k], reverse);
+            }
+            if (w[k] < 0) {
+                LOGGER.warn("The flow potentials are not dual feasible.  Falling back on the flow bound.");
+                mParityBound = mFlowBound;
+                return mParityBound;
+            }
+        }
+
+        //everything below is in quadrupled units
+        long total = 0;
+        boolean[] odd = new boolean[mNumVertices];
+        for (int k = 0; k < mNumLinks; k++) {
+            if (!mRequired[k])
+                continue;
+            total += 2 * w[k];
+            if (mIncludeServiceCosts)
+                total += 4L * (mDirected[k] ? mForwardServiceCost[k] : Math.min(mForwardServiceCost[k], mReverseServiceCost[k]));
+            if (mTail[k] != mHead[k]) {
+                odd[mTail[k]] = !odd[mTail[k]];
+                odd[mHead[k]] = !odd[mHead[k]];
+            }
+        }
+
+        int numOdd = 0;
+        for (int v = 0; v < mNumVertices; v++)
+            if (odd[v])
+                numOdd++;
+        int[] sources = new int[numOdd];
+        numOdd = 0;
+        for (int v = 0; v < mNumVertices; v++)
+            if (odd[v])
+                sources[numOdd++] = v;
+
+        if (numOdd > 0) {
+            //grow all the odd vertices at once; every link that joins two regions gives a path between two of them
+            int[] label = new int[mNumVertices];
+            long[] dist = dijkstra(buildAdjacency(false, true), w, sources, label);
+            long[] nearest = new long[mNumVertices];
+            Arrays.fill(nearest, Long.MAX_VALUE);
+            long candidate;
+            int u, v;
+            for (int k = 0; k < mNumLinks; k++) {
+                u = mTail[k];
+                v = mHead[k];
+                if (label[u] == -1 || label[v] == -1 || label[u] == label[v])
+                    continue;
+                candidate = dist[u] + w[k] + dist[v];
+                nearest[label[u]] = Math.min(nearest[label[u]], candidate);
+                nearest[label[v]] = Math.min(nearest[label[v]], candidate);
+            }
+            for (int source : sources)
+                if (nearest[source] < Long.MAX_VALUE)
+                    total += nearest[source];
+        }
+
+        mParityBound = (total + 3) / 4;
+        return mParityBound;
+    }
+
+    /**
+     * @return - the best available lower bound on the cost of a single closed walk that services every required link
+     */
+    public long getLowerBound() {
+        return Math.max(Math.max(getFlowBound(), getParityBound()), getRequiredCostBound());
+    }
+
+    /**
+     * Bounds the min-max k vehicle problem, (i.e. the cost of the longest of k routes that start and end at the depot,
+     * and together service every required link).
+     *
+     * @param depotId - the id of the depot vertex
+     * @param k       - the number of vehicles
+     * @return - a lower bound on the cost of the longest route
+     * @throws IllegalArgumentException - if k < 1
+     */
+    public long getMinMaxLowerBound(int depotId, int k) throws IllegalArgumentException {
+        if (k < 1) {
+            LOGGER.error("Invalid argument.  The number of vehicles must be >= 1.");
+            throw new IllegalArgumentException();
+        }
+
+        long ans = (getLowerBound() + k - 1) / k;
+
+        //the farthest required link has to be serviced by somebody
+        long[] deadheadCost = new long[mNumLinks];
+        long[] reverseDeadheadCost = new long[mNumLinks];
+        for (int l = 0; l < mNumLinks; l++) {
+            deadheadCost[l] = mForwardCost[l];
+            reverseDeadheadCost[l] = mReverseCost[l];
+        }
+        int[] depot = new int[]{mIndex[depotId]};
+        long[] distFromDepot = dijkstra(buildAdjacency(false, false), deadheadCost, reverseDeadheadCost, depot, null);
+        long[] distToDepot = dijkstra(buildAdjacency(true, false), deadheadCost, reverseDeadheadCost, depot, null);
+        long best, temp;
+        for (int l = 0; l < mNumLinks; l++) {
+            if (!mRequired[l])
+                continue;
+            best = roundTrip(distFromDepot, distToDepot, mTail[l], mHead[l], forwardService(l));
+            if (!mDirected[l]) {
+                temp = roundTrip(distFromDepot, distToDepot, mHead[l], mTail[l], reverseService(l));
+                best = Math.min(best, temp);
+            }
+            if (best < Long.MAX_VALUE)
+                ans = Math.max(ans, best);
+        }
+        return ans;
+    }
+
+    private static long roundTrip(long[] distFromDepot, long[] distToDepot, int from, int to, int serviceCost) {
+        if (distFromDepot[from] == Long.MAX_VALUE || distToDepot[to] == Long.MAX_VALUE)
+            return Long.MAX_VALUE;
+        return distFromDepot[from] + serviceCost + distToDepot[to];
+    }
+
+    private int forwardService(int k) {
+        return mIncludeServiceCosts ? mForwardCost[k] + mForwardServiceCost[k] : mForwardCost[k];
+    }
+
+    private int reverseService(int k) {
+        return mIncludeServiceCosts ? mReverseCost[k] + mReverseServiceCost[k] : mReverseCost[k];
+    }
+
+    private int cheapestService(int k) {
+        return mDirected[k] ? forwardService(k) : Math.min(forwardService(k), reverseService(k));
+    }
+
+    /**
+     * Builds the adjacency in CSR form; entry a of the result holds the link, (k), and direction, (-k-1 for
+     * backwards), of the ath arc, and the last mNumVertices + 1 entries are the row offsets.
+     *
+     * @param reverse    - if true, the arcs point backwards, (for distances to a vertex rather than from it)
+     * @param undirected - if true, directed links may be traversed backwards too
+     */
+    private int[][] buildAdjacency(boolean reverse, boolean undirected) {
+        int[] start = new int[mNumVertices + 1];
+        for (int k = 0; k < mNumLinks; k++) {
+            start[(reverse ? mHead[k] : mTail[k]) + 1]++;
+            if (undirected || !mDirected[k])
+                start[(reverse ? mTail[k] : mHead[k]) + 1]++;
+        }
+        for (int v = 0; v < mNumVertices; v++)
+            start[v + 1] += start[v];
+        int[] fill = Arrays.copyOf(start, mNumVertices);
+        int[] arcs = new int[start[mNumVertices]];
+        for (int k = 0; k < mNumLinks; k++) {
+            //forward traversals of k leave the tail, (or enter it, if we're going backwards)
+            arcs[fill[reverse ? mHead[k] : mTail[k]]++] = k;
+            if (undirected || !mDirected[k])
+                arcs[fill[reverse ? mTail[k] : mHead[k]]++] = -k - 1;
+        }
+        return new int[][]{start, arcs};
+    }
+
+    private long[] dijkstra(int[][] adjacency, long[] cost, int[] sources, int[] label) {
+        return dijkstra(adjacency, cost, cost, sources, label);
+    }
+
+    /**
+     * Multi-source Dijkstra's algorithm.
+     *
+     * @param adjacency   - as returned by buildAdjacency
+     * @param cost        - the cost of traversing each link forwards
+     * @param reverseCost - the cost of traversing each link backwards
+     * @param sources     - the compact indices of the sources
+     * @param label       - if not null, the ith entry is set to the source closest to vertex i, (-1 if unreachable)
+     * @return - the distances, indexed by compact vertex index; Long.MAX_VALUE if unreachable
+     */
+    private long[] dijkstra(int[][] adjacency, long[] cost, long[] reverseCost, int[] sources, int[] label) {
+        int[] start = adjacency[0];
+        int[] arcs = adjacency[1];
+
+        long[] dist = new long[mNumVertices];
+        Arrays.fill(dist, Long.MAX_VALUE);
+        if (label != null)
+            Arrays.fill(label, -1);
+        boolean[] settled = new boolean[mNumVertices];
+        PriorityQueue<long[]> pq = new PriorityQueue<long[]>(Math.max(1, mNumVertices), new Comparator<long[]>() {
+            @Override
+            public int compare(long[] o1, long[] o2) {
+                return o1[0] < o2[0] ? -1 : (o1[0] > o2[0] ? 1 : 0);
+            }
+        });
+        for (int source : sources) {
+            dist[source] = 0;
+            if (label != null)
+                label[source] = source;
+            pq.add(new long[]{0, source});
+        }
+        long[] top;
+        long arcCost;
+        int u, w, k;
+        while (!pq.isEmpty()) {
+            top = pq.poll();
+            u = (int) top[1];
+            if (settled[u])
+                continue;
+            settled[u] = true;
+            for (int a = start[u]; a < start[u + 1]; a++) {
+                k = arcs[a];
+                if (k >= 0) {
+                    w = mTail[k] == u ? mHead[k] : mTail[k];
+                    arcCost = cost[k];
+                } else {
+                    k = -k - 1;
+                    w = mHead[k] == u ? mTail[k] : mHead[k];
+                    arcCost = reverseCost[k];
+                }
+                if (!settled[w] && dist[u] + arcCost < dist[w]) {
+                    dist[w] = dist[u] + arcCost;
+                    if (label != null)
+                        label[w] = label[u];
+                    pq.add(new long[]{dist[w], w});
+                }
+            }
+        }
+        return dist;
+    }
+}
@@ -37,7 +37,6 @@ import oarlib.improvements.util.Utils;
 import oarlib.link.impl.Arc;
 import oarlib.link.impl.WindyEdge;
 import oarlib.problem.impl.ProblemAttributes;
-import oarlib.problem.impl.multivehicle.MinMaxKWRPP;
 import oarlib.solver.impl.MultiWRPPSolver_Benavent;
 import oarlib.vertex.impl.DirectedVertex;
 import oarlib.vertex.impl.WindyVertex;
@@ -45,6 +44,12 @@ import org.apache.log4j.Logger;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Created by oliverlum on 12/3/14.
@@ -53,12 +58,62 @@ public class BenaventIPFramework extends ImprovementProcedure<WindyVertex, Windy
 
     private static final Logger LOGGER = Logger.getLogger(BenaventIPFramework.class);
 
+    private static final int SYNC_INTERVAL = 5;
+
+    private int mNumIter;
+    private int mNumThreads;
+    private long mTimeLimit;
+    private long mSeed;
+
     public BenaventIPFramework(Problem<WindyVertex, WindyEdge, WindyGraph> problem) {
         super(problem);
+        mNumIter = 2;
+        mNumThreads = 1;
+        mTimeLimit = -1;
+        mSeed = -1;
     }
 
     public BenaventIPFramework(Problem<WindyVertex, WindyEdge, WindyGraph> problem, ImprovementStrategy.Type strat, Collection<Route<WindyVertex, WindyEdge>> initialSol) {
         super(problem, strat, initialSol);
+        mNumIter = 2;
+        mNumThreads = 1;
+        mTimeLimit = -1;
+        mSeed = -1;
+    }
+
+    /**
+     * @param newNumIter - the number of ILS iterations, counting the initial VND pass, (so 1 means no perturbations)
+     */
+    public void setNumIterations(int newNumIter) {
+        if (newNumIter < 1) {
+            LOGGER.warn("Invalid argument.  numIterations must be >= 1.");
+            return;
+        }
+        mNumIter = newNumIter;
+    }
+
+    /**
+     * Switches on the multi-start mode, in which the perturbation phase runs as several independent ILS trajectories,
+     * one per thread, sharing a global best solution.
+     *
+     * @param numThreads  - the number of trajectories to run concurrently, (1 = the usual sequential ILS)
+     * @param timeLimitMs - the wall clock budget for the perturbation phase in milliseconds, or -1 to instead run
+     *                    numIterations - 1 perturbations per trajectory
+     */
+    public void setMultiStart(int numThreads, long timeLimitMs) {
+        if (numThreads < 1) {
+            LOGGER.warn("Invalid argument.  numThreads must be >= 1.");
+            return;
+        }
+        mNumThreads = numThreads;
+        mTimeLimit = timeLimitMs;
+    }
+
+    /**
+     * @param newSeed - the seed for the perturbations; each trajectory derives its own seed from it
+     */
+    public void setSeed(long newSeed) {
+        mSeed = newSeed;
     }
 
     @Override
@@ -70,10 +125,9 @@ public class BenaventIPFramework extends ImprovementProcedure<WindyVertex, Windy
     public Collection<Route<WindyVertex, WindyEdge>> improveSolution() {
 
         Collection<Route<WindyVertex, WindyEdge>> initialSol = getInitialSol();
-        Collection<Route<WindyVertex, WindyEdge>> currSol, globalBest, postSimplify;
-        Route<WindyVertex, WindyEdge> perturbed;
+        Collection<Route<WindyVertex, WindyEdge>> currSol, globalBest;
 
-        int nIter = 2; //num perturbations
+        int nIter = mNumIter; //num perturbations
         globalBest = initialSol;
         LOGGER.info("Starting obj value: " + mProblem.getObjectiveFunction().evaluate(initialSol));
 
@@ -97,52 +151,16 @@ public class BenaventIPFramework extends ImprovementProcedure<WindyVertex, Windy
         globalBest = Utils.compareSolutions(currSol, globalBest);
         LOGGER.info("Best obj value set to : " + mProblem.getObjectiveFunction().evaluate(globalBest));
 
-        for (int ILS = 1; ILS < nIter; ILS++) {
-
-            //collapse
-            LOGGER.debug("Collapse");
-            Route<WindyVertex, WindyEdge> collapsed = Utils.aggregateIntoGlobalTour(currSol, getGraph());
-
-            //perturb
-            LOGGER.debug("Perturb");
-            TwoSwapPerturb perturbation = new TwoSwapPerturb(getProblem());
-            perturbed = perturbation.improveRoute(collapsed);
-
-            //resplit
-            LOGGER.debug("Resplit");
-            MinMaxKWRPP tempInstance = new MinMaxKWRPP(getGraph(), mProblem.getmNumVehicles());
-            MultiWRPPSolver_Benavent splitter = new MultiWRPPSolver_Benavent(tempInstance);
-
-            ArrayList<Route<WindyVertex, WindyEdge>> container = new ArrayList<Route<WindyVertex, WindyEdge>>();
-            Collection<Route<DirectedVertex, Arc>> dirTours = splitter.splitRoute(Utils.convertWindyTourToDirectedTour(perturbed), mProblem.getGraph(), mProblem.getmNumVehicles());
-            for (Route<DirectedVertex, Arc> r : dirTours) {
-                container.add(oarlib.graph.util.Utils.reclaimTour(r, mProblem.getGraph()));
+        if (mNumThreads > 1) {
+            currSol = multiStart(currSol, nIter);
+        } else {
+            Random rng = mSeed == -1 ? new Random() : new Random(mSeed);
+            for (int ILS = 1; ILS < nIter; ILS++) {
+                //update global sol
+                LOGGER.debug("Compare 2");
+                currSol = Utils.compareSolutions(currSol, perturbAndImprove(currSol, rng));
+                LOGGER.info("Curr obj value set to : " + mProblem.getObjectiveFunction().evaluate(currSol));
             }
-            LOGGER.info("Perturb obj value: " + mProblem.getObjectiveFunction().evaluate(container));
-
-            //apply the intraroute IPs on each of the routes
-            LOGGER.debug("IntraRoute IPs 2");
-            vnd1 = new Benavent_VND1(getProblem(), container);
-            postVND1 = vnd1.improveSolution();
-            LOGGER.info("VND1 obj value: " + mProblem.getObjectiveFunction().evaluate(postVND1));
-
-            //simplify
-            LOGGER.debug("Simplify");
-            Simplification simplification = new Simplification(getProblem(), postVND1);
-            postSimplify = simplification.improveSolution();
-            LOGGER.info("Simplify obj value: " + mProblem.getObjectiveFunction().evaluate(postSimplify));
-
-            //run interroute
-            LOGGER.debug("InterRoute IPs 2");
-            vnd2 = new Benavent_VND2(getProblem(), postSimplify);
-            postVND2 = vnd2.improveSolution();
-            LOGGER.info("VND2 obj value: " + mProblem.getObjectiveFunction().evaluate(postVND2));
-
-            //update global sol
-            LOGGER.debug("Compare 2");
-            currSol = Utils.compareSolutions(currSol, postVND2);
-            LOGGER.info("Curr obj value set to : " + mProblem.getObjectiveFunction().evaluate(currSol));
-
         }
 
         //update global sol
@@ -153,4 +171,145 @@ public class BenaventIPFramework extends ImprovementProcedure<WindyVertex, Windy
         //return best sol
         return globalBest;
     }
+
+    /**
+     * One ILS iteration: collapse the routes into a single tour, perturb it, re-split it, and run the VNDs on the
+     * result.
+     *
+     * @param currSol - the solution to perturb
+     * @param rng     - the source of randomness for the perturbation
+     * @return - the improved, perturbed solution (which may be worse than currSol)
+     */
+    private Collection<Route<WindyVertex, WindyEdge>> perturbAndImprove(Collection<Route<WindyVertex, WindyEdge>> currSol, Random rng) {
+
+        //collapse
+        LOGGER.debug("Collapse");
+        Route<WindyVertex, WindyEdge> collapsed = Utils.aggregateIntoGlobalTour(currSol, getGraph());
+
+        //perturb
+        LOGGER.debug("Perturb");
+        TwoSwapPerturb perturbation = new TwoSwapPerturb(getProblem(), rng);
+        Route<WindyVertex, WindyEdge> perturbed = perturbation.improveRoute(collapsed);
+
+        //resplit
+        LOGGER.debug("Resplit");
+        ArrayList<Route<WindyVertex, WindyEdge>> container = new ArrayList<Route<WindyVertex, WindyEdge>>();
+        Collection<Route<DirectedVertex, Arc>> dirTours = MultiWRPPSolver_Benavent.splitRoute(Utils.convertWindyTourToDirectedTour(perturbed), mProblem.getGraph(), mProblem.getmNumVehicles());
+        for (Route<DirectedVertex, Arc> r : dirTours) {
+            container.add(oarlib.graph.util.Utils.reclaimTour(r, mProblem.getGraph()));
+        }
+        LOGGER.debug("Perturb obj value: " + mProblem.getObjectiveFunction().evaluate(container));
+
+        //apply the intraroute IPs on each of the routes
+        LOGGER.debug("IntraRoute IPs 2");
+        Benavent_VND1 vnd1 = new Benavent_VND1(getProblem(), container);
+        Collection<Route<WindyVertex, WindyEdge>> postVND1 = vnd1.improveSolution();
+        LOGGER.debug("VND1 obj value: " + mProblem.getObjectiveFunction().evaluate(postVND1));
+
+        //simplify
+        LOGGER.debug("Simplify");
+        Simplification simplification = new Simplification(getProblem(), postVND1);
+        Collection<Route<WindyVertex, WindyEdge>> postSimplify = simplification.improveSolution();
+        LOGGER.debug("Simplify obj value: " + mProblem.getObjectiveFunction().evaluate(postSimplify));
+
+        //run interroute
+        LOGGER.debug("InterRoute IPs 2");
+        Benavent_VND2 vnd2 = new Benavent_VND2(getProblem(), postSimplify);
+        Collection<Route<WindyVertex, WindyEdge>> postVND2 = vnd2.improveSolution();
+        LOGGER.debug("VND2 obj value: " + mProblem.getObjectiveFunction().evaluate(postVND2));
+
+        return postVND2;
+    }
+
+    /**
+     * Runs mNumThreads independent ILS trajectories from the starting solution, each with its own seeded source of
+     * randomness.  Every trajectory publishes its improvements to a shared best solution, and periodically restarts
+     * from the shared best if it is better than where the trajectory currently is.  Each trajectory stops after
+     * nIter - 1 iterations, or, if a time limit is set, when the time limit expires.
+     *
+     * @param start - the starting solution
+     * @param nIter - the number of ILS iterations per trajectory, (counting the initial VND pass)
+     * @return - the best solution found by any of the trajectories
+     */
+    private Collection<Route<WindyVertex, WindyEdge>> multiStart(Collection<Route<WindyVertex, WindyEdge>> start, final int nIter) {
+
+        //make sure the lazy shortest paths are generated before the threads start reading them
+        getGraph().getAllPairsDistMatrix();
+
+        final AtomicReference<Incumbent> best = new AtomicReference<Incumbent>(new Incumbent(start, mProblem.getObjectiveFunction().evaluate(start)));
+        final long deadline = mTimeLimit == -1 ? Long.MAX_VALUE : System.currentTimeMillis() + mTimeLimit;
+        final long baseSeed = mSeed == -1 ? System.nanoTime() : mSeed;
+
+        ExecutorService pool = Executors.newFixedThreadPool(mNumThreads);
+        ArrayList<Future<?>> trajectories = new ArrayList<Future<?>>();
+        for (int t = 0; t < mNumThreads; t++) {
+            final Random rng = new Random(baseSeed + 7919L * t);
+            trajectories.add(pool.submit(new Runnable() {
+                @Override
+                public void run() {
+                    Collection<Route<WindyVertex, WindyEdge>> curr = copy(best.get().sol);
+                    for (int ILS = 1; (mTimeLimit != -1 || ILS < nIter) && System.currentTimeMillis() < deadline; ILS++) {
+                        curr = Utils.compareSolutions(curr, perturbAndImprove(curr, rng));
+                        publish(best, curr, mProblem.getObjectiveFunction().evaluate(curr));
+
+                        //sync up with the other trajectories every so often
+                        if (ILS % SYNC_INTERVAL == 0) {
+                            Incumbent global = best.get();
+                            if (global.obj < mProblem.getObjectiveFunction().evaluate(curr))
+                                curr = copy(global.sol);
+                        }
+                    }
+                }
+            }));
+        }
+
+        try {
+            for (Future<?> f : trajectories)
+                f.get();
+        } catch (InterruptedException e) {
+            LOGGER.warn("Interrupted while waiting for the ILS trajectories; returning the best solution so far.");
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOGGER.error("One of the ILS trajectories failed.", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        LOGGER.info("Multi-start best obj value: " + best.get().obj);
+        return best.get().sol;
+    }
+
+    /**
+     * Lock-free update of the shared best solution.
+     */
+    private static void publish(AtomicReference<Incumbent> best, Collection<Route<WindyVertex, WindyEdge>> candidate, double candidateObj) {
+        Incumbent curr;
+        Incumbent next = null;
+        while (candidateObj < (curr = best.get()).obj) {
+            if (next == null)
+                next = new Incumbent(copy(candidate), candidateObj);
+            if (best.compareAndSet(curr, next))
+                return;
+        }
+    }
+
+    private static Collection<Route<WindyVertex, WindyEdge>> copy(Collection<Route<WindyVertex, WindyEdge>> sol) {
+        ArrayList<Route<WindyVertex, WindyEdge>> ans = new ArrayList<Route<WindyVertex, WindyEdge>>();
+        for (Route<WindyVertex, WindyEdge> r : sol)
+            ans.add(r.getDeepCopy());
+        return ans;
+    }
+
+    /**
+     * An immutable (solution, objective value) pair, so the two can be swapped atomically.
+     */
+    private static class Incumbent {
+        private final Collection<Route<WindyVertex, WindyEdge>> sol;
+        private final double obj;
+
+        Incumbent(Collection<Route<WindyVertex, WindyEdge>> sol, double obj) {
+            this.sol = sol;
+            this.obj = obj;
+        }
+    }
 }
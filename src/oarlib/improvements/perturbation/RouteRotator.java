@@ -100,26 +100,11 @@ public class RouteRotator {
 
         //assign customers to the closest new partition
         HashMap<Integer, HashSet<Integer>> newPartitions = new HashMap<Integer, HashSet<Integer>>();
-
-        int closestIndex;
-        double closestDist;
-        for(WindyEdge e : g.getEdges()) {
-            closestIndex = -1;
-            closestDist = Double.MAX_VALUE;
-            if(e.isRequired() || ((AsymmetricLink)e).isReverseRequired()) {
-                for(int i = 0; i < newPartitionCenters.size(); i++) {
-                    Pair<Double> pc = newPartitionCenters.get(i);
-                    double dist = Utils.geoDistance(pc, new Pair<Double>((e.getEndpoints().getFirst().getX() + e.getEndpoints().getSecond().getX())*.5,(e.getEndpoints().getFirst().getY() + e.getEndpoints().getSecond().getY())*.5));
-                    if(dist < closestDist) {
-                        closestIndex = i;
-                        closestDist = dist;
-                    }
-                }
-
-                if(!newPartitions.containsKey(closestIndex))
-                    newPartitions.put(closestIndex, new HashSet<Integer>());
-                newPartitions.get(closestIndex).add(e.getId());
-            }
+        HashMap<Integer, Integer> closest = Utils.assignCustomersToPartitions(newPartitionCenters, Utils.assignCustomersToCoordinates(g));
+        for(Integer id : closest.keySet()) {
+            if(!newPartitions.containsKey(closest.get(id)))
+                newPartitions.put(closest.get(id), new HashSet<Integer>());
+            newPartitions.get(closest.get(id)).add(id);
         }
 
         //create a graph for each of the new partitions, and route it
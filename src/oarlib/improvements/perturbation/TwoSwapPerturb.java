@@ -46,12 +46,23 @@ import java.util.Random;
  */
 public class TwoSwapPerturb extends IntraRouteImprovementProcedure<WindyVertex, WindyEdge, WindyGraph> {
 
+    private Random mRng;
+
     public TwoSwapPerturb(Problem<WindyVertex, WindyEdge, WindyGraph> problem) {
+        this(problem, new Random());
+    }
+
+    /**
+     * @param rng - the source of randomness for choosing the swap, (e.g. seeded, for reproducible or independent runs)
+     */
+    public TwoSwapPerturb(Problem<WindyVertex, WindyEdge, WindyGraph> problem, Random rng) {
         super(problem);
+        mRng = rng;
     }
 
     public TwoSwapPerturb(Problem<WindyVertex, WindyEdge, WindyGraph> problem, ImprovementStrategy.Type strat, Collection<Route<WindyVertex, WindyEdge>> initialSol) {
         super(problem, strat, initialSol);
+        mRng = new Random();
     }
 
     @Override
@@ -64,7 +75,7 @@ public class TwoSwapPerturb extends IntraRouteImprovementProcedure<WindyVertex,
 
         Route<WindyVertex, WindyEdge> ans = null;
 
-        Random rng = new Random();
+        Random rng = mRng;
         List<WindyEdge> rPath = r.getPath();
         int routeLength = r.getCompactRepresentation().size();
         int index1 = rng.nextInt(routeLength);
@@ -6,6 +6,7 @@ import oarlib.core.Link;
 import oarlib.core.Route;
 import oarlib.core.Vertex;
 import oarlib.graph.impl.DirectedGraph;
+import oarlib.graph.util.KDTree;
 import oarlib.graph.util.Pair;
 import oarlib.link.impl.Arc;
 import oarlib.link.impl.AsymmetricLink;
@@ -99,28 +100,12 @@ public class Utils {
 
         HashMap<Integer, Integer> ans = new HashMap<Integer, Integer>();
 
-        int minIndex;
-        double minDist;
-        double dist;
-        double custX, custY, partX, partY;
+        //index the centers so that each customer is a log-time lookup instead of a scan over all of them
+        KDTree centerIndex = new KDTree(partitionCenters);
+        Pair<Double> cust;
         for(Integer i : customers.keySet()){
-            minDist = Double.MAX_VALUE;
-            minIndex = -1;
-            custX = customers.get(i).getFirst();
-            custY = customers.get(i).getSecond();
-            for(int j = 0 ; j < partitionCenters.size() ; j++) {
-                partX = partitionCenters.get(j).getFirst();
-                partY = partitionCenters.get(j).getSecond();
-
-                dist = Math.sqrt(Math.pow(custX - partX,2) + Math.pow(custY - partY,2));
-                if(dist < minDist) {
-                    minDist = dist;
-                    minIndex = j;
-                }
-            }
-
-            ans.put(i, minIndex);
-
+            cust = customers.get(i);
+            ans.put(i, centerIndex.nearest(cust.getFirst(), cust.getSecond()));
         }
 
         return ans;
@@ -68,6 +68,10 @@ public class ConvexHullMetric extends Metric {
             p = convex_hull(p);
             convexH[i] = p;
         }
+
+        //only clip pairs of hulls whose bounding boxes overlap; the rest can't intersect
+        boolean[][] mayIntersect = overlappingBounds(convexH);
+
         double intersec = 0;
         for (int i = 0; i < nRoutes; i++) {
             Point[] c1 = convexH[i];
@@ -78,6 +82,9 @@ public class ConvexHullMetric extends Metric {
                         if (hull_intersec_area[i][j] != null) {
                             double area = hull_intersec_area[i][j].doubleValue();
                             intersec += area / area1;
+                        } else if (!mayIntersect[i][j]) {
+                            hull_intersec_area[i][j] = 0.0;
+                            hull_intersec_area[j][i] = 0.0;
                         } else {
 
                             Point[] c2 = convexH[j];
@@ -109,6 +116,51 @@ public class ConvexHullMetric extends Metric {
         return (intersec) / nRoutes;
     }
 
+    /**
+     * Sweeps the bounding boxes of the hulls from left to right, so that only boxes that overlap in x are compared,
+     * (rather than all pairs).
+     *
+     * @param hulls - the convex hulls
+     * @return - ans[i][j] is true if the bounding boxes of hulls i and j overlap with positive area
+     */
+    private boolean[][] overlappingBounds(Point[][] hulls) {
+        int n = hulls.length;
+        final double[] minX = new double[n];
+        double[] minY = new double[n];
+        double[] maxX = new double[n];
+        double[] maxY = new double[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            minX[i] = minY[i] = Double.POSITIVE_INFINITY;
+            maxX[i] = maxY[i] = Double.NEGATIVE_INFINITY;
+            for (Point p : hulls[i]) {
+                minX[i] = Math.min(minX[i], p.x);
+                minY[i] = Math.min(minY[i], p.y);
+                maxX[i] = Math.max(maxX[i], p.x);
+                maxY[i] = Math.max(maxY[i], p.y);
+            }
+            order[i] = i;
+        }
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Double.compare(minX[o1], minX[o2]);
+            }
+        });
+
+        boolean[][] ans = new boolean[n][n];
+        for (int a = 0; a < n; a++) {
+            int i = order[a];
+            for (int b = a + 1; b < n && minX[order[b]] < maxX[i]; b++) {
+                int j = order[b];
+                if (minY[i] < maxY[j] && minY[j] < maxY[i])
+                    ans[i][j] = ans[j][i] = true;
+            }
+        }
+        return ans;
+    }
+
     private double cross(Point O, Point A, Point B) {
         return (A.x - O.x) * (B.y - O.y) - (A.y - O.y) * (B.x - O.x);
     }
@@ -26,9 +26,8 @@ package oarlib.problem.impl.io;
 import oarlib.exceptions.FormatMismatchException;
 import oarlib.exceptions.UnsupportedFormatException;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
+import oarlib.problem.impl.io.util.ByteTokenizer;
+
 import java.util.HashMap;
 
 /**
@@ -70,22 +69,18 @@ public class PartitionReader {
             HashMap<Integer, Integer> ans = new HashMap<Integer, Integer>();
 
             //file reading vars
-            String line;
-            String[] temp;
             int part;
             Integer counter = 1;
-            File partitionFile = new File(fileName);
-            BufferedReader br = new BufferedReader(new FileReader(partitionFile));
+            ByteTokenizer tok = ByteTokenizer.open(fileName);
 
-            while ((line = br.readLine()) != null) {
-                temp = line.split(",\\s+|:");
-                part = Integer.parseInt(temp[0]);
+            while (tok.nextLine()) {
+                part = tok.nextInt();
 
                 ans.put(counter, part);
                 counter++;
             }
 
-            br.close();
+            tok.close();
             return ans;
         } catch (Exception e) {
             e.printStackTrace();
@@ -29,6 +29,38 @@ package oarlib.problem.impl.io;
  * @author Oliver
  */
 public class ProblemFormat {
+
+    /*
+     * Layout of the OARLibBinary format, (all values big-endian):
+     *
+     * header:     magic, version, graph type ordinal, depot id, n, m, flags (7 ints)
+     * vertices:   n x-coordinates, n y-coordinates (doubles, only if FLAG_COORDINATES is set)
+     * links:      m first endpoints, m second endpoints, m costs, m reverse costs (ints), m link flags (bytes)
+     * matrix:     n * n shortest path distances, row by row (ints, only if FLAG_DISTANCE_MATRIX is set)
+     * service:    m service costs, m reverse service costs (ints, only if FLAG_SERVICE_COSTS is set)
+     * capacities: m link capacities (ints, only if FLAG_CAPACITIES is set; see LINK_CAPACITY_SET)
+     * demands:    n vertex demands (ints), n demand set flags (bytes, 1 if set), (only if FLAG_DEMANDS is set)
+     *
+     * Vertex i and link i of the file are the ones with id i, so only graphs whose ids are 1 ... n and 1 ... m can
+     * be written.  Version 1 files, (which end after the matrix), are still read.
+     */
+    public static final int BINARY_MAGIC = 0x4F415242; //"OARB"
+    public static final int BINARY_VERSION = 2;
+    public static final int BINARY_HEADER_BYTES = 28;
+
+    //header flags
+    public static final int FLAG_COORDINATES = 1;
+    public static final int FLAG_DISTANCE_MATRIX = 2;
+    public static final int FLAG_SERVICE_COSTS = 4;
+    public static final int FLAG_CAPACITIES = 8;
+    public static final int FLAG_DEMANDS = 16;
+
+    //link flags
+    public static final byte LINK_REQUIRED = 1;
+    public static final byte LINK_DIRECTED = 2;
+    public static final byte LINK_REVERSE_REQUIRED = 4;
+    public static final byte LINK_CAPACITY_SET = 8;
+
     //Names of supported formats
     public enum Name {
         Corberan, //http://www.uv.es/corberan/instancias.htm
@@ -38,6 +70,7 @@ public class ProblemFormat {
         METIS, // format of the input / output of the METIS graph partitioning library
         MeanderingPostman, // format used by researcher Rui Zhang to store the WRPP with ZigZag option, AKA the Meandering Postman Problem
         OARLib, //ours
+        OARLibBinary, //ours, as a compact binary file that can be memory-mapped
         JSON, //for visualization
         Zhang_Matrix_Windy,
         Zhang_Matrix_Zigzag,
@@ -0,0 +1,312 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2015 Oliver Lum
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package oarlib.problem.impl.io;
+
+import oarlib.core.Graph;
+import oarlib.core.Problem;
+import oarlib.exceptions.FormatMismatchException;
+import oarlib.exceptions.UnsupportedFormatException;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Loads every instance file in a directory into Problem objects, reading and parsing the files concurrently.
+ * <p/>
+ * Instances are handed back in the (lexicographic) order of their file names, regardless of the order in which
+ * the reads finish, and at most maxInFlight of them are read ahead of the consumer at any given time, so iterating
+ * over a large benchmark folder only ever holds a bounded number of graphs in memory.  Files that can't be read
+ * are logged and skipped.
+ * <p/>
+ * If a file doesn't appear to be in the requested format, the loader tries the other formats that the
+ * ProblemReader supports, and if one of them works, logs which one and uses it.  This can be turned off with
+ * setDetectFormat.
+ *
+ * @author oliverlum
+ */
+public class ProblemLoader<P extends Problem<?, ?, ?>> implements Iterable<P> {
+
+    private static final Logger LOGGER = Logger.getLogger(ProblemLoader.class);
+
+    /**
+     * The formats to fall back on if a file doesn't match the one requested, roughly in order of how strict
+     * the corresponding readers are.
+     */
+    private static final ProblemFormat.Name[] DETECTION_ORDER = {
+            ProblemFormat.Name.OARLibBinary,
+            ProblemFormat.Name.OARLib,
+            ProblemFormat.Name.Corberan,
+            ProblemFormat.Name.Yaoyuenyong,
+            ProblemFormat.Name.Campos,
+            ProblemFormat.Name.MeanderingPostman,
+            ProblemFormat.Name.Zhang_Matrix_WRPP,
+            ProblemFormat.Name.METIS,
+            ProblemFormat.Name.Simple
+    };
+
+    private File mDirectory;
+    private ProblemFormat.Name mFormat;
+    private ProblemFactory<P> mFactory;
+    private FilenameFilter mFilter;
+    private int mNumThreads;
+    private int mMaxInFlight;
+    private boolean mDetectFormat;
+
+    /**
+     * @param directory - the folder containing the instance files; subdirectories and hidden files are ignored
+     * @param format    - the format the instance files are expected to be in
+     * @param factory   - turns each graph that was read into a problem instance
+     */
+    public ProblemLoader(String directory, ProblemFormat.Name format, ProblemFactory<P> factory) {
+        mDirectory = new File(directory);
+        mFormat = format;
+        mFactory = factory;
+        mFilter = null;
+        mNumThreads = Runtime.getRuntime().availableProcessors();
+        mMaxInFlight = 2 * mNumThreads;
+        mDetectFormat = true;
+    }
+
+    public void setFileFilter(FilenameFilter newFilter) {
+        mFilter = newFilter;
+    }
+
+    public void setNumThreads(int newNumThreads) {
+        if (newNumThreads < 1) {
+            LOGGER.warn("Invalid argument.  numThreads must be >= 1.");
+            return;
+        }
+        mNumThreads = newNumThreads;
+    }
+
+    /**
+     * @param newMaxInFlight - the maximum number of instances that may be read ahead of the consumer
+     */
+    public void setMaxInFlight(int newMaxInFlight) {
+        if (newMaxInFlight < 1) {
+            LOGGER.warn("Invalid argument.  maxInFlight must be >= 1.");
+            return;
+        }
+        mMaxInFlight = newMaxInFlight;
+    }
+
+    public void setDetectFormat(boolean newDetectFormat) {
+        mDetectFormat = newDetectFormat;
+    }
+
+    /**
+     * @return - the instance files that will be read, in the order that they will be returned.
+     */
+    public File[] getFiles() {
+        File[] candidates = mDirectory.listFiles();
+        if (candidates == null) {
+            LOGGER.error("The directory " + mDirectory.getPath() + " could not be listed.");
+            return new File[0];
+        }
+        ArrayList<File> ans = new ArrayList<File>();
+        for (File f : candidates) {
+            if (f.isDirectory() || f.getName().startsWith("."))
+                continue;
+            if (mFilter != null && !mFilter.accept(mDirectory, f.getName()))
+                continue;
+            ans.add(f);
+        }
+        File[] files = ans.toArray(new File[ans.size()]);
+        Arrays.sort(files);
+        return files;
+    }
+
+    /**
+     * Loads all of the instances at once.  Only appropriate when they will all fit in memory; otherwise iterate.
+     *
+     * @return - the instances that were read successfully, in file name order.
+     */
+    public ArrayList<P> loadAll() {
+        ArrayList<P> ans = new ArrayList<P>();
+        for (P instance : this)
+            ans.add(instance);
+        return ans;
+    }
+
+    /**
+     * Starts reading the files in the background.  Each call returns an independent pass over the directory.
+     * The reader threads are released once the iterator is exhausted.
+     */
+    @Override
+    public Iterator<P> iterator() {
+        return new LoadingIterator(getFiles());
+    }
+
+    /**
+     * Reads a single file, falling back on the other known formats if it doesn't match the one requested.
+     *
+     * @param file - the file to read
+     * @return - the problem instance, or null if the file couldn't be read, or the factory rejected the graph.
+     */
+    private P load(File file) {
+        String path = file.getPath();
+        String name = file.getName();
+        Graph<?, ?> g = null;
+        try {
+            g = new ProblemReader(mFormat).readGraph(path);
+        } catch (FormatMismatchException e) {
+            if (!mDetectFormat) {
+                LOGGER.error("Could not read " + path + " as " + mFormat + ": " + e.getMessage());
+                return null;
+            }
+            for (ProblemFormat.Name candidate : DETECTION_ORDER) {
+                if (candidate == mFormat)
+                    continue;
+                g = tryRead(path, candidate);
+                if (g != null) {
+                    LOGGER.warn(path + " does not appear to be in the " + mFormat + " format; it was read as " + candidate + " instead.");
+                    break;
+                }
+            }
+            if (g == null) {
+                LOGGER.error("Could not read " + path + " in any of the supported formats.");
+                return null;
+            }
+        } catch (Exception e) {
+            LOGGER.error("Could not read " + path + " as " + mFormat + ".", e);
+            return null;
+        }
+
+        P ans = mFactory.createProblem(g, name);
+        if (ans == null)
+            LOGGER.debug("Skipping " + path + "; its graph is not of a type this loader accepts.");
+        return ans;
+    }
+
+    private static Graph<?, ?> tryRead(String path, ProblemFormat.Name format) {
+        try {
+            return new ProblemReader(format).readGraph(path);
+        } catch (FormatMismatchException e) {
+            return null;
+        } catch (UnsupportedFormatException e) {
+            return null;
+        } catch (RuntimeException e) {
+            //lenient readers may trip over a file in another format rather than report the mismatch
+            return null;
+        }
+    }
+
+    /**
+     * Turns a graph read from disk into a problem instance.
+     */
+    public interface ProblemFactory<P extends Problem<?, ?, ?>> {
+        /**
+         * @param g    - the graph that was read
+         * @param name - the name of the file it was read from
+         * @return - the problem instance, or null if the graph isn't suitable, (e.g. it's of the wrong type),
+         * in which case the file is skipped.
+         */
+        P createProblem(Graph<?, ?> g, String name);
+    }
+
+    private class LoadingIterator implements Iterator<P> {
+
+        private File[] mFiles;
+        private int mNextToSubmit;
+        private ArrayDeque<Future<P>> mPending;
+        private ExecutorService mPool;
+        private P mNext;
+
+        LoadingIterator(File[] files) {
+            mFiles = files;
+            mNextToSubmit = 0;
+            mPending = new ArrayDeque<Future<P>>();
+            mPool = Executors.newFixedThreadPool(Math.max(1, Math.min(mNumThreads, files.length)), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    //so an abandoned iterator doesn't keep the JVM alive
+                    Thread t = new Thread(r, "ProblemLoader");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            fill();
+        }
+
+        private void fill() {
+            while (mPending.size() < mMaxInFlight && mNextToSubmit < mFiles.length) {
+                final File f = mFiles[mNextToSubmit++];
+                mPending.add(mPool.submit(new Callable<P>() {
+                    @Override
+                    public P call() {
+                        return load(f);
+                    }
+                }));
+            }
+            if (mPending.isEmpty())
+                mPool.shutdown();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (mNext == null && !mPending.isEmpty()) {
+                Future<P> head = mPending.poll();
+                try {
+                    mNext = head.get();
+                } catch (ExecutionException e) {
+                    LOGGER.error("An instance file could not be loaded.", e.getCause());
+                } catch (InterruptedException e) {
+                    LOGGER.error("Interrupted while waiting for an instance to load.");
+                    Thread.currentThread().interrupt();
+                    mPending.clear();
+                    mPool.shutdownNow();
+                    return false;
+                }
+                fill();
+            }
+            return mNext != null;
+        }
+
+        @Override
+        public P next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            P ans = mNext;
+            mNext = null;
+            return ans;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
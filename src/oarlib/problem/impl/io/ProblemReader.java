@@ -23,10 +23,11 @@
  */
 package oarlib.problem.impl.io;
 
-import com.sun.jdi.event.WatchpointEvent;
 import gnu.trove.TIntObjectHashMap;
 import oarlib.core.Graph;
+import oarlib.core.Link;
 import oarlib.exceptions.FormatMismatchException;
+import oarlib.exceptions.InvalidEndpointsException;
 import oarlib.exceptions.UnsupportedFormatException;
 import oarlib.graph.impl.*;
 import oarlib.graph.util.Pair;
@@ -34,20 +35,21 @@ import oarlib.link.impl.Arc;
 import oarlib.link.impl.Edge;
 import oarlib.link.impl.WindyEdge;
 import oarlib.link.impl.ZigZagLink;
+import oarlib.problem.impl.io.util.ByteTokenizer;
 import oarlib.vertex.impl.DirectedVertex;
 import oarlib.vertex.impl.MixedVertex;
 import oarlib.vertex.impl.UndirectedVertex;
 import oarlib.vertex.impl.WindyVertex;
 import org.apache.log4j.Logger;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 
 /**
  * Reader to accept various file formats, and store them as a graph object.
@@ -86,6 +88,8 @@ public class ProblemReader {
                 return readMETISGraph(fileName);
             case OARLib:
                 return readOARLibGraph(fileName);
+            case OARLibBinary:
+                return readOARLibBinaryGraph(fileName);
             case Zhang_Matrix_WRPP:
                 return readRuiWRPPGraph(fileName);
             case MeanderingPostman:
@@ -99,17 +103,224 @@ public class ProblemReader {
         throw new UnsupportedFormatException();
     }
 
+    /**
+     * Reads the all-pairs shortest path matrix stored alongside the graph, if there is one.  Only supported for
+     * the OARLibBinary format.
+     *
+     * @param fileName - the file to read from
+     * @return - the distance matrix, (indexed 1 through n in each dimension), or null if the file doesn't contain one.
+     */
+    public int[][] readDistanceMatrix(String fileName) throws UnsupportedFormatException, FormatMismatchException {
+        if (mFormat != ProblemFormat.Name.OARLibBinary) {
+            LOGGER.error("Distance matrices may only be read from the OARLibBinary format.");
+            throw new UnsupportedFormatException();
+        }
+
+        ByteBuffer buf = mapBinaryFile(fileName);
+        int n = buf.getInt(16);
+        int m = buf.getInt(20);
+        int flags = buf.getInt(24);
+        if ((flags & ProblemFormat.FLAG_DISTANCE_MATRIX) == 0)
+            return null;
+
+        try {
+            long offset = ProblemFormat.BINARY_HEADER_BYTES + 17L * m;
+            if ((flags & ProblemFormat.FLAG_COORDINATES) != 0)
+                offset += 16L * n;
+            buf.position((int) offset);
+            IntBuffer matrix = buf.slice().asIntBuffer();
+
+            int[][] ans = new int[n + 1][n + 1];
+            for (int i = 1; i <= n; i++)
+                matrix.get(ans[i], 1, n);
+            return ans;
+        } catch (Exception e) {
+            throw new FormatMismatchException(e.getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Maps the file into memory, and checks that it starts with a valid OARLibBinary header.
+     */
+    private ByteBuffer mapBinaryFile(String fileName) throws FormatMismatchException {
+        try {
+            FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            channel.close(); //the mapping stays valid after the channel is closed
+
+            if (buf.capacity() < ProblemFormat.BINARY_HEADER_BYTES || buf.getInt(0) != ProblemFormat.BINARY_MAGIC)
+                throw new FormatMismatchException("The file does not appear to be in the OARLibBinary format.");
+            if (buf.getInt(4) < 1 || buf.getInt(4) > ProblemFormat.BINARY_VERSION)
+                throw new FormatMismatchException("Unsupported OARLibBinary version: " + buf.getInt(4));
+            return buf;
+        } catch (FormatMismatchException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new FormatMismatchException(e.getMessage(), e.getCause());
+        }
+    }
+
+    private Graph<?, ?> readOARLibBinaryGraph(String fileName) throws FormatMismatchException {
+
+        ByteBuffer buf = mapBinaryFile(fileName);
+
+        try {
+            Graph.Type type = Graph.Type.values()[buf.getInt(8)];
+            int depotId = buf.getInt(12);
+            int n = buf.getInt(16);
+            int m = buf.getInt(20);
+            int flags = buf.getInt(24);
+
+            //pull the primitive arrays straight out of the mapping
+            buf.position(ProblemFormat.BINARY_HEADER_BYTES);
+            double[] x = null;
+            double[] y = null;
+            if ((flags & ProblemFormat.FLAG_COORDINATES) != 0) {
+                x = new double[n];
+                y = new double[n];
+                buf.slice().asDoubleBuffer().get(x).get(y);
+                buf.position(buf.position() + 16 * n);
+            }
+
+            int[] first = new int[m];
+            int[] second = new int[m];
+            int[] cost = new int[m];
+            int[] reverseCost = new int[m];
+            buf.slice().asIntBuffer().get(first).get(second).get(cost).get(reverseCost);
+            buf.position(buf.position() + 16 * m);
+
+            byte[] linkFlags = new byte[m];
+            buf.get(linkFlags);
+            if ((flags & ProblemFormat.FLAG_DISTANCE_MATRIX) != 0)
+                buf.position(buf.position() + 4 * n * n);
+
+            //build the graph
+            Graph<?, ?> ans = buildGraph(type, n, m, first, second, cost, reverseCost, linkFlags);
+            ans.setDepotId(depotId);
+
+            if (x != null)
+                for (int i = 1; i <= n; i++)
+                    ans.getVertex(i).setCoordinates(x[i - 1], y[i - 1]);
+
+            //the optional sections after the matrix
+            if ((flags & ProblemFormat.FLAG_SERVICE_COSTS) != 0) {
+                int[] serviceCost = new int[m];
+                int[] reverseServiceCost = new int[m];
+                buf.slice().asIntBuffer().get(serviceCost).get(reverseServiceCost);
+                buf.position(buf.position() + 8 * m);
+                for (int i = 1; i <= m; i++) {
+                    Link<?> l = ans.getEdge(i);
+                    l.setServiceCost(serviceCost[i - 1]);
+                    if (l instanceof WindyEdge)
+                        ((WindyEdge) l).setReverseServiceCost(reverseServiceCost[i - 1]);
+                }
+            }
+            if ((flags & ProblemFormat.FLAG_CAPACITIES) != 0) {
+                int[] capacity = new int[m];
+                buf.slice().asIntBuffer().get(capacity);
+                buf.position(buf.position() + 4 * m);
+                for (int i = 1; i <= m; i++)
+                    if ((linkFlags[i - 1] & ProblemFormat.LINK_CAPACITY_SET) != 0)
+                        ans.getEdge(i).setCapacity(capacity[i - 1]);
+            }
+            if ((flags & ProblemFormat.FLAG_DEMANDS) != 0) {
+                int[] demand = new int[n];
+                byte[] demandSet = new byte[n];
+                buf.slice().asIntBuffer().get(demand);
+                buf.position(buf.position() + 4 * n);
+                buf.get(demandSet);
+                for (int i = 1; i <= n; i++)
+                    if (demandSet[i - 1] != 0)
+                        ans.getVertex(i).setDemand(demand[i - 1]);
+            }
+
+            return ans;
+        } catch (FormatMismatchException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new FormatMismatchException(e.getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Builds a graph of the given type out of parallel link arrays, (shared by the formats that read everything into
+     * primitive arrays first).
+     *
+     * @param linkFlags - ProblemFormat.LINK_REQUIRED, ProblemFormat.LINK_DIRECTED and (for windy graphs)
+     *                  ProblemFormat.LINK_REVERSE_REQUIRED bits for each link
+     */
+    private Graph<?, ?> buildGraph(Graph.Type type, int n, int m, int[] first, int[] second, int[] cost, int[] reverseCost, byte[] linkFlags) throws FormatMismatchException, InvalidEndpointsException {
+        Graph<?, ?> ans;
+        boolean isRequired;
+        switch (type) {
+            case UNDIRECTED:
+                UndirectedGraph ug = new UndirectedGraph(n);
+                for (int i = 0; i < m; i++)
+                    ug.addEdge(first[i], second[i], cost[i], (linkFlags[i] & ProblemFormat.LINK_REQUIRED) != 0);
+                ans = ug;
+                break;
+            case DIRECTED:
+                DirectedGraph dg = new DirectedGraph(n);
+                for (int i = 0; i < m; i++)
+                    dg.addEdge(first[i], second[i], cost[i], (linkFlags[i] & ProblemFormat.LINK_REQUIRED) != 0);
+                ans = dg;
+                break;
+            case MIXED:
+                MixedGraph mg = new MixedGraph(n);
+                for (int i = 0; i < m; i++) {
+                    isRequired = (linkFlags[i] & ProblemFormat.LINK_REQUIRED) != 0;
+                    mg.addEdge(first[i], second[i], cost[i], (linkFlags[i] & ProblemFormat.LINK_DIRECTED) != 0, isRequired);
+                }
+                ans = mg;
+                break;
+            case WINDY:
+                WindyGraph wg = new WindyGraph(n);
+                for (int i = 0; i < m; i++) {
+                    wg.addEdge(first[i], second[i], cost[i], reverseCost[i], (linkFlags[i] & ProblemFormat.LINK_REQUIRED) != 0);
+                    if ((linkFlags[i] & ProblemFormat.LINK_REVERSE_REQUIRED) != 0)
+                        wg.getEdge(i + 1).setReverseRequired(true);
+                }
+                ans = wg;
+                break;
+            default:
+                throw new FormatMismatchException("Unrecognized graph type.");
+        }
+        return ans;
+    }
+
+    /**
+     * Advances the tokenizer, treating the end of the file as a formatting error.
+     */
+    private static void requireLine(ByteTokenizer tok) throws IOException, FormatMismatchException {
+        if (!tok.nextLine()) {
+            tok.close();
+            throw new FormatMismatchException("The file ended unexpectedly.");
+        }
+    }
+
+    /**
+     * @return - the last token on the current line
+     */
+    private static String lastToken(ByteTokenizer tok) {
+        String[] tokens = tok.remainingTokens();
+        return tokens[tokens.length - 1];
+    }
+
+    /**
+     * @return - the (trimmed) part of a "Key:value" header line after the colon
+     */
+    private static String headerValue(String line) {
+        return line.substring(line.indexOf(':') + 1).trim();
+    }
+
     private Graph<?, ?> readRuiWRPPGraph(String fileName) throws FormatMismatchException {
         try {
 
-            List<String> allLines = Files.readAllLines(Paths.get(fileName), Charset.defaultCharset());
-            int count = allLines.size();
-            int n = count / 3;
+            ByteTokenizer tok = ByteTokenizer.open(fileName);
 
-            String line, line2;
-            String[] temp;
-            File graphFile = new File(fileName);
-            BufferedReader br = new BufferedReader(new FileReader(graphFile));
+            //each matrix is n x n, so n is the number of entries on the first line
+            requireLine(tok);
+            int n = tok.countTokens();
 
             WindyGraph ans = new WindyGraph(n);
 
@@ -121,11 +332,11 @@ public class ProblemReader {
             boolean reverse;
             int value;
             for (int i = 1; i <= n; i++) {
-                line = br.readLine();
-                temp = line.split(",\\s+|:|\t");
+                if (i > 1)
+                    requireLine(tok);
                 for (int j = 1; j <= n; j++) {
 
-                    value = Integer.parseInt(temp[j - 1]);
+                    value = tok.nextInt();
                     if (value == 0)
                         continue;
 
@@ -153,11 +364,10 @@ public class ProblemReader {
 
             //parse service times
             for (int i = 1; i <= n; i++) {
-                line = br.readLine();
-                temp = line.split(",\\s+|:|\t");
+                requireLine(tok);
                 for (int j = 1; j <= n; j++) {
 
-                    value = Integer.parseInt(temp[j - 1]);
+                    value = tok.nextInt();
 
                     if (value == 0)
                         continue;
@@ -186,11 +396,10 @@ public class ProblemReader {
             }
             //parse type
             for (int i = 1; i <= n; i++) {
-                line = br.readLine();
-                temp = line.split(",\\s+|:|\t");
+                requireLine(tok);
                 for (int j = 1; j <= i; j++) {
 
-                    value = Integer.parseInt(temp[j - 1]);
+                    value = tok.nextInt();
                     if (value == 0)
                         continue;
 
@@ -211,6 +420,7 @@ public class ProblemReader {
                 }
 
             }
+            tok.close();
 
             for (WindyEdge zzl : links.values()) {
                 ans.addEdge(zzl);
@@ -227,14 +437,11 @@ public class ProblemReader {
 
         try {
 
-            List<String> allLines = Files.readAllLines(Paths.get(fileName), Charset.defaultCharset());
-            int count = allLines.size();
-            int n = count / 5;
+            ByteTokenizer tok = ByteTokenizer.open(fileName);
 
-            String line, line2;
-            String[] temp;
-            File graphFile = new File(fileName);
-            BufferedReader br = new BufferedReader(new FileReader(graphFile));
+            //each matrix is n x n, so n is the number of entries on the first line
+            requireLine(tok);
+            int n = tok.countTokens();
 
             ZigZagGraph ans = new ZigZagGraph(n);
 
@@ -246,11 +453,11 @@ public class ProblemReader {
             boolean reverse;
             int value;
             for (int i = 1; i <= n; i++) {
-                line = br.readLine();
-                temp = line.split(",\\s+|:|\t");
+                if (i > 1)
+                    requireLine(tok);
                 for (int j = 1; j <= n; j++) {
 
-                    value = Integer.parseInt(temp[j - 1]);
+                    value = tok.nextInt();
                     if (value == 0)
                         continue;
 
@@ -278,11 +485,10 @@ public class ProblemReader {
 
             //parse service times
             for (int i = 1; i <= n; i++) {
-                line = br.readLine();
-                temp = line.split(",\\s+|:|\t");
+                requireLine(tok);
                 for (int j = 1; j <= n; j++) {
 
-                    value = Integer.parseInt(temp[j - 1]);
+                    value = tok.nextInt();
 
                     if (value == 0)
                         continue;
@@ -313,11 +519,10 @@ public class ProblemReader {
             //parse zig zag times
             double zigValue;
             for (int i = 1; i <= n; i++) {
-                line = br.readLine();
-                temp = line.split(",\\s+|:|\t");
+                requireLine(tok);
                 for (int j = 1; j <= i; j++) {
 
-                    zigValue = Double.parseDouble(temp[j - 1]);
+                    zigValue = tok.nextDouble();
                     if (zigValue == 0)
                         continue;
 
@@ -339,11 +544,10 @@ public class ProblemReader {
             //parse time windows
             int endTime;
             for (int i = 1; i <= n; i++) {
-                line = br.readLine();
-                temp = line.split(",\\s+|:|\t");
+                requireLine(tok);
                 for (int j = 1; j <= i; j++) {
 
-                    endTime = Double.valueOf(temp[j - 1]).intValue();
+                    endTime = (int) tok.nextDouble();
                     if (endTime == 0)
                         continue;
 
@@ -363,11 +567,10 @@ public class ProblemReader {
 
             //parse type
             for (int i = 1; i <= n; i++) {
-                line = br.readLine();
-                temp = line.split(",\\s+|:|\t");
+                requireLine(tok);
                 for (int j = 1; j <= i; j++) {
 
-                    value = Integer.parseInt(temp[j - 1]);
+                    value = tok.nextInt();
                     if (value == 0)
                         continue;
 
@@ -390,6 +593,7 @@ public class ProblemReader {
                 }
 
             }
+            tok.close();
 
             for (ZigZagLink zzl : links.values()) {
                 ans.addEdge(zzl);
@@ -405,116 +609,142 @@ public class ProblemReader {
     private Graph<?, ?> readOARLibGraph(String fileName) throws FormatMismatchException {
 
         try {
-            String line, line2;
-            String[] temp;
-            File graphFile = new File(fileName);
-            BufferedReader br = new BufferedReader(new FileReader(graphFile));
-
-            //figure out the graph type
-
-            line = br.readLine();
-            //skip any header
-            while (!line.startsWith("Graph Type:"))
-                line = br.readLine();
-
-            //TODO: use this info to return a problem
-            //br.readLine(); //should have problem type
-            //br.readLine(); //should have fleet size
-            //br.readLine(); //should have depot type
-            line2 = br.readLine(); //should have depot ID
-
-            int depotId = Integer.parseInt(line2.split(":")[1].trim());
-            line2 = br.readLine(); //should have n
-
-            int n = Integer.parseInt(line2.split(":")[1].trim());
-
-            line2 = br.readLine(); //should have m
-
-            int m = Integer.parseInt(line2.split(":")[1].trim());
-
-            //graph type
-            if (line.contains("UNDIRECTED")) {
-
-                //advance to the correct spot
-                while (!line.startsWith("Line Format"))
-                    line = br.readLine();
-
-                br.readLine();
-
-                UndirectedGraph ans = new UndirectedGraph(n);
-                for (int i = 1; i <= m; i++) {
-                    line = br.readLine();
-                    temp = line.split(",");
-                    ans.addEdge(Integer.parseInt(temp[0].trim()), Integer.parseInt(temp[1].trim()), Integer.parseInt(temp[2].trim()), Boolean.parseBoolean(temp[3].trim()));
-                }
-                ans.setDepotId(depotId);
-                return ans;
-            } else if (line.contains("DIRECTED")) {
-
-                //advance to the correct spot
-                while (!line.startsWith("Line Format"))
-                    line = br.readLine();
-
-                br.readLine();
-
-                DirectedGraph ans = new DirectedGraph(n);
-                for (int i = 1; i <= m; i++) {
-                    line = br.readLine();
-                    temp = line.split(",");
-                    ans.addEdge(Integer.parseInt(temp[0].trim()), Integer.parseInt(temp[1].trim()), Integer.parseInt(temp[2].trim()), Boolean.parseBoolean(temp[3].trim()));
-                }
-                ans.setDepotId(depotId);
-                return ans;
-            } else if (line.contains("MIXED")) {
-
-                //advance to the correct spot
-                while (!line.startsWith("Line Format"))
-                    line = br.readLine();
-
-                br.readLine();
+            ByteTokenizer tok = ByteTokenizer.open(fileName);
+            String line;
 
-                MixedGraph ans = new MixedGraph(n);
-                for (int i = 1; i <= m; i++) {
-                    line = br.readLine();
-                    temp = line.split(",");
-                    ans.addEdge(Integer.parseInt(temp[0].trim()), Integer.parseInt(temp[1].trim()), Integer.parseInt(temp[2].trim()), Boolean.parseBoolean(temp[3].trim()), Boolean.parseBoolean(temp[4].trim()));
-                }
-                ans.setDepotId(depotId);
-                return ans;
-            } else if (line.contains("WINDY")) {
+            //the header, which ends at the start of the links section
+            String graphType = null;
+            int depotId = 1;
+            int n = -1;
+            int m = -1;
+            while (true) {
+                requireLine(tok);
+                line = tok.getLine().trim();
+                if (line.equals("LINKS"))
+                    break;
+                else if (line.startsWith("Graph Type:"))
+                    graphType = headerValue(line);
+                else if (line.startsWith("Depot ID")) {
+                    String depots = headerValue(line);
+                    int comma = depots.indexOf(',');
+                    depotId = Integer.parseInt((comma < 0 ? depots : depots.substring(0, comma)).trim());
+                } else if (line.startsWith("N:"))
+                    n = Integer.parseInt(headerValue(line));
+                else if (line.startsWith("M:"))
+                    m = Integer.parseInt(headerValue(line));
+            }
+            if (graphType == null || n < 0 || m < 0) {
+                tok.close();
+                throw new FormatMismatchException("The OAR Lib header is missing the graph type, N, or M.");
+            }
 
-                //advance to the correct spot
-                while (!line.startsWith("Line Format"))
-                    line = br.readLine();
+            Graph.Type type;
+            if (graphType.contains("UNDIRECTED"))
+                type = Graph.Type.UNDIRECTED;
+            else if (graphType.contains("DIRECTED"))
+                type = Graph.Type.DIRECTED;
+            else if (graphType.contains("MIXED"))
+                type = Graph.Type.MIXED;
+            else if (graphType.contains("WINDY"))
+                type = Graph.Type.WINDY;
+            else {
+                tok.close();
+                throw new FormatMismatchException("Unrecognized graph type: " + graphType);
+            }
 
-                br.readLine();
+            /*
+             * Figure out where the columns we care about are from the line format.  The NAME column is free text, and
+             * may contain commas, so columns after it are located relative to the end of each line.
+             */
+            requireLine(tok);
+            tok.setDelimiters(":,", false);
+            tok.skipToken(); //Line Format
+            String[] columns = tok.remainingTokens();
+            int nameColumn = columns.length;
+            int[] roleColumn = new int[6]; //V1, V2, COST, REVERSE COST, REQUIRED, DIRECTED
+            Arrays.fill(roleColumn, -1);
+            String[] roles = {"V1", "V2", "COST", "REVERSE COST", "REQUIRED", "DIRECTED"};
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i].equals("NAME"))
+                    nameColumn = i;
+                for (int j = 0; j < roles.length; j++)
+                    if (columns[i].equals(roles[j]))
+                        roleColumn[j] = i;
+            }
+            if (roleColumn[0] < 0 || roleColumn[1] < 0 || roleColumn[2] < 0) {
+                tok.close();
+                throw new FormatMismatchException("The link line format must include V1, V2 and COST.");
+            }
 
-                WindyGraph ans = new WindyGraph(n);
-                for (int i = 1; i <= m; i++) {
-                    line = br.readLine();
-                    temp = line.split(",");
-                    ans.addEdge(Integer.parseInt(temp[0].trim()), Integer.parseInt(temp[1].trim()), Integer.parseInt(temp[2].trim()), Integer.parseInt(temp[3].trim()), Boolean.parseBoolean(temp[4].trim()));
+            //the roles we need, in the order their columns appear on each line
+            int[] order = new int[roles.length];
+            int numNeeded = 0;
+            for (int i = 0; i < columns.length; i++)
+                for (int j = 0; j < roles.length; j++)
+                    if (roleColumn[j] == i)
+                        order[numNeeded++] = j;
+
+            int[] first = new int[m];
+            int[] second = new int[m];
+            int[] cost = new int[m];
+            int[] reverseCost = new int[m];
+            byte[] linkFlags = new byte[m];
+            int extra, field, column;
+            for (int i = 0; i < m; i++) {
+                requireLine(tok);
+                extra = tok.countTokens() - columns.length; //commas inside the name
+                field = 0;
+                for (int k = 0; k < numNeeded; k++) {
+                    column = roleColumn[order[k]];
+                    if (column > nameColumn)
+                        column += extra;
+                    tok.skipTokens(column - field);
+                    field = column + 1;
+                    switch (order[k]) {
+                        case 0:
+                            first[i] = tok.nextInt();
+                            break;
+                        case 1:
+                            second[i] = tok.nextInt();
+                            break;
+                        case 2:
+                            cost[i] = tok.nextInt();
+                            break;
+                        case 3:
+                            reverseCost[i] = tok.nextInt();
+                            break;
+                        case 4:
+                            if (tok.nextTokenEquals("true"))
+                                linkFlags[i] |= ProblemFormat.LINK_REQUIRED;
+                            break;
+                        case 5:
+                            if (tok.nextTokenEquals("true"))
+                                linkFlags[i] |= ProblemFormat.LINK_DIRECTED;
+                            break;
+                    }
                 }
-                ans.setDepotId(depotId);
-
-                //advance to the correct spot
-                while (!line.startsWith("Line Format"))
-                    line = br.readLine();
-
-                br.readLine();
+                if (roleColumn[3] < 0)
+                    reverseCost[i] = cost[i];
+            }
 
-                for (int i = 1; i <= n; i++) {
-                    line = br.readLine();
-                    temp = line.split(",");
-                    ans.getVertex(i).setCoordinates(Double.parseDouble(temp[0].trim()), Double.parseDouble(temp[1].trim()));
+            Graph<?, ?> ans = buildGraph(type, n, m, first, second, cost, reverseCost, linkFlags);
+            ans.setDepotId(depotId);
+
+            //coordinates, if there are any
+            tok.setDelimiters(ByteTokenizer.DEFAULT_DELIMITERS, true);
+            while (tok.nextLine()) {
+                if (tok.getLine().trim().equals("VERTICES")) {
+                    requireLine(tok); //line format
+                    for (int i = 1; i <= n; i++) {
+                        requireLine(tok);
+                        ans.getVertex(i).setCoordinates(tok.nextDouble(), tok.nextDouble());
+                    }
+                    break;
                 }
-
-                return ans;
-
             }
 
-
-            return null;
+            tok.close();
+            return ans;
         }
         catch (Exception e) {
             throw new FormatMismatchException(e.getMessage(), e.getCause());
@@ -528,10 +758,8 @@ public class ProblemReader {
             UndirectedGraph ans = new UndirectedGraph();
 
             //file reading vars
-            String line;
-            String[] temp;
-            File graphFile = new File(fileName);
-            BufferedReader br = new BufferedReader(new FileReader(graphFile));
+            ByteTokenizer tok = ByteTokenizer.open(fileName);
+            tok.setDelimiters(" \t\r\f", true);
 
             //header info
             int n = 0;
@@ -541,38 +769,36 @@ public class ProblemReader {
             boolean hasVertexWeights = false;
             boolean hasVertexSizes = false;
 
-            line = br.readLine();
-
-            //skip any header
-            while (line.startsWith("%"))
-                line = br.readLine();
-            temp = line.split(",\\s+|:");
+            //skip any comments
+            do {
+                requireLine(tok);
+            } while (tok.lineStartsWith("%"));
 
-            if (temp.length == 2) {
-                //n, and m
-                n = Integer.parseInt(temp[0]);
+            int numHeaderTokens = tok.countTokens();
+            if (numHeaderTokens < 2 || numHeaderTokens > 4) {
+                tok.close();
+                throw new FormatMismatchException("This does not appear to be a METIS graph file.  The header is malformed.");
             }
-            if (temp.length > 2) {
-                //fmt
-                if (temp[2].charAt(2) == '0') {
-                    hasEdgeWeights = false;
-                    LOGGER.warn("This file does not contain information about edge weights.  The graph will attempt to be read, but this seems strange, as this is an Arc-Routing Library");
-                }
-                if (temp[2].charAt(1) == '0')
-                    hasVertexWeights = false;
-                if (temp[2].charAt(0) == '0')
-                    hasVertexSizes = false;
+
+            //n, and m
+            n = tok.nextInt();
+            tok.skipToken();
+            if (numHeaderTokens > 2) {
+                //fmt, (missing leading digits are zeros)
+                String fmt = "000" + tok.nextToken();
+                fmt = fmt.substring(fmt.length() - 3);
+                hasVertexSizes = fmt.charAt(0) == '1';
+                hasVertexWeights = fmt.charAt(1) == '1';
+                hasEdgeWeights = fmt.charAt(2) == '1';
             }
-            if (temp.length > 3) {
+            if (!hasEdgeWeights)
+                LOGGER.warn("This file does not contain information about edge weights.  The graph will attempt to be read with unit costs, but this seems strange, as this is an Arc-Routing Library");
+            if (numHeaderTokens > 3) {
                 //nconn
-                numWeightsPerVertex = Integer.parseInt(temp[3]);
+                numWeightsPerVertex = tok.nextInt();
                 if (numWeightsPerVertex > 1)
                     LOGGER.warn("The graph specified in this file has multiple weights per vertex.  Currently, there is no support for multiple vertex weights, so only the first will be used.");
             }
-            if (temp.length > 4) {
-                br.close();
-                throw new FormatMismatchException("This does not appear to be a METIS graph file.  The header is malformed.");
-            }
 
             //vertices
             for (int i = 0; i < n; i++) {
@@ -582,40 +808,34 @@ public class ProblemReader {
             TIntObjectHashMap<UndirectedVertex> indexedVertices = ans.getInternalVertexMap();
 
             //now read the rest
+            int neighbor, cost;
             for (int i = 1; i <= n; i++) {
-                if ((line = br.readLine()) == null) {
-                    br.close();
-                    LOGGER.error("This does not appear to be a valid METIS graph file.  There are not as many lines as vertices specified in the header.");
-                    throw new FormatMismatchException();
-                }
+                do {
+                    if (!tok.nextLine()) {
+                        tok.close();
+                        LOGGER.error("This does not appear to be a valid METIS graph file.  There are not as many lines as vertices specified in the header.");
+                        throw new FormatMismatchException();
+                    }
+                } while (tok.lineStartsWith("%"));
 
-                temp = line.split(",\\s+|:");
                 //if there's a vertex size, read it
                 if (hasVertexSizes) {
-                    indexedVertices.get(i).setSize(Integer.parseInt(temp[0]));
+                    indexedVertices.get(i).setSize(tok.nextInt());
                 }
                 if (hasVertexWeights) {
-                    if (hasVertexSizes)
-                        indexedVertices.get(i).setCost(Integer.parseInt(temp[1]));
-                    else
-                        indexedVertices.get(i).setCost(Integer.parseInt(temp[0]));
+                    indexedVertices.get(i).setCost(tok.nextInt());
+                    tok.skipTokens(numWeightsPerVertex - 1);
                 }
-                if (hasEdgeWeights) {
-                    int start = 0;
-                    if (hasVertexSizes)
-                        start++;
-                    if (hasVertexWeights)
-                        start += numWeightsPerVertex;
-                    int end = temp.length;
-                    for (int j = start; j < end; j += 2) {
-                        //to avoid redundancy in the file
-                        if (i < Integer.parseInt(temp[j]))
-                            ans.addEdge(i, Integer.parseInt(temp[j]), Integer.parseInt(temp[j + 1]));
-                    }
+                while (tok.hasMoreTokens()) {
+                    neighbor = tok.nextInt();
+                    cost = hasEdgeWeights ? tok.nextInt() : 1;
+                    //to avoid redundancy in the file
+                    if (i < neighbor)
+                        ans.addEdge(i, neighbor, cost);
                 }
             }
 
-            br.close();
+            tok.close();
             return ans;
 
         }
@@ -630,54 +850,50 @@ public class ProblemReader {
             DirectedGraph ans = new DirectedGraph();
 
             //file reading vars
-            String line;
-            String[] temp;
-            File graphFile = new File(fileName);
-            BufferedReader br = new BufferedReader(new FileReader(graphFile));
+            ByteTokenizer tok = ByteTokenizer.open(fileName);
 
             //header info
             int n = 0;
             int m = 0;
-            line = br.readLine();
-            temp = line.split(",\\s+|:");
             boolean isReq = false;
 
-            n = Integer.parseInt(temp[0].trim()); //first line is number of vertices
+            requireLine(tok);
+            n = tok.nextInt(); //first line is number of vertices
 
-            line = br.readLine(); //second line is number of vertices in the simplified graph
+            requireLine(tok); //second line is number of vertices in the simplified graph
 
-            line = br.readLine(); // third line is the number of arcs
+            requireLine(tok); // third line is the number of arcs
+            m = tok.nextInt();
 
-            temp = line.split(",");
-            m = Integer.parseInt(temp[0].trim());
+            requireLine(tok); //fourth line is # of connected components of the simplified graph
 
-            line = br.readLine(); //fourth line is # of connected components of the simplified graph
-
-            line = br.readLine(); //fifth line is number of vertices belonging to each of those connected components
+            requireLine(tok); //fifth line is number of vertices belonging to each of those connected components
 
             //construct the ans graph
             for (int i = 0; i < n; i++) {
                 ans.addVertex(new DirectedVertex("orig"));
             }
+            int tailId, headId, cost;
             for (int i = 0; i < m; i++) {
-                line = br.readLine();
-                if (line == null) {
-                    br.close();
+                if (!tok.nextLine()) {
+                    tok.close();
                     LOGGER.error("Not enough lines to match the claimed number of arcs");
                     throw new FormatMismatchException();
                 }
 
-                temp = line.split(",");
-                if (temp.length < 4) {
-                    br.close();
+                if (tok.countTokens() < 4) {
+                    tok.close();
                     LOGGER.error("This line doesn't have the required components.");
                     throw new FormatMismatchException();
                 }
 
-                isReq = Integer.parseInt(temp[3].trim()) == 1;
-                ans.addEdge(Integer.parseInt(temp[0].trim()), Integer.parseInt(temp[1].trim()), "orig", Integer.parseInt(temp[2].trim()), isReq);
+                tailId = tok.nextInt();
+                headId = tok.nextInt();
+                cost = tok.nextInt();
+                isReq = tok.nextInt() == 1;
+                ans.addEdge(tailId, headId, "orig", cost, isReq);
             }
-            br.close();
+            tok.close();
             return ans;
         }
         catch (Exception e) {
@@ -687,22 +903,22 @@ public class ProblemReader {
 
     private Graph<?, ?> readYaoyuenyongGraph(String fileName) throws FormatMismatchException {
         try {    //file reading vars
-            String line;
             String type = "";
-            String[] temp;
-            File graphFile = new File(fileName);
-            BufferedReader br = new BufferedReader(new FileReader(graphFile));
+            ByteTokenizer tok = ByteTokenizer.open(fileName);
+            tok.setDelimiters(",", false); //empty fields are significant here
 
             //header info
             int n = 0;
             int m = 0;
-            line = br.readLine();
-            temp = line.split(",");
+            requireLine(tok);
 
             //graph type
-            type = temp[0];
-            n = Integer.parseInt(temp[2]);
-            m = Integer.parseInt(temp[3]);
+            type = tok.nextToken();
+            tok.skipToken();
+            n = tok.nextInt();
+            m = tok.nextInt();
+
+            int tailId, headId, cost;
 
             //split on graph type
 
@@ -713,13 +929,15 @@ public class ProblemReader {
                     ans.addVertex(new UndirectedVertex("original"));
                 }
                 for (int i = 0; i < m; i++) {
-                    line = br.readLine();
-                    temp = line.split(",");
+                    requireLine(tok);
+                    tailId = tok.nextInt();
+                    headId = tok.nextInt();
+                    cost = tok.nextInt();
 
-                    ans.addEdge(Integer.parseInt(temp[0]), Integer.parseInt(temp[1]), "original", Integer.parseInt(temp[2]));
+                    ans.addEdge(tailId, headId, "original", cost);
                 }
 
-                br.close();
+                tok.close();
                 return ans;
             }
             //directed
@@ -729,13 +947,15 @@ public class ProblemReader {
                     ans.addVertex(new DirectedVertex("original"));
                 }
                 for (int i = 0; i < m; i++) {
-                    line = br.readLine();
-                    temp = line.split(",");
+                    requireLine(tok);
+                    tailId = tok.nextInt();
+                    headId = tok.nextInt();
+                    cost = tok.nextInt();
 
-                    ans.addEdge(Integer.parseInt(temp[0]), Integer.parseInt(temp[1]), "original", Integer.parseInt(temp[2]));
+                    ans.addEdge(tailId, headId, "original", cost);
                 }
 
-                br.close();
+                tok.close();
                 return ans;
             }
             //mixed
@@ -745,17 +965,20 @@ public class ProblemReader {
                     ans.addVertex(new MixedVertex("original"));
                 }
                 for (int i = 0; i < m; i++) {
-                    line = br.readLine();
-                    temp = line.split(",");
-
-                    boolean directed = (temp[4].equals("1"));
-                    ans.addEdge(Integer.parseInt(temp[0]), Integer.parseInt(temp[1]), "original", Integer.parseInt(temp[2]), directed);
+                    requireLine(tok);
+                    tailId = tok.nextInt();
+                    headId = tok.nextInt();
+                    cost = tok.nextInt();
+                    tok.skipToken();
+
+                    boolean directed = tok.nextTokenEquals("1");
+                    ans.addEdge(tailId, headId, "original", cost, directed);
                 }
 
-                br.close();
+                tok.close();
                 return ans;
             } else {
-                br.close();
+                tok.close();
                 LOGGER.error("Unrecognized Type.");
                 throw new FormatMismatchException();
             }
@@ -768,88 +991,81 @@ public class ProblemReader {
 
     private Graph<?, ?> readCorberanGraph(String fileName) throws FormatMismatchException {
         try {
-            String line;
             String type = "";
+            String name;
             String[] temp;
-            File graphFile = new File(fileName);
-            BufferedReader br = new BufferedReader(new FileReader(graphFile));
+            ByteTokenizer tok = ByteTokenizer.open(fileName);
             //header info
             int n = 0;
             int m = 0;
             int depotId = 1;
-            while ((line = br.readLine()) != null) {
-                if (line.contains("NOMBRE")) {
-                    temp = line.split("\\s+|:");
-                    if (temp[3].startsWith("MA") || temp[3].startsWith("MB"))
+            while (tok.nextLine()) {
+                if (tok.lineContains("NOMBRE")) {
+                    tok.skipToken();
+                    name = tok.nextToken();
+                    if (name.startsWith("MA") || name.startsWith("MB"))
                         type = "Mixed";
-                    else if (temp[3].startsWith("WA") || temp[3].startsWith("WB"))
+                    else if (name.startsWith("WA") || name.startsWith("WB"))
                         type = "Windy";
-                    else if (temp[3].startsWith("A") || temp[3].startsWith("M") || temp[3].startsWith("m") || temp[3].startsWith("P") || temp[3].startsWith("p") || temp[3].startsWith("Minmax")|| temp[3].startsWith("C"))
+                    else if (name.startsWith("A") || name.startsWith("M") || name.startsWith("m") || name.startsWith("P") || name.startsWith("p") || name.startsWith("Minmax") || name.startsWith("C"))
                         type = "WindyRural";
                     else {
-                        br.close();
+                        tok.close();
                         LOGGER.error("We could not figure out what type of graph this is.");
                         throw new FormatMismatchException();
                     }
-                } else if (line.contains("COMENTARIO")) {
-                    if(line.contains("depot")) {
-                        temp = line.split("\\s+|:");
+                } else if (tok.lineContains("COMENTARIO")) {
+                    if (tok.lineContains("depot")) {
+                        temp = tok.remainingTokens();
                         depotId = Integer.parseInt(temp[temp.length - 2]);
                     } else {
                         depotId = 1;
                     }
-                } else if (line.contains("VERTICES")) {
-                    temp = line.split("\\s+|:");
-                    n = Integer.parseInt(temp[temp.length - 1]);
-                } else if (line.contains("ARISTAS")) {
-                    temp = line.split("\\s+|:");
-                    m = Integer.parseInt(temp[temp.length - 1]);
+                } else if (tok.lineContains("VERTICES")) {
+                    n = Integer.parseInt(lastToken(tok));
+                } else if (tok.lineContains("ARISTAS")) {
+                    m = Integer.parseInt(lastToken(tok));
                     break;
-                } else if (line.contains("RISTAS_REQ")) {
-                    temp = line.split("\\s+|:");
-                    m += Integer.parseInt(temp[temp.length - 1]);
-                } else if (line.contains("RISTAS_NOREQ")) {
-                    temp = line.split("\\s+|:");
-                    m += Integer.parseInt(temp[temp.length - 1]);
+                } else if (tok.lineContains("RISTAS_REQ")) {
+                    m += Integer.parseInt(lastToken(tok));
+                } else if (tok.lineContains("RISTAS_NOREQ")) {
+                    m += Integer.parseInt(lastToken(tok));
                     break;
                 }
             }
 
             if (n == 0 || m == 0) {
-                br.close();
+                tok.close();
                 LOGGER.error("We could not detect any vertices (edges) in the file.");
                 throw new FormatMismatchException();
             }
+
+            /*
+             * Link lines look like "(   1, 136)   coste        887      887", and parse as the tail, the head, the
+             * word coste, and then the costs in each direction.
+             */
+            int tailId;
+            int headId;
+            int cost1;
+            int cost2;
+
             //now split off into types
             if (type.equals("Mixed")) {
                 MixedGraph ans = new MixedGraph();
-                int tailId;
-                int headId;
-                int cost1;
-                int cost2;
                 for (int i = 0; i < n; i++) {
                     ans.addVertex(new MixedVertex("original"));
                 }
 
-                br.readLine();
-                br.readLine();
-                int index;
-                while ((line = br.readLine()) != null) {
-                    if (line.contains("ARISTAS"))
+                tok.nextLine();
+                tok.nextLine();
+                while (tok.nextLine()) {
+                    if (tok.lineContains("ARISTAS"))
                         break;
-                    temp = line.split("\\s+|:|\\)|,|\\(");
-                    index = 1;
-                    if (temp[index].isEmpty())
-                        index++;
-                    tailId = Integer.parseInt(temp[index++]);
-                    if (temp[index].isEmpty())
-                        index++;
-                    if (temp[index].isEmpty())
-                        index++;
-                    headId = Integer.parseInt(temp[index++]);
-                    index += 2;
-                    cost1 = Integer.parseInt(temp[index++]);
-                    cost2 = Integer.parseInt(temp[index]);
+                    tailId = tok.nextInt();
+                    headId = tok.nextInt();
+                    tok.skipToken();
+                    cost1 = tok.nextInt();
+                    cost2 = tok.nextInt();
                     if (cost1 == 99999999) //backwards arc
                     {
                         ans.addEdge(headId, tailId, cost2, true);
@@ -863,136 +1079,100 @@ public class ProblemReader {
                 }
 
                 //skip some interim matter
-                br.readLine();
-                br.readLine();
-                br.readLine();
-                br.readLine();
+                tok.nextLine();
+                tok.nextLine();
+                tok.nextLine();
+                tok.nextLine();
 
                 //now read coordinates
                 int i = 1;
                 MixedVertex tempV;
                 TIntObjectHashMap<MixedVertex> ansVertices = ans.getInternalVertexMap();
-                while ((line = br.readLine()) != null) {
-                    if (line.contains("="))
+                while (tok.nextLine()) {
+                    if (tok.lineContains("="))
                         break;
                     tempV = ansVertices.get(i);
-                    temp = line.split("\\s+|:|\\)|,|\\(");
-                    tempV.setCoordinates(Integer.parseInt(temp[2]), Integer.parseInt(temp[3]));
+                    tok.skipToken();
+                    tempV.setCoordinates(tok.nextInt(), tok.nextInt());
                     i++;
                 }
-                br.close();
+                tok.close();
                 return ans;
             } else if (type.equals("Windy")) {
                 WindyGraph ans = new WindyGraph();
-                int tailId;
-                int headId;
-                int cost1;
-                int cost2;
                 for (int i = 0; i < n; i++) {
                     ans.addVertex(new WindyVertex("original"));
                 }
-                br.readLine();
-                br.readLine();
-                int index;
-                while ((line = br.readLine()) != null) {
-                    if (line.contains("ARISTAS"))
+                tok.nextLine();
+                tok.nextLine();
+                while (tok.nextLine()) {
+                    if (tok.lineContains("ARISTAS"))
                         break;
-                    temp = line.split("\\s+|:|\\)|,|\\(");
-                    index = 1;
-                    if (temp[index].isEmpty())
-                        index++;
-                    tailId = Integer.parseInt(temp[index++]);
-                    if (temp[index].isEmpty())
-                        index++;
-                    if (temp[index].isEmpty())
-                        index++;
-                    headId = Integer.parseInt(temp[index++]);
-                    index += 2;
-                    cost1 = Integer.parseInt(temp[index++]);
-                    cost2 = Integer.parseInt(temp[index]);
+                    tailId = tok.nextInt();
+                    headId = tok.nextInt();
+                    tok.skipToken();
+                    cost1 = tok.nextInt();
+                    cost2 = tok.nextInt();
 
                     ans.addEdge(tailId, headId, "original", cost1, cost2);
 
                 }
 
                 //skip some interim matter
-                br.readLine();
-                br.readLine();
-                br.readLine();
-                br.readLine();
+                tok.nextLine();
+                tok.nextLine();
+                tok.nextLine();
+                tok.nextLine();
 
                 //now read coordinates
                 int i = 1;
                 WindyVertex tempV;
                 TIntObjectHashMap<WindyVertex> ansVertices = ans.getInternalVertexMap();
-                while ((line = br.readLine()) != null) {
-                    if (line.contains("="))
+                while (tok.nextLine()) {
+                    if (tok.lineContains("="))
                         break;
                     tempV = ansVertices.get(i);
-                    temp = line.split("\\s+|:|\\)|,|\\(");
-                    if (temp.length < 4)
-                        LOGGER.debug("STOP HERE");
-                    tempV.setCoordinates(Integer.parseInt(temp[2]), Integer.parseInt(temp[3]));
+                    tok.skipToken();
+                    tempV.setCoordinates(tok.nextInt(), tok.nextInt());
                     i++;
                 }
 
-                br.close();
+                tok.close();
                 return ans;
             } else if (type.equals("WindyRural")) {
                 WindyGraph ans = new WindyGraph();
-                int tailId;
-                int headId;
-                int cost1;
-                int cost2;
                 for (int i = 0; i < n; i++) {
                     ans.addVertex(new WindyVertex("original"));
                 }
-                //	br.readLine();
-                //	br.readLine();
-                int index;
-                while ((line = br.readLine()) != null) {
-                    if (line.contains("LISTA_ARISTAS_REQ")) //in-process the required guys
+                while (tok.nextLine()) {
+                    if (tok.lineContains("LISTA_ARISTAS_REQ")) //in-process the required guys
                     {
-                        while ((line = br.readLine()) != null) {
-                            if (line.contains("LISTA_ARISTAS_NOREQ")) {
+                        while (tok.nextLine()) {
+                            if (tok.lineContains("LISTA_ARISTAS_NOREQ")) {
                                 break;
                             }
 
-                            temp = line.split("\\s+|:|\\)|,|\\(");
-                            index = 1;
-                            while (temp[index].isEmpty())
-                                index++;
-                            tailId = Integer.parseInt(temp[index++]);
-                            if (temp[index].isEmpty())
-                                index++;
-                            if (temp[index].isEmpty())
-                                index++;
-                            headId = Integer.parseInt(temp[index++]);
-                            index += 2;
-                            cost1 = Integer.parseInt(temp[index++]);
-                            cost2 = Integer.parseInt(temp[index]);
+                            tailId = tok.nextInt();
+                            headId = tok.nextInt();
+                            tok.skipToken();
+                            cost1 = tok.nextInt();
+                            cost2 = tok.nextInt();
 
                             ans.addEdge(tailId, headId, "original", cost1, cost2, true);
                         }
-                        while ((line = br.readLine()) != null) {
-                            if (line.contains("COORDENADAS")) {
+                        while (tok.nextLine()) {
+                            if (tok.lineContains("COORDENADAS")) {
                                 break;
                             }
-                            temp = line.split("\\s+|:|\\)|,|\\(");
-                            if (temp.length == 1)
+                            //blank lines, or end of file markers
+                            if (tok.countTokens() < 5)
                                 break;
-                            index = 1;
-                            while (temp[index].isEmpty())
-                                index++;
-                            tailId = Integer.parseInt(temp[index++]);
-                            if (temp[index].isEmpty())
-                                index++;
-                            if (temp[index].isEmpty())
-                                index++;
-                            headId = Integer.parseInt(temp[index++]);
-                            index += 2;
-                            cost1 = Integer.parseInt(temp[index++]);
-                            cost2 = Integer.parseInt(temp[index]);
+
+                            tailId = tok.nextInt();
+                            headId = tok.nextInt();
+                            tok.skipToken();
+                            cost1 = tok.nextInt();
+                            cost2 = tok.nextInt();
 
                             ans.addEdge(tailId, headId, "original", cost1, cost2, false);
                         }
@@ -1001,28 +1181,27 @@ public class ProblemReader {
 
                 }
 
-                //skip some interim matter
-                //br.readLine();
-                //br.readLine();
-                //br.readLine();
-                //br.readLine();
-
-                //now read coordinates
+                //now read coordinates, (lines of the form "id x y"), skipping any separators
                 int i = 1;
+                int numTokens;
                 WindyVertex tempV;
                 TIntObjectHashMap<WindyVertex> ansVertices = ans.getInternalVertexMap();
-                while ((line = br.readLine()) != null) {
+                while (tok.nextLine()) {
+                    numTokens = tok.countTokens();
+                    if (numTokens < 2 || tok.lineContains("="))
+                        continue;
                     tempV = ansVertices.get(i);
-                    temp = line.split("\\s+|:|\\)|,|\\(");
-                    tempV.setCoordinates(Double.parseDouble(temp[1]), Double.parseDouble(temp[2]));
+                    if (numTokens > 2)
+                        tok.skipToken();
+                    tempV.setCoordinates(tok.nextDouble(), tok.nextDouble());
                     i++;
                 }
 
-                br.close();
+                tok.close();
                 ans.setDepotId(depotId);
                 return ans;
             } else {
-                br.close();
+                tok.close();
                 LOGGER.error("We don't currently support the type of graph right now.");
                 throw new FormatMismatchException();
             }
@@ -1035,28 +1214,24 @@ public class ProblemReader {
     private Graph<?, ?> readSimpleGraph(String fileName) throws FormatMismatchException {
         try {
             String type; //first line of DIMACS_Modified
-            String header; //second line of DIMACS_Modified
-            File graphFile = new File(fileName);
-            BufferedReader br = new BufferedReader(new FileReader(graphFile));
+            ByteTokenizer tok = ByteTokenizer.open(fileName);
+            tok.setDelimiters(" \t\r\f", true);
             //header info
-            type = br.readLine();
-            if (type == null) {
-                br.close();
+            if (!tok.nextLine()) {
+                tok.close();
                 LOGGER.error("There were no readable lines in the file.");
                 throw new FormatMismatchException();
             }
-            header = br.readLine();
-            if (header == null) {
-                br.close();
+            type = tok.getLine();
+            if (!tok.nextLine()) {
+                tok.close();
                 LOGGER.error("There was only one readable line in the file.");
                 throw new FormatMismatchException();
             }
-            String[] nm = header.split("\\s+");
-            int n = Integer.parseInt(nm[0]);
-            int m = Integer.parseInt(nm[1]);
+            int n = tok.nextInt();
+            int m = tok.nextInt();
 
-            String line;
-            String[] splitLine;
+            int tailId, headId, cost;
 
             //branch on types, (more elegant way?)
             if (type.equals("Directed")) {
@@ -1066,26 +1241,27 @@ public class ProblemReader {
                 }
                 TIntObjectHashMap<DirectedVertex> indexedVertices = ans.getInternalVertexMap();
                 for (int i = 0; i < m - 2; i++) {
-                    line = br.readLine();
-                    if (line == null) {
-                        br.close();
+                    if (!tok.nextLine()) {
+                        tok.close();
                         LOGGER.error("There were not enough lines in the file to account for the number "
                                 + "of edges claimed in the header.");
                         throw new FormatMismatchException();
                     }
-                    splitLine = line.split("\\s+");
-                    if (splitLine.length != 3) {
-                        br.close();
+                    if (tok.countTokens() != 3) {
+                        tok.close();
                         LOGGER.error("One of the edge lines had too many entries in it.");
                         throw new FormatMismatchException();
                     }
-                    ans.addEdge(new Arc("Original", new Pair<DirectedVertex>(indexedVertices.get(Integer.parseInt(splitLine[0])), indexedVertices.get(Integer.parseInt(splitLine[1]))), Integer.parseInt(splitLine[2])));
+                    tailId = tok.nextInt();
+                    headId = tok.nextInt();
+                    cost = tok.nextInt();
+                    ans.addEdge(new Arc("Original", new Pair<DirectedVertex>(indexedVertices.get(tailId), indexedVertices.get(headId)), cost));
                 }
-                if ((line = br.readLine()) != null) {
+                if (tok.nextLine()) {
                     LOGGER.debug("Ignoring excess lines in file.  This could just be whitespace, but there are more lines than "
                             + "are claimed in the header");
                 }
-                br.close();
+                tok.close();
                 return ans;
             } else if (type.equals("Undirected")) {
                 UndirectedGraph ans = new UndirectedGraph();
@@ -1094,27 +1270,28 @@ public class ProblemReader {
                 }
                 TIntObjectHashMap<UndirectedVertex> indexedVertices = ans.getInternalVertexMap();
                 for (int i = 0; i < m - 2; i++) {
-                    line = br.readLine();
-                    if (line == null) {
-                        br.close();
+                    if (!tok.nextLine()) {
+                        tok.close();
                         LOGGER.error("There were not enough lines in the file to account for the number "
                                 + "of edges claimed in the header.");
                         throw new FormatMismatchException();
                     }
-                    splitLine = line.split("\\s+");
-                    if (splitLine.length != 3) {
-                        br.close();
+                    if (tok.countTokens() != 3) {
+                        tok.close();
                         LOGGER.error("One of the edge lines had too many entries in it.");
                         throw new FormatMismatchException();
                     }
-                    ans.addEdge(new Edge("Original", new Pair<UndirectedVertex>(indexedVertices.get(Integer.parseInt(splitLine[0])), indexedVertices.get(Integer.parseInt(splitLine[1]))), Integer.parseInt(splitLine[2])));
+                    tailId = tok.nextInt();
+                    headId = tok.nextInt();
+                    cost = tok.nextInt();
+                    ans.addEdge(new Edge("Original", new Pair<UndirectedVertex>(indexedVertices.get(tailId), indexedVertices.get(headId)), cost));
 
                 }
-                if ((line = br.readLine()) != null) {
+                if (tok.nextLine()) {
                     LOGGER.debug("Ignoring excess lines in file.  This could just be whitespace, but there are more lines than "
                             + "are claimed in the header");
                 }
-                br.close();
+                tok.close();
                 return ans;
             } else if (type.equals("Mixed")) {
                 //TODO
@@ -1123,12 +1300,12 @@ public class ProblemReader {
             }
             //Something is wrong
             else {
-                br.close();
+                tok.close();
                 LOGGER.error("The type specified in the first line of the DIMACS_Modified file was not recognized."
                         + "  It should read either \"Directed\" \"Undirected\" \"Mixed\" or \"Windy\"");
                 throw new FormatMismatchException();
             }
-            br.close();
+            tok.close();
             return null;
         }
         catch (Exception e) {
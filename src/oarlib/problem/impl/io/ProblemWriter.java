@@ -45,8 +45,13 @@ import oarlib.problem.impl.rpp.WindyRPPZZTW;
 import oarlib.vertex.impl.UndirectedVertex;
 import org.apache.log4j.Logger;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -62,9 +67,11 @@ public class ProblemWriter {
     private static final Logger LOGGER = Logger.getLogger(ProblemWriter.class);
 
     private ProblemFormat.Name mFormat;
+    private boolean mIncludeDistanceMatrix;
 
     public ProblemWriter(ProblemFormat.Name format) {
         mFormat = format;
+        mIncludeDistanceMatrix = false;
     }
 
     public ProblemFormat.Name getFormat() {
@@ -75,10 +82,25 @@ public class ProblemWriter {
         mFormat = newFormat;
     }
 
+    public boolean isIncludeDistanceMatrix() {
+        return mIncludeDistanceMatrix;
+    }
+
+    /**
+     * @param includeDistanceMatrix - if true, formats that support it will also store the all-pairs shortest path
+     *                              matrix of the graph, so that readers don't have to recompute it.  (Currently only
+     *                              OARLibBinary).
+     */
+    public void setIncludeDistanceMatrix(boolean includeDistanceMatrix) {
+        mIncludeDistanceMatrix = includeDistanceMatrix;
+    }
+
     public boolean writeInstance(Problem p, String filename) throws UnsupportedFormatException {
         switch (mFormat) {
             case OARLib:
                 return writeOarlibInstance(p, filename);
+            case OARLibBinary:
+                return writeOarlibBinaryInstance(p, filename);
             case Campos:
                 break;
             case Corberan:
@@ -524,15 +546,17 @@ public class ProblemWriter {
 
         try {
             G g = p.getGraph();
-            PrintWriter pw = new PrintWriter(filename, "UTF-8");
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename), "UTF-8"), 1 << 16);
 
-            pw.println("{");
+            out.write("{");
+            out.newLine();
 
             //nodes
-            pw.println("\t\"nodes\":");
-            pw.println("\t[");
+            out.write("\t\"nodes\":");
+            out.newLine();
+            out.write("\t[");
+            out.newLine();
 
-            String toAdd;
             Iterator<? extends Vertex> iter = g.getVertices().iterator();
             HashMap<Integer, Pair<Integer>> newCoords = transformCoordinates(g.getVertices());
 
@@ -540,60 +564,67 @@ public class ProblemWriter {
 
                 Vertex v = iter.next();
                 Pair<Integer> vizCoords = newCoords.get(v.getId());
-                toAdd = "\t\t{";
-                toAdd += "\"id\":"+v.getId();
-                toAdd += ", \"name\":\""+ v.getLabel() + "\"";
-                toAdd += ", \"x\":"+ vizCoords.getFirst();
-                toAdd += ", \"y\":"+ vizCoords.getSecond();
+                out.write("\t\t{\"id\":");
+                out.write(Integer.toString(v.getId()));
+                out.write(", \"name\":\"");
+                out.write(String.valueOf(v.getLabel()));
+                out.write("\", \"x\":");
+                out.write(String.valueOf(vizCoords.getFirst()));
+                out.write(", \"y\":");
+                out.write(String.valueOf(vizCoords.getSecond()));
 
                 if(v.getId() == g.getDepotId())
-                    toAdd += ", \"depot\":true";
-
-                toAdd += "}";
-
+                    out.write(", \"depot\":true");
 
-
-                if(iter.hasNext())
-                    toAdd +=",";
-
-                pw.println(toAdd);
+                out.write(iter.hasNext() ? "}," : "}");
+                out.newLine();
 
             }
 
-            pw.println("\t],");
+            out.write("\t],");
+            out.newLine();
 
             //links
-            pw.println("\t\"links\":");
-            pw.println("\t[");
+            out.write("\t\"links\":");
+            out.newLine();
+            out.write("\t[");
+            out.newLine();
 
             Iterator<? extends Link> iter2 = g.getEdges().iterator();
             while(iter2.hasNext()) {
 
                 Link l = iter2.next();
 
-                toAdd = "\t\t{";
-                toAdd += "\"id\":"+l.getId();
-                toAdd += ", \"label\":\""+ l.getLabel() + "\"";
-                toAdd += ", \"source\":"+ l.getFirstEndpointId();
-                toAdd += ", \"sink\":"+ l.getSecondEndpointId();
-                toAdd += ", \"directed\":"+ l.isDirected();
-                toAdd += ", \"required\":"+l.isRequired();
-                toAdd += ", \"type\":\""+ l.getType() + "\"";
-                toAdd += ", \"speed\":"+ l.getMaxSpeed();
-                toAdd += ", \"zone\":\""+ l.getZone() + "\"}";
-
-                if(iter2.hasNext())
-                    toAdd +=",";
-
-                pw.println(toAdd);
+                out.write("\t\t{\"id\":");
+                out.write(Integer.toString(l.getId()));
+                out.write(", \"label\":\"");
+                out.write(String.valueOf(l.getLabel()));
+                out.write("\", \"source\":");
+                out.write(Integer.toString(l.getFirstEndpointId()));
+                out.write(", \"sink\":");
+                out.write(Integer.toString(l.getSecondEndpointId()));
+                out.write(", \"directed\":");
+                out.write(String.valueOf(l.isDirected()));
+                out.write(", \"required\":");
+                out.write(String.valueOf(l.isRequired()));
+                out.write(", \"type\":\"");
+                out.write(String.valueOf(l.getType()));
+                out.write("\", \"speed\":");
+                out.write(String.valueOf(l.getMaxSpeed()));
+                out.write(", \"zone\":\"");
+                out.write(String.valueOf(l.getZone()));
+                out.write(iter2.hasNext() ? "\"}," : "\"}");
+                out.newLine();
 
             }
 
-            pw.println("\t]");
+            out.write("\t]");
+            out.newLine();
 
-            pw.println("}");
+            out.write("}");
+            out.newLine();
 
-            pw.close();
+            out.close();
 
 
 
@@ -778,6 +809,7 @@ public class ProblemWriter {
 
             ProblemAttributes pa = p.getProblemAttributes();
             boolean isWindy = pa.getmGraphType() == Graph.Type.WINDY;
+            boolean isMixed = pa.getmGraphType() == Graph.Type.MIXED;
 
             //the header
             pw.println();
@@ -810,6 +842,8 @@ public class ProblemWriter {
             String lineFormat = "Line Format:V1,V2,COST,HIGHWAY_TYPE,NAME,MAX_SPEED,ZONE";
             if (isWindy)
                 lineFormat += ",REVERSE COST";
+            if (isMixed)
+                lineFormat += ",DIRECTED";
             lineFormat += ",REQUIRED";
 
             pw.println(lineFormat);
@@ -829,6 +863,8 @@ public class ProblemWriter {
                         + e.getZone();
                 if (isWindy)
                     line += "," + ((WindyEdge) e).getReverseCost();
+                if (isMixed)
+                    line += "," + e.isDirected();
                 line += "," + e.isRequired();
                 pw.println(line);
             }
@@ -869,4 +905,170 @@ public class ProblemWriter {
         return false;
     }
 
+    /**
+     * Writes the graph of the problem in the OARLibBinary format, (see ProblemFormat for the layout).  Everything is
+     * assembled in a single buffer and handed to the file channel in one go.
+     *
+     * @param p        - the problem whose graph we're writing
+     * @param filename - the file to write to
+     * @return - true if the write succeeded, false otherwise
+     * @throws IllegalArgumentException - if the vertex ids aren't 1 ... n, or the link ids aren't 1 ... m, (e.g. after
+     *                                  links have been removed); CommonAlgorithms.collapseIndices fixes that
+     */
+    private boolean writeOarlibBinaryInstance(Problem<?, ?, ?> p, String filename) throws IllegalArgumentException {
+
+        Graph<?, ?> g = p.getGraph();
+        int n = g.getVertices().size();
+        int m = g.getEdges().size();
+
+        //the file stores vertices and links by position
+        for (Vertex v : g.getVertices())
+            if (v.getId() < 1 || v.getId() > n)
+                throw new IllegalArgumentException("The OARLibBinary format requires vertex ids 1 through " + n + ", but the graph has a vertex with id " + v.getId() + ".");
+        for (Link<?> l : g.getEdges())
+            if (l.getId() < 1 || l.getId() > m)
+                throw new IllegalArgumentException("The OARLibBinary format requires link ids 1 through " + m + ", but the graph has a link with id " + l.getId() + ".");
+
+        try {
+
+            boolean isWindy = g.getType() == Graph.Type.WINDY;
+
+            boolean hasVertexCoords = false;
+            boolean hasDemands = false;
+            for (Vertex v : g.getVertices()) {
+                hasVertexCoords |= v.hasCoordinates();
+                hasDemands |= v.isDemandSet();
+            }
+
+            boolean hasServiceCosts = false;
+            boolean hasCapacities = false;
+            for (Link<?> l : g.getEdges()) {
+                hasServiceCosts |= l.getServiceCost() != 0 || (l instanceof AsymmetricLink && ((AsymmetricLink) l).getReverseServiceCost() != 0);
+                hasCapacities |= l.isCapacitySet();
+            }
+
+            int[][] dist = null;
+            if (mIncludeDistanceMatrix) {
+                dist = new int[n + 1][n + 1];
+                CommonAlgorithms.fwLeastCostPaths(g, dist, new int[n + 1][n + 1]);
+            }
+
+            int flags = 0;
+            long size = ProblemFormat.BINARY_HEADER_BYTES + 17L * m;
+            if (hasVertexCoords) {
+                flags |= ProblemFormat.FLAG_COORDINATES;
+                size += 16L * n;
+            }
+            if (dist != null) {
+                flags |= ProblemFormat.FLAG_DISTANCE_MATRIX;
+                size += 4L * n * n;
+            }
+            if (hasServiceCosts) {
+                flags |= ProblemFormat.FLAG_SERVICE_COSTS;
+                size += 8L * m;
+            }
+            if (hasCapacities) {
+                flags |= ProblemFormat.FLAG_CAPACITIES;
+                size += 4L * m;
+            }
+            if (hasDemands) {
+                flags |= ProblemFormat.FLAG_DEMANDS;
+                size += 5L * n;
+            }
+            if (size > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("The instance is too large to be written in this format.");
+
+            ByteBuffer buf = ByteBuffer.allocate((int) size);
+
+            //the header
+            buf.putInt(ProblemFormat.BINARY_MAGIC);
+            buf.putInt(ProblemFormat.BINARY_VERSION);
+            buf.putInt(g.getType().ordinal());
+            buf.putInt(g.getDepotId());
+            buf.putInt(n);
+            buf.putInt(m);
+            buf.putInt(flags);
+
+            //vertices
+            if (hasVertexCoords) {
+                for (int i = 1; i <= n; i++)
+                    buf.putDouble(g.getVertex(i).getX());
+                for (int i = 1; i <= n; i++)
+                    buf.putDouble(g.getVertex(i).getY());
+            }
+
+            //links, one array at a time
+            for (int i = 1; i <= m; i++)
+                buf.putInt(g.getEdge(i).getEndpoints().getFirst().getId());
+            for (int i = 1; i <= m; i++)
+                buf.putInt(g.getEdge(i).getEndpoints().getSecond().getId());
+            for (int i = 1; i <= m; i++)
+                buf.putInt(g.getEdge(i).getCost());
+            for (int i = 1; i <= m; i++) {
+                Link<?> e = g.getEdge(i);
+                buf.putInt(isWindy ? ((AsymmetricLink) e).getReverseCost() : e.getCost());
+            }
+            byte linkFlags;
+            for (int i = 1; i <= m; i++) {
+                Link<?> e = g.getEdge(i);
+                linkFlags = 0;
+                if (e.isRequired())
+                    linkFlags |= ProblemFormat.LINK_REQUIRED;
+                if (e.isDirected())
+                    linkFlags |= ProblemFormat.LINK_DIRECTED;
+                if (e instanceof AsymmetricLink && ((AsymmetricLink) e).isReverseRequired())
+                    linkFlags |= ProblemFormat.LINK_REVERSE_REQUIRED;
+                if (e.isCapacitySet())
+                    linkFlags |= ProblemFormat.LINK_CAPACITY_SET;
+                buf.put(linkFlags);
+            }
+
+            //the distance matrix
+            if (dist != null)
+                for (int i = 1; i <= n; i++) {
+                    buf.asIntBuffer().put(dist[i], 1, n);
+                    buf.position(buf.position() + 4 * n);
+                }
+
+            //service costs, capacities and demands
+            if (hasServiceCosts) {
+                for (int i = 1; i <= m; i++)
+                    buf.putInt(g.getEdge(i).getServiceCost());
+                for (int i = 1; i <= m; i++) {
+                    Link<?> e = g.getEdge(i);
+                    buf.putInt(e instanceof AsymmetricLink ? ((AsymmetricLink) e).getReverseServiceCost() : 0);
+                }
+            }
+            if (hasCapacities)
+                for (int i = 1; i <= m; i++) {
+                    Link<?> e = g.getEdge(i);
+                    buf.putInt(e.isCapacitySet() ? e.getCapacity() : 0);
+                }
+            if (hasDemands) {
+                for (int i = 1; i <= n; i++) {
+                    Vertex v = g.getVertex(i);
+                    buf.putInt(v.isDemandSet() ? v.getDemand() : 0);
+                }
+                for (int i = 1; i <= n; i++)
+                    buf.put(g.getVertex(i).isDemandSet() ? (byte) 1 : (byte) 0);
+            }
+
+            buf.position(0);
+            FileOutputStream fos = new FileOutputStream(filename);
+            try {
+                FileChannel channel = fos.getChannel();
+                while (buf.hasRemaining())
+                    channel.write(buf);
+            } finally {
+                fos.close();
+            }
+
+            return true;
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
 }
@@ -0,0 +1,372 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2015 Oliver Lum
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package oarlib.problem.impl.io.util;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Line-oriented tokenizer that works directly on the bytes of its input, so ints and doubles are parsed without
+ * building a String per line or per token, (and without running a regex over every line).  Files that start with
+ * the gzip magic number are decompressed on the fly.
+ * <p/>
+ * By default, runs of whitespace, commas, colons, and parentheses all separate tokens.  Formats in which empty
+ * fields are significant, (e.g. "1,2,,0"), should call setDelimiters(",", false), after which every delimiter ends
+ * a field, and the whitespace around a field is ignored.
+ */
+public class ByteTokenizer implements Closeable {
+
+    public static final String DEFAULT_DELIMITERS = " \t\r\f,:()";
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private InputStream mIn;
+    private byte[] mBuffer;
+    private int mBufferPos;
+    private int mBufferLen;
+
+    //the current line, and our position in it
+    private byte[] mLine;
+    private int mLineLen;
+    private int mPos;
+
+    private boolean[] mIsDelimiter;
+    private boolean mCollapseDelimiters;
+
+    public ByteTokenizer(InputStream in) {
+        mIn = in;
+        mBuffer = new byte[BUFFER_SIZE];
+        mLine = new byte[256];
+        mIsDelimiter = new boolean[256];
+        setDelimiters(DEFAULT_DELIMITERS, true);
+    }
+
+    /**
+     * Opens the file for tokenizing, decompressing it if it's gzipped.
+     *
+     * @param fileName - the file to read
+     * @return - a tokenizer positioned before the first line of the file
+     */
+    public static ByteTokenizer open(String fileName) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(fileName), BUFFER_SIZE);
+        in.mark(2);
+        int b1 = in.read();
+        int b2 = in.read();
+        in.reset();
+        if (b1 == 0x1f && b2 == 0x8b)
+            in = new GZIPInputStream(in, BUFFER_SIZE);
+        return new ByteTokenizer(in);
+    }
+
+    /**
+     * @param delimiters - every character in this string separates tokens, (only single-byte characters are supported)
+     * @param collapse   - if true, a run of delimiters counts as a single separator; if false, each delimiter ends a
+     *                   field, so consecutive delimiters produce empty fields.
+     */
+    public void setDelimiters(String delimiters, boolean collapse) {
+        for (int i = 0; i < mIsDelimiter.length; i++)
+            mIsDelimiter[i] = false;
+        for (int i = 0; i < delimiters.length(); i++)
+            mIsDelimiter[delimiters.charAt(i) & 0xff] = true;
+        mCollapseDelimiters = collapse;
+    }
+
+    /**
+     * Advances to the next line of the input, (terminated by \n or \r\n).
+     *
+     * @return - false if there are no more lines
+     */
+    public boolean nextLine() throws IOException {
+        mLineLen = 0;
+        mPos = 0;
+        boolean readAny = false;
+        while (true) {
+            if (mBufferPos == mBufferLen) {
+                mBufferLen = mIn.read(mBuffer, 0, mBuffer.length);
+                mBufferPos = 0;
+                if (mBufferLen <= 0) {
+                    mBufferLen = 0;
+                    return readAny;
+                }
+            }
+            readAny = true;
+
+            int start = mBufferPos;
+            int end = start;
+            while (end < mBufferLen && mBuffer[end] != '\n')
+                end++;
+
+            if (mLineLen + end - start > mLine.length) {
+                byte[] bigger = new byte[Math.max(2 * mLine.length, mLineLen + end - start)];
+                System.arraycopy(mLine, 0, bigger, 0, mLineLen);
+                mLine = bigger;
+            }
+            System.arraycopy(mBuffer, start, mLine, mLineLen, end - start);
+            mLineLen += end - start;
+
+            if (end < mBufferLen) {
+                mBufferPos = end + 1;
+                if (mLineLen > 0 && mLine[mLineLen - 1] == '\r')
+                    mLineLen--;
+                return true;
+            }
+            mBufferPos = mBufferLen;
+        }
+    }
+
+    /**
+     * @return - the current line as a String; meant for headers and error messages rather than bulk data.
+     */
+    public String getLine() {
+        return new String(mLine, 0, mLineLen);
+    }
+
+    /**
+     * @return - true if the current line contains s
+     */
+    public boolean lineContains(String s) {
+        return indexOf(s) >= 0;
+    }
+
+    /**
+     * @return - true if the current line starts with s
+     */
+    public boolean lineStartsWith(String s) {
+        if (s.length() > mLineLen)
+            return false;
+        for (int i = 0; i < s.length(); i++)
+            if (mLine[i] != (byte) s.charAt(i))
+                return false;
+        return true;
+    }
+
+    /**
+     * @return - the number of tokens, (or fields, if delimiters aren't collapsed), on the whole current line
+     */
+    public int countTokens() {
+        int saved = mPos;
+        mPos = 0;
+        int count = 0;
+        while (hasMoreTokens()) {
+            skipToken();
+            count++;
+        }
+        mPos = saved;
+        return count;
+    }
+
+    /**
+     * @return - the tokens remaining on the current line
+     */
+    public String[] remainingTokens() {
+        ArrayList<String> ans = new ArrayList<String>();
+        while (hasMoreTokens())
+            ans.add(nextToken());
+        return ans.toArray(new String[ans.size()]);
+    }
+
+    /**
+     * @return - true if there is another token on the current line
+     */
+    public boolean hasMoreTokens() {
+        if (mCollapseDelimiters) {
+            while (mPos < mLineLen && mIsDelimiter[mLine[mPos] & 0xff])
+                mPos++;
+            return mPos < mLineLen;
+        }
+        return mPos <= mLineLen;
+    }
+
+    public String nextToken() {
+        int start = startToken();
+        int end = tokenEnd(start);
+        String ans = new String(mLine, start, trimEnd(start, end) - start);
+        finishToken(end);
+        return ans;
+    }
+
+    /**
+     * @return - true if the next token is exactly s; the token is consumed either way
+     */
+    public boolean nextTokenEquals(String s) {
+        int start = startToken();
+        int end = tokenEnd(start);
+        int trimmed = trimEnd(start, end);
+        finishToken(end);
+        if (trimmed - start != s.length())
+            return false;
+        for (int i = 0; i < s.length(); i++)
+            if (mLine[start + i] != (byte) s.charAt(i))
+                return false;
+        return true;
+    }
+
+    public void skipToken() {
+        finishToken(tokenEnd(startToken()));
+    }
+
+    public void skipTokens(int k) {
+        for (int i = 0; i < k; i++)
+            skipToken();
+    }
+
+    /**
+     * Parses the next token as an int, in the same way as Integer.parseInt.
+     */
+    public int nextInt() {
+        int start = startToken();
+        int end = trimEnd(start, tokenEnd(start));
+        int i = start;
+        boolean negative = false;
+        if (i < end && (mLine[i] == '-' || mLine[i] == '+')) {
+            negative = mLine[i] == '-';
+            i++;
+        }
+        if (i == end)
+            throw new NumberFormatException("Expected an integer, but found \"" + new String(mLine, start, end - start) + "\"");
+
+        long ans = 0;
+        for (; i < end; i++) {
+            int digit = mLine[i] - '0';
+            if (digit < 0 || digit > 9)
+                throw new NumberFormatException("Expected an integer, but found \"" + new String(mLine, start, end - start) + "\"");
+            ans = 10 * ans + digit;
+            if (ans > 1L + Integer.MAX_VALUE)
+                throw new NumberFormatException("Integer out of range: \"" + new String(mLine, start, end - start) + "\"");
+        }
+        if (negative)
+            ans = -ans;
+        if (ans > Integer.MAX_VALUE)
+            throw new NumberFormatException("Integer out of range: \"" + new String(mLine, start, end - start) + "\"");
+
+        finishToken(tokenEnd(start));
+        return (int) ans;
+    }
+
+    /**
+     * Parses the next token as a double, with the same result as Double.parseDouble.  Plain decimals, (up to 15
+     * significant digits), are handled directly; anything else is handed to Double.parseDouble.
+     */
+    public double nextDouble() {
+        int start = startToken();
+        int rawEnd = tokenEnd(start);
+        int end = trimEnd(start, rawEnd);
+        finishToken(rawEnd);
+
+        int i = start;
+        boolean negative = false;
+        if (i < end && (mLine[i] == '-' || mLine[i] == '+')) {
+            negative = mLine[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenPoint = false;
+        boolean seenDigit = false;
+        boolean simple = true;
+        for (; i < end && simple; i++) {
+            byte b = mLine[i];
+            if (b >= '0' && b <= '9') {
+                seenDigit = true;
+                if (mantissa != 0 || b != '0')
+                    digits++;
+                mantissa = 10 * mantissa + (b - '0');
+                if (seenPoint)
+                    fractionDigits++;
+            } else if (b == '.' && !seenPoint)
+                seenPoint = true;
+            else
+                simple = false;
+        }
+
+        //exact as long as both operands are exactly representable, (one correctly rounded division)
+        if (simple && seenDigit && digits <= 15 && fractionDigits < POWERS_OF_TEN.length) {
+            double ans = mantissa / POWERS_OF_TEN[fractionDigits];
+            return negative ? -ans : ans;
+        }
+        return Double.parseDouble(new String(mLine, start, end - start));
+    }
+
+    @Override
+    public void close() throws IOException {
+        mIn.close();
+    }
+
+    private int indexOf(String s) {
+        int len = s.length();
+        outer:
+        for (int i = 0; i + len <= mLineLen; i++) {
+            for (int j = 0; j < len; j++)
+                if (mLine[i + j] != (byte) s.charAt(j))
+                    continue outer;
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return - the index of the first byte of the next token, (after any leading delimiters or whitespace)
+     */
+    private int startToken() {
+        if (!hasMoreTokens())
+            throw new IllegalStateException("There are no more tokens on this line: \"" + getLine() + "\"");
+        int start = mPos;
+        if (!mCollapseDelimiters)
+            while (start < mLineLen && isBlank(mLine[start]) && !mIsDelimiter[mLine[start] & 0xff])
+                start++;
+        return start;
+    }
+
+    private int tokenEnd(int start) {
+        int end = start;
+        while (end < mLineLen && !mIsDelimiter[mLine[end] & 0xff])
+            end++;
+        return end;
+    }
+
+    private int trimEnd(int start, int end) {
+        if (!mCollapseDelimiters)
+            while (end > start && isBlank(mLine[end - 1]))
+                end--;
+        return end;
+    }
+
+    private void finishToken(int end) {
+        //in field mode, step over the one delimiter that ended this field, (or past the end of the line)
+        mPos = mCollapseDelimiters ? end : end + 1;
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\f';
+    }
+}
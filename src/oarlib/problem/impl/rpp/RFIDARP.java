@@ -24,8 +24,10 @@
  */
 package oarlib.problem.impl.rpp;
 
+import gnu.trove.TIntArrayList;
 import oarlib.core.Graph;
 import oarlib.graph.impl.WindyGraph;
+import oarlib.graph.util.KDTree;
 import oarlib.graph.util.Pair;
 import oarlib.link.impl.WindyEdge;
 import oarlib.metrics.SumMetric;
@@ -33,8 +35,10 @@ import oarlib.problem.impl.ProblemAttributes;
 import oarlib.problem.impl.RuralPostmanProblem;
 import oarlib.vertex.impl.WindyVertex;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 
 /**
  * Created by oliverlum on 9/2/16.
@@ -44,7 +48,8 @@ import java.util.HashSet;
 public class RFIDARP extends RuralPostmanProblem<WindyVertex, WindyEdge, WindyGraph> {
 
     HashMap<Integer, Pair<Double>> meters = new HashMap<Integer, Pair<Double>>(); //key = id; value = coordinates
-    HashMap<Pair<Integer>, Double> readProbabilities = new HashMap<Pair<Integer>, Double>(); //key = edgeId, meterId; value = prob [0,1]
+    HashMap<Integer, HashMap<Integer, Double>> readsByEdge = new HashMap<Integer, HashMap<Integer, Double>>(); //key = edgeId; value = (key = meterId, value = prob), for the pairs that have been set
+    KDTree meterIndex; //over the meter coordinates; built on demand
 
     public RFIDARP(WindyGraph g) {
         this(g, "");
@@ -61,31 +66,119 @@ public class RFIDARP extends RuralPostmanProblem<WindyVertex, WindyEdge, WindyGr
 
     public void setMeters(HashMap<Integer, Pair<Double>> newMeters) {
         meters = newMeters;
+        meterIndex = null;
     }
 
     public void putMeter(int id, Pair<Double> coordinates) {
         meters.put(id, coordinates);
+        meterIndex = null;
     }
 
-    public HashMap<Pair<Integer>, Double> getReadProbabilities(){
-        return readProbabilities;
+    /**
+     * @return - a read-only snapshot of all the read probabilities that have been set; key = (edgeId, meterId), value =
+     * prob.  Use setReadProbability or setReadProbabilities to change them, and getReadProbabilities(int) to look
+     * them up by edge.
+     */
+    public Map<Pair<Integer>, Double> getReadProbabilities(){
+        HashMap<Pair<Integer>, Double> ans = new HashMap<Pair<Integer>, Double>();
+        for (Map.Entry<Integer, HashMap<Integer, Double>> edgeReads : readsByEdge.entrySet())
+            for (Map.Entry<Integer, Double> read : edgeReads.getValue().entrySet())
+                ans.put(new Pair<Integer>(edgeReads.getKey(), read.getKey()), read.getValue());
+        return Collections.unmodifiableMap(ans);
     }
 
-    public void setReadProbabilities(HashMap<Pair<Integer>, Double> newProbabilities) {
-        readProbabilities = newProbabilities;
+    /**
+     * Replaces all the read probabilities.  The map is copied, so later changes to it have no effect.
+     *
+     * @param newProbabilities - key = (edgeId, meterId); value = prob [0,1]
+     */
+    public void setReadProbabilities(Map<Pair<Integer>, Double> newProbabilities) {
+        readsByEdge.clear();
+        for (Map.Entry<Pair<Integer>, Double> read : newProbabilities.entrySet())
+            indexReadProbability(read.getKey().getFirst(), read.getKey().getSecond(), read.getValue());
+    }
+
+    /**
+     * @param edgeId  - the id of the edge
+     * @param meterId - the id of the meter
+     * @return - the probability of reading the meter while traversing the edge, (0 if it hasn't been set)
+     */
+    public double getReadProbability(int edgeId, int meterId) {
+        HashMap<Integer, Double> reads = readsByEdge.get(edgeId);
+        if (reads == null || !reads.containsKey(meterId))
+            return 0;
+        return reads.get(meterId);
+    }
+
+    /**
+     * @param edgeId - the id of the edge
+     * @return - the meters whose read probability from this edge has been set; key = meterId, value = prob.  Since
+     * only the pairs within read range need to be set, this is usually much smaller than the set of meters.
+     */
+    public Map<Integer, Double> getReadProbabilities(int edgeId) {
+        HashMap<Integer, Double> reads = readsByEdge.get(edgeId);
+        if (reads == null)
+            return Collections.emptyMap();
+        return Collections.unmodifiableMap(reads);
+    }
+
+    /**
+     * Finds the meters within the given distance of a street segment, so that read probabilities only need to be
+     * modelled (and stored) for pairs that are actually in range.  The meters are indexed with a k-d tree, so this
+     * doesn't look at every meter.  If the map returned by getMeters() is changed directly, call setMeters with it
+     * afterwards so that the index is rebuilt.
+     *
+     * @param edgeId - the id of the edge
+     * @param range  - the read range
+     * @return - the ids of the meters within range of the segment between the edge's endpoints
+     */
+    public int[] getMetersWithin(int edgeId, double range) {
+        if (meterIndex == null)
+            meterIndex = new KDTree(meters);
+
+        WindyEdge e = mGraph.getEdge(edgeId);
+        double x1 = e.getEndpoints().getFirst().getX();
+        double y1 = e.getEndpoints().getFirst().getY();
+        double x2 = e.getEndpoints().getSecond().getX();
+        double y2 = e.getEndpoints().getSecond().getY();
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double len2 = dx * dx + dy * dy;
+
+        //everything within range of the segment is within range + half its length of the midpoint
+        int[] candidates = meterIndex.withinRadius((x1 + x2) * .5, (y1 + y2) * .5, range + Math.sqrt(len2) * .5);
+        TIntArrayList ans = new TIntArrayList();
+        Pair<Double> p;
+        double t, px, py;
+        for (int meterId : candidates) {
+            p = meters.get(meterId);
+            t = (len2 == 0) ? 0 : Math.max(0, Math.min(1, ((p.getFirst() - x1) * dx + (p.getSecond() - y1) * dy) / len2));
+            px = x1 + t * dx - p.getFirst();
+            py = y1 + t * dy - p.getSecond();
+            if (px * px + py * py <= range * range)
+                ans.add(meterId);
+        }
+        return ans.toNativeArray();
     }
 
     public void removeMeter(int meterId) {
         if(!meters.keySet().contains(meterId))
             throw new IllegalArgumentException("You are attempting to remove a meter that doesn't exist");
         meters.remove(meterId);
+        meterIndex = null;
     }
 
     public void setReadProbability(int edgeId, int meterId, double newProb){
 
         if(newProb<0 || newProb>1)
             throw new IllegalArgumentException("The probability you provided was invalid.");
-        readProbabilities.put(new Pair<Integer>(edgeId, meterId), newProb);
+        indexReadProbability(edgeId, meterId, newProb);
+    }
+
+    private void indexReadProbability(int edgeId, int meterId, double prob) {
+        if (!readsByEdge.containsKey(edgeId))
+            readsByEdge.put(edgeId, new HashMap<Integer, Double>());
+        readsByEdge.get(edgeId).put(meterId, prob);
     }
 
     @Override
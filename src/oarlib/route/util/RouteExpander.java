@@ -60,6 +60,17 @@ public class RouteExpander<G extends Graph> {
 
     }
 
+    /**
+     * For when the shortest paths have already been computed, (e.g. by the graph's lazy getters), so we don't have
+     * to run Floyd-Warshall again.  The matrices are not copied, and must not be modified while this is in use.
+     */
+    public RouteExpander(G g, int[][] dist, int[][] path, int[][] edgePath) {
+        mGraph = g;
+        this.dist = dist;
+        this.path = path;
+        this.edgePath = edgePath;
+    }
+
     public Tour unflattenRoute(TIntArrayList flattenedRoute, ArrayList<Boolean> direction) {
 
         //arg checking
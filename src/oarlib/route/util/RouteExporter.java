@@ -24,16 +24,28 @@
  */
 package oarlib.route.util;
 
+import gnu.trove.TIntIntHashMap;
+import oarlib.core.Link;
 import oarlib.core.Route;
 import oarlib.link.impl.ZigZagLink;
 import oarlib.route.impl.ZigZagTour;
 import org.apache.log4j.Logger;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * Created by oliverlum on 11/21/15.
@@ -43,6 +55,26 @@ public class RouteExporter {
     public static final double ZZ_TIME_WINDOW_THRESHOLD = 1e5; //if a zigzag time window is above this threshold, it will be treated as though it doesn't have a time window by the heuristic
     private static Logger LOGGER = Logger.getLogger(RouteExporter.class);
 
+    /*
+     * Layout of the BINARY format, (big-endian):
+     *
+     * header: magic (int, "OARR"), version (int), number of routes (int)
+     * then, for each route:
+     *   m (int) - the number of links in the route
+     *   n (int) - the number of vertices visited, (m+1, or 0 if the route was malformed or empty)
+     *   cost (int)
+     *   k (int) - the number of entries in the route's custom id mapping
+     *   link ids (m ints)
+     *   link flags (m bytes) - LINK_SERVICED if the link is serviced
+     *   vertex ids (n ints) - graph ids, in the order visited; they also give the direction each link is traversed in
+     *   custom id mapping (k pairs of ints) - graph id, custom id
+     */
+    public static final int BINARY_MAGIC = 0x4F415252;
+    public static final int BINARY_VERSION = 2;
+    public static final int LINK_SERVICED = 1;
+
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
     /**
      * Catch all for exporting routes.  To add another format, just add it to the type
      * and then an appropriate clause and method.
@@ -61,6 +93,9 @@ public class RouteExporter {
                 temp.add(r);
                 exportJSON(temp, path);
                 return;
+            case BINARY:
+                exportBinary(Collections.singletonList(r), path);
+                return;
         }
 
 
@@ -77,6 +112,9 @@ public class RouteExporter {
             case JSON:
                 exportJSON(routes, path);
                 return;
+            case BINARY:
+                exportBinary(routes, path);
+                return;
         }
     }
 
@@ -84,43 +122,54 @@ public class RouteExporter {
 
         try {
 
-            PrintWriter pw = new PrintWriter(new File(path));
+            BufferedWriter out = new BufferedWriter(new FileWriter(path), WRITE_BUFFER_SIZE);
+            char[] digits = new char[11];
 
             //front matter
-            pw.println("{");
-            pw.println("\t\"routes\":");
-            pw.println("\t[");
+            out.write("{");
+            out.newLine();
+            out.write("\t\"routes\":");
+            out.newLine();
+            out.write("\t[");
+            out.newLine();
 
             //routes
             int id = 1;
-            String toPrint;
-            String[] nodeIds;
             Iterator<? extends Route> iter = routes.iterator();
-            while(iter.hasNext()) {
-                Route r = iter.next();
-                pw.println("\t\t{");
-                pw.println("\t\t\t\"id\":" + id);
-                pw.println("\t\t\t\"nodes\": [");
+            while (iter.hasNext()) {
+                Route<?, ?> r = iter.next();
+                out.write("\t\t{");
+                out.newLine();
+                out.write("\t\t\t\"id\":");
+                writeInt(out, id, digits);
+                out.newLine();
+                out.write("\t\t\t\"nodes\": [");
+                out.newLine();
 
                 //nodes
-                nodeIds = r.toString().split("-");
-                for(int i = 0; i < nodeIds.length - 1; i++) {
-                    pw.println("\t\t\t\t{\"id\":" + nodeIds[i] + "},");
+                Route<?, ?>.VertexIdIterator vertices = r.vertexIdIterator(!r.getMapping().isEmpty());
+                if (!vertices.isConsistent())
+                    LOGGER.error("Adjacent links in route " + id + " didn't share a common vertex.  Its nodes will be omitted.");
+                while (vertices.hasNext()) {
+                    out.write("\t\t\t\t{\"id\":");
+                    writeInt(out, vertices.next(), digits);
+                    out.write(vertices.hasNext() ? "}," : "}");
+                    out.newLine();
                 }
-                pw.println("\t\t\t\t{\"id\":" + nodeIds[nodeIds.length - 1] + "}");
 
-                pw.println("\t\t\t]");
-                toPrint = "\t\t}";
-                if(iter.hasNext())
-                    toPrint += ",";
-                pw.println(toPrint);
+                out.write("\t\t\t]");
+                out.newLine();
+                out.write(iter.hasNext() ? "\t\t}," : "\t\t}");
+                out.newLine();
 
                 id++;
             }
 
-            pw.println("\t]");
-            pw.println("}");
-            pw.close();
+            out.write("\t]");
+            out.newLine();
+            out.write("}");
+            out.newLine();
+            out.close();
 
         } catch (Exception ex) {
             ex.printStackTrace();
@@ -130,6 +179,79 @@ public class RouteExporter {
 
     }
 
+    /**
+     * Writes the routes in the compact binary format described in RouteFormat.BINARY.  Everything is written
+     * straight from the routes' link lists, without any per-route allocation.
+     */
+    private static void exportBinary(Collection<? extends Route> routes, String path) {
+
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), WRITE_BUFFER_SIZE));
+
+            out.writeInt(BINARY_MAGIC);
+            out.writeInt(BINARY_VERSION);
+            out.writeInt(routes.size());
+
+            int id = 1;
+            for (Route<?, ?> r : routes) {
+                List<? extends Link<?>> linkPath = r.getPath();
+                List<Boolean> service = r.getServicingList();
+                int m = linkPath.size();
+
+                Route<?, ?>.VertexIdIterator vertices = r.vertexIdIterator();
+                if (!vertices.isConsistent())
+                    LOGGER.error("Adjacent links in route " + id + " didn't share a common vertex.  Its vertices will be omitted.");
+                int n = vertices.isConsistent() && m > 0 ? m + 1 : 0;
+                TIntIntHashMap mapping = r.getMapping();
+
+                out.writeInt(m);
+                out.writeInt(n);
+                out.writeInt(r.getCost());
+                out.writeInt(mapping.size());
+                for (int i = 0; i < m; i++)
+                    out.writeInt(linkPath.get(i).getId());
+                for (int i = 0; i < m; i++)
+                    out.writeByte(service.get(i) ? LINK_SERVICED : 0);
+                for (int i = 0; i < n; i++)
+                    out.writeInt(vertices.next());
+                int[] keys = mapping.keys();
+                Arrays.sort(keys);
+                for (int key : keys) {
+                    out.writeInt(key);
+                    out.writeInt(mapping.get(key));
+                }
+
+                id++;
+            }
+
+            out.close();
+
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the decimal representation of val without allocating a String for it.
+     */
+    private static void writeInt(Writer out, int val, char[] buf) throws IOException {
+        if (val == Integer.MIN_VALUE) {
+            out.write(Integer.toString(val));
+            return;
+        }
+        boolean negative = val < 0;
+        if (negative)
+            val = -val;
+        int pos = buf.length;
+        do {
+            buf[--pos] = (char) ('0' + val % 10);
+            val /= 10;
+        } while (val != 0);
+        if (negative)
+            buf[--pos] = '-';
+        out.write(buf, pos, buf.length - pos);
+    }
+
     private static void exportZhang(Route r, String path, boolean truncate) {
 
         if(!(r instanceof ZigZagTour))
@@ -193,6 +315,7 @@ public class RouteExporter {
 
     public enum RouteFormat {
         ZHANG, //Rui's requested output format
-        JSON // for visualization
+        JSON, // for visualization
+        BINARY // compact; may be read back with SolutionImporter
     }
 }
@@ -24,6 +24,8 @@
  */
 package oarlib.route.util;
 
+import gnu.trove.TIntIntHashMap;
+import gnu.trove.TIntObjectHashMap;
 import oarlib.core.Graph;
 import oarlib.core.Link;
 import oarlib.core.Route;
@@ -32,12 +34,17 @@ import oarlib.graph.impl.DirectedGraph;
 import oarlib.graph.util.CommonAlgorithms;
 import oarlib.graph.util.Pair;
 import oarlib.link.impl.Arc;
+import oarlib.link.impl.AsymmetricLink;
 import oarlib.route.impl.Tour;
 import oarlib.vertex.impl.DirectedVertex;
 import org.apache.log4j.Logger;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 /**
@@ -87,6 +94,130 @@ public class SolutionImporter {
 
     }
 
+    /**
+     * Reads routes written by the RouteExporter in the BINARY format, and rebuilds them from the links of g.  The
+     * file is memory-mapped and read in a single pass.
+     * <p/>
+     * Solvers frequently build their routes over a copy of the instance graph, so the link ids in the file need not
+     * match the ones in g.  Each link is looked up by its id first, and if that link doesn't connect the vertices
+     * that the route visits, the cheapest suitable link between those vertices is used instead.
+     * Routes that had a custom id mapping get it back, (the vertex ids in the file are always graph ids).
+     *
+     * @param filename - the file containing the routes
+     * @param g        - the graph to rebuild the routes on; its vertex ids should match the ones in the file
+     * @return - the routes, in the order that they were written, or null if the file couldn't be read.
+     */
+    public static <V extends Vertex, E extends Link<V>> ArrayList<Tour<V, E>> importBinary(String filename, Graph<V, E> g) {
+
+        try {
+            FileChannel fc = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+            ByteBuffer buf = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+            fc.close();
+
+            if (buf.capacity() < 12 || buf.getInt() != RouteExporter.BINARY_MAGIC) {
+                LOGGER.error("The file does not appear to contain routes in the binary format.");
+                return null;
+            }
+            int version = buf.getInt();
+            if (version != RouteExporter.BINARY_VERSION) {
+                LOGGER.error("Unsupported route file version: " + version);
+                return null;
+            }
+
+            int numRoutes = buf.getInt();
+            ArrayList<Tour<V, E>> ans = new ArrayList<Tour<V, E>>(numRoutes);
+            int[] linkIds = new int[0];
+            int[] vertexIds = new int[0];
+            byte[] flags = new byte[0];
+            for (int r = 0; r < numRoutes; r++) {
+                int m = buf.getInt();
+                int n = buf.getInt();
+                buf.getInt(); //cost; recomputed as the links are appended
+                int k = buf.getInt();
+
+                if (linkIds.length < m) {
+                    linkIds = new int[m];
+                    flags = new byte[m];
+                }
+                if (vertexIds.length < n)
+                    vertexIds = new int[n];
+                for (int i = 0; i < m; i++)
+                    linkIds[i] = buf.getInt();
+                buf.get(flags, 0, m);
+                for (int i = 0; i < n; i++)
+                    vertexIds[i] = buf.getInt();
+
+                Tour<V, E> toAdd = new Tour<V, E>();
+                if (k > 0) {
+                    TIntIntHashMap mapping = new TIntIntHashMap(k);
+                    for (int i = 0; i < k; i++)
+                        mapping.put(buf.getInt(), buf.getInt());
+                    toAdd.setMapping(mapping);
+                }
+                boolean service;
+                for (int i = 0; i < m; i++) {
+                    service = (flags[i] & RouteExporter.LINK_SERVICED) != 0;
+                    if (n == 0)
+                        toAdd.appendEdge(g.getEdge(linkIds[i]), service);
+                    else
+                        toAdd.appendEdge(resolveLink(g, linkIds[i], vertexIds[i], vertexIds[i + 1], service), service);
+                }
+                ans.add(toAdd);
+            }
+
+            return ans;
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Finds the link of g that a route traverses from vertex i to vertex j.
+     *
+     * @param linkId  - the id of the link that was written out; preferred if it connects i and j
+     * @param service - true if the route services the link, in which case it has to be required
+     * @return - the link, or null if there isn't a suitable one in g.
+     */
+    private static <V extends Vertex, E extends Link<V>> E resolveLink(Graph<V, E> g, int linkId, int i, int j, boolean service) {
+        TIntObjectHashMap<E> links = g.getInternalEdgeMap();
+        E candidate = links.get(linkId);
+        if (candidate != null && connects(candidate, i, j, service))
+            return candidate;
+
+        if (!links.containsKey(linkId))
+            LOGGER.debug("Link " + linkId + " is not in the graph; looking it up by its endpoints.");
+        E ans = null;
+        try {
+            V vi = g.getVertex(i);
+            V vj = g.getVertex(j);
+            //undirected links may only be listed as neighbors in one direction
+            ans = cheapestConnecting(vi.getNeighbors().get(vj), ans, i, j, service);
+            ans = cheapestConnecting(vj.getNeighbors().get(vi), ans, i, j, service);
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("The route visits a vertex that is not in the graph.");
+        }
+        return ans;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Link<?>> E cheapestConnecting(List<? extends Link<?>> candidates, E best, int i, int j, boolean service) {
+        if (candidates == null)
+            return best;
+        for (Link<?> l : candidates)
+            if (connects(l, i, j, service) && (best == null || l.getCost() < best.getCost()))
+                best = (E) l;
+        return best;
+    }
+
+    private static boolean connects(Link<?> l, int i, int j, boolean service) {
+        int first = l.getFirstEndpointId();
+        int second = l.getSecondEndpointId();
+        if (!(first == i && second == j) && (l.isDirected() || !(first == j && second == i)))
+            return false;
+        return !service || l.isRequired() || (l.isWindy() && ((AsymmetricLink) l).isReverseRequired());
+    }
+
     private static Collection<Tour<DirectedVertex, Arc>> importCorberan(String filename, int depotId) {
 
         try {
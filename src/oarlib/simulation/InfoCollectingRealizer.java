@@ -26,7 +26,6 @@ package oarlib.simulation;
 
 import com.sun.jdi.event.WatchpointEvent;
 import oarlib.core.Route;
-import oarlib.graph.util.Pair;
 import oarlib.link.impl.WindyEdge;
 import oarlib.problem.impl.rpp.RFIDARP;
 import oarlib.vertex.impl.WindyVertex;
@@ -57,9 +56,7 @@ public class InfoCollectingRealizer {
         ArrayList<WindyEdge> path = route.getPath();
         WindyEdge tempEdge;
         int tempId;
-        double readProb;
         Set<Integer> meterIds = mInstance.getMeters().keySet();
-        HashMap<Pair<Integer>, Double> readProbs =  mInstance.getReadProbabilities();
         Random rng = new Random(1000);
 
         HashSet<Integer> readMeters = new HashSet<Integer>();
@@ -68,11 +65,10 @@ public class InfoCollectingRealizer {
             tempEdge = path.get(i);
             tempId = tempEdge.getId();
 
-            //go through and check the probabilities for each meter
-            for(Integer meterId : meterIds){
-                readProb = readProbs.get(new Pair<Integer>(tempId, meterId));
-                if(rng.nextDouble() < readProb)
-                    readMeters.add(meterId);
+            //go through and check the probabilities for each meter in range, (the others can't be read from here)
+            for(Map.Entry<Integer, Double> read : mInstance.getReadProbabilities(tempId).entrySet()){
+                if(rng.nextDouble() < read.getValue())
+                    readMeters.add(read.getKey());
             }
         }
 
@@ -25,17 +25,20 @@ package oarlib.solver.impl;
 
 import gnu.trove.TIntObjectHashMap;
 import oarlib.core.Graph;
+import oarlib.core.OverlayGraph;
 import oarlib.core.Problem;
 import oarlib.core.SingleVehicleSolver;
 import oarlib.core.Solver;
 import oarlib.graph.impl.DirectedGraph;
 import oarlib.graph.util.CommonAlgorithms;
+import oarlib.graph.util.MinCostFlow;
 import oarlib.link.impl.Arc;
 import oarlib.problem.impl.ProblemAttributes;
 import oarlib.route.impl.Tour;
 import oarlib.vertex.impl.DirectedVertex;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -47,30 +50,45 @@ public class DCPPSolver_Edmonds extends SingleVehicleSolver<DirectedVertex, Arc,
         mInstance = instance;
     }
 
-    private static void eulerAugment(DirectedGraph input) {
+    /**
+     * The procedure that handles the graph augmentation phase, where arcs are added to the overlay to make it eulerian,
+     * (upon which a tour construction procedure is called).  The flow problem is built straight from the base graph,
+     * so neither the base graph nor its vertices are touched.
+     *
+     * @param input - an overlay of the instance graph, with no changes yet
+     * @param base  - the instance graph
+     */
+    private static void eulerAugment(OverlayGraph<DirectedVertex, Arc> input, DirectedGraph base) {
 
-        /*
-         * The procedure that handles the graph augmentation phase, where edges are added to the graph
-         * to make it eulerian, (upon which a tour construction procedure is called).
-         */
         //prepare our unbalanced vertex sets
-        for (DirectedVertex v : input.getVertices()) {
+        MinCostFlow mcf = new MinCostFlow(base.getVidCounter() - 1);
+        mcf.setAlgorithm(MinCostFlow.Algorithm.NETWORK_SIMPLEX);
+        boolean isEulerian = true;
+        for (DirectedVertex v : base.getVertices()) {
             if (v.getDelta() != 0) {
-                v.setDemand(v.getDelta());
+                mcf.setSupply(v.getId(), v.getDelta());
+                isEulerian = false;
             }
         }
+        if (isEulerian)
+            return;
+
         try {
-            if (!CommonAlgorithms.isEulerian(input)) {
-                int[] flowanswer = CommonAlgorithms.shortestSuccessivePathsMinCostNetworkFlow(input);
-
-                TIntObjectHashMap<Arc> indexedArcs = input.getInternalEdgeMap();
-                Arc temp;
-                //add the solution to the graph (augment)
-                for (int i = 1; i < flowanswer.length; i++) {
-                    temp = indexedArcs.get(i);
-                    for (int j = 0; j < flowanswer[i]; j++) {
-                        input.addEdge(new Arc("added from flow", temp.getEndpoints(), temp.getCost()));
-                    }
+            TIntObjectHashMap<Arc> indexedArcs = base.getInternalEdgeMap();
+            int[] arcIds = indexedArcs.keys();
+            Arrays.sort(arcIds);
+            Arc temp;
+            for (int id : arcIds) {
+                temp = indexedArcs.get(id);
+                mcf.addArc(temp.getTail().getId(), temp.getHead().getId(), temp.isCapacitySet() ? temp.getCapacity() : MinCostFlow.INFINITE_CAPACITY, temp.getCost());
+            }
+            mcf.solve();
+
+            //add the solution to the graph (augment)
+            for (int i = 0; i < arcIds.length; i++) {
+                temp = indexedArcs.get(arcIds[i]);
+                for (int j = 0; j < mcf.getFlow(i); j++) {
+                    input.addEdge(new Arc("added from flow", temp.getEndpoints(), temp.getCost()));
                 }
             }
         } catch (Exception e) {
@@ -90,22 +108,23 @@ public class DCPPSolver_Edmonds extends SingleVehicleSolver<DirectedVertex, Arc,
          * by the solution to the flow problem
          * -Route
          *
-         * copy - so we don't screw with the original graph passed in
+         * overlay - so we don't screw with the original graph passed in, (and don't pay for a deep copy of it)
          *
-         * indexedArcs - the edge map for copy
+         * indexedArcs - the arc map for overlay
          *
          * ans - the list of edges returned by the routing procedure, in the order they are traversed on the tour
          *
          * eulerTour - the route container which will make the string rep. look more like something we want to see
          * (e.g. a vertex route).
          */
-        DirectedGraph copy = mInstance.getGraph().getDeepCopy();
-        TIntObjectHashMap<Arc> indexedArcs = copy.getInternalEdgeMap();
+        DirectedGraph g = mInstance.getGraph();
+        OverlayGraph<DirectedVertex, Arc> overlay = new OverlayGraph<DirectedVertex, Arc>(g);
 
-        eulerAugment(copy);
+        eulerAugment(overlay, g);
 
         // return the answer
-        ArrayList<Integer> ans = CommonAlgorithms.tryHierholzer(copy);
+        TIntObjectHashMap<Arc> indexedArcs = overlay.getInternalEdgeMap();
+        ArrayList<Integer> ans = CommonAlgorithms.tryHierholzer(overlay);
         Tour<DirectedVertex, Arc> eulerTour = new Tour<DirectedVertex, Arc>();
         for (int i = 0; i < ans.size(); i++) {
             eulerTour.appendEdge(indexedArcs.get(ans.get(i)));
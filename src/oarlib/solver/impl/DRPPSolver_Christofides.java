@@ -35,16 +35,37 @@ import oarlib.link.impl.Arc;
 import oarlib.problem.impl.ProblemAttributes;
 import oarlib.route.impl.Tour;
 import oarlib.vertex.impl.DirectedVertex;
+import org.apache.log4j.Logger;
 
 import java.util.*;
 
 public class DRPPSolver_Christofides extends SingleVehicleSolver<DirectedVertex, Arc, DirectedGraph> {
 
+    private static final Logger LOGGER = Logger.getLogger(DRPPSolver_Christofides.class);
+
+    private boolean mUseNativeArborescence;
+
     public DRPPSolver_Christofides(Problem<DirectedVertex, Arc, DirectedGraph> instance) throws IllegalArgumentException {
         super(instance);
+        mUseNativeArborescence = false;
     }
 
-    private static DirectedGraph connectAndExpand(DirectedGraph gCollapsed, DirectedGraph gOrig, int[] component, int root) {
+    /**
+     * @param useNativeArborescence - if true, the components are connected with the MSArbor JNI code, (which is
+     *                              limited to small graphs); oth. the sparse pure Java arborescence is used.
+     */
+    public void setUseNativeArborescence(boolean useNativeArborescence) {
+        mUseNativeArborescence = useNativeArborescence;
+    }
+
+    /**
+     * Connects the components of the required arcs with a min spanning arborescence of the collapsed graph, and
+     * expands the result back into gOrig's vertices.
+     *
+     * @return - the connected graph, or null if no spanning arborescence is rooted at the given component, (i.e. some
+     * component can't be reached from it), or something else went wrong
+     */
+    private static DirectedGraph connectAndExpand(DirectedGraph gCollapsed, DirectedGraph gOrig, int[] component, int root, boolean useNativeArborescence) {
         try {
             int n = gOrig.getVertices().size();
 
@@ -62,7 +83,9 @@ public class DRPPSolver_Christofides extends SingleVehicleSolver<DirectedVertex,
             }
 
             //then add all the guys from the MSA
-            Set<Integer> msaArcs = CommonAlgorithms.minSpanningArborescence(gCollapsed, root);
+            Set<Integer> msaArcs = CommonAlgorithms.minSpanningArborescence(gCollapsed, root, useNativeArborescence);
+            if (msaArcs == null)
+                return null;
 
             Arc toCopy;
             for (Integer i : msaArcs) {
@@ -99,6 +122,8 @@ public class DRPPSolver_Christofides extends SingleVehicleSolver<DirectedVertex,
 
             //then add all the guys from the MSA
             Set<Integer> msaArcs = CommonAlgorithms.minSpanningArborescence(gCollapsed, root);
+            if (msaArcs == null)
+                return null;
 
             Arc toCopy;
             Pair<Integer> tempKey;
@@ -167,8 +192,16 @@ public class DRPPSolver_Christofides extends SingleVehicleSolver<DirectedVertex,
         }
     }
 
+    /**
+     * Simplifies Gc1 by removing the non-required arcs that are parallel to an arc of the same cost, or no cheaper than
+     * some two arc path.  Gc1 is only built to be simplified, so this is done in place rather than on a copy; vertex
+     * and arc ids are unchanged.
+     *
+     * @param g - the graph Gc1; it is modified
+     * @return - g, simplified
+     */
     private static DirectedGraph formGc2(DirectedGraph g) {
-        DirectedGraph copy = g.getDeepCopy();
+        DirectedGraph copy = g;
         List<Arc> temp;
         int m = copy.getEdges().size();
         int tempLength;
@@ -368,7 +401,7 @@ public class DRPPSolver_Christofides extends SingleVehicleSolver<DirectedVertex,
             //form the complete graph Gc1 = (Nr, Ar U As)
             DirectedGraph Gc1 = formGc1(copy);
 
-            //simplify Gc1 to get Gc2
+            //simplify Gc1 to get Gc2, (in place, so from here on Gc1 is Gc2)
             DirectedGraph Gc2 = formGc2(Gc1);
 
             //Now, Gc2 is the graph that we solve the DRPP on.  Any feasible solution here will correspond
@@ -386,16 +419,21 @@ public class DRPPSolver_Christofides extends SingleVehicleSolver<DirectedVertex,
             TIntObjectHashMap<Arc> bestArcs = new TIntObjectHashMap<Arc>();
             for (int root = 1; root <= Gc.getVertices().size(); root++) {
                 //compute a shortest spanning arborescence rooted at a component node and re/expand
-                DirectedGraph Gfinal = connectAndExpand(Gc, Gc2, component, root);
+                DirectedGraph Gfinal = connectAndExpand(Gc, Gc2, component, root, mUseNativeArborescence);
+
+                //not every component is reachable from this one, so try the next root
+                if (Gfinal == null) {
+                    LOGGER.debug("There is no spanning arborescence rooted at component " + root + "; skipping it.");
+                    continue;
+                }
 
                 //solve an uncapacitated min-cost flow problem, and then add the appropriate arcs
                 TIntObjectHashMap<DirectedVertex> gfinalVertices = Gfinal.getInternalVertexMap();
-                DirectedGraph Gc2copy = Gc2.getDeepCopy(); //in order to get min cost flow to work
-                for (DirectedVertex v : Gc2copy.getVertices()) {
+                for (DirectedVertex v : Gc2.getVertices()) {
                     v.setDemand(gfinalVertices.get(v.getId()).getDelta()); //set demands according to Gfinal
                 }
-                int[] flowanswer = CommonAlgorithms.shortestSuccessivePathsMinCostNetworkFlow(Gc2copy);
-                TIntObjectHashMap<Arc> indexedArcs = Gc2copy.getInternalEdgeMap();
+                int[] flowanswer = CommonAlgorithms.networkSimplexMinCostNetworkFlow(Gc2);
+                TIntObjectHashMap<Arc> indexedArcs = Gc2.getInternalEdgeMap();
                 Arc temp;
                 //add the solution to the graph (augment)
                 for (int i = 1; i < flowanswer.length; i++) {
@@ -416,6 +454,11 @@ public class DRPPSolver_Christofides extends SingleVehicleSolver<DirectedVertex,
                 }
             }
 
+            if (bestCost == Integer.MAX_VALUE) {
+                LOGGER.error("The required arcs could not be connected from any of the components; the graph doesn't appear to be strongly connected.");
+                return null;
+            }
+
             //now reproduce the solution in the original graph
             Tour<DirectedVertex, Arc> eulerTour = new Tour<DirectedVertex, Arc>();
             Arc temp;
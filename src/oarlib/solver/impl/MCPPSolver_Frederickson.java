@@ -23,6 +23,7 @@
  */
 package oarlib.solver.impl;
 
+import gnu.trove.TIntArrayList;
 import gnu.trove.TIntObjectHashMap;
 import oarlib.core.Graph;
 import oarlib.core.Problem;
@@ -32,6 +33,7 @@ import oarlib.graph.impl.DirectedGraph;
 import oarlib.graph.impl.MixedGraph;
 import oarlib.graph.impl.UndirectedGraph;
 import oarlib.graph.util.CommonAlgorithms;
+import oarlib.graph.util.MinCostFlow;
 import oarlib.graph.util.Pair;
 import oarlib.link.impl.Arc;
 import oarlib.link.impl.Edge;
@@ -307,37 +309,23 @@ public class MCPPSolver_Frederickson extends SingleVehicleSolver<MixedVertex, Mi
             int[][] edgePath = new int[n + 1][n + 1];
             CommonAlgorithms.fwLeastCostPaths(setup, dist, path, edgePath);
 
-            //setup the complete graph composed entirely of the unbalanced vertices
-            UndirectedGraph matchingGraph = new UndirectedGraph();
-
-            //setup our graph of unbalanced vertices
+            //collect the unbalanced vertices
+            TIntArrayList oddVertices = new TIntArrayList();
             for (UndirectedVertex v : setup.getVertices()) {
                 if (v.getDegree() % 2 == 1) {
-                    matchingGraph.addVertex(new UndirectedVertex("oddVertex"), v.getId());
+                    oddVertices.add(v.getId());
                 }
             }
 
-            //connect with least cost edges
-            Collection<UndirectedVertex> oddVertices = matchingGraph.getVertices();
-            for (UndirectedVertex v : oddVertices) {
-                for (UndirectedVertex v2 : oddVertices) {
-                    //only add one edge per pair of vertices
-                    if (v.getId() <= v2.getId())
-                        continue;
-                    matchingGraph.addEdge(new Edge("matchingEdge", new Pair<UndirectedVertex>(v, v2), dist[v.getMatchId()][v2.getMatchId()]));
-                }
-            }
-
-            Set<Pair<UndirectedVertex>> matchingSolution = CommonAlgorithms.minCostMatching(matchingGraph);
-
+            int[] matchingSolution = CommonAlgorithms.sparseMinCostMatching(oddVertices.toNativeArray(), dist);
 
             //now add copies in the mixed graph
             MixedEdge e;
             TIntObjectHashMap<Edge> setupEdges = setup.getInternalEdgeMap();
-            for (Pair<UndirectedVertex> p : matchingSolution) {
+            for (int i = 0; i < matchingSolution.length; i += 2) {
                 //add the 'undirected' shortest path
-                int curr = p.getFirst().getMatchId();
-                int end = p.getSecond().getMatchId();
+                int curr = matchingSolution[i];
+                int end = matchingSolution[i + 1];
                 int next = 0;
                 int nextEdge = 0;
                 do {
@@ -403,7 +391,7 @@ public class MCPPSolver_Frederickson extends SingleVehicleSolver<MixedVertex, Mi
             }
 
             //solve the min-cost flow
-            int[] flowanswer = CommonAlgorithms.shortestSuccessivePathsMinCostNetworkFlow(setup);
+            int[] flowanswer = CommonAlgorithms.minCostNetworkFlow(setup, MinCostFlow.Algorithm.SUCCESSIVE_SHORTEST_PATHS);
 
             //build M and U
             /*
@@ -26,10 +26,12 @@ package oarlib.solver.impl;
 import gnu.trove.TIntObjectHashMap;
 import oarlib.core.*;
 import oarlib.core.MultiEdge.EDGETYPE;
+import oarlib.exceptions.WrongEdgeTypeException;
 import oarlib.graph.impl.DirectedGraph;
 import oarlib.graph.impl.MixedGraph;
 import oarlib.graph.impl.UndirectedGraph;
 import oarlib.graph.util.CommonAlgorithms;
+import oarlib.graph.util.MinCostFlow;
 import oarlib.graph.util.Pair;
 import oarlib.link.impl.Arc;
 import oarlib.link.impl.Edge;
@@ -39,14 +41,52 @@ import oarlib.route.impl.Tour;
 import oarlib.vertex.impl.DirectedVertex;
 import oarlib.vertex.impl.MixedVertex;
 import oarlib.vertex.impl.UndirectedVertex;
+import org.apache.log4j.Logger;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 public class MCPPSolver_Yaoyuenyong extends SingleVehicleSolver<MixedVertex, MixedEdge, MixedGraph> {
 
+    private static final Logger LOGGER = Logger.getLogger(MCPPSolver_Yaoyuenyong.class);
+
+    private int mNumThreads;
+    private int mBatchSize;
+
     public MCPPSolver_Yaoyuenyong(Problem<MixedVertex, MixedEdge, MixedGraph> instance) throws IllegalArgumentException {
         super(instance);
+        mNumThreads = Runtime.getRuntime().availableProcessors();
+        mBatchSize = 16;
+    }
+
+    /**
+     * @param newNumThreads - the number of threads used to evaluate the candidate links of the improvement phase.
+     */
+    public void setNumThreads(int newNumThreads) {
+        if (newNumThreads < 1) {
+            LOGGER.warn("Invalid argument.  numThreads must be >= 1.");
+            return;
+        }
+        mNumThreads = newNumThreads;
+    }
+
+    /**
+     * @param newBatchSize - the number of candidate links evaluated together (against the same G*).  The first
+     *                     improvement among them is applied, and the rest are evaluated again, so the solution is the
+     *                     one found by the original (serial) first improvement strategy, whatever the batch size and
+     *                     number of threads; larger batches only trade wasted evaluations for parallelism.
+     */
+    public void setBatchSize(int newBatchSize) {
+        if (newBatchSize < 1) {
+            LOGGER.warn("Invalid argument.  batchSize must be >= 1.");
+            return;
+        }
+        mBatchSize = newBatchSize;
     }
 
     /**
@@ -112,7 +152,20 @@ public class MCPPSolver_Yaoyuenyong extends SingleVehicleSolver<MixedVertex, Mix
         }
     }
 
-    private static void addShortestPathAndUpdate(int start, int end, int[] path, int[] edgePath, TIntObjectHashMap<MixedEdge> gijEdges, ArrayList<MultiEdge<MixedEdge>> edgeContainers) {
+    /**
+     * Walks the path from start to end, and updates the edge containers the way Yaoyuenyong prescribes for adding
+     * that path to G*.
+     *
+     * @param start          - the first vertex of the path
+     * @param end            - the last vertex of the path
+     * @param path           - the ith entry contains the previous vertex on the path to vertex i
+     * @param edgePath       - the ith entry contains the id of the edge container traversed to get to vertex i
+     * @param edgeContainers - the edge containers representing G*
+     * @param overrides      - if null, the containers in edgeContainers are updated in place; oth. each container on the
+     *                       path is copied into overrides the first time it's touched, and only the copy is updated, (so
+     *                       that a tentative G* can be evaluated without cloning all of the containers).
+     */
+    private static void addShortestPathAndUpdate(int start, int end, int[] path, int[] edgePath, ArrayList<MultiEdge<MixedEdge>> edgeContainers, TIntObjectHashMap<MultiEdge<MixedEdge>> overrides) {
 
         try {
             int curr = start;
@@ -122,7 +175,15 @@ public class MCPPSolver_Yaoyuenyong extends SingleVehicleSolver<MixedVertex, Mix
             do {
                 next = path[end];
                 //attempt to add a copy along each container
-                toEdit = edgeContainers.get(gijEdges.get(edgePath[end]).getMatchId());
+                if (overrides == null)
+                    toEdit = edgeContainers.get(edgePath[end]);
+                else {
+                    toEdit = overrides.get(edgePath[end]);
+                    if (toEdit == null) {
+                        toEdit = edgeContainers.get(edgePath[end]).getCopy();
+                        overrides.put(edgePath[end], toEdit);
+                    }
+                }
 
                 //determine the direction that we're actually traversing the thing
                 //we're walking forward
@@ -168,99 +229,76 @@ public class MCPPSolver_Yaoyuenyong extends SingleVehicleSolver<MixedVertex, Mix
     }
 
     /**
-     * The first cost modification method proposed by Yaoyuenyong.  This reduces costs of edges / arcs added from evendegree's matching
-     * procedure.  These graphs are used for shortest path costs only.
+     * Carries out one of the two concepts of SAPH's improvement phase: the links of type A, C, D, or F (concept 1), or
+     * the links of type B (concept 2), are scanned in order, and each one is checked for an improving replacement path.
+     * The candidates are evaluated in batches against the same G*, concurrently if a pool is given, and then the first
+     * improvement in the batch, (in link id order), is applied, and the scan picks up right after it.  This is exactly
+     * the serial first improvement scan; the candidates after it in the batch are just evaluated again against the new
+     * G*.  The scan wraps around until it makes it all the way through the links without an improvement.
      *
-     * @param Gij - the graph to be modified ( in almost all cases, the original graph G )
-     * @param Em  - An arraylist of edges (undirected) added to G during evendegree's matching phase.
-     * @param Am  - An arraylist of arcs (directed) added to G during evendegree's matching.
+     * @param topology       - the adjacency structure of G, and the cost modifications from evendegree
+     * @param edgeContainers - the edge containers representing G*
+     * @param typeB          - true if we're improving links of type B, false if links of type A, C, D, or F
+     * @param pool           - the threads on which to evaluate the candidates; if null, they are evaluated serially
+     * @return - true if any improvement was made, false oth.
      */
-    private static void CostMod1(MixedGraph Gij, ArrayList<MultiEdge<MixedEdge>> edgeContainers, ArrayList<MixedEdge> Em, ArrayList<MixedEdge> Am) throws IllegalArgumentException {
-        try {
-            int K = -5; //labeled 'attractive cost'
-            TIntObjectHashMap<MixedEdge> gijEdges = Gij.getInternalEdgeMap();
-            MixedEdge temp;
-            for (MixedEdge e : Em) {
-                if (e.isDirected())
-                    throw new IllegalArgumentException("Em is malformed.");
-                //reduce the cost of this edge
-                temp = gijEdges.get(e.getMatchId());
-                temp.setCost(K);
-            }
-            for (MixedEdge a : Am) {
-                if (!a.isDirected())
-                    throw new IllegalArgumentException("Am is malformed.");
-                //reduce the cost of this arc
-                temp = gijEdges.get(a.getMatchId());
-                if (edgeContainers.get(a.getMatchId()).getType() == EDGETYPE.E) {
-                    temp.setCost(0);
-                } else if (edgeContainers.get(a.getMatchId()).getType() == EDGETYPE.F) {
-                    temp.setCost(K);
-                    //Note to future Oliver: this shouldn't be necessary, anything that goes through CostMod1 immediately goes throguh CostMod2, and so this gets replaced anyways.
-                    //Gij.addEdge(new MixedEdge("from cost mod 1", new Pair<MixedVertex>(temp.getHead(), temp.getTail()), K, true), temp.getId()); //going to need to figure out who to mod if we traverse this arc.
-                } else {
-                    throw new IllegalArgumentException("Wrong type.");
+    private boolean improvementPass(LinkTopology topology, ArrayList<MultiEdge<MixedEdge>> edgeContainers, boolean typeB, ExecutorService pool) throws InterruptedException, ExecutionException, WrongEdgeTypeException {
+        int m = edgeContainers.size() - 1;
+        int start = 1;
+        int last;
+        boolean resetStart = true;
+        boolean improved = false;
+        EDGETYPE iStat;
+        ArrayList<CandidateEvaluation> batch = new ArrayList<CandidateEvaluation>();
+        Candidate best;
+        while (true) {
+            batch.clear();
+            last = 0;
+            for (int k = start; k < m + 1 && batch.size() < mBatchSize; k++) {
+                iStat = edgeContainers.get(k).getType();
+                if (typeB ? iStat == EDGETYPE.B : (iStat == EDGETYPE.A || iStat == EDGETYPE.C || iStat == EDGETYPE.D || iStat == EDGETYPE.F)) {
+                    batch.add(new CandidateEvaluation(topology, edgeContainers, k, typeB));
+                    last = k;
                 }
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
+            if (batch.isEmpty()) {
+                if (resetStart) //no candidates left
+                    break;
+                start = 1;
+                resetStart = true;
+                continue;
+            }
 
-    /**
-     * The second cost modification method proposed by Yoayuenyong.  This reduces the cost of edges / arcs that stand to benefit from cycle
-     * elimination during the improvement procedure (in other words, if an added arc / edge gets deleted as a part of deleting a circuit, we want to
-     * take that into consideration when thinking about which cycles to eliminate).
-     *
-     * @param Gij
-     * @param G
-     * @param i
-     * @param j
-     */
-    private static void CostMod2(MixedGraph Gij, MixedGraph G, ArrayList<MultiEdge<MixedEdge>> edgeContainers, int i, int j) {
-        try {
-            EDGETYPE tempType;
-            MultiEdge<MixedEdge> temp;
-            int cost;
-            MixedEdge e, e2;
-            MixedVertex from, to;
-            TIntObjectHashMap<MixedEdge> gEdges = G.getInternalEdgeMap();
-            TIntObjectHashMap<MixedEdge> gijEdges = Gij.getInternalEdgeMap();
-            int m = edgeContainers.size() - 1;
-            for (int k = 1; k < m + 1; k++) {
-                temp = edgeContainers.get(k);
-                tempType = temp.getType();
-                if (tempType == EDGETYPE.A || tempType == EDGETYPE.D) {
-                    e = gEdges.get(k);
-                    cost = e.getCost();
-                    gijEdges.get(k).setCost(-cost);
-
-                } else if (tempType == EDGETYPE.C || tempType == EDGETYPE.F) {
-                    //if of type C, we must check out what direction the guy is
-                    e = gEdges.get(k);
-                    e2 = gijEdges.get(k);
-                    cost = e.getCost();
-                    if (temp.isDirectedForward()) {
-                        //the backward from-to pair
-                        from = e2.getEndpoints().getSecond();
-                        to = e2.getEndpoints().getFirst();
-                    } else {
-                        from = e2.getEndpoints().getFirst();
-                        to = e2.getEndpoints().getSecond();
-                    }
-                    Gij.addEdge(new MixedEdge("", new Pair<MixedVertex>(from, to), -cost, true), e.getId()); //going to need to figure out who to mod if we traverse this arc.
+            //deterministic reduction; the batch is in id order, so take the first improvement
+            best = null;
+            if (pool == null || batch.size() == 1) {
+                for (CandidateEvaluation eval : batch) {
+                    best = eval.call();
+                    if (best != null)
+                        break;
+                }
+            } else {
+                for (Future<Candidate> f : pool.invokeAll(batch)) {
+                    best = f.get();
+                    if (best != null)
+                        break;
                 }
-            }
-            //now delete all links between vertex i and vertex j
-            TIntObjectHashMap<MixedVertex> gijVertices = Gij.getInternalVertexMap();
-            List<MixedEdge> toRemove = Gij.findEdges(new Pair<MixedVertex>(gijVertices.get(i), gijVertices.get(j)));
-            for (MixedEdge elim : toRemove) {
-                Gij.removeEdge(elim);
             }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+            if (best == null) {
+                start = last + 1;
+                continue;
+            }
+            LOGGER.debug("Applying the improvement to link " + best.mId + " (gain " + best.mGain + ").");
+            best.apply(edgeContainers);
+            //to check for directed cycles, make a graph ONLY using the arcs in Mdubprime, as those are the only we
+            //can afford to delete
+            eliminateAddedDirectedCycles(topology.n, edgeContainers);
+            start = best.mId + 1;
+            resetStart = false;
+            improved = true;
         }
+        return improved;
     }
 
     /**
@@ -313,7 +351,7 @@ public class MCPPSolver_Yaoyuenyong extends SingleVehicleSolver<MixedVertex, Mix
             }
 
             //solve the min-cost flow
-            int[] flowanswer = CommonAlgorithms.shortestSuccessivePathsMinCostNetworkFlow(setup);
+            int[] flowanswer = CommonAlgorithms.minCostNetworkFlow(setup, MinCostFlow.Algorithm.SUCCESSIVE_SHORTEST_PATHS);
 
             //build M and U
             /*
@@ -507,7 +545,6 @@ public class MCPPSolver_Yaoyuenyong extends SingleVehicleSolver<MixedVertex, Mix
                 gEdgeContainers.add(new MultiEdge<MixedEdge>(gEdges.get(i)));
             }
             MixedGraph Gm = G.getDeepCopy(); // original + even degree
-            MixedGraph Gstar = G.getDeepCopy(); // original + in-out degree
 
             //Vars for bookkeeping
             ArrayList<MixedEdge> U = new ArrayList<MixedEdge>();
@@ -518,277 +555,26 @@ public class MCPPSolver_Yaoyuenyong extends SingleVehicleSolver<MixedVertex, Mix
 
 
             evenDegree(Gm, Em, Am); //modified even degree to store the edges and arcs added, (the guys in Em, and Am will be in Gm afterwards)
-            inOutDegree(Gstar, U, M, inMdubPrime, gEdgeContainers); //Gstar doesn't actually get modified, so it's still G after this. Initializes type correctly.
+            inOutDegree(G, U, M, inMdubPrime, gEdgeContainers); //G* = original + in-out degree; G isn't modified, (G* lives in gEdgeContainers). Initializes type correctly.
 
             //start SAPH
-            boolean improvements = true; //whether or not improvements were made in in block 2
-            MixedGraph Gij1;
-            MixedGraph Gij2;
-            MixedGraph Gij3;
-            MixedGraph Gij4;
-            ArrayList<MultiEdge<MixedEdge>> Gnew;
-            EDGETYPE iStat = null;
-            int idToImprove, i, j;
-            int n = G.getVertices().size();
-            int[] dist, dist2;
-            int[] path, path2, path3;
-            int[] edgePath, edgePath2, edgePath3;
-            int cost1, cost2;
             MultiEdge<MixedEdge> toImprove;
-            TIntObjectHashMap<MixedEdge> gij1Edges;
-            TIntObjectHashMap<MixedEdge> gij3Edges;
-            TIntObjectHashMap<MixedEdge> gij4Edges;
-            int curr, next, end;
-            int start = 1;
-            while (improvements) //while we're making progress
-            {
-                improvements = false;
-                boolean resetStart = true;
-
-                //SAPH Concept 1
-                while (true) // links of type acdf in Gstar, so we carry out the first part of SAPH
+            boolean improvements = true; //whether or not improvements were made in in block 2
+            LinkTopology topology = new LinkTopology(G, Em, Am);
+            ExecutorService pool = (mNumThreads > 1) ? Executors.newFixedThreadPool(mNumThreads) : null;
+            try {
+                while (improvements) //while we're making progress
                 {
-                    //pick a random one
-                    idToImprove = 0;
-                    for (int k = start; k < m + 1; k++) {
-                        iStat = gEdgeContainers.get(k).getType();
-                        if (iStat == EDGETYPE.A || iStat == EDGETYPE.C || iStat == EDGETYPE.D || iStat == EDGETYPE.F) {
-                            idToImprove = k;
-                            start = k + 1;
-                            break;
-                        }
-                    }
-                    if (idToImprove == 0) {
-                        if(resetStart)//no acdf edges left
-                            break;
-                        else {
-                            start = 1;
-                            resetStart = true;
-                            continue;
-                        }
-                    }
-
-                    //System.out.println("ACDF link picked.");
-                    toImprove = gEdgeContainers.get(idToImprove); //the edge container that we want to operate on
-                    i = toImprove.getFirst().getEndpoints().getFirst().getId(); //vertex i
-                    j = toImprove.getFirst().getEndpoints().getSecond().getId(); //vertex j
-                    //System.out.println("This is link: " + idToImprove + ", connecting vertices " + i +" and " + j +"." + "  It's type " + iStat + ".");
-                    //initialize
-                    Gij1 = G.getDeepCopy();
-                    Gij2 = G.getDeepCopy();
-                    gij1Edges = Gij1.getInternalEdgeMap();
-                    CostMod1(Gij1, gEdgeContainers, Em, Am); //cost mod 1 on Gij1
-                    CostMod2(Gij1, G, gEdgeContainers, i, j); //cost mod 2 on Gij1
-                    CostMod2(Gij2, G, gEdgeContainers, i, j); //cost mod 2 on Gij2
-
-
-
-                    TIntObjectHashMap<MixedVertex> gij2Vertices = Gij2.getInternalVertexMap(); //indexed edges of Gij2 for calculating costs
-
-                    //now branch off; if we're type a or d, we need to check both directions SP ij, and SP ji; if we're type c or f, just SP ij
-                    if (iStat == EDGETYPE.A || iStat == EDGETYPE.D) {
-                        cost1 = 0; // cost of SPij
-                        cost2 = 0; // cost of SPji
-
-                        //solve the shortest paths problem in Gij1
-                        dist = new int[n + 1]; //we want to use distances in Gij2, but shortest paths from Gij1
-                        path = new int[n + 1];
-                        edgePath = new int[n + 1];
-                        edgePath2 = new int[n + 1];
-                        path2 = new int[n + 1];
-                        CommonAlgorithms.dijkstrasAlgorithm(Gij1, i, dist, path, edgePath);
-                        dist = new int[n + 1];
-                        CommonAlgorithms.dijkstrasAlgorithm(Gij2, i, dist, path2, edgePath2);
-
-                        //SP ij
-                        curr = i;
-                        end = j;
-                        if (dist[end] == Integer.MAX_VALUE)
-                            cost1 = Integer.MAX_VALUE;
-                        else
-                            do {
-                                next = path[end];
-                                cost1 += gij2Vertices.get(next).getNeighbors().get(gij2Vertices.get(end)).get(0).getCost();//Convoluted, but should work if not multigraph;
-                                //we get the cost from Gij2 by looking at edges between next and end, and using that guy's cost
-                            } while ((end = next) != i);
-
-                        //solve the shortest paths problem in Gij1
-                        dist2 = new int[n + 1]; //we want to use distances in Gij2, but shortest paths from Gij1
-                        path2 = new int[n + 1];
-                        edgePath2 = new int[n + 1];
-                        path2 = new int[n + 1];
-                        CommonAlgorithms.dijkstrasAlgorithm(Gij1, j, dist2, path2, edgePath2);
-                        dist = new int[n + 1];
-                        path3 = new int[n + 1];
-                        edgePath3 = new int[n + 1];
-                        CommonAlgorithms.dijkstrasAlgorithm(Gij2, j, dist2, path3, edgePath3);
-
-                        //SP ji
-                        curr = j;
-                        end = i;
-                        if (dist2[end] == Integer.MAX_VALUE)
-                            cost2 = Integer.MAX_VALUE;
-                        else
-                            do {
-                                next = path2[end];
-                                cost2 += gij2Vertices.get(next).getNeighbors().get(gij2Vertices.get(end)).get(0).getCost();//get the cost from Gij2
-                            } while ((end = next) != curr);
-
-                        //now do the cost comparisons to decide whether it's fruitful to replace
-                        if (cost1 < toImprove.getFirst().getCost() && cost1 < cost2) {
-                            System.out.println("New cost: " + cost1 + ".  Old cost: " + toImprove.getFirst().getCost() + ".");
-                            //start = 1;
-                            resetStart = false;
-                            //add SPij, and if type a, orient from j to i, if type d, get rid of the ij direction
-                            toImprove.directBackward();
-                            //add SPij
-                            System.out.println("Adding path from: " + i + ", to " + j + ".");
-                            addShortestPathAndUpdate(i, j, path, edgePath, gij1Edges, gEdgeContainers);
-                        } else if (cost2 < toImprove.getFirst().getCost() && cost2 < cost1) {
-                            System.out.println("New cost: " + cost2 + ".  Old cost: " + toImprove.getFirst().getCost());
-                            //start = 1;
-                            resetStart = false;
-                            //add SPji, and if type a, orient from i to j, if type d, get rid of the ji direction
-                            toImprove.directForward();
-                            //add SPji
-                            System.out.println("Adding path from: " + j + ", to " + i + ".");
-                            addShortestPathAndUpdate(j, i, path2, edgePath2, gij1Edges, gEdgeContainers);
-                        }
-                    } else //it's c, or f
-                    {
-                        cost1 = 0;
-                        curr = (toImprove.isDirectedBackward()) ? j : i;
-                        end = (toImprove.isDirectedBackward()) ? i : j;
-
-                        dist = new int[n + 1]; //we want to use distances in Gij2, but shortest paths from Gij1
-                        path = new int[n + 1];
-                        edgePath = new int[n + 1];
-                        edgePath2 = new int[n + 1];
-                        path2 = new int[n + 1];
-                        CommonAlgorithms.dijkstrasAlgorithm(Gij1, curr, dist, path, edgePath);
-                        dist = new int[n + 1];
-                        CommonAlgorithms.dijkstrasAlgorithm(Gij2, curr, dist, path2, edgePath2);
-
-                        if (dist[end] == Integer.MAX_VALUE)
-                            continue;
-
-                        do {
-                            next = path[end];
-                            cost1 += gij2Vertices.get(next).getNeighbors().get(gij2Vertices.get(end)).get(0).getCost(); //get the cost from Gij2
-                        } while ((end = next) != curr);
-
-                        //now do the cost comparisons to decide whether it's fruitful to replace
-                        if (cost1 < toImprove.getFirst().getCost()) {
-                            System.out.println("New cost: " + cost1 + ".  Old cost: " + toImprove.getFirst().getCost());
-                            //start = 1;
-                            resetStart = false;
-                            //add SPij or SPji, and delete a copy of ij or ji
-                            end = (toImprove.isDirectedBackward()) ? i : j;
-                            System.out.println("Adding path from: " + curr + ", to " + end + ".");
-                            addShortestPathAndUpdate(curr, end, path, edgePath, gij1Edges, gEdgeContainers);
-                            toImprove.tryRemoveCopy();
-                        }
-                    }
-
-                    //to check for directed cycles, make a graph ONLY using the arcs in Mdubprime, as those are the only we
-                    //can afford to delete
-                    eliminateAddedDirectedCycles(n, gEdgeContainers);
-                }
-
-                start = 1;
-                resetStart = true;
-                while (true) // links of type b in Gstar, so we carry out the second part of SAPH
-                {
-                    //pick a random one
-                    idToImprove = 0;
-                    for (int k = start; k < m + 1; k++) {
-                        iStat = gEdgeContainers.get(k).getType();
-                        if (iStat == EDGETYPE.B) {
-                            idToImprove = k;
-                            start = k + 1;
-                            break;
-                        }
-                    }
-                    if (idToImprove == 0) {
-                        if(resetStart)//no b edges left
-                            break;
-                        else {
-                            start = 1;
-                            resetStart = true;
-                            continue;
-                        }
-                    }
-
-                    //System.out.println("B Link picked.");
-                    toImprove = gEdgeContainers.get(idToImprove); //the edge container that we want to operate on
-                    i = toImprove.getFirst().getEndpoints().getFirst().getId(); //vertex i
-                    j = toImprove.getFirst().getEndpoints().getSecond().getId(); //vertex j
-                    //System.out.println("This is link: " + idToImprove + ", connecting vertices " + i +" and " + j +"." + "  It's type " + iStat + ".");
-                    //initialize
-                    Gij3 = G.getDeepCopy();
-                    Gij4 = G.getDeepCopy();
-                    gij3Edges = Gij3.getInternalEdgeMap();
-                    gij4Edges = Gij4.getInternalEdgeMap();
-
-                    CostMod2(Gij3, G, gEdgeContainers, i, j);
-
-                    //calculate cost
-                    cost1 = 0;
-                    curr = (toImprove.isDirectedBackward()) ? j : i;
-                    end = (toImprove.isDirectedBackward()) ? i : j;
-
-                    dist = new int[n + 1]; //find SPij in Gij3
-                    path = new int[n + 1];
-                    edgePath = new int[n + 1];
-
-                    CommonAlgorithms.dijkstrasAlgorithm(Gij3, curr, dist, path, edgePath);
-
-                    if (dist[end] == Integer.MAX_VALUE)
-                        continue;
-                    cost1 = dist[end];
-
-                    //clone gEdgeContainers, which effectively represents Gstar
-                    Gnew = new ArrayList<MultiEdge<MixedEdge>>();
-                    Gnew.add(null);
-                    for (int k = 1; k < gEdgeContainers.size(); k++) {
-                        Gnew.add(gEdgeContainers.get(k).getCopy());
-                    }
-                    //now add SPij to Gnew
-                    addShortestPathAndUpdate(curr, end, path, edgePath, gij3Edges, Gnew);
-
-                    CostMod2(Gij4, G, Gnew, i, j);
-
-                    dist2 = new int[n + 1]; //find SPij in Gij4
-                    path2 = new int[n + 1];
-                    edgePath2 = new int[n + 1];
-
-                    CommonAlgorithms.dijkstrasAlgorithm(Gij4, curr, dist2, path2, edgePath2);
-
-                    //calculate cost
-                    if (dist2[end] == Integer.MAX_VALUE)
-                        continue;
-                    cost2 = dist2[end];
-
-                    //check if costs line up, and then add accordingly
-                    if (cost1 + cost2 < 0) {
-                        System.out.println("Improvement detected: " + (cost1 + cost2));
-                        //start = 1;
-                        resetStart = false;
-                        improvements = true;
-                        if (toImprove.isDirectedForward()) {
-                            toImprove.addReverseCopy();
-                            toImprove.directBackward();
-                        } else {
-                            toImprove.addReverseCopy();
-                            toImprove.directForward();
-                        }
-                        System.out.println("Adding path from: " + curr + ", to " + end + ".");
-                        addShortestPathAndUpdate(curr, end, path, edgePath, gij3Edges, gEdgeContainers);
-                        addShortestPathAndUpdate(curr, end, path2, edgePath2, gij4Edges, gEdgeContainers);
-                        eliminateAddedDirectedCycles(n, gEdgeContainers);
-                    }
+                    //SAPH Concept 1, links of type acdf in Gstar
+                    improvementPass(topology, gEdgeContainers, false, pool);
+                    //SAPH Concept 2, links of type b in Gstar
+                    improvements = improvementPass(topology, gEdgeContainers, true, pool);
                 }
+            } finally {
+                if (pool != null)
+                    pool.shutdownNow();
             }
+
             //replace any remaining type a's with type d's
             for (int k = 1; k < gEdgeContainers.size(); k++) {
                 toImprove = gEdgeContainers.get(k);
@@ -874,4 +660,455 @@ public class MCPPSolver_Yaoyuenyong extends SingleVehicleSolver<MixedVertex, Mix
         }
         return true;
     }
+
+    /**
+     * The adjacency structure of G, built once per solve, over which the cost modified graphs of the improvement phase
+     * (Gij1 through Gij4 in Yaoyuenyong) are evaluated instead of deep copies of G.  Every link k of G contributes its
+     * original arc(s), plus a slot in each direction for the reverse arc that cost mod 2 adds for links of type C or F;
+     * which of these are present, and what they cost, is read off of the edge containers by a {@link CostOverlay}.
+     */
+    private static class LinkTopology {
+
+        private static final int ORIGINAL = 0; //traverses link k from its first endpoint to its second
+        private static final int ORIGINAL_REVERSED = 1; //traverses (undirected) link k from its second endpoint to its first
+        private static final int ADDED_BACKWARD = 2; //the arc cost mod 2 adds from the second endpoint to the first
+        private static final int ADDED_FORWARD = 3; //the arc cost mod 2 adds from the first endpoint to the second
+
+        private static final int NO_MOD1 = 0;
+        private static final int MOD1_EDGE = 1;
+        private static final int MOD1_ARC = 2;
+
+        private int n;
+        private int[] tail;
+        private int[] head;
+        private int[] cost;
+        private boolean[] directed;
+        private int[] mod1; //whether, and how link k was added by evendegree
+
+        //CSR adjacency; the arcs out of vertex v are first[v] through first[v+1] - 1
+        private int[] first;
+        private int[] arcTo;
+        private int[] arcLink;
+        private int[] arcKind;
+
+        private LinkTopology(MixedGraph G, ArrayList<MixedEdge> Em, ArrayList<MixedEdge> Am) {
+            n = G.getVertices().size();
+            int m = G.getEdges().size();
+            TIntObjectHashMap<MixedEdge> gEdges = G.getInternalEdgeMap();
+            tail = new int[m + 1];
+            head = new int[m + 1];
+            cost = new int[m + 1];
+            directed = new boolean[m + 1];
+            mod1 = new int[m + 1];
+
+            MixedEdge e;
+            first = new int[n + 2];
+            for (int k = 1; k < m + 1; k++) {
+                e = gEdges.get(k);
+                tail[k] = e.getEndpoints().getFirst().getId();
+                head[k] = e.getEndpoints().getSecond().getId();
+                cost[k] = e.getCost();
+                directed[k] = e.isDirected();
+                first[tail[k]] += 2;
+                first[head[k]]++;
+                if (!directed[k])
+                    first[head[k]]++;
+            }
+            for (MixedEdge em : Em)
+                mod1[em.getMatchId()] = MOD1_EDGE;
+            for (MixedEdge am : Am)
+                mod1[am.getMatchId()] = MOD1_ARC;
+
+            //prefix sums, shifted so that first[v] is the start of v's block once the arcs are placed
+            int total = 0;
+            int deg;
+            for (int v = 1; v < n + 2; v++) {
+                deg = first[v];
+                first[v] = total;
+                total += deg;
+            }
+            arcTo = new int[total];
+            arcLink = new int[total];
+            arcKind = new int[total];
+            int[] next = Arrays.copyOf(first, n + 2);
+            for (int k = 1; k < m + 1; k++) {
+                place(next, tail[k], head[k], k, ORIGINAL);
+                if (!directed[k])
+                    place(next, head[k], tail[k], k, ORIGINAL_REVERSED);
+                place(next, head[k], tail[k], k, ADDED_BACKWARD);
+                place(next, tail[k], head[k], k, ADDED_FORWARD);
+            }
+        }
+
+        private void place(int[] next, int from, int to, int link, int kind) {
+            int a = next[from]++;
+            arcTo[a] = to;
+            arcLink[a] = link;
+            arcKind[a] = kind;
+        }
+    }
+
+    /**
+     * A read-only view of G with Yaoyuenyong's cost modifications applied for the candidate link (i,j), evaluated
+     * lazily against the current edge containers.  Cost mod 1 reduces the cost of the links added by evendegree, (these
+     * views are used for shortest path costs only); cost mod 2 negates the cost of links of type A or D, adds an arc of
+     * negated cost against the direction of links of type C or F, (so that we take into account the added links that
+     * stand to be deleted by cycle elimination), and deletes all links from i to j.  Containers that a tentative path
+     * has touched are taken from the overrides instead, so that G* never has to be cloned.
+     */
+    private static class CostOverlay {
+
+        private static final int ATTRACTIVE_COST = -5; //labeled 'attractive cost'
+
+        private LinkTopology mTopology;
+        private ArrayList<MultiEdge<MixedEdge>> mContainers;
+        private TIntObjectHashMap<MultiEdge<MixedEdge>> mOverrides;
+        private boolean mCostMod1;
+        private int mI;
+        private int mJ;
+
+        private CostOverlay(LinkTopology topology, ArrayList<MultiEdge<MixedEdge>> containers, TIntObjectHashMap<MultiEdge<MixedEdge>> overrides, boolean costMod1, int i, int j) {
+            mTopology = topology;
+            mContainers = containers;
+            mOverrides = overrides;
+            mCostMod1 = costMod1;
+            mI = i;
+            mJ = j;
+        }
+
+        private MultiEdge<MixedEdge> container(int k) {
+            if (mOverrides != null && mOverrides.containsKey(k))
+                return mOverrides.get(k);
+            return mContainers.get(k);
+        }
+
+        /**
+         * @param a    - the index of the arc in the topology
+         * @param from - the vertex the arc leaves
+         * @return - the cost of the arc in this view, or Integer.MAX_VALUE if it isn't present.
+         */
+        private int arcCost(int a, int from) {
+            LinkTopology t = mTopology;
+            int k = t.arcLink[a];
+            int to = t.arcTo[a];
+            MultiEdge<MixedEdge> temp = container(k);
+            EDGETYPE tempType = temp.getType();
+            int kind = t.arcKind[a];
+
+            if (kind == LinkTopology.ADDED_BACKWARD || kind == LinkTopology.ADDED_FORWARD) {
+                if (tempType != EDGETYPE.C && tempType != EDGETYPE.F)
+                    return Integer.MAX_VALUE;
+                //the added arc runs against the direction of the copies
+                if ((kind == LinkTopology.ADDED_BACKWARD) != temp.isDirectedForward())
+                    return Integer.MAX_VALUE;
+                if (from == mI && to == mJ)
+                    return Integer.MAX_VALUE;
+                return -t.cost[k];
+            }
+
+            if (from == mI && to == mJ)
+                return Integer.MAX_VALUE;
+            if (!t.directed[k] && from == mJ && to == mI)
+                return Integer.MAX_VALUE;
+            if (tempType == EDGETYPE.A || tempType == EDGETYPE.D)
+                return -t.cost[k];
+            if (mCostMod1) {
+                if (t.mod1[k] == LinkTopology.MOD1_EDGE)
+                    return ATTRACTIVE_COST;
+                if (t.mod1[k] == LinkTopology.MOD1_ARC) {
+                    if (tempType == EDGETYPE.E)
+                        return 0;
+                    else if (tempType == EDGETYPE.F)
+                        return ATTRACTIVE_COST;
+                }
+            }
+            return t.cost[k];
+        }
+
+        /**
+         * Dijkstra's algorithm on this view; as in {@link CommonAlgorithms#dijkstrasAlgorithm}, each vertex is settled
+         * once, (some of the modified costs are negative), and of several links between two vertices the cheapest is used.
+         *
+         * @param source   - the vertex id from which paths and distances will be calculated
+         * @param dist     - the ith entry will contain the shortest distance from source to vertex i
+         * @param path     - the ith entry will contain the previous vertex on the shortest path from source to vertex i
+         * @param edgePath - the ith entry will contain the id of the edge container traversed to get to vertex i
+         * @param arcPath  - the ith entry will contain the topology arc traversed to get to vertex i
+         */
+        private void dijkstra(int source, int[] dist, int[] path, int[] edgePath, int[] arcPath) {
+            LinkTopology t = mTopology;
+            int n = t.n;
+            boolean[] settled = new boolean[n + 1];
+            Arrays.fill(dist, Integer.MAX_VALUE);
+            Arrays.fill(path, -1);
+            Arrays.fill(edgePath, -1);
+            Arrays.fill(arcPath, -1);
+            dist[source] = 0;
+
+            LongHeap pq = new LongHeap(n);
+            pq.push(source, 0);
+            int u, v, c;
+            long key, alt;
+            while (!pq.isEmpty()) {
+                key = pq.pop();
+                u = (int) key;
+                if (settled[u] || (int) (key >> 32) != dist[u])
+                    continue;
+                settled[u] = true;
+                for (int a = t.first[u]; a < t.first[u + 1]; a++) {
+                    v = t.arcTo[a];
+                    if (settled[v])
+                        continue;
+                    c = arcCost(a, u);
+                    if (c == Integer.MAX_VALUE)
+                        continue;
+                    //don't go past max integer, that's bad
+                    alt = (long) dist[u] + c;
+                    if (alt < dist[v]) {
+                        dist[v] = (int) alt;
+                        path[v] = u;
+                        edgePath[v] = t.arcLink[a];
+                        arcPath[v] = a;
+                        pq.push(v, dist[v]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A minimal binary heap of (distance, vertex) pairs packed into longs, with lazy deletion.
+     */
+    private static class LongHeap {
+
+        private long[] mHeap;
+        private int mSize;
+
+        private LongHeap(int capacity) {
+            mHeap = new long[Math.max(capacity, 4)];
+            mSize = 0;
+        }
+
+        private boolean isEmpty() {
+            return mSize == 0;
+        }
+
+        private void push(int vertex, int dist) {
+            if (mSize == mHeap.length)
+                mHeap = Arrays.copyOf(mHeap, 2 * mSize);
+            long key = ((long) dist << 32) | vertex;
+            int i = mSize++;
+            int parent;
+            while (i > 0 && mHeap[parent = (i - 1) >> 1] > key) {
+                mHeap[i] = mHeap[parent];
+                i = parent;
+            }
+            mHeap[i] = key;
+        }
+
+        private long pop() {
+            long ret = mHeap[0];
+            long key = mHeap[--mSize];
+            int i = 0;
+            int child;
+            while ((child = 2 * i + 1) < mSize) {
+                if (child + 1 < mSize && mHeap[child + 1] < mHeap[child])
+                    child++;
+                if (mHeap[child] >= key)
+                    break;
+                mHeap[i] = mHeap[child];
+                i = child;
+            }
+            mHeap[i] = key;
+            return ret;
+        }
+    }
+
+    /**
+     * An improving replacement for a candidate link, found against a snapshot of G*, and the changes to make to G* to
+     * carry it out.
+     */
+    private static class Candidate {
+
+        private static final int DIRECT_BACKWARD = 0; //type a or d; add SPij, and get rid of the ij direction
+        private static final int DIRECT_FORWARD = 1; //type a or d; add SPji, and get rid of the ji direction
+        private static final int REMOVE_COPY = 2; //type c or f; add the path, and delete a copy of the link
+        private static final int REVERSE = 3; //type b; reverse a copy of the link, and add both paths
+
+        private int mId;
+        private long mGain;
+        private int mAction;
+        private int mCurr;
+        private int mEnd;
+        private long mNewCost;
+        private int[] mPath;
+        private int[] mEdgePath;
+        private int[] mPath2;
+        private int[] mEdgePath2;
+
+        private Candidate(int id, long gain, int action, int curr, int end, long newCost, int[] path, int[] edgePath) {
+            mId = id;
+            mGain = gain;
+            mAction = action;
+            mCurr = curr;
+            mEnd = end;
+            mNewCost = newCost;
+            mPath = path;
+            mEdgePath = edgePath;
+        }
+
+        private void apply(ArrayList<MultiEdge<MixedEdge>> edgeContainers) throws WrongEdgeTypeException {
+            MultiEdge<MixedEdge> toImprove = edgeContainers.get(mId);
+            if (mAction == REVERSE) {
+                System.out.println("Improvement detected: " + mNewCost);
+                if (toImprove.isDirectedForward()) {
+                    toImprove.addReverseCopy();
+                    toImprove.directBackward();
+                } else {
+                    toImprove.addReverseCopy();
+                    toImprove.directForward();
+                }
+                System.out.println("Adding path from: " + mCurr + ", to " + mEnd + ".");
+                addShortestPathAndUpdate(mCurr, mEnd, mPath, mEdgePath, edgeContainers, null);
+                addShortestPathAndUpdate(mCurr, mEnd, mPath2, mEdgePath2, edgeContainers, null);
+                return;
+            }
+
+            System.out.println("New cost: " + mNewCost + ".  Old cost: " + toImprove.getFirst().getCost() + ".");
+            if (mAction == DIRECT_BACKWARD)
+                toImprove.directBackward();
+            else if (mAction == DIRECT_FORWARD)
+                toImprove.directForward();
+            System.out.println("Adding path from: " + mCurr + ", to " + mEnd + ".");
+            addShortestPathAndUpdate(mCurr, mEnd, mPath, mEdgePath, edgeContainers, null);
+            if (mAction == REMOVE_COPY)
+                toImprove.tryRemoveCopy();
+        }
+    }
+
+    /**
+     * Checks a single candidate link for an improving replacement path.  G* is only read, so the evaluations of a
+     * batch may run concurrently.
+     */
+    private static class CandidateEvaluation implements Callable<Candidate> {
+
+        private LinkTopology mTopology;
+        private ArrayList<MultiEdge<MixedEdge>> mContainers;
+        private int mId;
+        private boolean mTypeB;
+
+        private CandidateEvaluation(LinkTopology topology, ArrayList<MultiEdge<MixedEdge>> containers, int id, boolean typeB) {
+            mTopology = topology;
+            mContainers = containers;
+            mId = id;
+            mTypeB = typeB;
+        }
+
+        /**
+         * @return - the improvement this candidate offers, or null if there isn't one.
+         */
+        @Override
+        public Candidate call() {
+            MultiEdge<MixedEdge> toImprove = mContainers.get(mId); //the edge container that we want to operate on
+            int i = mTopology.tail[mId]; //vertex i
+            int j = mTopology.head[mId]; //vertex j
+            if (i == j) //a loop can't be replaced by a path
+                return null;
+            return mTypeB ? evaluateB(toImprove, i, j) : evaluateACDF(toImprove, i, j);
+        }
+
+        private Candidate evaluateACDF(MultiEdge<MixedEdge> toImprove, int i, int j) {
+            int n = mTopology.n;
+            long oldCost = mTopology.cost[mId];
+            //shortest paths are taken in Gij1, but their costs are measured in Gij2
+            CostOverlay gij1 = new CostOverlay(mTopology, mContainers, null, true, i, j);
+            CostOverlay gij2 = new CostOverlay(mTopology, mContainers, null, false, i, j);
+            int[] dist = new int[n + 1];
+            int[] arcPath = new int[n + 1];
+
+            //if we're type a or d, we need to check both directions SP ij, and SP ji; if we're type c or f, just SP ij
+            EDGETYPE iStat = toImprove.getType();
+            if (iStat == EDGETYPE.A || iStat == EDGETYPE.D) {
+                int[] path = new int[n + 1];
+                int[] edgePath = new int[n + 1];
+                gij1.dijkstra(i, dist, path, edgePath, arcPath);
+                long cost1 = pathCost(gij2, i, j, dist, path, arcPath); // cost of SPij
+
+                int[] path2 = new int[n + 1];
+                int[] edgePath2 = new int[n + 1];
+                gij1.dijkstra(j, dist, path2, edgePath2, arcPath);
+                long cost2 = pathCost(gij2, j, i, dist, path2, arcPath); // cost of SPji
+
+                //now do the cost comparisons to decide whether it's fruitful to replace
+                if (cost1 < oldCost && cost1 < cost2)
+                    return new Candidate(mId, oldCost - cost1, Candidate.DIRECT_BACKWARD, i, j, cost1, path, edgePath);
+                else if (cost2 < oldCost && cost2 < cost1)
+                    return new Candidate(mId, oldCost - cost2, Candidate.DIRECT_FORWARD, j, i, cost2, path2, edgePath2);
+                return null;
+            }
+
+            //it's c, or f
+            int curr = (toImprove.isDirectedBackward()) ? j : i;
+            int end = (toImprove.isDirectedBackward()) ? i : j;
+            int[] path = new int[n + 1];
+            int[] edgePath = new int[n + 1];
+            gij1.dijkstra(curr, dist, path, edgePath, arcPath);
+            long cost1 = pathCost(gij2, curr, end, dist, path, arcPath);
+            if (cost1 < oldCost)
+                return new Candidate(mId, oldCost - cost1, Candidate.REMOVE_COPY, curr, end, cost1, path, edgePath);
+            return null;
+        }
+
+        private Candidate evaluateB(MultiEdge<MixedEdge> toImprove, int i, int j) {
+            int n = mTopology.n;
+            int curr = (toImprove.isDirectedBackward()) ? j : i;
+            int end = (toImprove.isDirectedBackward()) ? i : j;
+            int[] arcPath = new int[n + 1];
+
+            //find SPij in Gij3
+            CostOverlay gij3 = new CostOverlay(mTopology, mContainers, null, false, i, j);
+            int[] dist = new int[n + 1];
+            int[] path = new int[n + 1];
+            int[] edgePath = new int[n + 1];
+            gij3.dijkstra(curr, dist, path, edgePath, arcPath);
+            if (dist[end] == Integer.MAX_VALUE)
+                return null;
+            long cost1 = dist[end];
+
+            //add SPij to a copy-on-write G*, and find SPij in Gij4, which is cost modified against that
+            TIntObjectHashMap<MultiEdge<MixedEdge>> gNew = new TIntObjectHashMap<MultiEdge<MixedEdge>>();
+            addShortestPathAndUpdate(curr, end, path, edgePath, mContainers, gNew);
+            CostOverlay gij4 = new CostOverlay(mTopology, mContainers, gNew, false, i, j);
+            int[] dist2 = new int[n + 1];
+            int[] path2 = new int[n + 1];
+            int[] edgePath2 = new int[n + 1];
+            gij4.dijkstra(curr, dist2, path2, edgePath2, arcPath);
+            if (dist2[end] == Integer.MAX_VALUE)
+                return null;
+            long cost2 = dist2[end];
+
+            //check if costs line up
+            if (cost1 + cost2 >= 0)
+                return null;
+            Candidate ret = new Candidate(mId, -(cost1 + cost2), Candidate.REVERSE, curr, end, cost1 + cost2, path, edgePath);
+            ret.mPath2 = path2;
+            ret.mEdgePath2 = edgePath2;
+            return ret;
+        }
+
+        /**
+         * @return - the cost, in the given view, of the path from start to end, or Long.MAX_VALUE if there isn't one.
+         */
+        private static long pathCost(CostOverlay view, int start, int end, int[] dist, int[] path, int[] arcPath) {
+            if (dist[end] == Integer.MAX_VALUE)
+                return Long.MAX_VALUE;
+            long ret = 0;
+            int next;
+            do {
+                next = path[end];
+                ret += view.arcCost(arcPath[end], next);
+            } while ((end = next) != start);
+            return ret;
+        }
+    }
 }
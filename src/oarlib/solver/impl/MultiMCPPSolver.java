@@ -31,12 +31,7 @@ import oarlib.graph.transform.partition.impl.PreciseMixedKWayPartitionTransform;
 import oarlib.graph.util.CommonAlgorithms;
 import oarlib.link.impl.MixedEdge;
 import oarlib.problem.impl.ProblemAttributes;
-import oarlib.problem.impl.auxiliary.PartitioningProblem;
 import oarlib.problem.impl.cpp.MixedCPP;
-import oarlib.problem.impl.io.PartitionFormat;
-import oarlib.problem.impl.io.PartitionReader;
-import oarlib.problem.impl.io.ProblemFormat;
-import oarlib.problem.impl.io.ProblemWriter;
 import oarlib.vertex.impl.MixedVertex;
 
 import java.util.Collection;
@@ -139,22 +134,11 @@ public class MultiMCPPSolver extends MultiVehicleSolver<MixedVertex, MixedEdge,
             //transform the graph
             MixedGraph vWeightedTest = transformer.transformGraph();
 
-            String filename = "/Users/oliverlum/Desktop/RandomGraph.graph";
-
-            //write it to a file
-            ProblemWriter gw = new ProblemWriter(ProblemFormat.Name.METIS);
-            gw.writeInstance(new PartitioningProblem(vWeightedTest, null, null), filename);
-
             //num parts to partition into
             int numParts = mInstance.getmNumVehicles();
 
-            //partition the graph
-            runMetis(numParts, filename);
-
-            //now read the partition and reconstruct the induced subgraphs on which we solve the MCPP to get our final solution
-            PartitionReader pr = new PartitionReader(PartitionFormat.Name.METIS);
-
-            return pr.readPartition(filename + ".part." + numParts);
+            //partition the graph; the induced subgraphs of each part are then routed separately
+            return runPartitioner(vWeightedTest, numParts);
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -0,0 +1,281 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013-2015 Oliver Lum
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package oarlib.solver.impl;
+
+import oarlib.core.Route;
+import oarlib.exceptions.GraphInfeasibleException;
+import oarlib.graph.impl.WindyGraph;
+import oarlib.graph.util.CommonAlgorithms;
+import oarlib.link.impl.WindyEdge;
+import oarlib.problem.impl.multivehicle.MinMaxKWRPP;
+import oarlib.vertex.impl.WindyVertex;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Solves many {@link MinMaxKWRPP} instances over the same street network, (e.g. for a range of fleet sizes and
+ * candidate depots), with the {@link MultiWRPPSolver}.
+ * <p/>
+ * The graph-level work that doesn't depend on the scenario is done once: the connectivity check, and the all pairs
+ * shortest path matrices, which are computed on a single copy of the graph and then shared (read-only) by the
+ * copies handed to each scenario.  Every scenario gets its own copy of the graph, (since the depot is a property of
+ * the graph, and the solvers are free to modify their instance's graph), and the scenarios are solved concurrently.
+ * <p/>
+ * Scenarios using the METIS partitioner may also be run concurrently, since each partitioning call works in its
+ * own temporary directory (see {@link oarlib.graph.transform.partition.impl.MetisPartitioner}).
+ *
+ * @author oliverlum
+ */
+public class MultiWRPPBatchSolver {
+
+    private static final Logger LOGGER = Logger.getLogger(MultiWRPPBatchSolver.class);
+
+    private WindyGraph mTemplate;
+    private String mInstanceName;
+    private int mNumThreads;
+    private boolean mPrecomputed;
+
+    /**
+     * @param graph        - the street network shared by all the scenarios; it is copied, and not modified
+     * @param instanceName - the name of the instance, used as a prefix for the names of the scenario instances
+     */
+    public MultiWRPPBatchSolver(WindyGraph graph, String instanceName) {
+        mTemplate = graph.getDeepCopy();
+        mInstanceName = instanceName;
+        mNumThreads = Runtime.getRuntime().availableProcessors();
+        mPrecomputed = false;
+    }
+
+    public void setNumThreads(int newNumThreads) {
+        if (newNumThreads < 1) {
+            LOGGER.warn("Invalid argument.  numThreads must be >= 1.");
+            return;
+        }
+        mNumThreads = newNumThreads;
+    }
+
+    /**
+     * Solves each of the scenarios.
+     *
+     * @param scenarios - the scenarios to solve
+     * @return - the problem instances, in the same order as the scenarios; the solution of each may be retrieved
+     * with getSol().  If a scenario failed, its solution will be null.
+     * @throws GraphInfeasibleException - if the graph is not connected
+     */
+    public ArrayList<MinMaxKWRPP> solve(List<Scenario> scenarios) throws GraphInfeasibleException {
+
+        precompute();
+
+        int[][] dist = mTemplate.getAllPairsDistMatrix();
+        int[][] path = mTemplate.getAllPairsPathMatrix();
+        int[][] edgePath = mTemplate.getAllPairsEdgePathMatrix();
+
+        //set up the instances up front; they don't depend on each other
+        ArrayList<MinMaxKWRPP> ans = new ArrayList<MinMaxKWRPP>();
+        ArrayList<Callable<Collection<Route<WindyVertex, WindyEdge>>>> tasks = new ArrayList<Callable<Collection<Route<WindyVertex, WindyEdge>>>>();
+        WindyGraph copy;
+        MinMaxKWRPP instance;
+        for (Scenario s : scenarios) {
+            copy = mTemplate.getDeepCopy();
+            copy.setAllPairsMatrices(dist, path, edgePath);
+            copy.setDepotId(s.getDepotId() == -1 ? mTemplate.getDepotId() : s.getDepotId());
+
+            instance = new MinMaxKWRPP(copy, mInstanceName + "_" + s.getNumVehicles() + "veh_depot" + copy.getDepotId(), s.getNumVehicles());
+            ans.add(instance);
+            tasks.add(new ScenarioTask(instance, s));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(mNumThreads, Math.max(1, tasks.size())));
+        try {
+            List<Future<Collection<Route<WindyVertex, WindyEdge>>>> results = pool.invokeAll(tasks);
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    if (results.get(i).get() == null)
+                        LOGGER.error("The solver failed to return a solution for scenario " + ans.get(i).getName() + ".");
+                } catch (ExecutionException e) {
+                    LOGGER.error("Scenario " + ans.get(i).getName() + " threw an exception.", e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            LOGGER.error("The batch was interrupted before all of the scenarios finished.");
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        return ans;
+    }
+
+    /**
+     * Does the scenario-independent work on the shared graph.
+     *
+     * @throws GraphInfeasibleException - if the graph is not connected
+     */
+    private void precompute() throws GraphInfeasibleException {
+        if (mPrecomputed)
+            return;
+
+        if (!CommonAlgorithms.isConnected(mTemplate))
+            throw new GraphInfeasibleException();
+
+        long start = System.currentTimeMillis();
+        mTemplate.getAllPairsDistMatrix();
+        LOGGER.debug("Shortest paths for the batch took " + (System.currentTimeMillis() - start) + " milliseconds.");
+
+        mPrecomputed = true;
+    }
+
+    private static class ScenarioTask implements Callable<Collection<Route<WindyVertex, WindyEdge>>> {
+
+        private MinMaxKWRPP mInstance;
+        private Scenario mScenario;
+
+        ScenarioTask(MinMaxKWRPP instance, Scenario scenario) {
+            mInstance = instance;
+            mScenario = scenario;
+        }
+
+        @Override
+        public Collection<Route<WindyVertex, WindyEdge>> call() {
+            MultiWRPPSolver solver = new MultiWRPPSolver(mInstance, mInstance.getName());
+            if (mScenario.getAlpha() != -1)
+                solver.setAlpha(mScenario.getAlpha());
+            if (mScenario.getBeta() != -1)
+                solver.setBeta(mScenario.getBeta());
+            if (mScenario.getNumIterations() != -1)
+                solver.setNumIterations(mScenario.getNumIterations());
+            if (mScenario.getNumPerturbations() != -1)
+                solver.setNumPerturbations(mScenario.getNumPerturbations());
+            if (mScenario.getPartitionMethod() != null)
+                solver.setPartitionMethod(mScenario.getPartitionMethod());
+            if (mScenario.getSweepLogFile() != null)
+                solver.setSweepLogFile(mScenario.getSweepLogFile());
+
+            //the connectivity check was done once for the whole batch in precompute(), so skip trySolve()'s; a null
+            //answer, (or any exception), is reported for this scenario by solve(List)
+            return solver.solve();
+        }
+    }
+
+    /**
+     * A single (number of vehicles, depot, solver parameters) combination to be solved.  Parameters that are left
+     * unset (-1, or null for the partition method) fall back to the solver's defaults.
+     */
+    public static class Scenario {
+
+        private int mNumVehicles;
+        private int mDepotId;
+        private double mAlpha;
+        private double mBeta;
+        private int mNumIterations;
+        private int mNumPerturbations;
+        private MultiWRPPSolver.PartitionMethod mPartitionMethod;
+        private String mSweepLogFile;
+
+        /**
+         * @param numVehicles - the number of vehicles in the fleet
+         * @param depotId     - the id of the depot vertex, or -1 to use the depot of the shared graph
+         */
+        public Scenario(int numVehicles, int depotId) {
+            if (numVehicles < 1)
+                throw new IllegalArgumentException("The number of vehicles must be >= 1.");
+            mNumVehicles = numVehicles;
+            mDepotId = depotId;
+            mAlpha = -1;
+            mBeta = -1;
+            mNumIterations = -1;
+            mNumPerturbations = -1;
+            mPartitionMethod = null;
+            mSweepLogFile = null;
+        }
+
+        public int getNumVehicles() {
+            return mNumVehicles;
+        }
+
+        public int getDepotId() {
+            return mDepotId;
+        }
+
+        public double getAlpha() {
+            return mAlpha;
+        }
+
+        public void setAlpha(double newAlpha) {
+            mAlpha = newAlpha;
+        }
+
+        public double getBeta() {
+            return mBeta;
+        }
+
+        public void setBeta(double newBeta) {
+            mBeta = newBeta;
+        }
+
+        public int getNumIterations() {
+            return mNumIterations;
+        }
+
+        public void setNumIterations(int newIter) {
+            mNumIterations = newIter;
+        }
+
+        public int getNumPerturbations() {
+            return mNumPerturbations;
+        }
+
+        public void setNumPerturbations(int newPerturb) {
+            mNumPerturbations = newPerturb;
+        }
+
+        public MultiWRPPSolver.PartitionMethod getPartitionMethod() {
+            return mPartitionMethod;
+        }
+
+        public void setPartitionMethod(MultiWRPPSolver.PartitionMethod newMethod) {
+            mPartitionMethod = newMethod;
+        }
+
+        public String getSweepLogFile() {
+            return mSweepLogFile;
+        }
+
+        /**
+         * @param newSweepLogFile - if not null, the solver's weight sweep trace for this scenario is written here; give
+         *                        each scenario its own file, since they're solved concurrently
+         */
+        public void setSweepLogFile(String newSweepLogFile) {
+            mSweepLogFile = newSweepLogFile;
+        }
+    }
+}
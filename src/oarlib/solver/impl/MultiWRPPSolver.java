@@ -33,6 +33,7 @@ import oarlib.display.GraphDisplay;
 import oarlib.graph.factory.impl.WindyGraphFactory;
 import oarlib.graph.impl.WindyGraph;
 import oarlib.graph.transform.impl.EdgeInducedRequirementTransform;
+import oarlib.graph.transform.partition.impl.MinMaxBoundaryRefiner;
 import oarlib.graph.transform.partition.impl.PreciseWindyKWayPartitionTransform;
 import oarlib.graph.transform.rebalance.CostRebalancer;
 import oarlib.graph.transform.rebalance.impl.ClosestRequiredEdgeRebalancer;
@@ -41,15 +42,13 @@ import oarlib.graph.transform.rebalance.impl.IndividualDistanceToDepotRebalancer
 import oarlib.graph.util.CommonAlgorithms;
 import oarlib.graph.util.Pair;
 import oarlib.graph.util.Utils;
+import oarlib.graph.util.WindyLowerBound;
 import oarlib.improvements.metaheuristics.impl.BenaventIPFramework;
 import oarlib.improvements.metaheuristics.impl.BenaventIPFrameworkWithRotation;
 import oarlib.link.impl.WindyEdge;
 import oarlib.metrics.AverageTraversalMetric;
 import oarlib.metrics.RouteOverlapMetric;
 import oarlib.problem.impl.ProblemAttributes;
-import oarlib.problem.impl.auxiliary.PartitioningProblem;
-import oarlib.problem.impl.io.PartitionFormat;
-import oarlib.problem.impl.io.PartitionReader;
 import oarlib.problem.impl.io.ProblemFormat;
 import oarlib.problem.impl.io.ProblemWriter;
 import oarlib.problem.impl.rpp.WindyRPP;
@@ -75,6 +74,10 @@ public class MultiWRPPSolver extends MultiVehicleSolver<WindyVertex, WindyEdge,
     private double mBeta;
     private int mIter;
     private int mPerturb;
+    private PartitionMethod mPartitionMethod;
+    private boolean mRefinePartitions;
+    private double mGapTolerance;
+    private String mSweepLogFile;
 
     /**
      * Default constructor; must set problem instance.
@@ -95,6 +98,10 @@ public class MultiWRPPSolver extends MultiVehicleSolver<WindyVertex, WindyEdge,
         mBeta = -1;
         mIter = -1;
         mPerturb = -1;
+        mPartitionMethod = PartitionMethod.METIS;
+        mRefinePartitions = false;
+        mGapTolerance = 0;
+        mSweepLogFile = null;
     }
 
     public void setAlpha(double newAlpha) {
@@ -129,6 +136,42 @@ public class MultiWRPPSolver extends MultiVehicleSolver<WindyVertex, WindyEdge,
         mPerturb = newPerturb;
     }
 
+    public void setPartitionMethod(PartitionMethod newMethod) {
+        if (newMethod == null) {
+            LOGGER.warn("Invalid argument.  The partition method may not be null.");
+            return;
+        }
+        mPartitionMethod = newMethod;
+    }
+
+    /**
+     * @param refine - if true, each initial partition is passed through a min-max boundary refinement before routing
+     */
+    public void setRefinePartitions(boolean refine) {
+        mRefinePartitions = refine;
+    }
+
+    /**
+     * @param newGapTolerance - the weight sweep stops as soon as the best max route cost is within this fraction of the
+     *                        lower bound, (e.g. .05 stops at a solution that's provably within 5% of optimal).  Default
+     *                        is 0, so the sweep only stops early once a solution is provably optimal.
+     */
+    public void setGapTolerance(double newGapTolerance) {
+        if (newGapTolerance < 0) {
+            LOGGER.warn("Invalid argument.  The gap tolerance must be >= 0.");
+            return;
+        }
+        mGapTolerance = newGapTolerance;
+    }
+
+    /**
+     * @param newSweepLogFile - if not null, the best max route cost found for each weight of the sweep is written to
+     *                        this file, (one "weight,cost;" line per weight).  Off by default.
+     */
+    public void setSweepLogFile(String newSweepLogFile) {
+        mSweepLogFile = newSweepLogFile;
+    }
+
     protected float[] getScaling() {
 
         //For the display
@@ -198,6 +241,7 @@ public class MultiWRPPSolver extends MultiVehicleSolver<WindyVertex, WindyEdge,
         PartitionStore ps = new PartitionStore();
         long start, end;
         RouteOverlapMetric roi = new RouteOverlapMetric(mInstance.getGraph());
+        PrintWriter pw = null; //the (weight, best max route cost) trace of the sweep, if asked for
 
         try {
 
@@ -225,17 +269,39 @@ public class MultiWRPPSolver extends MultiVehicleSolver<WindyVertex, WindyEdge,
             int n = mGraph.getVertices().size();
             int[][] dist = mGraph.getAllPairsDistMatrix();
 
-            String outputFile = "/Users/oliverlum/Desktop/100runs_" + mInstanceName + ".txt";
-            PrintWriter pw = new PrintWriter(outputFile, "UTF-8");
+            //For the geometric partitioners
+            int sweepBound = 0;
+            for (WindyEdge we : mGraph.getEdges())
+                if (we.isRequired())
+                    sweepBound += (we.getCost() + we.getReverseCost()) / 2;
+            sweepBound = (int) Math.ceil((double) sweepBound / mInstance.getmNumVehicles());
+
+            //a lower bound on the max route cost, so that we can stop once we're provably close enough
+            long objLowerBound = new WindyLowerBound(mGraph).getMinMaxLowerBound(mGraph.getDepotId(), mInstance.getmNumVehicles());
+            double stoppingCost = objLowerBound * (1 + mGapTolerance);
 
+            if (mSweepLogFile != null)
+                pw = new PrintWriter(mSweepLogFile, "UTF-8");
+
+            sweep:
             for (int j = 1; j <= numRuns; j++) {
                 currWeightBest = Double.MAX_VALUE;
                 for (int k = 1; k <= numSolPerWeight; k++) {
 
-                    //new beta stuff
-                    ClosestRequiredEdgeRebalancer<WindyGraph> beta = new ClosestRequiredEdgeRebalancer<WindyGraph>(mGraph, new WindyGraphFactory(), betaWeight, new IndividualDistanceToDepotRebalancer(mGraph, lowerBound + j * interval));
-                    beta.setDistMatrix(dist);
-                    sol = partition(new DuplicateEdgeCostRebalancer(mGraph, beta));
+                    if (mPartitionMethod == PartitionMethod.SWEEP) {
+                        //start each sweep from a different angle so that we get diverse partitions
+                        sol = sweepPartition(sweepBound, 2 * Math.PI * ((j - 1) * numSolPerWeight + k - 1) / (numRuns * numSolPerWeight));
+                    } else if (mPartitionMethod == PartitionMethod.K_MEANS) {
+                        sol = kMeansPartition(100, new Random(31 * j + k));
+                    } else {
+                        //new beta stuff
+                        ClosestRequiredEdgeRebalancer<WindyGraph> beta = new ClosestRequiredEdgeRebalancer<WindyGraph>(mGraph, new WindyGraphFactory(), betaWeight, new IndividualDistanceToDepotRebalancer(mGraph, lowerBound + j * interval));
+                        beta.setDistMatrix(dist);
+                        sol = partition(new DuplicateEdgeCostRebalancer(mGraph, beta));
+                    }
+
+                    if (mRefinePartitions)
+                        sol = refine(sol, ps, dist);
 
                     HashMap<Integer, HashSet<Integer>> partitions = new HashMap<Integer, HashSet<Integer>>();
 
@@ -292,8 +358,16 @@ public class MultiWRPPSolver extends MultiVehicleSolver<WindyVertex, WindyEdge,
                         record = improved;
                         bestWeight = lowerBound + j * interval;
                     }
+
+                    if (bestObj <= stoppingCost) {
+                        LOGGER.info("Stopping the weight sweep early; the best solution, " + bestObj + ", is within the tolerance of the lower bound, " + objLowerBound + ".");
+                        if (pw != null)
+                            pw.println((lowerBound + j * interval) + "," + currWeightBest + ";");
+                        break sweep;
+                    }
                 }
-                pw.println((lowerBound + j * interval) + "," + currWeightBest + ";");
+                if (pw != null)
+                    pw.println((lowerBound + j * interval) + "," + currWeightBest + ";");
             }
 
             //use the exact solver 1 more time to smooth out the kinks
@@ -306,14 +380,179 @@ public class MultiWRPPSolver extends MultiVehicleSolver<WindyVertex, WindyEdge,
             }
 
             mInstance.setSol(trueAns);
-            pw.close();
             return trueAns;
         } catch (Exception e) {
             e.printStackTrace();
             return null;
+        } finally {
+            if (pw != null)
+                pw.close();
+        }
+    }
+
+    /**
+     * Re-optimizes a previous solution after a small change in the set of required edges, instead of solving from
+     * scratch.  The change is applied to the instance graph, the edges that are no longer required are dropped from
+     * the routes, and the newly required edges are inserted one at a time at the position (over all routes, both
+     * directions) that yields the smallest max route cost, breaking ties by the smallest added cost.  The repaired
+     * solution is then improved with a bounded {@link BenaventIPFramework} pass.
+     *
+     * @param previousSol - a solution to this instance before the change
+     * @param addedIds    - ids of the edges that are now required
+     * @param removedIds  - ids of the edges that are no longer required
+     * @param numIter     - the number of ILS iterations to allow the improvement procedure, (1 = no perturbations)
+     * @return - the re-optimized solution, or null if something went wrong
+     */
+    public Collection<Route<WindyVertex, WindyEdge>> reoptimize(Collection<Route<WindyVertex, WindyEdge>> previousSol, Collection<Integer> addedIds, Collection<Integer> removedIds, int numIter) {
+
+        try {
+            mGraph = mInstance.getGraph();
+            TIntObjectHashMap<WindyEdge> mEdges = mGraph.getInternalEdgeMap();
+
+            //apply the diff
+            for (Integer i : removedIds) {
+                mEdges.get(i).setRequired(false);
+                mEdges.get(i).setReverseRequired(false);
+            }
+            for (Integer i : addedIds)
+                mEdges.get(i).setRequired(true);
+
+            int[][] dist = mGraph.getAllPairsDistMatrix();
+            int depotId = mGraph.getDepotId();
+
+            //the serviced edges of each route, in order, minus the ones that were removed
+            ArrayList<TIntArrayList> flatRoutes = new ArrayList<TIntArrayList>();
+            ArrayList<ArrayList<Boolean>> flatDirs = new ArrayList<ArrayList<Boolean>>();
+            ArrayList<Integer> routeCosts = new ArrayList<Integer>();
+            HashSet<Integer> removed = new HashSet<Integer>(removedIds);
+            HashSet<Integer> alreadyServiced = new HashSet<Integer>();
+            for (Route<WindyVertex, WindyEdge> r : previousSol) {
+                TIntArrayList flat = new TIntArrayList();
+                ArrayList<Boolean> dir = new ArrayList<Boolean>();
+                TIntArrayList compact = r.getCompactRepresentation();
+                ArrayList<Boolean> compactDir = r.getCompactTraversalDirection();
+                for (int j = 0; j < compact.size(); j++) {
+                    if (removed.contains(compact.get(j)) || alreadyServiced.contains(compact.get(j)))
+                        continue;
+                    alreadyServiced.add(compact.get(j));
+                    flat.add(compact.get(j));
+                    dir.add(compactDir.get(j));
+                }
+                flatRoutes.add(flat);
+                flatDirs.add(dir);
+                routeCosts.add(flatCost(flat, dir, dist, depotId));
+            }
+
+            //cheapest insertion of the new guys
+            WindyEdge toInsert;
+            int bestRoute, bestPos, bestMax, bestDelta, currMax, delta, candidateMax;
+            boolean bestDir;
+            for (Integer i : addedIds) {
+                if (alreadyServiced.contains(i))
+                    continue;
+                toInsert = mEdges.get(i);
+
+                currMax = 0;
+                for (Integer cost : routeCosts)
+                    currMax = Math.max(currMax, cost);
+
+                bestRoute = -1;
+                bestPos = -1;
+                bestDir = true;
+                bestMax = Integer.MAX_VALUE;
+                bestDelta = Integer.MAX_VALUE;
+                for (int j = 0; j < flatRoutes.size(); j++) {
+                    TIntArrayList flat = flatRoutes.get(j);
+                    ArrayList<Boolean> dir = flatDirs.get(j);
+                    int prevEnd = depotId;
+                    int nextStart;
+                    for (int pos = 0; pos <= flat.size(); pos++) {
+                        if (pos < flat.size())
+                            nextStart = startOf(mEdges.get(flat.get(pos)), dir.get(pos));
+                        else
+                            nextStart = depotId;
+
+                        for (int d = 0; d < 2; d++) {
+                            boolean forward = (d == 0);
+                            delta = dist[prevEnd][startOf(toInsert, forward)] + costOf(toInsert, forward) + dist[endOf(toInsert, forward)][nextStart] - dist[prevEnd][nextStart];
+                            candidateMax = Math.max(currMax, routeCosts.get(j) + delta);
+                            if (candidateMax < bestMax || (candidateMax == bestMax && delta < bestDelta)) {
+                                bestMax = candidateMax;
+                                bestDelta = delta;
+                                bestRoute = j;
+                                bestPos = pos;
+                                bestDir = forward;
+                            }
+                        }
+
+                        if (pos < flat.size())
+                            prevEnd = endOf(mEdges.get(flat.get(pos)), dir.get(pos));
+                    }
+                }
+
+                if (bestRoute == -1) {
+                    LOGGER.error("There don't appear to be any routes to insert the new required edges into.");
+                    return null;
+                }
+                flatRoutes.get(bestRoute).insert(bestPos, i);
+                flatDirs.get(bestRoute).add(bestPos, bestDir);
+                routeCosts.set(bestRoute, routeCosts.get(bestRoute) + bestDelta);
+                alreadyServiced.add(i);
+            }
+
+            //expand the routes using the shortest paths we already have
+            RouteExpander<WindyGraph> expander = new RouteExpander<WindyGraph>(mGraph, dist, mGraph.getAllPairsPathMatrix(), mGraph.getAllPairsEdgePathMatrix());
+            ArrayList<Route<WindyVertex, WindyEdge>> repaired = new ArrayList<Route<WindyVertex, WindyEdge>>();
+            for (int j = 0; j < flatRoutes.size(); j++) {
+                @SuppressWarnings("unchecked")
+                Route<WindyVertex, WindyEdge> r = expander.unflattenRoute(flatRoutes.get(j), flatDirs.get(j));
+                repaired.add(r);
+            }
+
+            LOGGER.debug("Repaired solution obj value: " + mInstance.getObjectiveFunction().evaluate(repaired));
+
+            //bounded improvement
+            mInstance.setSol(repaired);
+            BenaventIPFramework improver = new BenaventIPFramework(mInstance, null, repaired);
+            improver.setNumIterations(numIter);
+            Collection<Route<WindyVertex, WindyEdge>> ans = improver.improveSolution();
+
+            mInstance.setSol(ans);
+            return ans;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
         }
     }
 
+    private static int startOf(WindyEdge e, boolean forward) {
+        return forward ? e.getFirstEndpointId() : e.getSecondEndpointId();
+    }
+
+    private static int endOf(WindyEdge e, boolean forward) {
+        return forward ? e.getSecondEndpointId() : e.getFirstEndpointId();
+    }
+
+    private static int costOf(WindyEdge e, boolean forward) {
+        return forward ? e.getCost() : e.getReverseCost();
+    }
+
+    /**
+     * @return - the cost of the route that services the given edges in order, deadheading along shortest paths
+     */
+    private int flatCost(TIntArrayList flat, ArrayList<Boolean> dir, int[][] dist, int depotId) {
+        TIntObjectHashMap<WindyEdge> mEdges = mGraph.getInternalEdgeMap();
+        int ans = 0;
+        int prevEnd = depotId;
+        WindyEdge temp;
+        for (int j = 0; j < flat.size(); j++) {
+            temp = mEdges.get(flat.get(j));
+            ans += dist[prevEnd][startOf(temp, dir.get(j))] + costOf(temp, dir.get(j));
+            prevEnd = endOf(temp, dir.get(j));
+        }
+        return ans + dist[prevEnd][depotId];
+    }
+
     private Collection<Route<WindyVertex, WindyEdge>> cleanup(Collection<Route<WindyVertex, WindyEdge>> toClean) {
 
         //init
@@ -663,13 +902,14 @@ public class MultiWRPPSolver extends MultiVehicleSolver<WindyVertex, WindyEdge,
         origTotalCost = -1 * addedCost;
 
 
-        String ans = "=======================================================";
-        ans += "\n";
-        ans += "\n";
-        ans += this.getSolverName() + ": Printing current solution for instance " + mInstanceName + "...";
-        ans += "\n";
-        ans += "\n";
-        ans += "=======================================================";
+        StringBuilder ans = new StringBuilder();
+        ans.append("=======================================================");
+        ans.append("\n");
+        ans.append("\n");
+        ans.append(this.getSolverName()).append(": Printing current solution for instance ").append(mInstanceName).append("...");
+        ans.append("\n");
+        ans.append("\n");
+        ans.append("=======================================================");
         for (Route<WindyVertex, WindyEdge> r : currSol) {
             //gather metrics
             tempCost = r.getCost();
@@ -685,12 +925,14 @@ public class MultiWRPPSolver extends MultiVehicleSolver<WindyVertex, WindyEdge,
 
             totalCost += tempCost;
 
-            ans += "\n";
-            ans += "Route: " + r.toString() + "\n";
-            ans += "Route Cost: " + tempCost + "\n";
-            ans += "Route Required Cost: " + r.getReqCost() + "\n";
-            ans += "Route Unrequired Cost: " + (tempCost - r.getReqCost()) + "\n";
-            ans += "\n";
+            ans.append("\n");
+            ans.append("Route: ");
+            r.appendTo(ans);
+            ans.append("\n");
+            ans.append("Route Cost: ").append(tempCost).append("\n");
+            ans.append("Route Required Cost: ").append(r.getReqCost()).append("\n");
+            ans.append("Route Unrequired Cost: ").append(tempCost - r.getReqCost()).append("\n");
+            ans.append("\n");
         }
 
         percentVariance = ((double) maxLength - minLength) / maxLength;
@@ -706,33 +948,33 @@ public class MultiWRPPSolver extends MultiVehicleSolver<WindyVertex, WindyEdge,
         int totalCostShare = origTotalCost / mInstance.getmNumVehicles();
         int solutionCostShare = oneVObjective / mInstance.getmNumVehicles();
 
-        ans += "=======================================================";
-        ans += "\n";
-        ans += "\n";
-        ans += "Vertices: " + mInstance.getGraph().getVertices().size() + "\n";
-        ans += "Edges: " + mInstance.getGraph().getEdges().size() + "\n";
-        ans += "Total Edge Cost: " + origTotalCost + "\n";
-        ans += "Total Edge Cost / num vehicles (Total Cost Share): " + totalCostShare + "\n";
-        ans += "Cost of 1-Vehicle Solution: " + oneVObjective + "\n";
-        ans += "Cost of 1-Vehicle Solution / num vehicles (Solution Cost Share): " + solutionCostShare + "\n";
-        ans += "Max Route Length: " + maxLength + "\n";
-        ans += "Max Route Length / Total Cost Share: " + (double) maxLength / totalCostShare + "\n";
-        ans += "Max Route Length / Solution Cost Share: " + (double) maxLength / solutionCostShare + "\n";
-        ans += "Min Route Length: " + minLength + "\n";
-        ans += "Average Route Length: " + averageCost + "\n";
-        ans += "Average RouteLength (excluding empty): " + averageCostNoEmpty + "\n";
-        ans += "% variance: " + 100.0 * percentVariance + "\n";
-        ans += "% deviation from average length: " + 100.0 * deviationFromAverage + "\n";
-        ans += "% deviation from average length (excluding empty): " + 100.0 * deviationFromAverageNoEmpty + "\n";
-        ans += "Added cost: " + addedCost + "\n";
-        ans += "ROI: " + new RouteOverlapMetric(mGraph).evaluate(currSol) + "\n";
-        ans += "ATD: " + new AverageTraversalMetric(mGraph).evaluate(currSol) + "\n";
-        ans += "Best Weight: " + bestWeight + "\n";
-        ans += "\n";
-        ans += "\n";
-        ans += "=======================================================";
-
-        return ans;
+        ans.append("=======================================================");
+        ans.append("\n");
+        ans.append("\n");
+        ans.append("Vertices: ").append(mInstance.getGraph().getVertices().size()).append("\n");
+        ans.append("Edges: ").append(mInstance.getGraph().getEdges().size()).append("\n");
+        ans.append("Total Edge Cost: ").append(origTotalCost).append("\n");
+        ans.append("Total Edge Cost / num vehicles (Total Cost Share): ").append(totalCostShare).append("\n");
+        ans.append("Cost of 1-Vehicle Solution: ").append(oneVObjective).append("\n");
+        ans.append("Cost of 1-Vehicle Solution / num vehicles (Solution Cost Share): ").append(solutionCostShare).append("\n");
+        ans.append("Max Route Length: ").append(maxLength).append("\n");
+        ans.append("Max Route Length / Total Cost Share: ").append((double) maxLength / totalCostShare).append("\n");
+        ans.append("Max Route Length / Solution Cost Share: ").append((double) maxLength / solutionCostShare).append("\n");
+        ans.append("Min Route Length: ").append(minLength).append("\n");
+        ans.append("Average Route Length: ").append(averageCost).append("\n");
+        ans.append("Average RouteLength (excluding empty): ").append(averageCostNoEmpty).append("\n");
+        ans.append("% variance: ").append(100.0 * percentVariance).append("\n");
+        ans.append("% deviation from average length: ").append(100.0 * deviationFromAverage).append("\n");
+        ans.append("% deviation from average length (excluding empty): ").append(100.0 * deviationFromAverageNoEmpty).append("\n");
+        ans.append("Added cost: ").append(addedCost).append("\n");
+        ans.append("ROI: ").append(new RouteOverlapMetric(mGraph).evaluate(currSol)).append("\n");
+        ans.append("ATD: ").append(new AverageTraversalMetric(mGraph).evaluate(currSol)).append("\n");
+        ans.append("Best Weight: ").append(bestWeight).append("\n");
+        ans.append("\n");
+        ans.append("\n");
+        ans.append("=======================================================");
+
+        return ans.toString();
     }
 
     protected HashMap<Integer, Integer> partition(CostRebalancer costRebalancer) {
@@ -763,22 +1005,11 @@ public class MultiWRPPSolver extends MultiVehicleSolver<WindyVertex, WindyEdge,
             //transform the graph
             WindyGraph vWeightedTest = transformer.transformGraph();
 
-            String filename = "C:\\Users\\Oliver\\Desktop\\RandomGraph.graph";
-
-            //write it to a file
-            ProblemWriter gw = new ProblemWriter(ProblemFormat.Name.METIS);
-            gw.writeInstance(new PartitioningProblem(vWeightedTest, null, null), filename);
-
             //num parts to partition into
             int numParts = mInstance.getmNumVehicles();
 
             //partition the graph
-            runMetis(numParts, filename);
-
-            //now read the partition and reconstruct the induced subrgraphs on which we solve the WPP to get our final solution
-            PartitionReader pr = new PartitionReader(PartitionFormat.Name.METIS);
-
-            HashMap<Integer, Integer> ans = pr.readPartition(filename + ".part." + numParts);
+            HashMap<Integer, Integer> ans = runPartitioner(vWeightedTest, numParts);
 
             for (int i = 1; i <= mInstance.getmNumVehicles(); i++) {
                 ans.remove(m + i);
@@ -800,16 +1031,206 @@ public class MultiWRPPSolver extends MultiVehicleSolver<WindyVertex, WindyEdge,
         return ans;
     }
 
+    /**
+     * Rebalances the required edges of a partition with a {@link MinMaxBoundaryRefiner}.  The refiner is given an
+     * estimate of the route cost of each part, and works out the effect of each move from the change in the service
+     * cost of the two parts involved, so nothing is routed here; only the parts it settles on get routed, (by the
+     * caller).  Parts that are already in the store are estimated by the cost of their stored route.
+     *
+     * @param sol  - the partition, key = edge id, value = part
+     * @param ps   - the store of previously routed parts
+     * @param dist - the all pairs shortest path distance matrix of the graph
+     * @return - the refined partition; the parts of unrequired edges are left as is
+     */
+    private HashMap<Integer, Integer> refine(HashMap<Integer, Integer> sol, PartitionStore ps, int[][] dist) {
+        HashMap<Integer, Integer> reqSol = new HashMap<Integer, Integer>();
+        HashMap<Integer, HashSet<Integer>> partitions = new HashMap<Integer, HashSet<Integer>>();
+        for (Integer i : sol.keySet()) {
+            if (!mGraph.getEdge(i).isRequired())
+                continue;
+            reqSol.put(i, sol.get(i));
+            if (!partitions.containsKey(sol.get(i)))
+                partitions.put(sol.get(i), new HashSet<Integer>());
+            partitions.get(sol.get(i)).add(i);
+        }
+
+        HashMap<Integer, Integer> routeCosts = new HashMap<Integer, Integer>();
+        Route<?, ?> r;
+        for (Integer i : partitions.keySet()) {
+            r = ps.containsPartition(partitions.get(i));
+            routeCosts.put(i, r != null ? r.getCost() : estimateRouteCost(partitions.get(i), dist));
+        }
+
+        HashMap<Integer, Integer> ans = new HashMap<Integer, Integer>(sol);
+        ans.putAll(new MinMaxBoundaryRefiner<WindyGraph>(mGraph, routeCosts).refinePartition(reqSol));
+        return ans;
+    }
+
+    /**
+     * A quick estimate of the cost of a route servicing a set of required edges, (without routing it): the service
+     * cost of the edges, (the average of their two traversal costs, as in the refiner), plus the cheapest round trip
+     * from the depot to one of their endpoints.
+     *
+     * @param part - the ids of the edges in the part
+     * @param dist - the all pairs shortest path distance matrix of the graph
+     * @return - the estimated route cost
+     */
+    private int estimateRouteCost(HashSet<Integer> part, int[][] dist) {
+        int depot = mGraph.getDepotId();
+        long serviceCost = 0;
+        long access = Long.MAX_VALUE;
+        WindyEdge we;
+        for (Integer id : part) {
+            we = mGraph.getEdge(id);
+            serviceCost += (we.getCost() + we.getReverseCost()) / 2;
+            access = Math.min(access, (long) dist[depot][we.getFirstEndpointId()] + dist[we.getFirstEndpointId()][depot]);
+            access = Math.min(access, (long) dist[depot][we.getSecondEndpointId()] + dist[we.getSecondEndpointId()][depot]);
+        }
+        if (access == Long.MAX_VALUE)
+            access = 0;
+        return (int) Math.min(Integer.MAX_VALUE, serviceCost + access);
+    }
+
+    /**
+     * Partitions the required edges by sweeping a ray counter-clockwise around the depot, starting at the
+     * specified angle.  Each required edge is represented by the midpoint of its endpoints, and edges are
+     * added to the current part in the order they are swept until adding the next one would exceed the upper
+     * bound, at which point we move on to the next part.  The last part absorbs whatever is left over.
+     *
+     * @param upperBound - the maximum required cost (average of the two traversal costs) allowed in a part
+     * @param angle      - the angle (in radians, measured from the positive x-axis) at which the sweep begins
+     * @return - a map with key = edge id, value = part (0-indexed, as in the METIS output)
+     */
     private HashMap<Integer, Integer> sweepPartition(int upperBound, double angle) {
 
         //partition the edges using a sweep
         HashMap<Integer, Integer> ans = new HashMap<Integer, Integer>();
 
+        WindyVertex depot = mGraph.getVertex(mGraph.getDepotId());
+        HashMap<Integer, Pair<Double>> customers = oarlib.improvements.util.Utils.assignCustomersToCoordinates(mGraph);
+
+        //sort the required edges by their angle from the start of the sweep
+        int numCustomers = 0;
+        for (Integer i : customers.keySet())
+            if (mGraph.getEdge(i).isRequired())
+                numCustomers++;
+
+        final double[] sweepAngle = new double[mGraph.getEidCounter()];
+        Integer[] order = new Integer[numCustomers];
+        int index = 0;
+        double theta;
+        Pair<Double> coords;
+        for (Integer i : customers.keySet()) {
+            if (!mGraph.getEdge(i).isRequired())
+                continue;
+            coords = customers.get(i);
+            theta = Math.atan2(coords.getSecond() - depot.getY(), coords.getFirst() - depot.getX()) - angle;
+            theta %= 2 * Math.PI;
+            if (theta < 0)
+                theta += 2 * Math.PI;
+            sweepAngle[i] = theta;
+            order[index++] = i;
+        }
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Double.compare(sweepAngle[o1], sweepAngle[o2]);
+            }
+        });
+
+        //now sweep
+        int numParts = mInstance.getmNumVehicles();
+        int currPart = 0;
+        int currLoad = 0;
+        int load;
+        WindyEdge temp;
+        for (Integer i : order) {
+            temp = mGraph.getEdge(i);
+            load = (temp.getCost() + temp.getReverseCost()) / 2;
+            if (currLoad > 0 && currLoad + load > upperBound && currPart < numParts - 1) {
+                currPart++;
+                currLoad = 0;
+            }
+            currLoad += load;
+            ans.put(i, currPart);
+        }
+
+        return ans;
+    }
+
+    /**
+     * Partitions the required edges using Lloyd's k-means algorithm on the midpoints of the required edges, with
+     * k equal to the number of vehicles.  The initial centers are distinct customers chosen at random, so different
+     * seeds give different partitions.  The nearest center lookups are done with a k-d tree over the centers.
+     *
+     * @param maxIter - the maximum number of assign / recenter iterations to perform
+     * @param rng     - the source of randomness for picking the initial centers
+     * @return - a map with key = edge id, value = part (0-indexed, as in the METIS output)
+     */
+    private HashMap<Integer, Integer> kMeansPartition(int maxIter, Random rng) {
+
+        HashMap<Integer, Pair<Double>> customers = new HashMap<Integer, Pair<Double>>();
+        HashMap<Integer, Pair<Double>> allCustomers = oarlib.improvements.util.Utils.assignCustomersToCoordinates(mGraph);
+        for (Integer i : allCustomers.keySet())
+            if (mGraph.getEdge(i).isRequired())
+                customers.put(i, allCustomers.get(i));
+
+        if (customers.isEmpty())
+            return new HashMap<Integer, Integer>();
+
+        //pick the initial centers
+        int k = Math.min(mInstance.getmNumVehicles(), customers.size());
+        ArrayList<Integer> ids = new ArrayList<Integer>(customers.keySet());
+        Collections.shuffle(ids, rng);
+        ArrayList<Pair<Double>> centers = new ArrayList<Pair<Double>>();
+        for (int i = 0; i < k; i++)
+            centers.add(customers.get(ids.get(i)));
+
+        HashMap<Integer, Integer> ans = null;
+        HashMap<Integer, Integer> prev;
+        double[] sumX = new double[k];
+        double[] sumY = new double[k];
+        int[] count = new int[k];
+        int part;
+        for (int iter = 0; iter < maxIter; iter++) {
+
+            //assign
+            prev = ans;
+            ans = oarlib.improvements.util.Utils.assignCustomersToPartitions(centers, customers);
+            if (ans.equals(prev))
+                break;
+
+            //recenter
+            Arrays.fill(sumX, 0);
+            Arrays.fill(sumY, 0);
+            Arrays.fill(count, 0);
+            for (Integer i : ans.keySet()) {
+                part = ans.get(i);
+                sumX[part] += customers.get(i).getFirst();
+                sumY[part] += customers.get(i).getSecond();
+                count[part]++;
+            }
+            for (int i = 0; i < k; i++) {
+                //an empty cluster keeps its old center
+                if (count[i] > 0)
+                    centers.set(i, new Pair<Double>(sumX[i] / count[i], sumY[i] / count[i]));
+            }
+        }
 
         return ans;
     }
     //endregion
 
+    /**
+     * The ways in which this solver can produce initial partitions of the required edges.
+     */
+    public enum PartitionMethod {
+        METIS,
+        SWEEP,
+        K_MEANS
+    }
+
     //region PartitionStore
     private class PartitionStore {
         private HashMap<Integer, HashSet<Route>> store;
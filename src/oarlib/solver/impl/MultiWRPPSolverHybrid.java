@@ -106,10 +106,11 @@ public class MultiWRPPSolverHybrid extends MultiVehicleSolver<WindyVertex, Windy
         //ruin
         TIntHashSet toReroute = ruin(sol1);
 
-        //mod the instance
+        //mod the instance; the re-solve gets its own copy of the graph, so the instance is never touched, (it may be
+        //shared with other solvers running concurrently)
         WindyGraph newGraph = mGraph.getDeepCopy();
         for (WindyEdge we : newGraph.getEdges()) {
-            if (!toReroute.contains(we.getId()))
+            if (!toReroute.contains(we.getMatchId()))
                 we.setRequired(false);
         }
         MinMaxKWRPP newInstance = new MinMaxKWRPP(newGraph, mInstanceName + "Part2", mRoutesToDestroy);
@@ -136,16 +137,28 @@ public class MultiWRPPSolverHybrid extends MultiVehicleSolver<WindyVertex, Windy
         }
 
         try {
-            WindyGraph toDisplay = mGraph.getDeepCopy();
-            int limi = mGraph.getEdges().size();
-            for (int i = 1; i <= limi; i++) {
-                WindyEdge we = toDisplay.getEdge(i);
-                if (!sol.containsKey(we.getId()))
-                    toDisplay.removeEdge(we.getId());
+            //just the served edges, (the partition is re-keyed by their ids in toDisplay)
+            int n = mGraph.getVertices().size();
+            WindyGraph toDisplay = new WindyGraph(n);
+            for (int i = 1; i <= n; i++) {
+                WindyVertex v = mGraph.getVertex(i);
+                if (v.hasCoordinates())
+                    toDisplay.getVertex(i).setCoordinates(v.getX(), v.getY());
+            }
+            HashMap<Integer, Integer> displaySol = new HashMap<Integer, Integer>();
+            int[] servedIds = new int[sol.size()];
+            int k = 0;
+            for (int id : sol.keySet())
+                servedIds[k++] = id;
+            Arrays.sort(servedIds);
+            for (int id : servedIds) {
+                WindyEdge we = mGraph.getEdge(id);
+                toDisplay.addEdge(we.getEndpoints().getFirst().getId(), we.getEndpoints().getSecond().getId(), we.getLabel(), we.getCost(), we.getReverseCost(), id, we.isRequired());
+                displaySol.put(toDisplay.getEidCounter() - 1, sol.get(id));
             }
 
             GraphDisplay gd = new GraphDisplay(GraphDisplay.Layout.YifanHu, toDisplay, mInstanceName);
-            gd.exportWithPartition(GraphDisplay.ExportType.PDF, sol);
+            gd.exportWithPartition(GraphDisplay.ExportType.PDF, displaySol);
         } catch (Exception e) {
             e.printStackTrace();
             return null;
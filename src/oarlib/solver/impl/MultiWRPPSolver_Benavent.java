@@ -433,13 +433,14 @@ public class MultiWRPPSolver_Benavent extends MultiVehicleSolver<WindyVertex, Wi
         origTotalCost = -1 * addedCost;
 
 
-        String ans = "=======================================================";
-        ans += "\n";
-        ans += "\n";
-        ans += this.getSolverName() + ": Printing current solution for instance " + mInstanceName + "...";
-        ans += "\n";
-        ans += "\n";
-        ans += "=======================================================";
+        StringBuilder ans = new StringBuilder();
+        ans.append("=======================================================");
+        ans.append("\n");
+        ans.append("\n");
+        ans.append(this.getSolverName()).append(": Printing current solution for instance ").append(mInstanceName).append("...");
+        ans.append("\n");
+        ans.append("\n");
+        ans.append("=======================================================");
         for (Route<WindyVertex, WindyEdge> r : currSol) {
             //gather metrics
             tempCost = r.getCost();
@@ -455,12 +456,14 @@ public class MultiWRPPSolver_Benavent extends MultiVehicleSolver<WindyVertex, Wi
 
             totalCost += tempCost;
 
-            ans += "\n";
-            ans += "Route: " + r.toString() + "\n";
-            ans += "Route Cost: " + tempCost + "\n";
-            ans += "Route Required Cost: " + r.getReqCost() + "\n";
-            ans += "Route Unrequired Cost: " + (tempCost - r.getReqCost()) + "\n";
-            ans += "\n";
+            ans.append("\n");
+            ans.append("Route: ");
+            r.appendTo(ans);
+            ans.append("\n");
+            ans.append("Route Cost: ").append(tempCost).append("\n");
+            ans.append("Route Required Cost: ").append(r.getReqCost()).append("\n");
+            ans.append("Route Unrequired Cost: ").append(tempCost - r.getReqCost()).append("\n");
+            ans.append("\n");
 
             //exportSol
             r.exportRouteToPDF(mInstanceName + tempCost, mGraph.getDepotId());
@@ -479,31 +482,31 @@ public class MultiWRPPSolver_Benavent extends MultiVehicleSolver<WindyVertex, Wi
         int totalCostShare = origTotalCost / mInstance.getmNumVehicles();
         int solutionCostShare = oneVObjective / mInstance.getmNumVehicles();
 
-        ans += "=======================================================";
-        ans += "\n";
-        ans += "\n";
-        ans += "Vertices: " + mInstance.getGraph().getVertices().size() + "\n";
-        ans += "Edges: " + mInstance.getGraph().getEdges().size() + "\n";
-        ans += "Total Edge Cost: " + origTotalCost + "\n";
-        ans += "Total Edge Cost / num vehicles (Total Cost Share): " + totalCostShare + "\n";
-        ans += "Cost of 1-Vehicle Solution: " + oneVObjective + "\n";
-        ans += "Cost of 1-Vehicle Solution / num vehicles (Solution Cost Share): " + solutionCostShare + "\n";
-        ans += "Max Route Length: " + maxLength + "\n";
-        ans += "Max Route Length / Total Cost Share: " + (double) maxLength / totalCostShare + "\n";
-        ans += "Max Route Length / Solution Cost Share: " + (double) maxLength / solutionCostShare + "\n";
-        ans += "Min Route Length: " + minLength + "\n";
-        ans += "Average Route Length: " + averageCost + "\n";
-        ans += "Average RouteLength (excluding empty): " + averageCostNoEmpty + "\n";
-        ans += "% variance: " + 100.0 * percentVariance + "\n";
-        ans += "% deviation from average length: " + 100.0 * deviationFromAverage + "\n";
-        ans += "% deviation from average length (excluding empty): " + 100.0 * deviationFromAverageNoEmpty + "\n";
-        ans += "Added cost: " + addedCost + "\n";
-        ans += "ROI: " + new RouteOverlapMetric(mGraph).evaluate(currSol) + "\n";
-        ans += "ATD: " + new AverageTraversalMetric(mGraph).evaluate(currSol) + "\n";
-        ans += "\n";
-        ans += "\n";
-        ans += "=======================================================";
-
-        return ans;
+        ans.append("=======================================================");
+        ans.append("\n");
+        ans.append("\n");
+        ans.append("Vertices: ").append(mInstance.getGraph().getVertices().size()).append("\n");
+        ans.append("Edges: ").append(mInstance.getGraph().getEdges().size()).append("\n");
+        ans.append("Total Edge Cost: ").append(origTotalCost).append("\n");
+        ans.append("Total Edge Cost / num vehicles (Total Cost Share): ").append(totalCostShare).append("\n");
+        ans.append("Cost of 1-Vehicle Solution: ").append(oneVObjective).append("\n");
+        ans.append("Cost of 1-Vehicle Solution / num vehicles (Solution Cost Share): ").append(solutionCostShare).append("\n");
+        ans.append("Max Route Length: ").append(maxLength).append("\n");
+        ans.append("Max Route Length / Total Cost Share: ").append((double) maxLength / totalCostShare).append("\n");
+        ans.append("Max Route Length / Solution Cost Share: ").append((double) maxLength / solutionCostShare).append("\n");
+        ans.append("Min Route Length: ").append(minLength).append("\n");
+        ans.append("Average Route Length: ").append(averageCost).append("\n");
+        ans.append("Average RouteLength (excluding empty): ").append(averageCostNoEmpty).append("\n");
+        ans.append("% variance: ").append(100.0 * percentVariance).append("\n");
+        ans.append("% deviation from average length: ").append(100.0 * deviationFromAverage).append("\n");
+        ans.append("% deviation from average length (excluding empty): ").append(100.0 * deviationFromAverageNoEmpty).append("\n");
+        ans.append("Added cost: ").append(addedCost).append("\n");
+        ans.append("ROI: ").append(new RouteOverlapMetric(mGraph).evaluate(currSol)).append("\n");
+        ans.append("ATD: ").append(new AverageTraversalMetric(mGraph).evaluate(currSol)).append("\n");
+        ans.append("\n");
+        ans.append("\n");
+        ans.append("=======================================================");
+
+        return ans.toString();
     }
 }
@@ -39,9 +39,6 @@ import oarlib.graph.util.Utils;
 import oarlib.link.impl.Arc;
 import oarlib.link.impl.WindyEdge;
 import oarlib.problem.impl.ProblemAttributes;
-import oarlib.problem.impl.auxiliary.PartitioningProblem;
-import oarlib.problem.impl.io.PartitionFormat;
-import oarlib.problem.impl.io.PartitionReader;
 import oarlib.problem.impl.io.ProblemFormat;
 import oarlib.problem.impl.io.ProblemWriter;
 import oarlib.problem.impl.multivehicle.MinMaxKWRPP;
@@ -54,6 +51,7 @@ import oarlib.vertex.impl.WindyVertex;
 import org.apache.log4j.Logger;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.util.*;
 
 /**
@@ -63,9 +61,13 @@ public class MultiWRPP_CollapseSimple extends MultiVehicleSolver<WindyVertex, Wi
 
     private static final Logger LOGGER = Logger.getLogger(MultiWRPP_CollapseSimple.class);
 
+    private static final String DEFAULT_BNC = "/usr/local/bin/bnc2";
+    private static final String COLLAPSED_FILE = "collapsed.txt";
+
     private int maxDistance;
     private boolean maxDistSet;
     private double alpha;
+    private String mBncExecutable;
 
     /**
      * Default constructor; must set problem instance.
@@ -76,6 +78,7 @@ public class MultiWRPP_CollapseSimple extends MultiVehicleSolver<WindyVertex, Wi
         super(instance);
         maxDistSet = false;
         alpha = .5;
+        mBncExecutable = System.getProperty(MultiWRPP_CommunityCollapse.BNC_PROPERTY, DEFAULT_BNC);
     }
 
     @Override
@@ -367,6 +370,75 @@ public class MultiWRPP_CollapseSimple extends MultiVehicleSolver<WindyVertex, Wi
         this.alpha = alpha;
     }
 
+    public String getBncExecutable() {
+        return mBncExecutable;
+    }
+
+    /**
+     * @param newBncExecutable - path to the branch and cut executable used to solve the collapsed instance.
+     */
+    public void setBncExecutable(String newBncExecutable) {
+        if (newBncExecutable == null) {
+            LOGGER.warn("Invalid argument.  bncExecutable may not be null.");
+            return;
+        }
+        mBncExecutable = newBncExecutable;
+    }
+
+    /**
+     * Runs the branch and cut solver on the collapsed instance.  Its output goes to a log in the scratch directory,
+     * (so that it can never block on a full pipe), which is echoed once it's done.
+     *
+     * @param dir           - the scratch directory; the solver is run from here, and writes its solution here
+     * @param collapsedFile - the collapsed instance, in Corberan format
+     * @param g             - the collapsed graph
+     * @return - true if the solver ran successfully, false oth.
+     */
+    private boolean runCorberan(File dir, File collapsedFile, WindyGraph g) throws IOException, InterruptedException {
+
+        ProcessBuilder pb = new ProcessBuilder(mBncExecutable, collapsedFile.getPath(), Integer.toString(mInstance.getmNumVehicles()), Double.toString(alpha), Integer.toString(getLowerBound(g)), "4");
+        pb.directory(dir);
+        pb.redirectErrorStream(true);
+        File log = new File(dir, "bnc.log");
+        pb.redirectOutput(log);
+        Process run = pb.start();
+
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(run.getOutputStream()));
+        writer.write("X\n");
+        writer.flush();
+        writer.close();
+
+        LOGGER.info("Running Corberan Solver");
+        int exitCode = run.waitFor();
+        LOGGER.debug("Exit Code : " + exitCode);
+
+        BufferedReader bfr = new BufferedReader(new FileReader(log));
+        try {
+            String line;
+            while ((line = bfr.readLine()) != null) {
+                LOGGER.debug("Corberan Output: " + line);
+            }
+        } finally {
+            bfr.close();
+        }
+
+        if (exitCode != 0) {
+            LOGGER.error("The branch and cut solver exited with status " + exitCode + ".");
+            return false;
+        }
+        LOGGER.info("Complete");
+        return true;
+    }
+
+    private static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null)
+            for (File child : children)
+                delete(child);
+        if (!f.delete())
+            LOGGER.warn("Could not delete temporary file " + f.getPath());
+    }
+
     protected float[] getScaling() {
 
         //For the display
@@ -489,23 +561,11 @@ public class MultiWRPP_CollapseSimple extends MultiVehicleSolver<WindyVertex, Wi
 
             //OPTIONAL: alter edge weights to guide?
 
-            //run METIS on the graph
-            String filename = "C:\\Users\\Oliver\\Desktop\\RandomGraph.graph";
-
-            //write it to a file
-            ProblemWriter gw = new ProblemWriter(ProblemFormat.Name.METIS);
-            gw.writeInstance(new PartitioningProblem(edgeDual, null, null), filename);
-
             //num parts to partition into
             int numParts = mInstance.getmNumVehicles();
 
             //partition the graph
-            runMetis(numParts, filename);
-
-            //now read the partition and reconstruct the induced subrgraphs on which we solve the WPP to get our final solution
-            PartitionReader pr = new PartitionReader(PartitionFormat.Name.METIS);
-
-            HashMap<Integer, Integer> edgeDualPart = pr.readPartition(filename + ".part." + numParts);
+            HashMap<Integer, Integer> edgeDualPart = runPartitioner(edgeDual, numParts);
 
             //figure out who's who
             HashMap<Integer, Integer> partToPart = new HashMap<Integer, Integer>();
@@ -551,53 +611,35 @@ public class MultiWRPP_CollapseSimple extends MultiVehicleSolver<WindyVertex, Wi
 
         HashSet<HashSet<Integer>> ans = new HashSet<HashSet<Integer>>();
 
-        //write the graph to a .txt in Corberan format
+        //each call gets its own scratch directory, so that concurrent solves don't clobber each other's files
+        File dir = null;
+        Collection<Tour<DirectedVertex, Arc>> collapsedRoutes;
         try {
+            dir = Files.createTempDirectory("oarlib-bnc").toFile();
+            File collapsedFile = new File(dir, COLLAPSED_FILE);
+
+            //write the graph to a .txt in Corberan format
             ProblemWriter pw = new ProblemWriter(ProblemFormat.Name.Corberan);
             MinMaxKWRPP prob = new MinMaxKWRPP(g, "collapsed", mInstance.getmNumVehicles());
-            pw.writeInstance(prob, "/Users/oliverlum/Downloads/bnc2/collapsed.txt");
-        } catch (Exception ex) {
-            ex.printStackTrace();
-            return null;
-        }
-
-        //call the Corberan code
-        try {
-
-            ProcessBuilder pb = new ProcessBuilder("sudo", "/Users/oliverlum/Downloads/bnc2/a.out", "/Users/oliverlum/Downloads/bnc2/collapsed.txt", Integer.toString(mInstance.getmNumVehicles()), Double.toString(alpha), Integer.toString(getLowerBound(g)), "4");
-            Process run = pb.start();
+            if (!pw.writeInstance(prob, collapsedFile.getPath()))
+                return null;
 
-            OutputStream stdin = run.getOutputStream();
-            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(stdin));
+            //call the Corberan code
+            if (!runCorberan(dir, collapsedFile, g))
+                return null;
 
-            String input = "7hqbdvdbm\n";
-            writer.write(input);
-            writer.flush();
-
-            input = "X\n";
-            writer.write(input);
-            writer.flush();
-
-            System.out.println("Running Corberan Solver");
-            BufferedReader bfr = new BufferedReader(new InputStreamReader(run.getInputStream()));
-
-            int exitCode = run.waitFor();
-            System.out.println("Exit Code : " + exitCode);
-
-            String line;
-            while ((line = bfr.readLine()) != null) {
-                System.out.println("Corberan Output: " + line);
-            }
-
-            System.out.println("Complete");
-            writer.close();
+            //parse the output
+            collapsedRoutes = SolutionImporter.importRoutes(new File(dir, "collapsed_" + mInstance.getmNumVehicles() + "_3_" + Integer.toString((int) (alpha * 100)) + "_op.txt").getPath(), g.getDepotId(), SolutionImporter.RouteFormat.CORBERAN);
+            if (collapsedRoutes == null)
+                return null;
         } catch (Exception ex) {
             ex.printStackTrace();
             return null;
+        } finally {
+            if (dir != null)
+                delete(dir);
         }
 
-        //parse the output
-        Collection<Tour<DirectedVertex, Arc>> collapsedRoutes = SolutionImporter.importRoutes("/Users/oliverlum/Downloads/bnc2/collapsed_" + mInstance.getmNumVehicles() + "_3_" + Integer.toString((int) (alpha * 100)) + "_op.txt", g.getDepotId(), SolutionImporter.RouteFormat.CORBERAN);
         HashSet<Tour> finalCollapsedRoutes = SolutionImporter.mapToGraph(g, collapsedRoutes);
 
         HashSet<Integer> toAdd = new HashSet<Integer>();
@@ -689,7 +731,9 @@ public class MultiWRPP_CollapseSimple extends MultiVehicleSolver<WindyVertex, Wi
 
     @Override
     public Solver<WindyVertex, WindyEdge, WindyGraph> instantiate(Problem<WindyVertex, WindyEdge, WindyGraph> p) {
-        return new MultiWRPP_CollapseSimple(p);
+        MultiWRPP_CollapseSimple ans = new MultiWRPP_CollapseSimple(p);
+        ans.setBncExecutable(mBncExecutable);
+        return ans;
     }
 
     @Override
@@ -33,13 +33,11 @@ import oarlib.graph.impl.WindyGraph;
 import oarlib.graph.transform.impl.EdgeInducedRequirementTransform;
 import oarlib.graph.util.CommonAlgorithms;
 import oarlib.graph.util.Pair;
+import oarlib.graph.util.WindyLowerBound;
 import oarlib.improvements.metaheuristics.impl.OnePassBenaventIPFramework;
 import oarlib.link.impl.Arc;
 import oarlib.link.impl.WindyEdge;
 import oarlib.problem.impl.ProblemAttributes;
-import oarlib.problem.impl.auxiliary.PartitioningProblem;
-import oarlib.problem.impl.io.PartitionFormat;
-import oarlib.problem.impl.io.PartitionReader;
 import oarlib.problem.impl.io.ProblemFormat;
 import oarlib.problem.impl.io.ProblemWriter;
 import oarlib.problem.impl.multivehicle.MinMaxKWRPP;
@@ -52,6 +50,7 @@ import oarlib.vertex.impl.WindyVertex;
 import org.apache.log4j.Logger;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 
@@ -61,7 +60,17 @@ import java.util.concurrent.TimeUnit;
 public class MultiWRPP_CommunityCollapse extends MultiVehicleSolver<WindyVertex, WindyEdge, WindyGraph> {
 
     private static final Logger LOGGER = Logger.getLogger(MultiWRPP_CollapseSimple.class);
+
+    /**
+     * System property that may be used to override the location of the branch and cut executable for the collapsed
+     * min-max K-WRPP.
+     */
+    public static final String BNC_PROPERTY = "oarlib.bnc";
+    private static final String DEFAULT_BNC = "/usr/local/bin/bnc2";
+    private static final String COLLAPSED_FILE = "collapsed.txt";
+
     private HashMap<Integer, HashSet<Integer>> packMap;
+    private String mBncExecutable;
     private double alpha;
     private int mNumPartitions;
     private int mRealNumPartitions;
@@ -77,6 +86,7 @@ public class MultiWRPP_CommunityCollapse extends MultiVehicleSolver<WindyVertex,
         alpha = .5;
         mNumPartitions = 20;
         mRealNumPartitions = 0;
+        mBncExecutable = System.getProperty(BNC_PROPERTY, DEFAULT_BNC);
     }
 
     public MultiWRPP_CommunityCollapse(Problem<WindyVertex, WindyEdge, WindyGraph> instance, double alphaWeight, int numParts) throws IllegalArgumentException {
@@ -85,6 +95,7 @@ public class MultiWRPP_CommunityCollapse extends MultiVehicleSolver<WindyVertex,
         alpha = alphaWeight;
         mNumPartitions = numParts;
         mRealNumPartitions = 0;
+        mBncExecutable = System.getProperty(BNC_PROPERTY, DEFAULT_BNC);
     }
 
     @Override
@@ -263,21 +274,7 @@ public class MultiWRPP_CommunityCollapse extends MultiVehicleSolver<WindyVertex,
             }
 
             //run METIS on the graph
-
-            String filename = "C:\\Users\\Oliver\\Desktop\\RandomGraph.graph";
-
-            //write it to a file
-            ProblemWriter gw = new ProblemWriter(ProblemFormat.Name.METIS);
-            gw.writeInstance(new PartitioningProblem(g, null, null), filename);
-
-            //partition the graph
-            runMetis(n, filename);
-
-            //now read the partition and reconstruct the induced subrgraphs on which we solve the WPP to get our final solution
-            PartitionReader pr = new PartitionReader(PartitionFormat.Name.METIS);
-
-            HashMap<Integer, Integer> ans = pr.readPartition(filename + ".part." + n);
-            return ans;
+            return runPartitioner(g, n);
 
         } catch (Exception ex) {
             ex.printStackTrace();
@@ -530,15 +527,10 @@ public class MultiWRPP_CommunityCollapse extends MultiVehicleSolver<WindyVertex,
     }
 
     private int getLowerBound(WindyGraph g) {
-        //bad lower bound for now, but it's something fast
-        int sum = 0;
-        for (WindyEdge we : g.getEdges()) {
-            if (we.isRequired())
-                sum += we.getCost() + we.getServiceCost();
-            if (we.isReverseRequired())
-                sum += we.getReverseCost() + we.getReverseServiceCost();
-        }
-        return sum;
+        //the windy postman flow relaxation, (servicing included); the bnc solver wants it as an int
+        WindyLowerBound lb = new WindyLowerBound(g);
+        lb.setIncludeServiceCosts(true);
+        return (int) Math.min(Integer.MAX_VALUE, lb.getLowerBound());
     }
 
     private LinkedHashSet<HashSet<Integer>> callCorberan(WindyGraph g) {
@@ -554,69 +546,35 @@ public class MultiWRPP_CommunityCollapse extends MultiVehicleSolver<WindyVertex,
 
         LinkedHashSet<HashSet<Integer>> ans = new LinkedHashSet<HashSet<Integer>>();
 
-        //write the graph to a .txt in Corberan format
+        //each call gets its own scratch directory, so that concurrent solves don't clobber each other's files
+        File dir = null;
+        Collection<Tour<DirectedVertex, Arc>> collapsedRoutes;
         try {
+            dir = Files.createTempDirectory("oarlib-bnc").toFile();
+            File collapsedFile = new File(dir, COLLAPSED_FILE);
+
+            //write the graph to a .txt in Corberan format
             ProblemWriter pw = new ProblemWriter(ProblemFormat.Name.Corberan);
             MinMaxKWRPP prob = new MinMaxKWRPP(g, "collapsed", mInstance.getmNumVehicles());
-            pw.writeInstance(prob, "/Users/oliverlum/Downloads/bnc2/collapsed.txt");
-        } catch (Exception ex) {
-            ex.printStackTrace();
-            return null;
-        }
+            if (!pw.writeInstance(prob, collapsedFile.getPath()))
+                return null;
 
-        //call the Corberan code
-        try {
+            //call the Corberan code
+            if (!runCorberan(dir, collapsedFile, g))
+                return null;
 
-            ProcessBuilder pb = new ProcessBuilder("sudo", "/Users/oliverlum/Downloads/bnc2/a.out", "/Users/oliverlum/Downloads/bnc2/collapsed.txt", Integer.toString(mInstance.getmNumVehicles()), Double.toString(alpha), Integer.toString(getLowerBound(g)), "4");
-            Process run = pb.start();
-
-            OutputStream stdin = run.getOutputStream();
-            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(stdin));
-
-            String input = "X\n";
-            writer.write(input);
-            writer.flush();
-
-            System.out.println("Running Corberan Solver");
-            BufferedReader bfr = new BufferedReader(new InputStreamReader(run.getInputStream()));
-
-            /*boolean exited = false;
-            long timeBeforeExecute = System.currentTimeMillis();
-            long timeout = 60000;
-            while(!exited) {
-                try {
-                    Thread.sleep(1000);
-                    run.exitValue();
-                    exited = true;
-                } catch (IllegalThreadStateException ex) {
-                    if(System.currentTimeMillis() > timeBeforeExecute + timeout)
-                        break;
-                }
-            }
-
-
-            if(exited)
-                System.out.println("Exit Code : " + run.exitValue());
-            else
-                return null;*/
-
-            int exitCode = run.waitFor();
-            System.out.println("Exit Code : " + exitCode);
-
-            String line;
-            while ((line = bfr.readLine()) != null) {
-                System.out.println("Corberan Output: " + line);
-            }
-
-            System.out.println("Complete");
-            writer.close();
+            //parse the output
+            collapsedRoutes = SolutionImporter.importRoutes(new File(dir, "collapsed_" + mInstance.getmNumVehicles() + "_3_" + Integer.toString((int) Math.round(alpha * 100)) + "_op.txt").getPath(), g.getDepotId(), SolutionImporter.RouteFormat.CORBERAN);
+            if (collapsedRoutes == null)
+                return null;
         } catch (Exception ex) {
             ex.printStackTrace();
             return null;
+        } finally {
+            if (dir != null)
+                delete(dir);
         }
 
-        //parse the output
-        Collection<Tour<DirectedVertex, Arc>> collapsedRoutes = SolutionImporter.importRoutes("/Users/oliverlum/Downloads/bnc2/collapsed_" + mInstance.getmNumVehicles() + "_3_" + Integer.toString((int) Math.round(alpha * 100)) + "_op.txt", g.getDepotId(), SolutionImporter.RouteFormat.CORBERAN);
         HashSet<Tour> finalCollapsedRoutes = SolutionImporter.mapToGraph(g, collapsedRoutes);
 
         //DEBUG
@@ -647,6 +605,60 @@ public class MultiWRPP_CommunityCollapse extends MultiVehicleSolver<WindyVertex,
         return ans;
     }
 
+    /**
+     * Runs the branch and cut solver on the collapsed instance.  Its output goes to a log in the scratch directory,
+     * (so that it can never block on a full pipe), which is echoed once it's done.
+     *
+     * @param dir           - the scratch directory; the solver is run from here, and writes its solution here
+     * @param collapsedFile - the collapsed instance, in Corberan format
+     * @param g             - the collapsed graph
+     * @return - true if the solver ran successfully, false oth.
+     */
+    private boolean runCorberan(File dir, File collapsedFile, WindyGraph g) throws IOException, InterruptedException {
+
+        ProcessBuilder pb = new ProcessBuilder(mBncExecutable, collapsedFile.getPath(), Integer.toString(mInstance.getmNumVehicles()), Double.toString(alpha), Integer.toString(getLowerBound(g)), "4");
+        pb.directory(dir);
+        pb.redirectErrorStream(true);
+        File log = new File(dir, "bnc.log");
+        pb.redirectOutput(log);
+        Process run = pb.start();
+
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(run.getOutputStream()));
+        writer.write("X\n");
+        writer.flush();
+        writer.close();
+
+        LOGGER.info("Running Corberan Solver");
+        int exitCode = run.waitFor();
+        LOGGER.debug("Exit Code : " + exitCode);
+
+        BufferedReader bfr = new BufferedReader(new FileReader(log));
+        try {
+            String line;
+            while ((line = bfr.readLine()) != null) {
+                LOGGER.debug("Corberan Output: " + line);
+            }
+        } finally {
+            bfr.close();
+        }
+
+        if (exitCode != 0) {
+            LOGGER.error("The branch and cut solver exited with status " + exitCode + ".");
+            return false;
+        }
+        LOGGER.info("Complete");
+        return true;
+    }
+
+    private static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null)
+            for (File child : children)
+                delete(child);
+        if (!f.delete())
+            LOGGER.warn("Could not delete temporary file " + f.getPath());
+    }
+
     private HashMap<Integer, HashSet<Integer>> expand(HashMap<Integer, Integer> vParts, HashMap<Integer, Integer> eParts, int n) {
 
         //key = part #
@@ -817,6 +829,21 @@ public class MultiWRPP_CommunityCollapse extends MultiVehicleSolver<WindyVertex,
         return we.unflattenRoute(ansRoute, ansDir);
     }
 
+    public String getBncExecutable() {
+        return mBncExecutable;
+    }
+
+    /**
+     * @param newBncExecutable - path to the branch and cut executable used to solve the collapsed instance.
+     */
+    public void setBncExecutable(String newBncExecutable) {
+        if (newBncExecutable == null) {
+            LOGGER.warn("Invalid argument.  bncExecutable may not be null.");
+            return;
+        }
+        mBncExecutable = newBncExecutable;
+    }
+
     public void setAlpha(double newAlpha) throws IllegalArgumentException {
         if (newAlpha < 0 || newAlpha > 1)
             throw new IllegalArgumentException("Alpha must be set to a value between 0 and 1, (inclusive).");
@@ -841,7 +868,9 @@ public class MultiWRPP_CommunityCollapse extends MultiVehicleSolver<WindyVertex,
 
     @Override
     public Solver<WindyVertex, WindyEdge, WindyGraph> instantiate(Problem<WindyVertex, WindyEdge, WindyGraph> p) {
-        return new MultiWRPP_CommunityCollapse(p, alpha, mNumPartitions);
+        MultiWRPP_CommunityCollapse ans = new MultiWRPP_CommunityCollapse(p, alpha, mNumPartitions);
+        ans.setBncExecutable(mBncExecutable);
+        return ans;
     }
 
     @Override
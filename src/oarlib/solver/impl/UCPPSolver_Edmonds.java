@@ -23,6 +23,7 @@
  */
 package oarlib.solver.impl;
 
+import gnu.trove.TIntArrayList;
 import gnu.trove.TIntObjectHashMap;
 import oarlib.core.Graph;
 import oarlib.core.Problem;
@@ -64,12 +65,10 @@ public class UCPPSolver_Edmonds extends SingleVehicleSolver<UndirectedVertex, Ed
              * path - the shortest paths next hop matrix
              * edgePath - the shortest paths next edge matrix
              *
-             * matchingGraph - the complete graph where each vertex represents an odd vertex in the original,
-             * and edges have weight equal to the shortest path costs in the original.
+             * oddVertices - the ids of the odd degree vertices in the original
              *
-             * oddVertices - the vertex set of matchingGraph
-             *
-             * matchingSolution - the solution to the min cost perfect matching; it is a collection of pairs of vertices
+             * matchingSolution - the solution to the min cost perfect matching, where the cost of pairing two odd vertices is
+             * their shortest path cost in the original; entries 2i and 2i+1 hold the ith matched pair
              */
 
             //solve shortest paths
@@ -79,32 +78,19 @@ public class UCPPSolver_Edmonds extends SingleVehicleSolver<UndirectedVertex, Ed
             int[][] edgePath = new int[n + 1][n + 1];
             CommonAlgorithms.fwLeastCostPaths(input, dist, path, edgePath);
 
-            //setup the complete graph composed entirely of the unbalanced vertices
-            UndirectedGraph matchingGraph = new UndirectedGraph();
-
-            //setup our graph of unbalanced vertices
+            //collect the unbalanced vertices
+            TIntArrayList oddVertices = new TIntArrayList();
             for (UndirectedVertex v : input.getVertices()) {
                 if (v.getDegree() % 2 == 1) {
-                    matchingGraph.addVertex(new UndirectedVertex("oddVertex"), v.getId());
-                }
-            }
-
-            //connect with least cost edges
-            Collection<UndirectedVertex> oddVertices = matchingGraph.getVertices();
-            for (UndirectedVertex v : oddVertices) {
-                for (UndirectedVertex v2 : oddVertices) {
-                    //only add one edge per pair of vertices
-                    if (v.getId() <= v2.getId())
-                        continue;
-                    matchingGraph.addEdge(new Edge("matchingEdge", new Pair<UndirectedVertex>(v, v2), dist[v.getMatchId()][v2.getMatchId()]));
+                    oddVertices.add(v.getId());
                 }
             }
 
-            Set<Pair<UndirectedVertex>> matchingSolution = CommonAlgorithms.minCostMatching(matchingGraph);
+            int[] matchingSolution = CommonAlgorithms.sparseMinCostMatching(oddVertices.toNativeArray(), dist);
 
             //add the paths to the graph
-            for (Pair<UndirectedVertex> p : matchingSolution) {
-                CommonAlgorithms.addShortestPath(input, dist, path, edgePath, new Pair<Integer>(p.getFirst().getMatchId(), p.getSecond().getMatchId()));
+            for (int i = 0; i < matchingSolution.length; i += 2) {
+                CommonAlgorithms.addShortestPath(input, dist, path, edgePath, new Pair<Integer>(matchingSolution[i], matchingSolution[i + 1]));
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -33,8 +33,10 @@ import oarlib.graph.impl.DirectedGraph;
 import oarlib.graph.impl.UndirectedGraph;
 import oarlib.graph.impl.WindyGraph;
 import oarlib.graph.util.CommonAlgorithms;
+import oarlib.graph.util.MinCostFlow;
 import oarlib.graph.util.Pair;
 import oarlib.graph.util.Utils;
+import oarlib.graph.util.WindyDistanceOracle;
 import oarlib.link.impl.Arc;
 import oarlib.link.impl.Edge;
 import oarlib.link.impl.WindyEdge;
@@ -309,13 +311,14 @@ public class WRPPSolver_Benavent_H1 extends SingleVehicleSolver<WindyVertex, Win
     @Override
     protected Collection<Tour> solve() {
         try {
-            WindyGraph copy = mInstance.getGraph().getDeepCopy();
+            WindyGraph copy = mInstance.getGraph(); //only read from, (everything below builds graphs of its own), so no need to copy it
+            WindyDistanceOracle oracle = new WindyDistanceOracle(copy); //copy is never modified, so share its shortest paths
 
             /*
              * Connect up the required components of the graph, just as in WRPP1.
 			 * Match ids in windyReq correspond to edge ids in copy after this.
 			 */
-            WindyGraph windyReq = WRPPSolver_Win.connectRequiredComponents(copy);
+            WindyGraph windyReq = WRPPSolver_Win.connectRequiredComponents(copy, oracle);
 
             //calculate average cost of edges in Er', so add up (cij + cji)/2, and then divide by num edges of windyReq
             double averageCost = calculateAverageCost(windyReq);
@@ -355,7 +358,7 @@ public class WRPPSolver_Benavent_H1 extends SingleVehicleSolver<WindyVertex, Win
 
 
                 //solve the flow problem on Gaux with demands from Gdr
-                int flowanswer[] = CommonAlgorithms.shortestSuccessivePathsMinCostNetworkFlow(Gaux);
+                int flowanswer[] = CommonAlgorithms.minCostNetworkFlow(Gaux, MinCostFlow.Algorithm.SUCCESSIVE_SHORTEST_PATHS);
 
 				/*
 				 * Create a list of ids L (in copy) which represent guys that are likely to appear in the min cost flow
@@ -372,8 +375,8 @@ public class WRPPSolver_Benavent_H1 extends SingleVehicleSolver<WindyVertex, Win
             DirectedGraph ans = WRPPSolver_Win.constructOptimalWindyTour(windyReq);
 
             ans.setDepotId(copy.getDepotId());
-            WRPPSolver_Win.eliminateRedundantCycles(ans, windyReq, copy);
-            WRPPSolver_Win.repairSolution(ans, copy);
+            WRPPSolver_Win.eliminateRedundantCycles(ans, windyReq, copy, oracle);
+            WRPPSolver_Win.repairSolution(ans, copy, oracle);
 
             ArrayList<Integer> tour;
             tour = CommonAlgorithms.tryHierholzer(ans);
@@ -23,18 +23,20 @@
  */
 package oarlib.solver.impl;
 
+import gnu.trove.TIntArrayList;
 import gnu.trove.TIntObjectHashMap;
 import oarlib.core.Graph;
 import oarlib.core.Problem;
 import oarlib.core.SingleVehicleSolver;
 import oarlib.core.Solver;
-import oarlib.exceptions.NegativeCycleException;
 import oarlib.graph.impl.DirectedGraph;
 import oarlib.graph.impl.UndirectedGraph;
 import oarlib.graph.impl.WindyGraph;
 import oarlib.graph.util.CommonAlgorithms;
+import oarlib.graph.util.MinCostFlow;
 import oarlib.graph.util.Pair;
 import oarlib.graph.util.Utils;
+import oarlib.graph.util.WindyDistanceOracle;
 import oarlib.link.impl.Arc;
 import oarlib.link.impl.Edge;
 import oarlib.link.impl.WindyEdge;
@@ -51,8 +53,20 @@ public class WRPPSolver_Win extends SingleVehicleSolver<WindyVertex, WindyEdge,
 
     private static final Logger LOGGER = Logger.getLogger(WRPPSolver_Win.class);
 
+    private LinkedHashMap<String, Double> mPhaseTimes; //ms spent in each phase of the last solve
+
     public WRPPSolver_Win(Problem<WindyVertex, WindyEdge, WindyGraph> instance) throws IllegalArgumentException {
         super(instance);
+        mPhaseTimes = new LinkedHashMap<String, Double>();
+    }
+
+    /**
+     * @return - the time, (in ms), spent in each phase of the last solve, in the order in which the phases ran.  The
+     * "Shortest Paths" entry is the part of the total that was spent computing shortest paths, (which happens lazily,
+     * inside the other phases).
+     */
+    public LinkedHashMap<String, Double> getPhaseTimes() {
+        return mPhaseTimes;
     }
 
     /**
@@ -63,6 +77,18 @@ public class WRPPSolver_Win extends SingleVehicleSolver<WindyVertex, WindyEdge,
      * @return - the connected 'required' graph on which we solve the WPP
      */
     public static WindyGraph connectRequiredComponents(WindyGraph g) {
+        return connectRequiredComponents(g, new WindyDistanceOracle(g));
+    }
+
+    /**
+     * Carries out the connection procedure contained in Benavent's paper, solving an MST problem on the conncted components
+     * induced by the required edges of g.
+     *
+     * @param g      - the original windy graph representing the WRP Problem.
+     * @param oracle - shortest paths in g
+     * @return - the connected 'required' graph on which we solve the WPP
+     */
+    public static WindyGraph connectRequiredComponents(WindyGraph g, WindyDistanceOracle oracle) {
         try {
             int n = g.getVertices().size(); //num vertices
             int m = g.getEdges().size(); // num edges
@@ -142,10 +168,8 @@ public class WRPPSolver_Win extends SingleVehicleSolver<WindyVertex, WindyEdge,
                 }
             }
 
-            //now find shortest paths in the original graph to set up the MST graph
-            int[] dist = new int[n + 1];
-            int[] path = new int[n + 1];
-            int[] edgePath = new int[n + 1];
+            int[] path;
+            int[] edgePath;
 
             //now create a complete collapsed graph over which we shall solve an MST problem
             UndirectedGraph mstGraph = new UndirectedGraph();
@@ -161,46 +185,60 @@ public class WRPPSolver_Win extends SingleVehicleSolver<WindyVertex, WindyEdge,
              * We need to figure out which of the components is real, and don't correspond to these
 			 * unconnected vertices.  To do so, we set up this list that only holds legitimate indices.
 			 */
+            int[] realIndex = new int[component[0] + 1]; //realIndex[c] = index of component c in realComponents
             ArrayList<Integer> realComponents = new ArrayList<Integer>();
             realComponents.add(0);
             for (int i = 1; i <= component[0]; i++) {
-                if (!extraComponents.contains(i))
+                if (!extraComponents.contains(i)) {
+                    realIndex[i] = realComponents.size();
                     realComponents.add(i);
+                }
             }
 
-            int comp1, comp2;
-            Double averagePathCost1;
+            int comp1, comp2, candidate;
             HashMap<Pair<Integer>, Integer> minCostPathVal = new HashMap<Pair<Integer>, Integer>(); //key is components being connected, value is best cost btw them.
             HashMap<Pair<Integer>, Pair<Integer>> minCostPathNodes = new HashMap<Pair<Integer>, Pair<Integer>>();
             Pair<Integer> tempKey;
+            //the best path from the current source to each component, (so we only touch the maps once per component)
+            int[] bestFromSource = new int[mstN + 1];
+            int[] bestEndFromSource = new int[mstN + 1];
             //figure out the min cost path from each component to each component
             for (int i = 1; i <= n; i++) {
                 //don't add if it's a bogus component
                 if (extraVertices.contains(i))
                     continue;
-                CommonAlgorithms.dijkstrasAlgorithm(g, i, dist, path, edgePath);
-                comp1 = realComponents.indexOf(component[i]);
+                comp1 = realIndex[component[i]];
+                Arrays.fill(bestFromSource, Integer.MAX_VALUE);
                 for (int j = 1; j <= n; j++) {
                     //don't add if it's a bogus component
                     if (extraVertices.contains(j))
                         continue;
-                    comp2 = realComponents.indexOf(component[j]);
+                    comp2 = realIndex[component[j]];
 
                     //don't care about internal distances
                     if (comp1 == comp2)
                         continue;
 
                     //the average path cost in the original graph from i to j
-                    averagePathCost1 = calculateAveragePathCost(g, i, j, path, edgePath);
+                    candidate = (int) (2 * oracle.getAveragePathCost(i, j));
+                    if (candidate < bestFromSource[comp2]) {
+                        bestFromSource[comp2] = candidate;
+                        bestEndFromSource[comp2] = j;
+                    }
+                }
+
+                for (comp2 = 1; comp2 <= mstN; comp2++) {
+                    if (bestFromSource[comp2] == Integer.MAX_VALUE)
+                        continue;
                     if (comp1 < comp2)
                         tempKey = new Pair<Integer>(comp1, comp2);
                     else
                         tempKey = new Pair<Integer>(comp2, comp1);
 
                     //If we found a shorter path, record it.
-                    if (!minCostPathVal.containsKey(tempKey) || ((int) (2 * averagePathCost1) < minCostPathVal.get(tempKey))) {
-                        minCostPathVal.put(tempKey, (int) (2 * averagePathCost1));
-                        minCostPathNodes.put(tempKey, new Pair<Integer>(i, j));
+                    if (!minCostPathVal.containsKey(tempKey) || (bestFromSource[comp2] < minCostPathVal.get(tempKey))) {
+                        minCostPathVal.put(tempKey, bestFromSource[comp2]);
+                        minCostPathNodes.put(tempKey, new Pair<Integer>(i, bestEndFromSource[comp2]));
                     }
                 }
             }
@@ -232,7 +270,8 @@ public class WRPPSolver_Win extends SingleVehicleSolver<WindyVertex, WindyEdge,
                     curr = pathToAdd.getFirst();
                     end = pathToAdd.getSecond();
 
-                    CommonAlgorithms.dijkstrasAlgorithm(g, curr, dist, path, edgePath);
+                    path = oracle.getPath(curr);
+                    edgePath = oracle.getEdgePath(curr);
 
                     do {
                         next = path[end];
@@ -255,6 +294,16 @@ public class WRPPSolver_Win extends SingleVehicleSolver<WindyVertex, WindyEdge,
      * @param ans - the directed graph representing that optimal windy tour.
      */
     public static void eliminateRedundantCycles(DirectedGraph ans, WindyGraph windyReq, WindyGraph orig) {
+        eliminateRedundantCycles(ans, windyReq, orig, new WindyDistanceOracle(orig));
+    }
+
+    /**
+     * Method to remove any cycles of non-required edges, or added edges
+     *
+     * @param ans    - the directed graph representing that optimal windy tour.
+     * @param oracle - shortest paths in orig
+     */
+    public static void eliminateRedundantCycles(DirectedGraph ans, WindyGraph windyReq, WindyGraph orig, WindyDistanceOracle oracle) {
         try {
 
             boolean hasSelfDummyArc = false;
@@ -483,9 +532,8 @@ public class WRPPSolver_Win extends SingleVehicleSolver<WindyVertex, WindyEdge,
             boolean midPath = false;
             int nextEdge;
             WindyEdge origTemp;
-            int[] dist = new int[n + 1];
-            int[] path = new int[n + 1];
-            int[] edgePath = new int[n + 1];
+            int[] path = null;
+            int[] edgePath = null;
 
             for (int i = 1; i <= m; i++) {
                 temp = ansArcs.get(tour.get(i - 1));
@@ -494,7 +542,8 @@ public class WRPPSolver_Win extends SingleVehicleSolver<WindyVertex, WindyEdge,
                     startId = temp.getTail().getId();
                     midPath = true;
 
-                    CommonAlgorithms.dijkstrasAlgorithm(orig, startId, dist, path, edgePath);
+                    path = oracle.getPath(startId);
+                    edgePath = oracle.getEdgePath(startId);
 
                     //cleanup
                     if (i == m) {
@@ -646,7 +695,7 @@ public class WRPPSolver_Win extends SingleVehicleSolver<WindyVertex, WindyEdge,
                 if (v.getDelta() != 0)
                     v.setDemand(-1 * v.getDelta()); //y negative?
             }
-            int[] flowanswer = CommonAlgorithms.shortestSuccessivePathsMinCostNetworkFlow(flowGraph);
+            int[] flowanswer = CommonAlgorithms.minCostNetworkFlow(flowGraph, MinCostFlow.Algorithm.SUCCESSIVE_SHORTEST_PATHS);
 
             //now parse the result
             TIntObjectHashMap<Arc> flowEdges = flowGraph.getInternalEdgeMap();
@@ -712,17 +761,25 @@ public class WRPPSolver_Win extends SingleVehicleSolver<WindyVertex, WindyEdge,
      * @param g         - the required graph generated by connectRequiredComponents
      */
     public static void eulerAugment(WindyGraph fullGraph, WindyGraph g) {
+        eulerAugment(fullGraph, g, new WindyDistanceOracle(fullGraph));
+    }
+
+    /**
+     * Solves the min-cost matching problem over a complete graph
+     * consisting of corresponding vertices for each odd vertex in the windyReq graph
+     *
+     * @param fullGraph - the whole graph so we can solve a shortest path in it.
+     * @param g         - the required graph generated by connectRequiredComponents
+     * @param oracle    - shortest paths in fullGraph
+     */
+    public static void eulerAugment(WindyGraph fullGraph, WindyGraph g, WindyDistanceOracle oracle) {
 
 		/*
 		 * fullGraph is copy, and g is windyReq
 		 */
         try {
-            int n = fullGraph.getVertices().size(); //num vertices
-
-            //solve shortest paths in fullGraph
-            int[] dist = new int[n + 1];
-            int[] path = new int[n + 1];
-            int[] edgePath = new int[n + 1];
+            int[] path;
+            int[] edgePath;
 
             //setup the complete graph composed entirely of the unbalanced vertices
             UndirectedGraph matchingGraph = new UndirectedGraph();
@@ -740,13 +797,12 @@ public class WRPPSolver_Win extends SingleVehicleSolver<WindyVertex, WindyEdge,
             HashMap<Pair<Integer>, Edge> traverseIj = new HashMap<Pair<Integer>, Edge>(); //key is (i,j) where i < j, and value is true if the shortest average path cost is i to j, false if it's j to i
             Pair<Integer> candidateKey;
             for (UndirectedVertex v : oddVertices) {
-                CommonAlgorithms.dijkstrasAlgorithm(fullGraph, v.getMatchId(), dist, path, edgePath);
                 for (UndirectedVertex v2 : oddVertices) {
                     //only add one edge per pair of vertices
                     if (v.getId() == v2.getId())
                         continue;
 
-                    costCandidate = calculateAveragePathCost(fullGraph, v.getMatchId(), v2.getMatchId(), path, edgePath);
+                    costCandidate = oracle.getAveragePathCost(v.getMatchId(), v2.getMatchId());
                     candidateKey = new Pair<Integer>(v2.getId(), v.getId());
 
                     if (!traverseIj.containsKey(candidateKey) || costCandidate < traverseIj.get(candidateKey).getCost()) {
@@ -776,7 +832,8 @@ public class WRPPSolver_Win extends SingleVehicleSolver<WindyVertex, WindyEdge,
                     end = p.getFirst().getMatchId();
                 }
 
-                CommonAlgorithms.dijkstrasAlgorithm(fullGraph, curr, dist, path, edgePath);
+                path = oracle.getPath(curr);
+                edgePath = oracle.getEdgePath(curr);
 
                 do {
                     next = path[end];
@@ -795,110 +852,31 @@ public class WRPPSolver_Win extends SingleVehicleSolver<WindyVertex, WindyEdge,
 
     }
 
+    /**
+     * Solves the min cost circulation on the improvement graph built by eliminateRedundantCycles, (all of whose arcs are
+     * capacitated, and some of which have negative cost).  The network simplex solver handles the negative costs
+     * directly, so this cancels every negative cycle in one go, rather than one at a time.
+     *
+     * @param g - the improvement graph
+     * @return - the ith entry is the flow on the arc with id i
+     */
     private static int[] solvePseudoMinCostFlow(DirectedGraph g) {
         try {
-            DirectedGraph copy = g.getDeepCopy();
-            int n = copy.getVertices().size();
-            int m = copy.getEdges().size();
+            int n = g.getVertices().size();
+            int m = g.getEdges().size();
             int[] ans = new int[m + 1];
-            int[] realIds = new int[m + 1];
-            int[] artIds = new int[m + 1];
+
+            MinCostFlow flow = new MinCostFlow(n);
+            TIntObjectHashMap<Arc> flowArcs = g.getInternalEdgeMap();
+            Arc temp;
             for (int i = 1; i <= m; i++) {
-                realIds[i] = i;
+                temp = flowArcs.get(i);
+                flow.addArc(temp.getTail().getId(), temp.getHead().getId(), temp.isCapacitySet() ? temp.getCapacity() : MinCostFlow.INFINITE_CAPACITY, temp.getCost());
             }
+            flow.solve();
 
-            int[] dist;
-            int[] path;
-            int[] edgePath;
-            boolean foundImprovement = true;
-            int maxFlow;
-            TIntObjectHashMap<Arc> flowArcs = copy.getInternalEdgeMap();
-            Arc temp, temp2;
-            while (foundImprovement) {
-                foundImprovement = false;
-                dist = new int[n + 1];
-                path = new int[n + 1];
-                edgePath = new int[n + 1];
-
-                try {
-                    CommonAlgorithms.slfShortestPaths(copy, copy.getDepotId(), dist, path, edgePath);
-                } catch (NegativeCycleException e) {
-
-                    foundImprovement = true;
-
-                    maxFlow = Integer.MAX_VALUE;
-                    //calculate max flow we can push
-                    int lim = e.getViolatingEdgePath().length;
-                    int[] problemEdgePath = e.getViolatingEdgePath();
-                    for (int i = 0; i < lim; i++) {
-                        temp = flowArcs.get(problemEdgePath[i]);
-                        if (temp.getCapacity() < maxFlow) {
-                            maxFlow = temp.getCapacity();
-                        }
-                    }
-
-                    //push it and manage residuals
-                    for (int i = 0; i < lim; i++) {
-                        //next = path[curr][end];
-                        temp = flowArcs.get(problemEdgePath[i]);
-
-                        if (artIds[temp.getMatchId()] == temp.getId()) // if we're artificial
-                        {
-                            ans[temp.getMatchId()] -= maxFlow;
-                            //if we don't have a real arc corresponding to this, then add one
-                            if (realIds[temp.getMatchId()] == 0) {
-                                temp2 = new Arc("real insertion", new Pair<DirectedVertex>(temp.getHead(), temp.getTail()), -temp.getCost());
-                                temp2.setCapacity(maxFlow);
-                                copy.addEdge(temp2, temp.getMatchId());
-                                realIds[temp.getMatchId()] = temp2.getId();
-                            }
-                            //if we do have a real arc, update its capacity
-                            else {
-                                temp2 = flowArcs.get(realIds[temp.getMatchId()]);
-                                if (temp2.isCapacitySet())
-                                    temp2.setCapacity(temp2.getCapacity() + maxFlow);
-                            }
-
-                            //update capacities
-                            temp.setCapacity(temp.getCapacity() - maxFlow);
-                            //remove if the capcity is zero
-                            if (temp.getCapacity() == 0) {
-                                artIds[temp.getMatchId()] = 0;
-                                copy.removeEdge(temp);
-                            }
-                        } else if (realIds[temp.getMatchId()] == temp.getId())//we're real
-                        {
-                            ans[temp.getMatchId()] += maxFlow;
-                            //if  we don't have an artificial arc corresponding to this, then add one
-                            if (artIds[temp.getMatchId()] == 0) {
-                                temp2 = new Arc("real insertion", new Pair<DirectedVertex>(temp.getHead(), temp.getTail()), -temp.getCost());
-                                temp2.setCapacity(maxFlow);
-                                copy.addEdge(temp2, temp.getMatchId());
-                                artIds[temp.getMatchId()] = temp2.getId();
-                            } else {
-                                temp2 = flowArcs.get(artIds[temp.getMatchId()]);
-                                temp2.setCapacity(temp2.getCapacity() + maxFlow);
-                            }
-
-                            //update capacity of temp
-                            if (temp.isCapacitySet())//if no capacity set, then we assume infinite capacity
-                            {
-                                temp.setCapacity(temp.getCapacity() - maxFlow);
-                                //remove if the capcity is zero
-                                if (temp.getCapacity() == 0) {
-                                    realIds[temp.getMatchId()] = 0;
-                                    copy.removeEdge(temp);
-                                }
-                            }
-                        } else {
-                            LOGGER.error("BADDD: In the third improvement procedure for Benavent's Solver, we have a flow arc that " +
-                                    "isn't recognized as real or artificial.");
-                        }
-                    }
-
-
-                }
-            }
+            for (int i = 1; i <= m; i++)
+                ans[i] = flow.getFlow(i - 1);
 
             return ans;
         } catch (Exception e) {
@@ -957,13 +935,25 @@ public class WRPPSolver_Win extends SingleVehicleSolver<WindyVertex, WindyEdge,
      * @param wg - The windy graph for which the Euler tour on dg is the proposed solution to the WRPP
      */
     public static void repairSolution(DirectedGraph dg, WindyGraph wg) {
+        repairSolution(dg, wg, new WindyDistanceOracle(wg));
+    }
+
+    /**
+     * Method to naively repair a solution if you are trying to model arcs as edges with very high costs in one direction.
+     * It goes through the solution in the directed graph and looks for arcs that are more than the cost of the 'real' costs
+     * in the graph, then replace it with a shortest path.  Required arcs are left alone, since the shortest path need not
+     * serve them.
+     *
+     * @param dg     - An Eulerian directed graph
+     * @param wg     - The windy graph for which the Euler tour on dg is the proposed solution to the WRPP
+     * @param oracle - shortest paths in wg
+     */
+    public static void repairSolution(DirectedGraph dg, WindyGraph wg, WindyDistanceOracle oracle) {
 
         //look for arcs that have cost greater than shortest paths in wg
-        int n = wg.getVertices().size();
-        int[][] dist = wg.getAllPairsDistMatrix();
-        int[][] path = wg.getAllPairsPathMatrix();
-        int[][] edgePath = wg.getAllPairsEdgePathMatrix();
-        int i,j, curr, end, next;
+        int[] dist, path, edgePath;
+        int i, j, curr, next;
+        TIntArrayList pathNodes = new TIntArrayList();
 
         HashSet<Arc> toRemove = new HashSet<Arc>();
         HashSet<Arc> toAdd = new HashSet<Arc>();
@@ -973,33 +963,40 @@ public class WRPPSolver_Win extends SingleVehicleSolver<WindyVertex, WindyEdge,
             for (Arc a : dg.getEdges()) {
                 i = a.getFirstEndpointId();
                 j = a.getSecondEndpointId();
+                if (a.isRequired())
+                    continue;
+                dist = oracle.getDist(i);
 
-                if (a.getCost() > dist[i][j]) {
+                if (a.getCost() > dist[j]) {
 
                     //mark for removal
                     toRemove.add(a);
 
                     //replace it with the shortest path
-                    curr = i;
-                    end = j;
-
-                    if (curr != end) {
-                        do {
-                            next = path[curr][end];
-                            Arc newArc = dg.constructEdge(curr, next, "", dist[curr][next]);
-                            newArc.setRequired(wg.getEdge(edgePath[curr][end]).isRequired());
+                    if (i != j) {
+                        path = oracle.getPath(i);
+                        edgePath = oracle.getEdgePath(i);
+                        pathNodes.clear();
+                        for (curr = j; curr != i; curr = path[curr])
+                            pathNodes.add(curr);
+                        curr = i;
+                        for (int k = pathNodes.size() - 1; k >= 0; k--) {
+                            next = pathNodes.get(k);
+                            Arc newArc = dg.constructEdge(curr, next, "", dist[next] - dist[curr]);
+                            newArc.setRequired(wg.getEdge(edgePath[next]).isRequired());
                             toAdd.add(newArc);
-                        } while ((curr = next) != end);
+                            curr = next;
+                        }
                     }
 
                 }
             }
 
-            for(Arc a: toAdd) {
+            for (Arc a : toAdd) {
                 dg.addEdge(a);
             }
 
-            for(Arc a: toRemove)
+            for (Arc a : toRemove)
                 dg.removeEdge(a);
 
         } catch (Exception e) {
@@ -1009,21 +1006,6 @@ public class WRPPSolver_Win extends SingleVehicleSolver<WindyVertex, WindyEdge,
 
     }
 
-    private static double calculateAveragePathCost(WindyGraph g, int i, int j, int[] path, int[] edgePath) {
-        int start, end, next, ans;
-        start = i;
-        end = j;
-        ans = 0;
-        WindyEdge temp;
-        TIntObjectHashMap<WindyEdge> indexedWindyEdges = g.getInternalEdgeMap();
-        do {
-            next = path[end];
-            temp = indexedWindyEdges.get(edgePath[end]);
-            ans += temp.getCost() + temp.getReverseCost();
-        } while ((end = next) != start);
-        return ans / 2.0;
-    }
-
     @Override
     protected Problem<WindyVertex, WindyEdge, WindyGraph> getInstance() {
         return mInstance;
@@ -1036,22 +1018,34 @@ public class WRPPSolver_Win extends SingleVehicleSolver<WindyVertex, WindyEdge,
     protected Collection<Tour> solve() {
         try {
 
+            mPhaseTimes.clear();
+            long start = System.nanoTime();
+
             //get a copy to operate on
             WindyGraph copy = mInstance.getGraph().getDeepCopy();
 
+            //shortest paths in copy are shared by all of the phases
+            WindyDistanceOracle oracle = new WindyDistanceOracle(copy);
+            start = recordPhase("Setup", start);
+
             //solve the shortest spanning tree problem to connect the required components of the graph
-            WindyGraph windyReq = connectRequiredComponents(copy);
+            WindyGraph windyReq = connectRequiredComponents(copy, oracle);
+            start = recordPhase("Connect Required Components", start);
 
             //solve the min-cost matching problem to produce an eulerian augmentation to the original graph
-            eulerAugment(copy, windyReq);
+            eulerAugment(copy, windyReq, oracle);
+            start = recordPhase("Euler Augment", start);
 
             //solve the min-cost flow problem to produce the optimal tour on the resultant windy graph
             DirectedGraph ans = constructOptimalWindyTour(windyReq);
+            start = recordPhase("Construct Optimal Windy Tour", start);
 
             //go through the improvement procedures described in Benavent that eliminate added cycles
-            eliminateRedundantCycles(ans, windyReq, copy);
+            eliminateRedundantCycles(ans, windyReq, copy, oracle);
+            start = recordPhase("Eliminate Redundant Cycles", start);
 
-            repairSolution(ans, copy);
+            repairSolution(ans, copy, oracle);
+            start = recordPhase("Repair Solution", start);
 
 
             //return the answer
@@ -1063,6 +1057,9 @@ public class WRPPSolver_Win extends SingleVehicleSolver<WindyVertex, WindyEdge,
                 eulerTour.appendEdge(indexedEdges.get(tour.get(i)));
             }
             mInstance.setSol(Utils.reclaimTour(eulerTour, mInstance.getGraph()));
+            recordPhase("Euler Tour", start);
+            mPhaseTimes.put("Shortest Paths", oracle.getComputeTime());
+
             HashSet<Tour> ret = new HashSet<Tour>();
             ret.add(eulerTour);
             return ret;
@@ -1089,7 +1086,19 @@ public class WRPPSolver_Win extends SingleVehicleSolver<WindyVertex, WindyEdge,
 
     @Override
     public HashMap<String, Double> getProblemParameters() {
-        return new HashMap<String, Double>();
+        HashMap<String, Double> ret = new HashMap<String, Double>();
+        for (String phase : mPhaseTimes.keySet())
+            ret.put(phase + " Time (ms)", mPhaseTimes.get(phase));
+        return ret;
+    }
+
+    /**
+     * @return - the current time, after recording the time elapsed since start against the given phase.
+     */
+    private long recordPhase(String phase, long start) {
+        long end = System.nanoTime();
+        mPhaseTimes.put(phase, (end - start) / 1e6);
+        return end;
     }
 
     @Override
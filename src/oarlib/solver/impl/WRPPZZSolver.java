@@ -32,6 +32,7 @@ import oarlib.graph.impl.WindyGraph;
 import oarlib.graph.impl.ZigZagGraph;
 import oarlib.graph.transform.impl.ZigZagToWindyTransform1;
 import oarlib.graph.util.CommonAlgorithms;
+import oarlib.graph.util.MinCostFlow;
 import oarlib.graph.util.Utils;
 import oarlib.link.impl.Arc;
 import oarlib.link.impl.WindyEdge;
@@ -311,7 +312,7 @@ public class WRPPZZSolver extends SingleVehicleSolver<ZigZagVertex, ZigZagLink,
 
 
                 //solve the flow problem on Gaux with demands from Gdr
-                int flowanswer[] = CommonAlgorithms.shortestSuccessivePathsMinCostNetworkFlow(Gaux);
+                int flowanswer[] = CommonAlgorithms.minCostNetworkFlow(Gaux, MinCostFlow.Algorithm.SUCCESSIVE_SHORTEST_PATHS);
 
 				/*
                  * Create a list of ids L (in copy) which represent guys that are likely to appear in the min cost flow
@@ -25,17 +25,17 @@
 package oarlib.solver.impl;
 
 import gnu.trove.TIntArrayList;
+import gnu.trove.TIntObjectHashMap;
 import oarlib.core.*;
+import oarlib.graph.impl.DirectedGraph;
 import oarlib.graph.impl.UndirectedGraph;
 import oarlib.graph.impl.ZigZagGraph;
 import oarlib.graph.util.CommonAlgorithms;
 import oarlib.graph.util.Pair;
 import oarlib.graph.util.Utils;
+import oarlib.graph.util.WindyLowerBound;
 import oarlib.link.impl.ZigZagLink;
 import oarlib.problem.impl.ProblemAttributes;
-import oarlib.problem.impl.io.ProblemFormat;
-import oarlib.problem.impl.io.ProblemWriter;
-import oarlib.problem.impl.rpp.WindyRPPZZTW;
 import oarlib.route.impl.ZigZagTour;
 import oarlib.route.util.RouteExporter;
 import oarlib.route.util.ZigZagExpander;
@@ -249,32 +249,13 @@ public class WRPPZZTW_PFIH extends SingleVehicleSolver<ZigZagVertex, ZigZagLink,
         return mInstance;
     }
 
-    public double getLowerBound(ZigZagGraph g){
-
-        //setup the lb graph
-        ZigZagGraph lb = new ZigZagGraph(g.getVertices().size());
-
-        try {
-            for (ZigZagLink zzl : g.getEdges()) {
-                ZigZagLink toAdd = lb.constructEdge(zzl.getFirstEndpointId(), zzl.getSecondEndpointId(), "", zzl.getCost(), zzl.getReverseCost(), zzl.getZigzagCost(), zzl.getServiceCost(), zzl.getReverseServiceCost(), zzl.getStatus());
-                toAdd.setRequired(zzl.isRequired());
-                toAdd.setReverseRequired(zzl.isReverseRequired());
-                lb.addEdge(toAdd);
-            }
-
-            WindyRPPZZTW lbProb = new WindyRPPZZTW(lb, "12_" + 12 + "_" + 12);
-            ProblemWriter probw = new ProblemWriter(ProblemFormat.Name.Zhang_Matrix_Zigzag);
-            probw.writeInstance(lbProb, "/Users/oliverlum/Downloads/171Nodes/WPPTZ171nodes_12_12_12.txt");
-            String fileName = "/Users/oliverlum/Downloads/Sols/" + lbProb.getName() + "_ans_101.txt";
-            ZigZagTour partRoute = new ZigZagTour(lb, getLatePenalty());
-            RouteExporter.exportRoute(partRoute, RouteExporter.RouteFormat.ZHANG, fileName);
-            double ans = runIPNoRoute(lb,12,12,12,101,1e6);
-            return ans;
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            return -1;
-        }
+    /**
+     * @param g - the graph of the instance
+     * @return - a lower bound on the traversal cost of any solution, from the windy postman flow relaxation.  Service
+     * costs are left out, since the links may be serviced by zigzagging instead.
+     */
+    public double getLowerBound(ZigZagGraph g) {
+        return new WindyLowerBound(g).getLowerBound();
     }
 
     @Override
@@ -302,10 +283,22 @@ public class WRPPZZTW_PFIH extends SingleVehicleSolver<ZigZagVertex, ZigZagLink,
         double maxZZDeadhead = Double.MAX_VALUE;
         int keepTop = 5;
 
-        ZigZagGraph gWithServce = g.getDeepCopy();
-        for (ZigZagLink zzl : gWithServce.getEdges()) {
-            zzl.setCost(zzl.getCost() + zzl.getServiceCost());
-            zzl.setmReverseCost(zzl.getReverseCost() + zzl.getReverseServiceCost());
+        //fold the service costs into the arcs of a plain digraph, (one per direction of traversal), rather than a copy of g
+        DirectedGraph gWithServce = new DirectedGraph(n);
+        TIntObjectHashMap<ZigZagLink> gLinks = g.getInternalEdgeMap();
+        int[] linkIds = gLinks.keys();
+        Arrays.sort(linkIds);
+        ZigZagLink serviced;
+        try {
+            for (int id : linkIds) {
+                serviced = gLinks.get(id);
+                gWithServce.addEdge(serviced.getFirstEndpointId(), serviced.getSecondEndpointId(), "forward", serviced.getCost() + serviced.getServiceCost(), id);
+                if (!serviced.isDirected())
+                    gWithServce.addEdge(serviced.getSecondEndpointId(), serviced.getFirstEndpointId(), "backward", serviced.getReverseCost() + serviced.getReverseServiceCost(), id);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
         }
 
         //shortest paths
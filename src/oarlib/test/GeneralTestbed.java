@@ -50,6 +50,7 @@ import oarlib.problem.impl.cpp.MixedCPP;
 import oarlib.problem.impl.cpp.UndirectedCPP;
 import oarlib.problem.impl.cpp.WindyCPP;
 import oarlib.problem.impl.io.ProblemFormat;
+import oarlib.problem.impl.io.ProblemLoader;
 import oarlib.problem.impl.io.ProblemReader;
 import oarlib.problem.impl.io.ProblemWriter;
 import oarlib.problem.impl.io.util.ExportHelper;
@@ -73,6 +74,26 @@ public class GeneralTestbed {
 
     private static final Logger LOGGER = Logger.getLogger(GeneralTestbed.class);
 
+    //wrap the graphs read by a ProblemLoader, skipping the files whose graphs are of the wrong type
+    private static final ProblemLoader.ProblemFactory<DirectedRPP> DIRECTED_RPP_FACTORY = new ProblemLoader.ProblemFactory<DirectedRPP>() {
+        @Override
+        public DirectedRPP createProblem(Graph<?, ?> g, String name) {
+            return g.getClass() == DirectedGraph.class ? new DirectedRPP((DirectedGraph) g, name) : null;
+        }
+    };
+    private static final ProblemLoader.ProblemFactory<MixedCPP> MIXED_CPP_FACTORY = new ProblemLoader.ProblemFactory<MixedCPP>() {
+        @Override
+        public MixedCPP createProblem(Graph<?, ?> g, String name) {
+            return g.getClass() == MixedGraph.class ? new MixedCPP((MixedGraph) g, name) : null;
+        }
+    };
+    private static final ProblemLoader.ProblemFactory<WindyRPP> WINDY_RPP_FACTORY = new ProblemLoader.ProblemFactory<WindyRPP>() {
+        @Override
+        public WindyRPP createProblem(Graph<?, ?> g, String name) {
+            return g.getClass() == WindyGraph.class ? new WindyRPP((WindyGraph) g, name) : null;
+        }
+    };
+
     /**
      * The main method.  Allows for command line calls to the core solvers.
      *
@@ -330,7 +351,7 @@ public class GeneralTestbed {
     private static void testVizExport(String outputFile) {
 
         try {
-            WindyGraph g, slimG, trueG;
+            WindyGraph g, trueG;
             MinMaxKWRPP validWInstance;
             ProblemReader pr = new ProblemReader(ProblemFormat.Name.Corberan);
 
@@ -339,8 +360,7 @@ public class GeneralTestbed {
                 OSM_Fetcher fetcher = new OSM_Fetcher(bb);
                 fetcher.queryForGraph();
                 g = fetcher.queryForGraph();
-                slimG = OSM_Fetcher.removeDegreeTwoNodes(g);
-                trueG = OSM_Fetcher.removeDegreeOneNodes(slimG);
+                trueG = OSM_Fetcher.simplify(g, null);
 
                 validWInstance = new MinMaxKWRPP(trueG, bb.getTitle(), 5);
                 ProblemWriter pw = new ProblemWriter(ProblemFormat.Name.JSON);
@@ -1091,53 +1111,44 @@ public class GeneralTestbed {
      */
     @SuppressWarnings("unused")
     private static void testDRPPSolver(String instanceFolder, String outputFile) {
-        ProblemReader gr = new ProblemReader(ProblemFormat.Name.Campos);
+        ProblemLoader<DirectedRPP> loader = new ProblemLoader<DirectedRPP>(instanceFolder, ProblemFormat.Name.Campos, DIRECTED_RPP_FACTORY);
+        //ensure that the problem is a valid instance
+        loader.setFileFilter(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".0") || name.endsWith(".1") || name.endsWith(".1_3") || name.endsWith(".2_3") || name.endsWith(".3_3");
+            }
+        });
         try {
-            DirectedRPP validInstance;
             DRPPSolver_Christofides validSolver;
             Route validAns;
 
-            File testInstanceFolder = new File(instanceFolder);
             PrintWriter pw = new PrintWriter(outputFile, "UTF-8");
             long start;
             long end;
 
-            //run on all the instances in the folder
-            for (final File testInstance : testInstanceFolder.listFiles()) {
+            //run on all the instances in the folder; they're read in the background while we solve
+            for (DirectedRPP validInstance : loader) {
                 int bestCost = Integer.MAX_VALUE; // the running best cost over running the solver repeatedly on the same instance
+                System.out.println(validInstance.getName()); // print the file name
+
+                // run it and time it
+                DirectedGraph g2 = validInstance.getGraph();
+                int reqCost = 0;
+                for(Arc a : g2.getEdges())
+                    if(a.isRequired())
+                        reqCost += a.getCost();
                 for (int i = 0; i < 1; i++) {
-                    String temp = testInstance.getName();
-
-                    //ensure that the problem is a valid instance
-                    if (!temp.endsWith(".0") && !temp.endsWith(".1") && !temp.endsWith(".1_3") && !temp.endsWith(".2_3") && !temp.endsWith(".3_3"))
-                        continue;
-
-                    System.out.println(temp); // print the file name
-
-                    // read the graph
-                    Graph<?, ?> g = gr.readGraph(instanceFolder + "/" + temp);
-
-                    if (g.getClass() == DirectedGraph.class) {
-                        // run it and time it
-                        DirectedGraph g2 = (DirectedGraph) g;
-                        int reqCost = 0;
-                        for(Arc a : g2.getEdges())
-                            if(a.isRequired())
-                                reqCost += a.getCost();
-                        validInstance = new DirectedRPP(g2);
-                        validSolver = new DRPPSolver_Christofides(validInstance);
-                        start = System.nanoTime();
-                        validAns = validSolver.trySolve().iterator().next();
-                        end = System.nanoTime();
-                        if (validAns.getCost() < bestCost)
-                            bestCost = validAns.getCost();
-                        pw.println(bestCost + "," + reqCost + "," + (end-start)/(1e6) + "," + g2.getEdges().size() + ";");
-                        System.out.println("It took " + (end - start) / (1e6) + " milliseconds to run our DRPP implementation on a graph with " + g2.getEdges().size() + " edges.");
-                        System.out.println(validAns.toString());
-                    }
+                    validSolver = new DRPPSolver_Christofides(validInstance);
+                    start = System.nanoTime();
+                    validAns = validSolver.trySolve().iterator().next();
+                    end = System.nanoTime();
+                    if (validAns.getCost() < bestCost)
+                        bestCost = validAns.getCost();
+                    pw.println(bestCost + "," + reqCost + "," + (end-start)/(1e6) + "," + g2.getEdges().size() + ";");
+                    System.out.println("It took " + (end - start) / (1e6) + " milliseconds to run our DRPP implementation on a graph with " + g2.getEdges().size() + " edges.");
+                    System.out.println(validAns.toString());
                 }
-                if (bestCost == Integer.MAX_VALUE)
-                    continue;
                 System.out.println("bestCost: " + bestCost);
                 //pw.println(bestCost + ";");
             }
@@ -1230,34 +1241,22 @@ public class GeneralTestbed {
      */
     @SuppressWarnings("unused")
     private static void testFredericksons(String instanceFolder) {
-        ProblemReader gr = new ProblemReader(ProblemFormat.Name.Corberan);
         try {
-            MixedCPP validInstance;
             MCPPSolver_Frederickson validSolver;
             Route validAns;
 
-            File testInstanceFolder = new File(instanceFolder);
             long start;
             long end;
 
             // run on all instances in the folder
-            for (final File testInstance : testInstanceFolder.listFiles()) {
-                String temp = testInstance.getName();
-                System.out.println(temp);
-                if (temp.equals(".DS_Store")) // ignore mac stuff
-                    continue;
-
-                Graph<?, ?> g = gr.readGraph(instanceFolder + "/" + temp);
-                if (g.getClass() == MixedGraph.class) {
-                    MixedGraph g2 = (MixedGraph) g;
-                    validInstance = new MixedCPP(g2);
-                    validSolver = new MCPPSolver_Frederickson(validInstance);
-                    start = System.nanoTime();
-                    validAns = validSolver.trySolve().iterator().next(); //my ans
-                    end = System.nanoTime();
-                    System.out.println("It took " + (end - start) / (1e6) + " milliseconds to run our Frederickson's implementation on a graph with " + g2.getEdges().size() + " edges.");
-
-                }
+            for (MixedCPP validInstance : new ProblemLoader<MixedCPP>(instanceFolder, ProblemFormat.Name.Corberan, MIXED_CPP_FACTORY)) {
+                System.out.println(validInstance.getName());
+                MixedGraph g2 = validInstance.getGraph();
+                validSolver = new MCPPSolver_Frederickson(validInstance);
+                start = System.nanoTime();
+                validAns = validSolver.trySolve().iterator().next(); //my ans
+                end = System.nanoTime();
+                System.out.println("It took " + (end - start) / (1e6) + " milliseconds to run our Frederickson's implementation on a graph with " + g2.getEdges().size() + " edges.");
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -1271,42 +1270,30 @@ public class GeneralTestbed {
      */
     @SuppressWarnings("unused")
     private static void validateImprovedMCPPSolver(String instanceFolder, String outputFile) {
-        ProblemReader gr = new ProblemReader(ProblemFormat.Name.Corberan);
-
         try {
-            MixedCPP validInstance;
             MCPPSolver_Yaoyuenyong validSolver;
             Route validAns;
 
             PrintWriter pw = new PrintWriter(outputFile, "UTF-8");
-            File testInstanceFolder = new File(instanceFolder);
             long start;
             long end;
 
             //run on all instances in the folder
-            for (final File testInstance : testInstanceFolder.listFiles()) {
-                if(testInstance.isDirectory())
-                    continue;
-                String temp = testInstance.getName();
+            for (MixedCPP validInstance : new ProblemLoader<MixedCPP>(instanceFolder, ProblemFormat.Name.Corberan, MIXED_CPP_FACTORY)) {
+                String temp = validInstance.getName();
                 System.out.println(temp);
-                if (temp.equals(".DS_Store"))
-                    continue;
-                Graph<?, ?> g = gr.readGraph(instanceFolder + "/" + temp);
-                if (g.getClass() == MixedGraph.class) {
-                    MixedGraph g2 = (MixedGraph) g;
-                    validInstance = new MixedCPP(g2);
-                    validSolver = new MCPPSolver_Yaoyuenyong(validInstance);
-                    try {
-                        start = System.nanoTime();
-                        validAns = validSolver.trySolve().iterator().next();
-                        end = System.nanoTime();
-                        int totalCost = 0;
-                        for(MixedEdge me : g2.getEdges())
-                            totalCost += me.getCost();
-                        pw.println(temp + "," + totalCost + "," + validAns.getCost() + "," + (end-start)/(1e6) + ";");
-                    } catch (Exception ex) {
-                        pw.println(temp+",,,;");
-                    }
+                MixedGraph g2 = validInstance.getGraph();
+                validSolver = new MCPPSolver_Yaoyuenyong(validInstance);
+                try {
+                    start = System.nanoTime();
+                    validAns = validSolver.trySolve().iterator().next();
+                    end = System.nanoTime();
+                    int totalCost = 0;
+                    for(MixedEdge me : g2.getEdges())
+                        totalCost += me.getCost();
+                    pw.println(temp + "," + totalCost + "," + validAns.getCost() + "," + (end-start)/(1e6) + ";");
+                } catch (Exception ex) {
+                    pw.println(temp+",,,;");
                 }
             }
             pw.close();
@@ -1322,42 +1309,29 @@ public class GeneralTestbed {
      */
     @SuppressWarnings("unused")
     private static void validateMCPPSolver(String instanceFolder, String outputFile) {
-        ProblemReader gr = new ProblemReader(ProblemFormat.Name.Yaoyuenyong);
-
         try {
-            MixedCPP validInstance;
             MCPPSolver_Frederickson validSolver;
             Route validAns;
 
             PrintWriter pw = new PrintWriter(outputFile, "UTF-8");
-            File testInstanceFolder = new File(instanceFolder);
             long start;
             long end;
 
-            for (final File testInstance : testInstanceFolder.listFiles()) {
-                String temp = testInstance.getName();
+            for (MixedCPP validInstance : new ProblemLoader<MixedCPP>(instanceFolder, ProblemFormat.Name.Yaoyuenyong, MIXED_CPP_FACTORY)) {
+                String temp = validInstance.getName();
                 System.out.println(temp);
-                if (temp.equals(".DS_Store"))
-                    continue;
-                Graph<?, ?> g = gr.readGraph(instanceFolder + "/" + temp);
-                int arcCount = 0;
-                int edgeCount = 0;
-                int oddDegreeCount = 0;
-                if (g.getClass() == MixedGraph.class) {
-                    MixedGraph g2 = (MixedGraph) g;
-                    validInstance = new MixedCPP(g2);
-                    validSolver = new MCPPSolver_Frederickson(validInstance);
-                    try {
-                        start = System.nanoTime();
-                        validAns = validSolver.trySolve().iterator().next();
-                        end = System.nanoTime();
-                        int totalCost = 0;
-                        for(MixedEdge me : g2.getEdges())
-                            totalCost += me.getCost();
-                        pw.println(temp + "," + totalCost + "," + validAns.getCost() + "," + (end-start)/(1e6) + ";");
-                    } catch (Exception ex) {
-                        pw.println(temp+",,,;");
-                    }
+                MixedGraph g2 = validInstance.getGraph();
+                validSolver = new MCPPSolver_Frederickson(validInstance);
+                try {
+                    start = System.nanoTime();
+                    validAns = validSolver.trySolve().iterator().next();
+                    end = System.nanoTime();
+                    int totalCost = 0;
+                    for(MixedEdge me : g2.getEdges())
+                        totalCost += me.getCost();
+                    pw.println(temp + "," + totalCost + "," + validAns.getCost() + "," + (end-start)/(1e6) + ";");
+                } catch (Exception ex) {
+                    pw.println(temp+",,,;");
                 }
             }
             pw.close();
@@ -1410,45 +1384,39 @@ public class GeneralTestbed {
      */
     @SuppressWarnings("unused")
     private static void validateWRPPSolver(String instanceFolder, String outputFile) {
-        ProblemReader gr = new ProblemReader(ProblemFormat.Name.Corberan);
+        ProblemLoader<WindyRPP> loader = new ProblemLoader<WindyRPP>(instanceFolder, ProblemFormat.Name.Corberan, WINDY_RPP_FACTORY);
+        loader.setFileFilter(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                //return name.startsWith("A") || name.startsWith("M") || name.startsWith("m");
+                return name.startsWith("C");
+            }
+        });
         try {
-            WindyRPP validInstance;
             WRPPSolver_Win validSolver;
             Route validAns;
 
-            File testInstanceFolder = new File(instanceFolder);
             PrintWriter pw = new PrintWriter(outputFile, "UTF-8");
             long start;
             long end;
 
             // run the solver on the instances in the provided folder
-            for (final File testInstance : testInstanceFolder.listFiles()) {
+            for (WindyRPP validInstance : loader) {
                 int bestCost = Integer.MAX_VALUE;
+                System.out.println(validInstance.getName());
+                WindyGraph g2 = validInstance.getGraph();
                 for (int i = 0; i < 1; i++) {
-                    String temp = testInstance.getName();
-                    //if (!temp.startsWith("A") && !temp.startsWith("M") && !temp.startsWith("m"))
-                    if (!temp.startsWith("C") )
-                        continue;
-                    System.out.println(temp);
-                    Graph<?, ?> g = gr.readGraph(instanceFolder + "/" + temp);
-
-                    if (g.getClass() == WindyGraph.class) {
-                        WindyGraph g2 = (WindyGraph) g;
-                        validInstance = new WindyRPP(g2);
-                        validSolver = new WRPPSolver_Win(validInstance);
-                        start = System.nanoTime();
-                        validAns = validSolver.trySolve().iterator().next();
-                        if (validAns.getCost() < bestCost)
-                            bestCost = validAns.getCost();
-                        end = System.nanoTime();
-                        System.out.println("It took " + (end - start) / (1e6) + " milliseconds to run our WRPP1 implementation on a graph with " + g2.getEdges().size() + " edges.");
-                        System.out.println(validAns.toString());
-                        pw.println(bestCost + "," + (end - start) / (1e6) + "," + g2.getEdges().size() + ";");
-                        //pw.println((end - start) / (1e6) + "," + g2.getEdges().size() + ";");
-                    }
+                    validSolver = new WRPPSolver_Win(validInstance);
+                    start = System.nanoTime();
+                    validAns = validSolver.trySolve().iterator().next();
+                    end = System.nanoTime();
+                    if (validAns.getCost() < bestCost)
+                        bestCost = validAns.getCost();
+                    System.out.println("It took " + (end - start) / (1e6) + " milliseconds to run our WRPP1 implementation on a graph with " + g2.getEdges().size() + " edges.");
+                    System.out.println(validAns.toString());
+                    pw.println(bestCost + "," + (end - start) / (1e6) + "," + g2.getEdges().size() + ";");
+                    //pw.println((end - start) / (1e6) + "," + g2.getEdges().size() + ";");
                 }
-                if (bestCost == Integer.MAX_VALUE)
-                    continue;
                 //pw.println(bestCost + ";");
             }
             pw.close();
@@ -1463,44 +1431,38 @@ public class GeneralTestbed {
      */
     @SuppressWarnings("unused")
     private static void validateImprovedWRPPSolver(String instanceFolder, String outputFile) {
-        ProblemReader gr = new ProblemReader(ProblemFormat.Name.Corberan);
+        ProblemLoader<WindyRPP> loader = new ProblemLoader<WindyRPP>(instanceFolder, ProblemFormat.Name.Corberan, WINDY_RPP_FACTORY);
+        loader.setFileFilter(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                //return name.startsWith("A") || name.startsWith("M") || name.startsWith("m");
+                return name.startsWith("C");
+            }
+        });
         try {
-            WindyRPP validInstance;
             WRPPSolver_Benavent_H1 validSolver;
             Route validAns;
 
-            File testInstanceFolder = new File(instanceFolder);
             PrintWriter pw = new PrintWriter(outputFile, "UTF-8");
             long start;
             long end;
 
-            for (final File testInstance : testInstanceFolder.listFiles()) {
+            for (WindyRPP validInstance : loader) {
                 int bestCost = Integer.MAX_VALUE;
+                System.out.println(validInstance.getName());
+                WindyGraph g2 = validInstance.getGraph();
                 for (int i = 0; i < 1; i++) {
-                    String temp = testInstance.getName();
-                    System.out.println(temp);
-                    //if (!temp.startsWith("A") && !temp.startsWith("M") && !temp.startsWith("m"))
-                    if (!temp.startsWith("C") )
-                        continue;
-                    Graph<?, ?> g = gr.readGraph(instanceFolder + "/" + temp);
-
-                    if (g.getClass() == WindyGraph.class) {
-                        WindyGraph g2 = (WindyGraph) g;
-                        validInstance = new WindyRPP(g2);
-                        validSolver = new WRPPSolver_Benavent_H1(validInstance);
-                        start = System.nanoTime();
-                        validAns = validSolver.trySolve().iterator().next();
-                        end = System.nanoTime();
-                        if (validAns.getCost() < bestCost)
-                            bestCost = validAns.getCost();
-                        System.out.println("It took " + (end - start) / (1e6) + " milliseconds to run our WRPP1 implementation on a graph with " + g2.getEdges().size() + " edges.");
-                        System.out.println(validAns.toString());
-                        pw.println(bestCost + "," + (end - start) / (1e6) + "," + g2.getEdges().size() + ";");
-                        //pw.println((end - start) / (1e6) + "," + g2.getEdges().size() + ";");
-                    }
+                    validSolver = new WRPPSolver_Benavent_H1(validInstance);
+                    start = System.nanoTime();
+                    validAns = validSolver.trySolve().iterator().next();
+                    end = System.nanoTime();
+                    if (validAns.getCost() < bestCost)
+                        bestCost = validAns.getCost();
+                    System.out.println("It took " + (end - start) / (1e6) + " milliseconds to run our WRPP1 implementation on a graph with " + g2.getEdges().size() + " edges.");
+                    System.out.println(validAns.toString());
+                    pw.println(bestCost + "," + (end - start) / (1e6) + "," + g2.getEdges().size() + ";");
+                    //pw.println((end - start) / (1e6) + "," + g2.getEdges().size() + ";");
                 }
-                if (bestCost == Integer.MAX_VALUE)
-                    continue;
                 //pw.println(bestCost + ";");
             }
             pw.close();
@@ -3,13 +3,22 @@ package core;
 import gnu.trove.TIntObjectHashMap;
 import oarlib.graph.graphgen.erdosrenyi.DirectedErdosRenyiGraphGenerator;
 import oarlib.graph.impl.DirectedGraph;
+import oarlib.graph.impl.UndirectedGraph;
+import oarlib.graph.impl.WindyGraph;
 import oarlib.graph.util.CommonAlgorithms;
 import oarlib.graph.util.Pair;
+import oarlib.graph.util.WindyLowerBound;
+import oarlib.link.impl.WindyEdge;
+import oarlib.problem.impl.io.ProblemFormat;
+import oarlib.problem.impl.io.ProblemReader;
 import oarlib.vertex.impl.DirectedVertex;
+import oarlib.vertex.impl.UndirectedVertex;
 import org.junit.Test;
 
 import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
 
@@ -66,6 +75,110 @@ public class FlowAlgorithmsTestSuite {
         }
 
         assertEquals("The flow methods cross-validate:", cost1, cost2);
+
+        //network simplex should agree with the other two
+        int[] flowanswer3 = CommonAlgorithms.networkSimplexMinCostNetworkFlow(testGraph);
+        int cost3 = 0;
+        for (int i = 1; i <= m; i++) {
+            cost3 += flowanswer3[i] * testGraph.getEdge(i).getCost();
+        }
+
+        assertEquals("The network simplex cross-validates:", cost1, cost3);
+    }
+
+    @Test
+    public void testWindyLowerBound() {
+        try {
+            //a cheap cycle one way around the triangle, and a pendant edge that has to be traversed both ways
+            WindyGraph testGraph = new WindyGraph(4);
+            testGraph.addEdge(1, 2, 1, 10, true);
+            testGraph.addEdge(2, 3, 1, 10, true);
+            testGraph.addEdge(3, 1, 1, 10, true);
+            testGraph.addEdge(1, 4, 2, 4, true);
+
+            WindyLowerBound lb = new WindyLowerBound(testGraph);
+            assertEquals("The required cost bound:", 5, lb.getRequiredCostBound());
+            assertEquals("The flow bound:", 6, lb.getFlowBound()); //the dead end gets half serviced each way
+            assertEquals("The parity bound:", 9, lb.getParityBound());
+            assertEquals("The lower bound:", 9, lb.getLowerBound());
+            assertEquals("The min-max bound:", 6, lb.getMinMaxLowerBound(1, 2));
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Test
+    public void testMinCostMatching() {
+        try {
+            //a symmetric version of a bundled windy instance
+            WindyGraph windy = (WindyGraph) new ProblemReader(ProblemFormat.Name.Corberan).readGraph("test_instances/WRPP_Instances_Corberan/P212100");
+            UndirectedGraph g = new UndirectedGraph(windy.getVertices().size());
+            for (WindyEdge e : windy.getEdges())
+                g.addEdge(e.getFirstEndpointId(), e.getSecondEndpointId(), Math.min(e.getCost(), e.getReverseCost()));
+            int[][] dist = g.getAllPairsDistMatrix();
+
+            int n = 16;
+            int[] vertexIds = new int[n];
+            for (int i = 0; i < n; i++)
+                vertexIds[i] = 3 * i + 1;
+            int optimal = bruteForceMatching(vertexIds, dist);
+
+            //a sparse candidate graph, so that the pricing step has to add pairs
+            int[] pairs = CommonAlgorithms.sparseMinCostMatching(vertexIds, dist, 2);
+            assertEquals("Check number of pairs:", n, pairs.length);
+            int cost = 0;
+            boolean[] seen = new boolean[windy.getVertices().size() + 1];
+            for (int i = 0; i < pairs.length; i += 2) {
+                cost += dist[pairs[i]][pairs[i + 1]];
+                seen[pairs[i]] = true;
+                seen[pairs[i + 1]] = true;
+            }
+            for (int id : vertexIds)
+                assertEquals("Check vertex " + id + " is matched:", true, seen[id]);
+            assertEquals("Check sparse matching cost:", optimal, cost);
+
+            //and the complete graph version
+            UndirectedGraph complete = new UndirectedGraph(n);
+            for (int i = 0; i < n; i++)
+                for (int j = i + 1; j < n; j++)
+                    complete.addEdge(i + 1, j + 1, dist[vertexIds[i]][vertexIds[j]]);
+            Set<Pair<UndirectedVertex>> matching = CommonAlgorithms.minCostMatching(complete);
+            cost = 0;
+            for (Pair<UndirectedVertex> p : matching)
+                cost += dist[vertexIds[p.getFirst().getId() - 1]][vertexIds[p.getSecond().getId() - 1]];
+            assertEquals("Check number of pairs:", n / 2, matching.size());
+            assertEquals("Check matching cost:", optimal, cost);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
     }
 
+    /**
+     * The min cost perfect matching by dynamic programming over the subsets of vertices; only for small n.
+     */
+    private static int bruteForceMatching(int[] vertexIds, int[][] dist) {
+        int n = vertexIds.length;
+        int[] best = new int[1 << n];
+        Arrays.fill(best, Integer.MAX_VALUE);
+        best[0] = 0;
+        for (int set = 0; set < (1 << n); set++) {
+            if (best[set] == Integer.MAX_VALUE)
+                continue;
+            //always match the lowest unmatched vertex next
+            int i = 0;
+            while (i < n && (set & (1 << i)) != 0)
+                i++;
+            if (i == n)
+                continue;
+            for (int j = i + 1; j < n; j++) {
+                if ((set & (1 << j)) != 0)
+                    continue;
+                int next = set | (1 << i) | (1 << j);
+                best[next] = Math.min(best[next], best[set] + dist[vertexIds[i]][vertexIds[j]]);
+            }
+        }
+        return best[(1 << n) - 1];
+    }
 }
@@ -1,5 +1,8 @@
 package core;
 
+import oarlib.core.Link;
+import oarlib.graph.graphgen.OSM_Fetcher;
+import oarlib.graph.graphgen.Util.BoundingBox;
 import oarlib.graph.graphgen.erdosrenyi.DirectedErdosRenyiGraphGenerator;
 import oarlib.graph.graphgen.erdosrenyi.MixedErdosRenyiGraphGenerator;
 import oarlib.graph.graphgen.erdosrenyi.UndirectedErdosRenyiGraphGenerator;
@@ -9,8 +12,14 @@ import oarlib.graph.impl.MixedGraph;
 import oarlib.graph.impl.UndirectedGraph;
 import oarlib.graph.impl.WindyGraph;
 import oarlib.graph.util.CommonAlgorithms;
+import oarlib.link.impl.WindyEdge;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 /**
@@ -67,4 +76,188 @@ public class GraphGeneratorTestSuite {
         assertEquals("Check connectivity:", true, CommonAlgorithms.isConnected(g));
         assertEquals("Check n:", 1000, g.getVertices().size());
     }
+
+    private static final String OSM_EXTRACT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<osm version=\"0.6\">\n" +
+            " <node id=\"11\" lat=\"40.0000\" lon=\"-75.0000\"/>\n" +
+            " <node id=\"12\" lat=\"40.0010\" lon=\"-75.0000\"/>\n" +
+            " <node id=\"13\" lat=\"40.0020\" lon=\"-75.0000\"/>\n" +
+            " <node id=\"14\" lat=\"40.0020\" lon=\"-75.0012\"/>\n" +
+            " <node id=\"15\" lat=\"40.0010\" lon=\"-75.0012\"/>\n" +
+            " <node id=\"16\" lat=\"40.0000\" lon=\"-75.0012\"/>\n" +
+            " <node id=\"17\" lat=\"40.0010\" lon=\"-75.0005\"/>\n" +
+            " <node id=\"18\" lat=\"40.0015\" lon=\"-75.0008\"/>\n" +
+            " <node id=\"19\" lat=\"40.0030\" lon=\"-75.0030\"/>\n" +
+            " <node id=\"20\" lat=\"40.0031\" lon=\"-75.0031\"/>\n" +
+            " <way id=\"100\">\n" +
+            "  <nd ref=\"11\"/><nd ref=\"12\"/><nd ref=\"13\"/><nd ref=\"14\"/>\n" +
+            "  <tag k=\"highway\" v=\"residential\"/><tag k=\"name\" v=\"Elm St\"/><tag k=\"maxspeed\" v=\"25 mph\"/>\n" +
+            " </way>\n" +
+            " <way id=\"101\">\n" +
+            "  <nd ref=\"14\"/><nd ref=\"15\"/><nd ref=\"16\"/><nd ref=\"11\"/>\n" +
+            "  <tag k=\"highway\" v=\"primary\"/><tag k=\"name\" v=\"Main St\"/><tag k=\"maxspeed\" v=\"40\"/>\n" +
+            " </way>\n" +
+            " <way id=\"102\">\n" +
+            "  <nd ref=\"12\"/><nd ref=\"17\"/><nd ref=\"18\"/><nd ref=\"15\"/>\n" +
+            "  <tag k=\"highway\" v=\"service\"/>\n" +
+            " </way>\n" +
+            " <way id=\"103\">\n" +
+            "  <nd ref=\"16\"/><nd ref=\"15\"/>\n" +
+            "  <tag k=\"highway\" v=\"tertiary\"/><tag k=\"name\" v=\"Main St\"/>\n" +
+            " </way>\n" +
+            " <way id=\"200\">\n" +
+            "  <nd ref=\"11\"/><nd ref=\"12\"/><nd ref=\"13\"/><nd ref=\"11\"/>\n" +
+            "  <tag k=\"building\" v=\"house\"/><tag k=\"addr:street\" v=\"Elm St\"/>\n" +
+            " </way>\n" +
+            " <way id=\"300\">\n" +
+            "  <nd ref=\"19\"/><nd ref=\"20\"/>\n" +
+            "  <tag k=\"highway\" v=\"footway\"/>\n" +
+            " </way>\n" +
+            "</osm>\n";
+
+    private static File writeExtract(String contents) throws Exception {
+        File f = File.createTempFile("oarlib", ".osm");
+        f.deleteOnExit();
+        PrintWriter pw = new PrintWriter(f, "UTF-8");
+        pw.print(contents);
+        pw.close();
+        return f;
+    }
+
+    @Test
+    public void testOSMExtract() {
+        try {
+            BoundingBox box = new BoundingBox(-75.01, 39.99, -74.99, 40.01);
+
+            /*
+             * the expected values are those that the old DOM based parser produced for the same document, (way 300
+             * is a separate component, the second segment of way 103 duplicates one of way 101, and way 200 is a
+             * building on Elm St)
+             */
+            OSM_Fetcher fetcher = new OSM_Fetcher(box, writeExtract(OSM_EXTRACT).getPath());
+            WindyGraph g = fetcher.queryForGraph(7);
+            assertEquals("Check n:", 8, g.getVertices().size());
+            assertEquals("Check m:", 9, g.getEdges().size());
+            assertEquals("Check connectivity:", true, CommonAlgorithms.isConnected(g));
+            assertArrayEquals("Check way ids:", new long[]{0, 100, 100, 100, 101, 101, 101, 102, 102, 102}, fetcher.getWayIds());
+
+            int[] tails = {1, 2, 3, 4, 5, 6, 2, 7, 8};
+            int[] heads = {2, 3, 4, 5, 6, 1, 7, 8, 5};
+            int[] costs = {112, 112, 103, 112, 112, 103, 43, 62, 66};
+            int[] reverseCosts = {113, 112, 97, 126, 95, 87, 44, 68, 69};
+            boolean[] required = {true, true, false, false, false, true, false, false, true};
+            int[] speeds = {25, 25, 25, 40, 40, 40, 0, 0, 0};
+            for (int i = 1; i <= 9; i++) {
+                WindyEdge e = g.getEdge(i);
+                assertEquals("Check tail:", tails[i - 1], e.getFirstEndpointId());
+                assertEquals("Check head:", heads[i - 1], e.getSecondEndpointId());
+                assertEquals("Check cost:", costs[i - 1], e.getCost());
+                assertEquals("Check reverse cost:", reverseCosts[i - 1], e.getReverseCost());
+                assertEquals("Check required:", required[i - 1], e.isRequired());
+                assertEquals("Check max speed:", speeds[i - 1], e.getMaxSpeed());
+            }
+            assertEquals("Check type:", Link.HighwayType.RESIDENTIAL_ACCESS, g.getEdge(1).getType());
+            assertEquals("Check type:", Link.HighwayType.PRIMARY, g.getEdge(4).getType());
+            assertEquals("Check type:", Link.HighwayType.OTHER, g.getEdge(7).getType());
+            assertEquals("Check zone:", Link.Zone.RESIDENTIAL, g.getEdge(3).getZone());
+            assertEquals("Check zone:", Link.Zone.NOT_SET, g.getEdge(4).getZone());
+            assertEquals("Check label:", "Main St", g.getEdge(6).getLabel());
+
+            /*
+             * a maxspeed the old parser choked on, and a node outside of the bounding box; its segments are dropped
+             */
+            String clipped = OSM_EXTRACT.replace("25 mph", "walk").replace("lat=\"40.0020\" lon=\"-75.0012\"", "lat=\"40.0200\" lon=\"-75.0012\"");
+            fetcher = new OSM_Fetcher(box, writeExtract(clipped).getPath());
+            g = fetcher.queryForGraph(7);
+            assertEquals("Check n:", 7, g.getVertices().size());
+            assertEquals("Check m:", 7, g.getEdges().size());
+            assertEquals("Check connectivity:", true, CommonAlgorithms.isConnected(g));
+            assertArrayEquals("Check way ids:", new long[]{0, 100, 100, 101, 101, 102, 102, 102}, fetcher.getWayIds());
+            assertEquals("Check max speed:", 0, g.getEdge(1).getMaxSpeed());
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Test
+    public void testOSMSimplify() {
+        try {
+            /*
+             * a triangle 1-2-3 with a second path 3-4-1, a dangling tree 4-5-{6,7}, and a path 3-8-1 whose two edges
+             * don't agree on being required
+             */
+            WindyGraph g = new WindyGraph(8);
+            g.addEdge(1, 2, 3, 4, true);
+            g.addEdge(2, 3, 5, 6, true);
+            g.addEdge(3, 4, 2, 2, false);
+            g.addEdge(4, 1, 7, 1, false);
+            g.addEdge(1, 3, 10, 10, true);
+            g.addEdge(4, 5, 1, 1, true);
+            g.addEdge(5, 6, 1, 1, true);
+            g.addEdge(5, 7, 1, 1, true);
+            g.addEdge(3, 8, 4, 4, true);
+            g.addEdge(8, 1, 4, 4, false);
+            g.setDepotId(3);
+
+            //the leaves go, (6 and 7, and then 5), as they did before
+            WindyGraph pruned = OSM_Fetcher.removeDegreeOneNodes(g);
+            assertEquals("Check n:", 5, pruned.getVertices().size());
+            assertEquals("Check m:", 7, pruned.getEdges().size());
+            assertEquals("Check input n:", 8, g.getVertices().size());
+            assertEquals("Check input m:", 10, g.getEdges().size());
+
+            //without the pruning, 4 and 5 have degree 3, and 8 sits between a required and an unrequired edge
+            WindyGraph contracted = OSM_Fetcher.removeDegreeTwoNodes(g);
+            assertEquals("Check n:", 7, contracted.getVertices().size());
+            assertEquals("Check m:", 9, contracted.getEdges().size());
+
+            ArrayList<int[]> chains = new ArrayList<int[]>();
+            WindyGraph simple = OSM_Fetcher.simplify(g, chains);
+            assertEquals("Check n:", 3, simple.getVertices().size());
+            assertEquals("Check m:", 5, simple.getEdges().size());
+            assertEquals("Check depot:", 2, simple.getDepotId());
+            assertEquals("Check vertex match:", 8, simple.getVertex(3).getMatchId());
+
+            int[][] expectedChains = {{1, 2}, {3, 4}, {5}, {9}, {10}};
+            int[] tails = {1, 2, 1, 2, 3};
+            int[] heads = {2, 1, 2, 3, 1};
+            int[] costs = {8, 9, 10, 4, 4};
+            int[] reverseCosts = {10, 3, 10, 4, 4};
+            boolean[] required = {true, false, true, true, false};
+            assertEquals("Check chains:", 5, chains.size());
+            for (int i = 1; i <= 5; i++) {
+                WindyEdge e = simple.getEdge(i);
+                assertArrayEquals("Check chain:", expectedChains[i - 1], chains.get(i - 1));
+                assertEquals("Check edge match:", expectedChains[i - 1][0], e.getMatchId());
+                assertEquals("Check tail:", tails[i - 1], e.getFirstEndpointId());
+                assertEquals("Check head:", heads[i - 1], e.getSecondEndpointId());
+                assertEquals("Check cost:", costs[i - 1], e.getCost());
+                assertEquals("Check reverse cost:", reverseCosts[i - 1], e.getReverseCost());
+                assertEquals("Check required:", required[i - 1], e.isRequired());
+            }
+
+            //a cycle of degree 2 vertices keeps two of them, rather than collapsing into a self-loop
+            WindyGraph cycle = new WindyGraph(4);
+            cycle.addEdge(1, 2, 1, 2, true);
+            cycle.addEdge(2, 3, 1, 2, true);
+            cycle.addEdge(3, 4, 1, 2, true);
+            cycle.addEdge(4, 1, 1, 2, true);
+            simple = OSM_Fetcher.simplify(cycle, chains);
+            assertEquals("Check n:", 2, simple.getVertices().size());
+            assertEquals("Check m:", 2, simple.getEdges().size());
+            int cost = 0;
+            int reverseCost = 0;
+            for (WindyEdge e : simple.getEdges()) {
+                assertEquals("Check no self-loops:", true, e.getFirstEndpointId() != e.getSecondEndpointId());
+                cost += e.getCost();
+                reverseCost += e.getReverseCost();
+            }
+            assertEquals("Check cost:", 4, cost);
+            assertEquals("Check reverse cost:", 8, reverseCost);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
 }
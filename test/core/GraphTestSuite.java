@@ -1,17 +1,34 @@
 package core;
 
+import gnu.trove.TIntArrayList;
 import oarlib.core.Graph;
+import oarlib.core.OverlayGraph;
 import oarlib.graph.impl.DirectedGraph;
 import oarlib.graph.impl.MixedGraph;
 import oarlib.graph.impl.UndirectedGraph;
 import oarlib.graph.impl.WindyGraph;
+import oarlib.graph.util.CommonAlgorithms;
+import oarlib.graph.util.DistanceMatrixCache;
+import oarlib.graph.util.KDTree;
+import oarlib.graph.util.Pair;
+import oarlib.improvements.util.Utils;
 import oarlib.link.impl.Arc;
 import oarlib.link.impl.Edge;
 import oarlib.link.impl.MixedEdge;
 import oarlib.link.impl.WindyEdge;
+import oarlib.problem.impl.io.ProblemFormat;
+import oarlib.problem.impl.io.ProblemReader;
+import oarlib.vertex.impl.DirectedVertex;
+import oarlib.vertex.impl.UndirectedVertex;
 import org.junit.Test;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test suite for methods internal to our graph objects.
@@ -154,4 +171,378 @@ public class GraphTestSuite {
         }
 
     }
+
+    @Test
+    public void overlayDirectedGraph() {
+        try {
+            DirectedGraph test = new DirectedGraph(3);
+            test.addEdge(1, 2, 3);
+            test.addEdge(2, 3, 3);
+            test.addEdge(1, 3, 10);
+
+            OverlayGraph<DirectedVertex, Arc> overlay = new OverlayGraph<DirectedVertex, Arc>(test);
+            overlay.getEditableEdge(1).setCost(20);
+            overlay.removeEdge(2);
+            overlay.addEdge(3, 1, 4);
+
+            //check overlay properties
+            assertEquals("Check n:", 3, overlay.getVertices().size());
+            assertEquals("Check m:", 3, overlay.getEdges().size());
+            assertEquals("Check added id:", 4, overlay.getInternalEdgeMap().get(4).getId());
+            assertEquals("Check edited cost:", 20, overlay.getEdge(1).getCost());
+            assertEquals("Check 1-2 links:", 1, overlay.findEdges(new Pair<DirectedVertex>(test.getVertex(1), test.getVertex(2))).size());
+            assertEquals("Check 2-3 links:", 0, overlay.findEdges(new Pair<DirectedVertex>(test.getVertex(2), test.getVertex(3))).size());
+            assertEquals("Check 3's incident links:", 2, overlay.getIncidentLinks(3).size());
+
+            //check the base graph is untouched
+            assertEquals("Check base m:", 3, test.getEdges().size());
+            assertEquals("Check base cost:", 3, test.getEdge(1).getCost());
+
+            //shortest paths should see the overlay
+            int[][] dist = new int[4][4];
+            int[][] path = new int[4][4];
+            CommonAlgorithms.fwLeastCostPaths(overlay, dist, path);
+            assertEquals("Check 1-3 distance:", 10, dist[1][3]);
+            assertEquals("Check 3-2 distance:", 24, dist[3][2]);
+
+            //flatten it
+            Graph<DirectedVertex, Arc> flat = overlay.getDeepCopy();
+            assertEquals("Check flat m:", 3, flat.getEdges().size());
+            assertEquals("Check flat 3's out degree:", 1, flat.getVertex(3).getOutDegree());
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Test
+    public void overlayUndirectedGraph() {
+        try {
+            UndirectedGraph test = new UndirectedGraph(4);
+            test.addEdge(1, 2, 1);
+            test.addEdge(2, 3, 1);
+            test.addEdge(3, 4, 1);
+            test.addEdge(1, 3, 5);
+
+            //remove the bridge to 4, and make 1-3 cheap
+            OverlayGraph<UndirectedVertex, Edge> overlay = new OverlayGraph<UndirectedVertex, Edge>(test);
+            overlay.removeEdge(3);
+            overlay.getEditableEdge(4).setCost(1);
+
+            //link-level algorithms should see the overlay, without it needing its own vertices
+            assertEquals("Check overlay connectivity:", false, CommonAlgorithms.isConnected(overlay));
+            assertEquals("Check base connectivity:", true, CommonAlgorithms.isConnected(test));
+            int[] dist = new int[5];
+            int[] path = new int[5];
+            CommonAlgorithms.dijkstrasAlgorithm(overlay, 1, dist, path);
+            assertEquals("Check 1-3 distance:", 1, dist[3]);
+            assertEquals("Check 1-4 distance:", Integer.MAX_VALUE, dist[4]);
+            assertEquals("Check 2-1 links:", 1, overlay.findEdges(2, 1).size());
+            assertEquals("Check materialized:", false, overlay.isMaterialized());
+
+            //reconnect 4, and then make it eulerian
+            overlay.addEdge(2, 4, 7);
+            assertEquals("Check overlay connectivity:", true, CommonAlgorithms.isConnected(overlay));
+            boolean threw = false;
+            try {
+                CommonAlgorithms.tryHierholzer(overlay);
+            } catch (IllegalArgumentException e) {
+                threw = true;
+            }
+            assertTrue("Check non-eulerian overlay:", threw);
+            overlay.addEdge(4, 2, 7);
+            assertEquals("Check tour length:", 5, CommonAlgorithms.tryHierholzer(overlay).size());
+
+            //renumber links while the vertices are still shared
+            overlay.changeLinkId(1, 10);
+            assertEquals("Check renumbered link:", 1, overlay.getEdge(10).getCost());
+            assertEquals("Check old id:", false, overlay.getInternalEdgeMap().containsKey(1));
+            assertEquals("Check base id:", 1, test.getEdge(1).getId());
+            threw = false;
+            try {
+                overlay.changeLinkId(10, 2);
+            } catch (IllegalArgumentException e) {
+                threw = true;
+            }
+            assertTrue("Check duplicate id:", threw);
+
+            //the overlay's copies of the vertices have the overlay's adjacency, without it copying the graph
+            UndirectedVertex two = overlay.getVertex(2);
+            assertEquals("Check 2's degree:", 4, two.getDegree());
+            assertEquals("Check 4's neighbors:", 1, overlay.getVertex(4).getNeighbors().size());
+            assertEquals("Check materialized:", false, overlay.isMaterialized());
+            assertEquals("Check vertex map:", 4, overlay.getInternalVertexMap().size());
+            assertEquals("Check materialized:", false, overlay.isMaterialized());
+
+            //and they're kept up to date
+            overlay.addEdge(new Edge("", new Pair<UndirectedVertex>(two, overlay.getVertex(1)), 3));
+            assertEquals("Check 2's degree after adding:", 5, two.getDegree());
+            assertEquals("Check 2's neighbors after adding:", 3, two.getNeighbors().size());
+            overlay.removeEdge(overlay.getEidCounter() - 1);
+            assertEquals("Check 2's degree after removing:", 4, two.getDegree());
+
+            //flatten it; the link ids are compacted
+            Graph<UndirectedVertex, Edge> flat = overlay.getDeepCopy();
+            assertEquals("Check flat m:", 5, flat.getEdges().size());
+            assertEquals("Check flat ids:", true, flat.getInternalEdgeMap().containsKey(5) && !flat.getInternalEdgeMap().containsKey(6));
+            assertEquals("Check flat match id:", 10, flat.getEdge(5).getMatchId());
+            assertEquals("Check flat 2's degree:", 4, flat.getVertex(2).getDegree());
+
+            //changing the vertices gives the overlay its own copy of the graph
+            overlay.addVertex();
+            assertEquals("Check materialized:", true, overlay.isMaterialized());
+            assertEquals("Check m:", 5, overlay.getEdges().size());
+            assertEquals("Check renumbered link:", 1, overlay.getEdge(10).getCost());
+            assertEquals("Check 1-3 cost:", 1, overlay.findEdges(1, 3).get(0).getCost());
+
+            overlay.addEdge(5, 3, 2);
+            assertEquals("Check n:", 5, overlay.getVertices().size());
+            assertEquals("Check 3's degree:", 3, overlay.getVertex(3).getDegree());
+            assertEquals("Check removing a vertex with links:", false, overlay.removeVertex(5));
+            overlay.removeEdge(overlay.findEdges(5, 3).get(0));
+            assertEquals("Check removing a vertex:", true, overlay.removeVertex(5));
+            assertEquals("Check n after removal:", 4, overlay.getVertices().size());
+
+            //and the base graph is untouched throughout
+            assertEquals("Check base n:", 4, test.getVertices().size());
+            assertEquals("Check base m:", 4, test.getEdges().size());
+            assertEquals("Check base cost:", 5, test.getEdge(4).getCost());
+            assertEquals("Check base 2's degree:", 2, test.getVertex(2).getDegree());
+            assertEquals("Check base 4's neighbors:", 1, test.getVertex(4).getNeighbors().size());
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Test
+    public void distanceMatrixCache() {
+        try {
+            File dir = File.createTempFile("oarlib", "");
+            dir.delete();
+            DistanceMatrixCache.enable(dir.getPath(), 1 << 20);
+            DistanceMatrixCache.setMinVertices(0);
+
+            WindyGraph test = new WindyGraph(4);
+            test.addEdge(1, 2, 3, 5);
+            test.addEdge(2, 3, 3, 1);
+            test.addEdge(3, 4, 2, 2);
+            test.addEdge(4, 1, 7, 1);
+            int[][] dist = test.getAllPairsDistMatrix();
+            assertEquals("Check cache entries:", 1, dir.listFiles().length);
+
+            //an identical graph should get the same matrices back from the cache
+            WindyGraph copy = test.getDeepCopy();
+            assertTrue("Check dist:", Arrays.deepEquals(dist, copy.getAllPairsDistMatrix()));
+            assertTrue("Check path:", Arrays.deepEquals(test.getAllPairsPathMatrix(), copy.getAllPairsPathMatrix()));
+            assertTrue("Check edge path:", Arrays.deepEquals(test.getAllPairsEdgePathMatrix(), copy.getAllPairsEdgePathMatrix()));
+
+            //a different one shouldn't
+            copy = test.getDeepCopy();
+            copy.getEdge(4).setReverseCost(10);
+            assertEquals("Check changed cost:", 8, copy.getAllPairsDistMatrix()[1][4]);
+            assertEquals("Check cache entries:", 2, dir.listFiles().length);
+
+            for (File f : dir.listFiles())
+                f.delete();
+            dir.delete();
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            DistanceMatrixCache.disable();
+            DistanceMatrixCache.setMinVertices(100);
+        }
+    }
+
+    @Test
+    public void kdTreeQueries() {
+        try {
+            UndirectedGraph test = new UndirectedGraph(5);
+            test.getVertex(1).setCoordinates(0, 0);
+            test.getVertex(2).setCoordinates(1, 0);
+            test.getVertex(3).setCoordinates(0, 2);
+            test.getVertex(4).setCoordinates(5, 5);
+            test.getVertex(5).setCoordinates(-3, 0);
+
+            KDTree tree = KDTree.fromVertices(test.getVertices());
+            assertEquals("Check nearest:", 4, tree.nearest(4, 4));
+            assertTrue("Check 3 nearest:", Arrays.equals(new int[]{1, 2, 3}, tree.nearest(0.1, 0.1, 3)));
+            assertEquals("Check k > n:", 5, tree.nearest(0, 0, 10).length);
+
+            int[] within = tree.withinRadius(0, 0, 2);
+            Arrays.sort(within);
+            assertTrue("Check radius:", Arrays.equals(new int[]{1, 2, 3}, within));
+            assertEquals("Check empty radius:", 0, tree.withinRadius(10, 10, 1).length);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Test
+    public void kdTreeMatchesLinearScan() {
+        try {
+            MixedGraph g = (MixedGraph) new ProblemReader(ProblemFormat.Name.Corberan).readGraph("test_instances/MCPP_Instances_Corberan/MA1045");
+            HashMap<Integer, Pair<Double>> customers = Utils.assignCustomersToCoordinates(g);
+
+            ArrayList<Pair<Double>> centers = new ArrayList<Pair<Double>>();
+            for (int i = 1; i <= g.getVertices().size(); i += 7)
+                centers.add(new Pair<Double>(g.getVertex(i).getX(), g.getVertex(i).getY()));
+
+            //duplicated centers, so that there are ties; the copies come later, so they should never be chosen
+            int n = centers.size();
+            for (int i = 0; i < n; i += 3)
+                centers.add(new Pair<Double>(centers.get(i).getFirst(), centers.get(i).getSecond()));
+
+            //the old assignment scanned every center for each customer, keeping the first of the closest ones
+            HashMap<Integer, Integer> assignment = Utils.assignCustomersToPartitions(centers, customers);
+            assertEquals("Check assigned customers:", customers.size(), assignment.size());
+            for (Integer i : customers.keySet())
+                assertEquals("Check closest center:", linearScan(centers, customers.get(i).getFirst(), customers.get(i).getSecond()), (int) assignment.get(i));
+
+            //a grid, where most queries are tied between several points, some of them across a splitting line
+            ArrayList<Pair<Double>> grid = new ArrayList<Pair<Double>>();
+            for (int i = 0; i < 6; i++)
+                for (int j = 0; j < 6; j++)
+                    grid.add(new Pair<Double>((double) ((i * 7) % 6), (double) j));
+            KDTree tree = new KDTree(grid);
+            for (int i = 0; i <= 10; i++)
+                for (int j = 0; j <= 10; j++) {
+                    double x = i * .5;
+                    double y = j * .5;
+                    assertEquals("Check nearest:", linearScan(grid, x, y), tree.nearest(x, y));
+
+                    //the 5 nearest, (ties in index order), by selection
+                    boolean[] taken = new boolean[grid.size()];
+                    int[] nearest5 = tree.nearest(x, y, 5);
+                    for (int k = 0; k < 5; k++) {
+                        int best = -1;
+                        for (int l = 0; l < grid.size(); l++)
+                            if (!taken[l] && (best == -1 || sqDist(grid.get(l), x, y) < sqDist(grid.get(best), x, y)))
+                                best = l;
+                        taken[best] = true;
+                        assertEquals("Check k nearest:", best, nearest5[k]);
+                    }
+
+                    int[] within = tree.withinRadius(x, y, 1);
+                    TIntArrayList expected = new TIntArrayList();
+                    for (int k = 0; k < grid.size(); k++)
+                        if (sqDist(grid.get(k), x, y) <= 1)
+                            expected.add(k);
+                    assertTrue("Check radius:", Arrays.equals(expected.toNativeArray(), within));
+                }
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static double sqDist(Pair<Double> p, double x, double y) {
+        return (x - p.getFirst()) * (x - p.getFirst()) + (y - p.getSecond()) * (y - p.getSecond());
+    }
+
+    /**
+     * The scan that Utils.assignCustomersToPartitions used to do.
+     */
+    private static int linearScan(ArrayList<Pair<Double>> centers, double x, double y) {
+        int minIndex = -1;
+        double minDist = Double.MAX_VALUE;
+        double dist;
+        for (int j = 0; j < centers.size(); j++) {
+            dist = Math.sqrt(Math.pow(x - centers.get(j).getFirst(), 2) + Math.pow(y - centers.get(j).getSecond(), 2));
+            if (dist < minDist) {
+                minDist = dist;
+                minIndex = j;
+            }
+        }
+        return minIndex;
+    }
+
+    @Test
+    public void spanningTreeMatchesPrim() {
+        try {
+            //a symmetric version of a bundled windy instance
+            WindyGraph windy = (WindyGraph) new ProblemReader(ProblemFormat.Name.Corberan).readGraph("test_instances/WRPP_Instances_Corberan/P212100");
+            UndirectedGraph g = new UndirectedGraph(windy.getVertices().size());
+            for (WindyEdge e : windy.getEdges())
+                g.addEdge(e.getFirstEndpointId(), e.getSecondEndpointId(), Math.min(e.getCost(), e.getReverseCost()));
+
+            int[] mst = CommonAlgorithms.minCostSpanningTree(g);
+            assertEquals("Check tree cost:", primCost(g), treeCost(g, mst));
+            assertTrue("Check reuse:", Arrays.equals(mst, CommonAlgorithms.minCostSpanningTree(g)));
+
+            //make a tree edge expensive; the cached builder is stale now
+            Edge e = null;
+            for (int i = 1; i < mst.length; i++)
+                if (mst[i] == 1) {
+                    e = g.getEdge(i);
+                    break;
+                }
+            e.setCost(e.getCost() + 10000);
+            int[] mst2 = CommonAlgorithms.minCostSpanningTree(g);
+            assertEquals("Check tree cost after change:", primCost(g), treeCost(g, mst2));
+
+            //the randomized trees are still trees
+            int[] rst = CommonAlgorithms.randomizedLowCostSpanningTree(g, 5);
+            int numTreeEdges = 0;
+            for (int i = 1; i < rst.length; i++)
+                numTreeEdges += rst[i];
+            assertEquals("Check tree size:", g.getVertices().size() - 1, numTreeEdges);
+            assertTrue("Check randomized tree cost:", treeCost(g, rst) >= primCost(g));
+
+            //they're grown from the cheapest edge, and with a set size of 1, they're minimal
+            int minCost = Integer.MAX_VALUE;
+            for (Edge candidate : g.getEdges())
+                minCost = Math.min(minCost, candidate.getCost());
+            boolean hasCheapest = false;
+            for (int i = 1; i < rst.length; i++)
+                if (rst[i] == 1 && g.getEdge(i).getCost() == minCost)
+                    hasCheapest = true;
+            assertTrue("Check start edge:", hasCheapest);
+            assertEquals("Check set size 1:", primCost(g), treeCost(g, CommonAlgorithms.randomizedLowCostSpanningTree(g, 1)));
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static int treeCost(UndirectedGraph g, int[] tree) {
+        int ans = 0;
+        for (int i = 1; i < tree.length; i++)
+            if (tree[i] == 1)
+                ans += g.getEdge(i).getCost();
+        return ans;
+    }
+
+    /**
+     * O(n^2) Prim's algorithm on a connected graph, to check the Kruskal implementation against.
+     */
+    private static int primCost(UndirectedGraph g) {
+        int n = g.getVertices().size();
+        int[] best = new int[n + 1];
+        boolean[] inTree = new boolean[n + 1];
+        Arrays.fill(best, Integer.MAX_VALUE);
+        best[1] = 0;
+        int ans = 0;
+        for (int k = 0; k < n; k++) {
+            int v = -1;
+            for (int i = 1; i <= n; i++)
+                if (!inTree[i] && (v == -1 || best[i] < best[v]))
+                    v = i;
+            inTree[v] = true;
+            ans += best[v];
+            for (Edge e : g.getEdges()) {
+                int u;
+                if (e.getFirstEndpointId() == v)
+                    u = e.getSecondEndpointId();
+                else if (e.getSecondEndpointId() == v)
+                    u = e.getFirstEndpointId();
+                else
+                    continue;
+                if (!inTree[u] && e.getCost() < best[u])
+                    best[u] = e.getCost();
+            }
+        }
+        return ans;
+    }
 }
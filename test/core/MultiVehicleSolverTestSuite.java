@@ -1,12 +1,45 @@
 package core;
 
+import gnu.trove.TIntArrayList;
+import oarlib.core.Route;
+import oarlib.graph.impl.UndirectedGraph;
+import oarlib.graph.impl.WindyGraph;
+import oarlib.graph.transform.partition.impl.MetisPartitioner;
+import oarlib.graph.transform.partition.impl.MinMaxBoundaryRefiner;
+import oarlib.improvements.metaheuristics.impl.BenaventIPFramework;
+import oarlib.link.impl.WindyEdge;
+import oarlib.problem.impl.io.ProblemFormat;
+import oarlib.problem.impl.io.ProblemReader;
+import oarlib.problem.impl.multivehicle.MinMaxKWRPP;
+import oarlib.solver.impl.MultiWRPPBatchSolver;
+import oarlib.solver.impl.MultiWRPPSolver;
+import oarlib.vertex.impl.UndirectedVertex;
+import oarlib.vertex.impl.WindyVertex;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
 /**
  * Created by oliverlum on 11/29/15.
  */
 public class MultiVehicleSolverTestSuite {
 
+    private static final String WRPP_INSTANCE = "test_instances/WRPP_Instances_Corberan/P0715";
+
     @Test
     public void testMMKWRPPSolver(){
 
@@ -21,4 +54,256 @@ public class MultiVehicleSolverTestSuite {
     public void testZZSolver(){
 
     }
+
+    @Test
+    public void testMMKWRPPBatchSolver() {
+        try {
+            WindyGraph g = (WindyGraph) new ProblemReader(ProblemFormat.Name.Corberan).readGraph(WRPP_INSTANCE);
+
+            //the geometric partitioners, so that we don't need gpmetis
+            ArrayList<MultiWRPPBatchSolver.Scenario> scenarios = new ArrayList<MultiWRPPBatchSolver.Scenario>();
+            MultiWRPPBatchSolver.Scenario s;
+            for (int k = 2; k <= 3; k++) {
+                s = new MultiWRPPBatchSolver.Scenario(k, -1);
+                s.setPartitionMethod(k == 2 ? MultiWRPPSolver.PartitionMethod.SWEEP : MultiWRPPSolver.PartitionMethod.K_MEANS);
+                s.setNumIterations(2);
+                s.setNumPerturbations(1);
+                scenarios.add(s);
+            }
+
+            MultiWRPPBatchSolver solver = new MultiWRPPBatchSolver(g, "P0715");
+            solver.setNumThreads(2);
+            ArrayList<MinMaxKWRPP> solved = solver.solve(scenarios);
+            assertEquals("Check number of instances:", 2, solved.size());
+
+            for (int i = 0; i < solved.size(); i++) {
+                assertNotNull("Check routes:", solved.get(i).getSol());
+                assertEquals("Check number of routes:", i + 2, solved.get(i).getSol().size());
+            }
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Test
+    public void testMetisPartitionerScratchFiles() {
+        try {
+            //a stand-in for gpmetis that puts vertex i in part (i - 1) mod k
+            File fakeMetis = File.createTempFile("fakemetis", ".sh");
+            PrintWriter pw = new PrintWriter(fakeMetis);
+            pw.println("#!/bin/sh");
+            pw.println("n=$(grep -v '^%' \"$1\" | head -1 | awk '{print $1}')");
+            pw.println("i=0; : > \"$1.part.$2\"");
+            pw.println("while [ $i -lt $n ]; do echo $((i % $2)) >> \"$1.part.$2\"; i=$((i+1)); done");
+            pw.println("echo \"fake metis\"");
+            pw.close();
+            fakeMetis.setExecutable(true);
+
+            final UndirectedGraph g = new UndirectedGraph(12);
+            for (int i = 1; i < 12; i++)
+                g.addEdge(i, i + 1, 1);
+            for (UndirectedVertex v : g.getVertices())
+                v.setCost(1);
+
+            File tmp = new File(System.getProperty("java.io.tmpdir"));
+            int scratchBefore = countScratchDirectories(tmp);
+
+            //several partitions at once shouldn't clobber each other's files
+            final MetisPartitioner partitioner = new MetisPartitioner(fakeMetis.getPath());
+            ExecutorService pool = Executors.newFixedThreadPool(4);
+            ArrayList<Future<HashMap<Integer, Integer>>> results = new ArrayList<Future<HashMap<Integer, Integer>>>();
+            for (int k = 2; k <= 5; k++) {
+                final int numParts = k;
+                results.add(pool.submit(new Callable<HashMap<Integer, Integer>>() {
+                    @Override
+                    public HashMap<Integer, Integer> call() {
+                        return partitioner.partition(g, numParts);
+                    }
+                }));
+            }
+            pool.shutdown();
+            for (int k = 2; k <= 5; k++) {
+                HashMap<Integer, Integer> partition = results.get(k - 2).get();
+                assertNotNull("Check partition into " + k + " parts:", partition);
+                assertEquals("Check partition size:", 12, partition.size());
+                for (int i = 1; i <= 12; i++)
+                    assertEquals("Check part of vertex " + i + ":", (i - 1) % k, (int) partition.get(i));
+            }
+
+            //a failed run should report it, and clean up after itself all the same
+            partitioner.setExecutable("/bin/false");
+            assertEquals("Check failed partition:", null, partitioner.partition(g, 2));
+            assertEquals("Check scratch directories:", scratchBefore, countScratchDirectories(tmp));
+
+            fakeMetis.delete();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return - key = part, value = the service cost of the part, (the average of the two traversal costs of its
+     * edges, as in the refiner)
+     */
+    private static HashMap<Integer, Long> serviceCosts(WindyGraph g, HashMap<Integer, Integer> partition) {
+        HashMap<Integer, Long> ans = new HashMap<Integer, Long>();
+        WindyEdge we;
+        for (Integer id : partition.keySet()) {
+            we = g.getEdge(id);
+            Long curr = ans.get(partition.get(id));
+            ans.put(partition.get(id), (curr == null ? 0 : curr) + (we.getCost() + we.getReverseCost()) / 2);
+        }
+        return ans;
+    }
+
+    private static int countScratchDirectories(File tmp) {
+        int ans = 0;
+        File[] children = tmp.listFiles();
+        if (children != null)
+            for (File f : children)
+                if (f.isDirectory() && f.getName().startsWith("oarlib-metis"))
+                    ans++;
+        return ans;
+    }
+
+    @Test
+    public void testMinMaxBoundaryRefiner() {
+        try {
+            WindyGraph g = (WindyGraph) new ProblemReader(ProblemFormat.Name.Corberan).readGraph(WRPP_INSTANCE);
+            int m = g.getEdges().size();
+            HashMap<Integer, Integer> partition = new HashMap<Integer, Integer>();
+            for (int i = 1; i <= m; i++)
+                partition.put(i, i <= 30 ? 0 : (i <= 40 ? 1 : 2));
+            HashMap<Integer, Integer> routeCosts = new HashMap<Integer, Integer>();
+            routeCosts.put(0, 80);
+            routeCosts.put(1, 30);
+            routeCosts.put(2, 20);
+
+            HashMap<Integer, Integer> original = new HashMap<Integer, Integer>(partition);
+            MinMaxBoundaryRefiner<WindyGraph> refiner = new MinMaxBoundaryRefiner<WindyGraph>(g, routeCosts);
+            HashMap<Integer, Integer> refined = refiner.refinePartition(partition);
+            assertTrue("Check number of moves:", refiner.getNumMoves() > 0);
+            assertEquals("Check refined size:", m, refined.size());
+            for (int i = 1; i <= m; i++)
+                assertTrue("Check part of edge " + i + ":", routeCosts.containsKey(refined.get(i)));
+
+            //the refined partition should be no worse than the original one under the refiner's estimates
+            HashMap<Integer, Long> before = serviceCosts(g, partition);
+            HashMap<Integer, Long> after = serviceCosts(g, refined);
+            long maxBefore = 0;
+            long maxAfter = 0;
+            long overhead;
+            for (Integer part : routeCosts.keySet()) {
+                overhead = Math.max(0, routeCosts.get(part) - before.get(part));
+                maxBefore = Math.max(maxBefore, before.get(part) + overhead);
+                maxAfter = Math.max(maxAfter, (after.containsKey(part) ? after.get(part) : 0) + overhead);
+            }
+            assertTrue("Check max estimate:", maxAfter <= maxBefore);
+
+            //the input shouldn't be touched
+            assertEquals("Check input:", original, partition);
+
+            //and in the solver, every required edge should still get served, by one route per vehicle
+            MinMaxKWRPP instance = new MinMaxKWRPP(g.getDeepCopy(), "P0715", 3);
+            MultiWRPPSolver solver = new MultiWRPPSolver(instance, "P0715");
+            solver.setPartitionMethod(MultiWRPPSolver.PartitionMethod.K_MEANS);
+            solver.setNumIterations(2);
+            solver.setNumPerturbations(1);
+            solver.setRefinePartitions(true);
+            Collection<? extends Route> sol = solver.trySolve();
+            assertNotNull("Check routes:", sol);
+            assertEquals("Check number of routes:", 3, sol.size());
+            TIntArrayList served = new TIntArrayList();
+            for (Route<?, ?> r : sol)
+                served.add(r.getCompactRepresentation().toNativeArray());
+            for (WindyEdge we : instance.getGraph().getEdges())
+                if (we.isRequired())
+                    assertTrue("Check edge " + we.getId() + " is served:", served.contains(we.getId()));
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMMKWRPPReoptimize() {
+        try {
+            WindyGraph g = (WindyGraph) new ProblemReader(ProblemFormat.Name.Corberan).readGraph(WRPP_INSTANCE);
+            MinMaxKWRPP instance = new MinMaxKWRPP(g.getDeepCopy(), "P0715", 2);
+            MultiWRPPSolver solver = new MultiWRPPSolver(instance, "P0715");
+            solver.setPartitionMethod(MultiWRPPSolver.PartitionMethod.K_MEANS);
+            solver.setNumIterations(2);
+            solver.setNumPerturbations(1);
+            Collection<Route<WindyVertex, WindyEdge>> sol = (Collection<Route<WindyVertex, WindyEdge>>) solver.trySolve();
+            assertNotNull("Check initial routes:", sol);
+
+            //two more streets need service, and one doesn't anymore
+            Collection<Route<WindyVertex, WindyEdge>> reoptimized = solver.reoptimize(sol, Arrays.asList(30, 40), Arrays.asList(1), 1);
+            assertNotNull("Check reoptimized routes:", reoptimized);
+            assertEquals("Check number of routes:", 2, reoptimized.size());
+            boolean has30 = false;
+            boolean has40 = false;
+            TIntArrayList serviced;
+            for (Route<WindyVertex, WindyEdge> r : reoptimized) {
+                serviced = r.getCompactRepresentation();
+                has30 |= serviced.contains(30);
+                has40 |= serviced.contains(40);
+                assertFalse("Check removed edge:", serviced.contains(1));
+            }
+            assertTrue("Check added edges:", has30 && has40);
+
+            //solve the changed instance from scratch; the warm start should be in the same ballpark
+            WindyGraph changed = g.getDeepCopy();
+            changed.getEdge(1).setRequired(false);
+            changed.getEdge(30).setRequired(true);
+            changed.getEdge(40).setRequired(true);
+            MinMaxKWRPP fresh = new MinMaxKWRPP(changed, "P0715_changed", 2);
+            MultiWRPPSolver freshSolver = new MultiWRPPSolver(fresh, "P0715_changed");
+            freshSolver.setPartitionMethod(MultiWRPPSolver.PartitionMethod.K_MEANS);
+            freshSolver.setNumIterations(2);
+            freshSolver.setNumPerturbations(1);
+            freshSolver.trySolve();
+            assertTrue("Check reoptimized cost:", instance.getObjectiveFunction().evaluate(reoptimized) <= 1.5 * fresh.getObjectiveFunction().evaluate(fresh.getSol()));
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testBenaventMultiStart() {
+        try {
+            WindyGraph g = (WindyGraph) new ProblemReader(ProblemFormat.Name.Corberan).readGraph("test_instances/WRPP_Instances_Corberan/P212100");
+            MinMaxKWRPP instance = new MinMaxKWRPP(g, "P212100", 2);
+            MultiWRPPSolver solver = new MultiWRPPSolver(instance, "P212100");
+            solver.setPartitionMethod(MultiWRPPSolver.PartitionMethod.K_MEANS);
+            solver.setNumIterations(1);
+            solver.setNumPerturbations(1);
+            Collection<Route<WindyVertex, WindyEdge>> start = (Collection<Route<WindyVertex, WindyEdge>>) solver.trySolve();
+            double startObj = instance.getObjectiveFunction().evaluate(start);
+
+            //the usual sequential ILS
+            BenaventIPFramework sequential = new BenaventIPFramework(instance, null, start);
+            sequential.setNumIterations(4);
+            sequential.setSeed(17);
+            double sequentialObj = instance.getObjectiveFunction().evaluate(sequential.improveSolution());
+
+            //two trajectories, the first of which uses the same seed as the sequential one
+            BenaventIPFramework multiStart = new BenaventIPFramework(instance, null, start);
+            multiStart.setNumIterations(4);
+            multiStart.setSeed(17);
+            multiStart.setMultiStart(2, -1);
+            Collection<Route<WindyVertex, WindyEdge>> multiStartSol = multiStart.improveSolution();
+            assertEquals("Check number of routes:", 2, multiStartSol.size());
+            double multiStartObj = instance.getObjectiveFunction().evaluate(multiStartSol);
+            assertTrue("Check against the start:", multiStartObj <= startObj);
+            assertTrue("Check against the sequential ILS:", multiStartObj <= 1.05 * sequentialObj);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
 }
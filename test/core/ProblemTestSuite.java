@@ -1,7 +1,247 @@
 package core;
 
+import oarlib.core.Graph;
+import oarlib.graph.impl.MixedGraph;
+import oarlib.graph.impl.WindyGraph;
+import oarlib.graph.util.Pair;
+import oarlib.link.impl.MixedEdge;
+import oarlib.link.impl.WindyEdge;
+import oarlib.problem.impl.cpp.MixedCPP;
+import oarlib.problem.impl.io.ProblemFormat;
+import oarlib.problem.impl.io.ProblemLoader;
+import oarlib.problem.impl.io.ProblemReader;
+import oarlib.problem.impl.io.ProblemWriter;
+import oarlib.problem.impl.rpp.RFIDARP;
+import oarlib.problem.impl.rpp.WindyRPP;
+import oarlib.route.impl.Tour;
+import oarlib.simulation.DistributionGenerator;
+import oarlib.simulation.InfoCollectingRealizer;
+import oarlib.vertex.impl.WindyVertex;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
 /**
  * Created by oliverlum on 11/29/15.
  */
 public class ProblemTestSuite {
+
+    @Test
+    public void rfidReadProbabilities() {
+        try {
+            WindyGraph g = new WindyGraph(3);
+            g.addEdge(1, 2, 1, 1, true);
+            g.addEdge(2, 3, 1, 1, true);
+            g.addEdge(3, 1, 1, 1, true);
+
+            RFIDARP prob = new RFIDARP(g);
+            for (int i = 1; i <= 3; i++)
+                prob.putMeter(i, new Pair<Double>((double) i, 0.0));
+
+            //meter 1 is certain to be read from edge 2, and meter 3 from edge 3; meter 2 can't be read from either
+            HashMap<Pair<Integer>, Double> probabilities = new HashMap<Pair<Integer>, Double>();
+            probabilities.put(new Pair<Integer>(2, 1), 1.0);
+            prob.setReadProbabilities(probabilities);
+            prob.setReadProbability(3, 3, 1.0);
+            prob.setReadProbability(1, 2, 0.0);
+            probabilities.put(new Pair<Integer>(2, 2), 1.0); //shouldn't make it into the instance
+
+            assertEquals("Check 2-1:", 1.0, prob.getReadProbability(2, 1), 0);
+            assertEquals("Check 2-2:", 0.0, prob.getReadProbability(2, 2), 0);
+            assertEquals("Check edge 3's reads:", 1, prob.getReadProbabilities(3).size());
+            Map<Pair<Integer>, Double> all = prob.getReadProbabilities();
+            assertEquals("Check number of pairs:", 3, all.size());
+            assertEquals("Check 3-3:", 1.0, all.get(new Pair<Integer>(3, 3)), 0);
+            boolean threw = false;
+            try {
+                all.put(new Pair<Integer>(1, 1), 1.0);
+            } catch (UnsupportedOperationException e) {
+                threw = true;
+            }
+            assertTrue("Check read-only:", threw);
+
+            //the realizer should see the probabilities however they were set
+            Tour<WindyVertex, WindyEdge> route = new Tour<WindyVertex, WindyEdge>();
+            route.appendEdge(g.getEdge(1));
+            route.appendEdge(g.getEdge(2));
+            route.appendEdge(g.getEdge(3));
+            HashMap<Integer, Boolean> read = new InfoCollectingRealizer(prob, new DistributionGenerator()).realizeSimulation(route);
+            assertEquals("Check meters:", 3, read.size());
+            assertTrue("Check meter 1:", read.get(1));
+            assertTrue("Check meter 2:", !read.get(2));
+            assertTrue("Check meter 3:", read.get(3));
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Test
+    public void binaryFormatRoundTrip() {
+        try {
+            WindyGraph g = new WindyGraph(4);
+            g.addEdge(1, 2, 3, 5, true);
+            g.addEdge(2, 3, 4, 4, false);
+            g.addEdge(3, 4, 1, 9, true);
+            g.addEdge(4, 1, 7, 2, false);
+            g.setDepotId(2);
+            for (int i = 1; i <= 4; i++)
+                g.getVertex(i).setCoordinates(i, -i / 2.0);
+            g.getEdge(3).setReverseRequired(true);
+            g.getEdge(1).setServiceCost(6);
+            g.getEdge(1).setReverseServiceCost(8);
+            g.getEdge(4).setCapacity(11);
+            g.getVertex(3).setDemand(5);
+
+            File f = File.createTempFile("oarlib", ".oarb");
+            f.deleteOnExit();
+            ProblemWriter pw = new ProblemWriter(ProblemFormat.Name.OARLibBinary);
+            pw.setIncludeDistanceMatrix(true);
+            assertTrue("Check write:", pw.writeInstance(new WindyRPP(g), f.getPath()));
+
+            ProblemReader pr = new ProblemReader(ProblemFormat.Name.OARLibBinary);
+            WindyGraph read = (WindyGraph) pr.readGraph(f.getPath());
+            assertEquals("Check n:", 4, read.getVertices().size());
+            assertEquals("Check m:", 4, read.getEdges().size());
+            assertEquals("Check depot:", 2, read.getDepotId());
+            for (int i = 1; i <= 4; i++) {
+                WindyEdge orig = g.getEdge(i);
+                WindyEdge copy = read.getEdge(i);
+                assertEquals("Check tail:", orig.getFirstEndpointId(), copy.getFirstEndpointId());
+                assertEquals("Check head:", orig.getSecondEndpointId(), copy.getSecondEndpointId());
+                assertEquals("Check cost:", orig.getCost(), copy.getCost());
+                assertEquals("Check reverse cost:", orig.getReverseCost(), copy.getReverseCost());
+                assertEquals("Check required:", orig.isRequired(), copy.isRequired());
+                assertEquals("Check reverse required:", orig.isReverseRequired(), copy.isReverseRequired());
+                assertEquals("Check service cost:", orig.getServiceCost(), copy.getServiceCost());
+                assertEquals("Check reverse service cost:", orig.getReverseServiceCost(), copy.getReverseServiceCost());
+                assertEquals("Check capacity set:", orig.isCapacitySet(), copy.isCapacitySet());
+                assertEquals("Check demand set:", g.getVertex(i).isDemandSet(), read.getVertex(i).isDemandSet());
+                assertEquals("Check x:", g.getVertex(i).getX(), read.getVertex(i).getX(), 0);
+                assertEquals("Check y:", g.getVertex(i).getY(), read.getVertex(i).getY(), 0);
+            }
+
+            assertEquals("Check capacity:", 11, read.getEdge(4).getCapacity());
+            assertEquals("Check demand:", 5, read.getVertex(3).getDemand());
+
+            int[][] dist = pr.readDistanceMatrix(f.getPath());
+            assertEquals("Check 1 to 3:", 7, dist[1][3]);
+            assertEquals("Check 3 to 1:", 8, dist[3][1]);
+
+            //links are stored by position, so gaps in the ids are refused
+            g.removeEdge(2);
+            boolean refused = false;
+            try {
+                pw.writeInstance(new WindyRPP(g), f.getPath());
+            } catch (IllegalArgumentException e) {
+                refused = true;
+            }
+            assertTrue("Check gaps refused:", refused);
+
+            //mixed graphs keep their arcs, and there's no matrix unless we ask for one
+            MixedGraph mg = new MixedGraph(3);
+            mg.addEdge(1, 2, 2, true, true);
+            mg.addEdge(2, 3, 6, false, false);
+            pw.setIncludeDistanceMatrix(false);
+            assertTrue("Check write:", pw.writeInstance(new MixedCPP(mg), f.getPath()));
+
+            MixedGraph readMixed = (MixedGraph) pr.readGraph(f.getPath());
+            MixedEdge arc = readMixed.getEdge(1);
+            MixedEdge edge = readMixed.getEdge(2);
+            assertTrue("Check directed:", arc.isDirected() && arc.isRequired());
+            assertTrue("Check undirected:", !edge.isDirected() && !edge.isRequired());
+            assertNull("Check no matrix:", pr.readDistanceMatrix(f.getPath()));
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Test
+    public void oarlibFormatRoundTrip() {
+        try {
+            MixedGraph g = new MixedGraph(3);
+            g.addEdge(1, 2, 2, true, true);
+            g.addEdge(2, 3, 6, false, false);
+            g.addEdge(3, 1, 4, false, true);
+            g.getEdge(1).setLabel("Main St, North"); //names are free text
+            g.setDepotId(3);
+
+            File f = File.createTempFile("oarlib", ".txt");
+            f.deleteOnExit();
+            new ProblemWriter(ProblemFormat.Name.OARLib).writeInstance(new MixedCPP(g), f.getPath());
+
+            MixedGraph read = (MixedGraph) new ProblemReader(ProblemFormat.Name.OARLib).readGraph(f.getPath());
+            assertEquals("Check n:", 3, read.getVertices().size());
+            assertEquals("Check m:", 3, read.getEdges().size());
+            assertEquals("Check depot:", 3, read.getDepotId());
+            for (int i = 1; i <= 3; i++) {
+                MixedEdge orig = g.getEdge(i);
+                MixedEdge copy = read.getEdge(i);
+                assertEquals("Check tail:", orig.getFirstEndpointId(), copy.getFirstEndpointId());
+                assertEquals("Check head:", orig.getSecondEndpointId(), copy.getSecondEndpointId());
+                assertEquals("Check cost:", orig.getCost(), copy.getCost());
+                assertEquals("Check directed:", orig.isDirected(), copy.isDirected());
+                assertEquals("Check required:", orig.isRequired(), copy.isRequired());
+            }
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Test
+    public void loaderReadsFolderInOrder() {
+        try {
+            File dir = File.createTempFile("oarlib", "");
+            dir.delete();
+            dir.mkdir();
+            dir.deleteOnExit();
+
+            ProblemWriter text = new ProblemWriter(ProblemFormat.Name.OARLib);
+            ProblemWriter binary = new ProblemWriter(ProblemFormat.Name.OARLibBinary);
+            for (int i = 1; i <= 5; i++) {
+                MixedGraph g = new MixedGraph(3);
+                g.addEdge(1, 2, i, true, true);
+                g.addEdge(2, 3, 1, false, false);
+                g.addEdge(3, 1, 1, false, true);
+                File f = new File(dir, "instance" + i);
+                f.deleteOnExit();
+                //one of these is in a different format than the one we'll ask for
+                (i == 4 ? binary : text).writeInstance(new MixedCPP(g), f.getPath());
+            }
+            File junk = new File(dir, "notes.txt");
+            junk.deleteOnExit();
+            PrintWriter pw = new PrintWriter(junk);
+            pw.println("not an instance");
+            pw.close();
+
+            ProblemLoader<MixedCPP> loader = new ProblemLoader<MixedCPP>(dir.getPath(), ProblemFormat.Name.OARLib, new ProblemLoader.ProblemFactory<MixedCPP>() {
+                @Override
+                public MixedCPP createProblem(Graph<?, ?> g, String name) {
+                    return g instanceof MixedGraph ? new MixedCPP((MixedGraph) g, name) : null;
+                }
+            });
+            loader.setNumThreads(3);
+            loader.setMaxInFlight(2);
+
+            ArrayList<MixedCPP> instances = loader.loadAll();
+            assertEquals("Check count:", 5, instances.size());
+            for (int i = 1; i <= 5; i++) {
+                assertEquals("Check order:", "instance" + i, instances.get(i - 1).getName());
+                assertEquals("Check cost:", i, instances.get(i - 1).getGraph().getEdge(1).getCost());
+            }
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
 }
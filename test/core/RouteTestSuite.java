@@ -5,9 +5,14 @@ import oarlib.core.Graph;
 import oarlib.core.Link;
 import oarlib.core.Route;
 import oarlib.graph.impl.WindyGraph;
+import oarlib.link.impl.WindyEdge;
 import oarlib.route.impl.Tour;
+import oarlib.route.util.RouteExporter;
+import oarlib.route.util.SolutionImporter;
+import oarlib.vertex.impl.WindyVertex;
 import org.junit.Test;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 
@@ -169,5 +174,55 @@ public class RouteTestSuite {
 
     }
 
+    @Test
+    public void testVertexIdIterator(){
+
+        Route<?, ?> route = genTestRoutes().iterator().next();
+        int[] expected = new int[]{6, 7, 3, 2, 1, 5, 6};
+        Route<?, ?>.VertexIdIterator iter = route.vertexIdIterator();
+        for (int id : expected)
+            assertEquals(id, iter.next());
+        assertEquals(false, iter.hasNext());
+
+        //appending should match toString, and the hash should be the one computed over it
+        StringBuilder sb = new StringBuilder("Route: ");
+        assertEquals("Route: 6-7-3-2-1-5-6", route.appendTo(sb).toString());
+        long hash = 5381;
+        for (char c : "6-7-3-2-1-5-6".toCharArray())
+            hash = hash * 33 + c;
+        assertEquals(hash, route.getHash());
+    }
+
+    @Test
+    public void testBinaryExportRoundTrip(){
+
+        try {
+            Collection<Route> routes = genTestRoutes();
+
+            //the first route reports its vertices under a custom id mapping
+            TIntIntHashMap customIDMap = new TIntIntHashMap();
+            for (int i = 1; i <= 7; i++)
+                customIDMap.put(i, i + 1);
+            routes.iterator().next().setMapping(customIDMap);
+
+            File f = File.createTempFile("routes", ".bin");
+            f.deleteOnExit();
+            RouteExporter.exportRoutes(routes, RouteExporter.RouteFormat.BINARY, f.getPath());
+
+            ArrayList<Tour<WindyVertex, WindyEdge>> imported = SolutionImporter.importBinary(f.getPath(), (WindyGraph) genTestNetwork());
+            assertEquals(routes.size(), imported.size());
+            int i = 0;
+            for (Route<?, ?> r : routes) {
+                assertEquals(r.toString(), imported.get(i).toString());
+                assertEquals(r.getCost(), imported.get(i).getCost());
+                assertEquals(r.getMapping().size(), imported.get(i).getMapping().size());
+                for (int key : r.getMapping().keys())
+                    assertEquals(r.getMapping().get(key), imported.get(i).getMapping().get(key));
+                i++;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
 
 }
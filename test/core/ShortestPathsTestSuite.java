@@ -7,6 +7,10 @@ import oarlib.graph.graphgen.erdosrenyi.WindyErdosRenyiGraphGenerator;
 import oarlib.graph.impl.DirectedGraph;
 import oarlib.graph.impl.WindyGraph;
 import oarlib.graph.util.CommonAlgorithms;
+import oarlib.graph.util.WindyDistanceOracle;
+import oarlib.link.impl.WindyEdge;
+import oarlib.problem.impl.io.ProblemFormat;
+import oarlib.problem.impl.io.ProblemReader;
 import org.apache.log4j.Logger;
 import org.junit.Test;
 
@@ -14,6 +18,7 @@ import java.util.HashSet;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
 
 /**
  * Test suite for our various shortest path methods.
@@ -81,6 +86,54 @@ public class ShortestPathsTestSuite {
         }
     }
 
+    @Test
+    public void testWindyDistanceOracle() {
+        try {
+            ProblemReader pr = new ProblemReader(ProblemFormat.Name.Corberan);
+            for (String instance : new String[]{"A3101.DAT", "A5207.DAT", "A7107.DAT"}) {
+                WindyGraph g = (WindyGraph) pr.readGraph("test_instances/WRPP_Instances_Corberan/" + instance);
+                int n = g.getVertices().size();
+
+                //control
+                int[][] dist = new int[n + 1][n + 1];
+                int[][] path = new int[n + 1][n + 1];
+                CommonAlgorithms.fwLeastCostPaths(g, dist, path);
+
+                //validate; the paths should be real, and have the advertised costs
+                WindyDistanceOracle oracle = new WindyDistanceOracle(g);
+                for (int i = 1; i <= n; i++) {
+                    int[] opath = oracle.getPath(i);
+                    int[] oedgePath = oracle.getEdgePath(i);
+                    for (int j = 1; j <= n; j++) {
+                        if (i == j)
+                            continue;
+                        assertEquals("Check distance " + i + "-" + j + ":", dist[i][j], oracle.getDist(i, j));
+
+                        int cost = 0;
+                        int roundTrip = 0;
+                        int curr = j;
+                        while (curr != i) {
+                            WindyEdge e = g.getEdge(oedgePath[curr]);
+                            int prev = opath[curr];
+                            if (e.getFirstEndpointId() == prev && e.getSecondEndpointId() == curr)
+                                cost += e.getCost();
+                            else if (e.getSecondEndpointId() == prev && e.getFirstEndpointId() == curr)
+                                cost += e.getReverseCost();
+                            else
+                                fail("Check path " + i + "-" + j + ": edge " + e.getId() + " doesn't join " + prev + " and " + curr);
+                            roundTrip += e.getCost() + e.getReverseCost();
+                            curr = prev;
+                        }
+                        assertEquals("Check path cost " + i + "-" + j + ":", dist[i][j], cost);
+                        assertEquals("Check average path cost " + i + "-" + j + ":", roundTrip / 2.0, oracle.getAveragePathCost(i, j), 1e-9);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
     @Test
     public void testBellmanFord() {
 
@@ -3,17 +3,25 @@ package core;
 import gnu.trove.TIntArrayList;
 import gnu.trove.TIntObjectHashMap;
 import gurobi.*;
+import oarlib.core.Link;
 import oarlib.core.Route;
 import oarlib.graph.graphgen.erdosrenyi.DirectedErdosRenyiGraphGenerator;
 import oarlib.graph.graphgen.erdosrenyi.UndirectedErdosRenyiGraphGenerator;
 import oarlib.graph.impl.DirectedGraph;
+import oarlib.graph.impl.MixedGraph;
 import oarlib.graph.impl.UndirectedGraph;
 import oarlib.graph.util.CommonAlgorithms;
 import oarlib.link.impl.Arc;
 import oarlib.link.impl.Edge;
+import oarlib.link.impl.MixedEdge;
 import oarlib.problem.impl.cpp.DirectedCPP;
+import oarlib.problem.impl.cpp.MixedCPP;
 import oarlib.problem.impl.cpp.UndirectedCPP;
+import oarlib.problem.impl.io.ProblemFormat;
+import oarlib.problem.impl.io.ProblemReader;
 import oarlib.solver.impl.DCPPSolver_Edmonds;
+import oarlib.solver.impl.MCPPSolver_Frederickson;
+import oarlib.solver.impl.MCPPSolver_Yaoyuenyong;
 import oarlib.solver.impl.UCPPSolver_Edmonds;
 import oarlib.vertex.impl.DirectedVertex;
 import oarlib.vertex.impl.UndirectedVertex;
@@ -21,6 +29,11 @@ import org.apache.log4j.Logger;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 
 /**
@@ -271,11 +284,73 @@ public class SingleVehicleSolverTestSuite {
 
     @Test
     public void testYaoyuenyongMCPPSolver() {
+        try {
+            String[] names = {"A30_1.nwk", "D21_yut2.nwk", "MHe116a27.nwk", "MHe16a52.nwk", "MHe39a31.nwk", "MHe39a39.nwk",
+                    "MHe40a12.nwk", "MHe44a49.nwk", "MHe61a24.nwk", "MHe71a20.nwk", "nobert.nwk"};
+
+            ProblemReader pr = new ProblemReader(ProblemFormat.Name.Yaoyuenyong);
+            for (String name : names) {
+                MixedGraph g = (MixedGraph) pr.readGraph("test_instances/MCPP_Instances_YaoyuenyongInstances/" + name);
+
+                int fredCost = totalCost(new MCPPSolver_Frederickson(new MixedCPP(g.getDeepCopy())).trySolve());
+
+                MCPPSolver_Yaoyuenyong serial = new MCPPSolver_Yaoyuenyong(new MixedCPP(g.getDeepCopy()));
+                serial.setBatchSize(1);
+                serial.setNumThreads(1);
+                Collection<? extends Route> serialSol = serial.trySolve();
+                checkTour(name, g, serialSol);
+                int serialCost = totalCost(serialSol);
+
+                MCPPSolver_Yaoyuenyong parallel = new MCPPSolver_Yaoyuenyong(new MixedCPP(g.getDeepCopy()));
+                parallel.setBatchSize(16);
+                parallel.setNumThreads(4);
+                Collection<? extends Route> parallelSol = parallel.trySolve();
+                checkTour(name, g, parallelSol);
+                int parallelCost = totalCost(parallelSol);
+
+                assertEquals("Check parallel cost for " + name + ":", serialCost, parallelCost);
+                assertTrue("Check improvement for " + name + ":", serialCost <= fredCost);
+            }
 
-        //read in the instances
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
 
-        //compare a few
+    /**
+     * Checks that the solution is a single closed walk that only crosses arcs tail to head, traverses every link of g,
+     * and whose cost is the sum of the costs of the links on it.
+     */
+    private static void checkTour(String name, MixedGraph g, Collection<? extends Route> routes) {
+        assertEquals("Check number of routes for " + name + ":", 1, routes.size());
+        Route<?, ?> r = routes.iterator().next();
+
+        Route<?, ?>.VertexIdIterator iter = r.vertexIdIterator();
+        assertTrue("Check consistency for " + name + ":", iter.isConsistent());
+        int start = iter.next();
+        int curr = start;
+        int cost = 0;
+        HashSet<Integer> traversed = new HashSet<Integer>();
+        for (Link<?> l : r.getPath()) {
+            int next = iter.next();
+            if (l.isDirected())
+                assertTrue("Check arc direction for " + name + ":", l.getFirstEndpointId() == curr && l.getSecondEndpointId() == next);
+            cost += l.getCost();
+            traversed.add(l.getId());
+            curr = next;
+        }
+        assertEquals("Check closed for " + name + ":", start, curr);
+        assertEquals("Check cost for " + name + ":", cost, r.getCost());
+
+        for (MixedEdge e : g.getEdges())
+            assertTrue("Check coverage for " + name + ":", traversed.contains(e.getId()));
+    }
 
+    private static int totalCost(Collection<? extends Route> routes) {
+        int ans = 0;
+        for (Route<?, ?> r : routes)
+            ans += r.getCost();
+        return ans;
     }
 
     @Test